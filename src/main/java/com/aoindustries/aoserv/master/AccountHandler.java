@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2025  AO Industries, Inc.
+ * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2025, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -308,22 +308,9 @@ public final class AccountHandler {
             );
           }
         } else {
-          accounts = db.queryNewCollection(
-              AoCollections::newSortedArrayList,
-              ObjectFactories.accountNameFactory,
-              "select\n"
-                  + "  bu1.accounting\n"
-                  + "from\n"
-                  + "  account.\"User\" un,\n"
-                  + "  billing.\"Package\" pk,\n"
-                  + TableHandler.BU1_PARENTS_JOIN_NO_COMMA
-                  + "where\n"
-                  + "  un.username=?\n"
-                  + "  and un.package=pk.name\n"
-                  + "  and (\n"
-                  + TableHandler.PK_BU1_PARENTS_WHERE
-                  + "  )",
-              currentAdministrator
+          accounts = AccountTree.getAccountAndDescendants(
+              db,
+              AccountUserHandler.getAccountForUser(db, currentAdministrator)
           );
         }
         userAccounts.put(currentAdministrator, accounts);
@@ -1720,6 +1707,14 @@ public final class AccountHandler {
       synchronized (disabledAccounts) {
         disabledAccounts.clear();
       }
+    } else if (
+        tableId == Table.TableId.USERNAMES
+            || tableId == Table.TableId.PACKAGES
+    ) {
+      // The account of a non-master administrator is found through its user and package
+      synchronized (userAccountsLock) {
+        userAccounts = null;
+      }
     } else if (tableId == Table.TableId.BUSINESS_ADMINISTRATOR_PERMISSIONS) {
       synchronized (cachedPermissionsLock) {
         cachedPermissions = null;
@@ -1810,7 +1805,7 @@ public final class AccountHandler {
   }
 
   public static boolean isAccountOrParent(DatabaseConnection conn, Account.Name parentAccounting, Account.Name account) throws IOException, SQLException {
-    return conn.queryBoolean("select account.is_account_or_parent(?,?)", parentAccounting, account);
+    return AccountTree.isAccountOrParent(conn, parentAccounting, account);
   }
 
   public static boolean canSwitchUser(
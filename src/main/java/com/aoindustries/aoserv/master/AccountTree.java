@@ -0,0 +1,242 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import com.aoapps.collections.AoCollections;
+import com.aoapps.dbc.DatabaseAccess;
+import com.aoapps.lang.validation.ValidationException;
+import com.aoindustries.aoserv.client.account.Account;
+import com.aoindustries.aoserv.client.schema.Table;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An in-memory index of the account tree, used in place of joining
+ * <code>account."Account"</code> once per level of the tree as done by
+ * {@link TableHandler#BU1_PARENTS_JOIN}.
+ *
+ * <p>The full tree is loaded in bulk on first use, through a connection of its
+ * own so nothing uncommitted in the requesting transaction is ever cached, and
+ * discarded when {@link Table.TableId#BUSINESSES} is invalidated.  An account
+ * missing from the index (such as one added earlier in the current
+ * transaction) is resolved within the caller's transaction and not cached.</p>
+ *
+ * <p>Queries may then filter on a set of accounts with a single comparison,
+ * such as <code>accounting = ANY(?::text[])</code>, passing the result of
+ * {@link #toArrayLiteral(java.util.Collection)} as the parameter.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class AccountTree {
+
+  /** Make no instances. */
+  private AccountTree() {
+    throw new AssertionError();
+  }
+
+  private static final class Tree {
+
+    private final Map<Account.Name, Account.Name> parents;
+    private final Map<Account.Name, List<Account.Name>> children;
+
+    private Tree(Map<Account.Name, Account.Name> parents) {
+      this.parents = parents;
+      Map<Account.Name, List<Account.Name>> newChildren = new HashMap<>();
+      for (Map.Entry<Account.Name, Account.Name> entry : parents.entrySet()) {
+        Account.Name parent = entry.getValue();
+        if (parent != null) {
+          newChildren.computeIfAbsent(parent, p -> new ArrayList<>()).add(entry.getKey());
+        }
+      }
+      this.children = newChildren;
+    }
+  }
+
+  /**
+   * Serializes bulk loads so concurrent requests on an empty index perform only one query.
+   */
+  private static final Object loadLock = new Object();
+
+  private static final Object treeLock = new Object();
+
+  /**
+   * Incremented on each invalidation, so a load that was running during an
+   * invalidation is not retained.
+   */
+  private static int generation;
+  private static Tree tree;
+
+  private static Tree getTree() throws IOException, SQLException {
+    synchronized (loadLock) {
+      int loadGeneration;
+      synchronized (treeLock) {
+        if (tree != null) {
+          return tree;
+        }
+        loadGeneration = generation;
+      }
+      Tree loaded = new Tree(
+          MasterDatabase.getDatabase().queryCall(
+              results -> {
+                try {
+                  Map<Account.Name, Account.Name> map = new HashMap<>();
+                  while (results.next()) {
+                    String parent = results.getString(2);
+                    map.put(
+                        Account.Name.valueOf(results.getString(1)),
+                        parent == null ? null : Account.Name.valueOf(parent)
+                    );
+                  }
+                  return map;
+                } catch (ValidationException e) {
+                  throw new SQLException(e);
+                }
+              },
+              "select accounting, parent from account.\"Account\""
+          )
+      );
+      synchronized (treeLock) {
+        if (generation == loadGeneration) {
+          tree = loaded;
+        }
+      }
+      return loaded;
+    }
+  }
+
+  /**
+   * Gets the given account and all of its descendants, sorted.
+   */
+  public static List<Account.Name> getAccountAndDescendants(DatabaseAccess db, Account.Name account) throws IOException, SQLException {
+    Tree t = getTree();
+    if (!t.parents.containsKey(account)) {
+      // Not yet in the index, likely added in this transaction
+      return db.queryNewCollection(
+          AoCollections::newSortedArrayList,
+          ObjectFactories.accountNameFactory,
+          "with recursive account_and_down(accounting) as (\n"
+              + "  values (?::text)\n"
+              + "union\n"
+              + "  select a.accounting from\n"
+              + "    account_and_down\n"
+              + "    inner join account.\"Account\" a on account_and_down.accounting = a.parent\n"
+              + ")\n"
+              + "select accounting from account_and_down",
+          account
+      );
+    }
+    List<Account.Name> accounts = new ArrayList<>();
+    Set<Account.Name> seen = new HashSet<>();
+    List<Account.Name> level = Collections.singletonList(account);
+    // Bounded by the maximum tree depth, which also protects against any cycle in the data
+    for (int depth = 0; depth < Account.MAXIMUM_BUSINESS_TREE_DEPTH && !level.isEmpty(); depth++) {
+      List<Account.Name> nextLevel = new ArrayList<>();
+      for (Account.Name a : level) {
+        if (seen.add(a)) {
+          accounts.add(a);
+          List<Account.Name> c = t.children.get(a);
+          if (c != null) {
+            nextLevel.addAll(c);
+          }
+        }
+      }
+      level = nextLevel;
+    }
+    Collections.sort(accounts);
+    return accounts;
+  }
+
+  /**
+   * Checks if an account is the same as, or a descendant of, another account.
+   *
+   * @see  AccountHandler#isAccountOrParent(com.aoapps.dbc.DatabaseConnection, com.aoindustries.aoserv.client.account.Account.Name, com.aoindustries.aoserv.client.account.Account.Name)
+   */
+  public static boolean isAccountOrParent(DatabaseAccess db, Account.Name parentAccounting, Account.Name account) throws IOException, SQLException {
+    Tree t = getTree();
+    if (!t.parents.containsKey(account)) {
+      // Not yet in the index, likely added in this transaction
+      return db.queryBoolean("select account.is_account_or_parent(?,?)", parentAccounting, account);
+    }
+    Account.Name current = account;
+    for (int depth = 0; depth < Account.MAXIMUM_BUSINESS_TREE_DEPTH && current != null; depth++) {
+      if (current.equals(parentAccounting)) {
+        return true;
+      }
+      current = t.parents.get(current);
+    }
+    return false;
+  }
+
+  /**
+   * Formats a set of accounts as a PostgreSQL array literal, suitable for use
+   * as a parameter to <code>= ANY(?::text[])</code>.  Every element is quoted,
+   * with any backslash or double quote escaped, so no value can be read as
+   * <code>NULL</code> or alter the structure of the array.  A {@code null}
+   * element is written as an unquoted <code>NULL</code>.
+   */
+  public static String toArrayLiteral(Collection<Account.Name> accounts) {
+    StringBuilder sb = new StringBuilder(2 + accounts.size() * 18);
+    sb.append('{');
+    boolean didOne = false;
+    for (Account.Name account : accounts) {
+      if (didOne) {
+        sb.append(',');
+      } else {
+        didOne = true;
+      }
+      if (account == null) {
+        sb.append("NULL");
+      } else {
+        sb.append('"');
+        String value = account.toString();
+        for (int i = 0, len = value.length(); i < len; i++) {
+          char ch = value.charAt(i);
+          if (ch == '"' || ch == '\\') {
+            sb.append('\\');
+          }
+          sb.append(ch);
+        }
+        sb.append('"');
+      }
+    }
+    return sb.append('}').toString();
+  }
+
+  public static void invalidateTable(Table.TableId tableId) {
+    if (tableId == Table.TableId.BUSINESSES) {
+      synchronized (treeLock) {
+        generation++;
+        tree = null;
+      }
+    }
+  }
+}
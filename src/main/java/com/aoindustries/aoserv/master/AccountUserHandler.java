@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -224,6 +224,10 @@ public final class AccountUserHandler {
       synchronized (userAccounts) {
         userAccounts.clear();
       }
+    } else if (tableId == Table.TableId.PACKAGES) {
+      synchronized (userAccounts) {
+        userAccounts.clear();
+      }
     }
   }
 
@@ -113,8 +113,10 @@ import java.util.Map;
 import java.util.Random;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
@@ -528,6 +530,7 @@ public abstract class AoservMaster {
       long seq,
       StreamableInput in,
       StreamableOutput out,
+      ResponseTimer responseTimer,
       Process process
   ) throws IOException, SQLException {
     process.commandCompleted();
@@ -564,6 +567,11 @@ public abstract class AoservMaster {
     // Continue with task
     int taskCodeOrdinal = in.readCompressedInt();
     long requestStartTime = System.currentTimeMillis();
+    long requestStartNanos = System.nanoTime();
+    responseTimer.reset();
+    // Set once the command and table are known, used for per-command statistics
+    AoservProtocol.CommandId requestCommand = null;
+    Table.TableId requestTableId = null;
     try {
       if (taskCodeOrdinal == -1) {
         // EOF
@@ -574,6 +582,7 @@ public abstract class AoservMaster {
       } else {
         final boolean done;
         AoservProtocol.CommandId taskCode = commandIds[taskCodeOrdinal];
+        requestCommand = taskCode;
         switch (taskCode) {
           case LISTEN_CACHES:
             process.setCommand("listen_caches");
@@ -710,6 +719,7 @@ public abstract class AoservMaster {
                 {
                   int clientTableId = in.readCompressedInt();
                   Table.TableId tableId = TableHandler.convertFromClientTableId(conn, source, clientTableId);
+                  requestTableId = tableId;
                   if (tableId == null) {
                     throw new IOException("Client table not supported: #" + clientTableId);
                   }
@@ -743,6 +753,7 @@ public abstract class AoservMaster {
                 {
                   int clientTableId = in.readCompressedInt();
                   Table.TableId tableId = TableHandler.convertFromClientTableId(conn, source, clientTableId);
+                  requestTableId = tableId;
                   if (tableId == null) {
                     throw new IOException("Client table not supported: #" + clientTableId);
                   }
@@ -4153,6 +4164,7 @@ public abstract class AoservMaster {
                 {
                   int clientTableId = in.readCompressedInt();
                   Table.TableId tableId = TableHandler.convertFromClientTableId(conn, source, clientTableId);
+                  requestTableId = tableId;
                   if (tableId == null) {
                     throw new IOException("Client table not supported: #" + clientTableId);
                   }
@@ -4514,6 +4526,7 @@ public abstract class AoservMaster {
                 {
                   int clientTableId = in.readCompressedInt();
                   Table.TableId tableId = TableHandler.convertFromClientTableId(conn, source, clientTableId);
+                  requestTableId = tableId;
                   if (tableId == null) {
                     throw new IOException("Client table not supported: #" + clientTableId);
                   }
@@ -5069,6 +5082,7 @@ public abstract class AoservMaster {
                 {
                   int clientTableId = in.readCompressedInt();
                   Table.TableId tableId = TableHandler.convertFromClientTableId(conn, source, clientTableId);
+                  requestTableId = tableId;
                   if (tableId == null) {
                     throw new IOException("Client table not supported: #" + clientTableId);
                   }
@@ -5752,6 +5766,7 @@ public abstract class AoservMaster {
                 {
                   int clientTableId = in.readCompressedInt();
                   Table.TableId tableId = TableHandler.convertFromClientTableId(conn, source, clientTableId);
+                  requestTableId = tableId;
                   if (tableId == null) {
                     throw new IOException("Client table not supported: #" + clientTableId);
                   }
@@ -5787,6 +5802,7 @@ public abstract class AoservMaster {
                 {
                   int clientTableId = in.readCompressedInt();
                   Table.TableId tableId = TableHandler.convertFromClientTableId(conn, source, clientTableId);
+                  requestTableId = tableId;
                   int count;
                   if (tableId == null) {
                     logger.log(Level.WARNING, "Client table not supported: #{0}, returning 0 from get_row_count", clientTableId);
@@ -5837,6 +5853,7 @@ public abstract class AoservMaster {
                   boolean provideProgress = in.readBoolean();
                   int clientTableId = in.readCompressedInt();
                   Table.TableId tableId = TableHandler.convertFromClientTableId(conn, source, clientTableId);
+                  requestTableId = tableId;
                   if (tableId == null) {
                     // Get the table name, if possible
                     int dbTableId = TableHandler.convertClientTableIdToDbTableId(
@@ -6579,6 +6596,7 @@ public abstract class AoservMaster {
                 {
                   int clientTableId = in.readCompressedInt();
                   Table.TableId tableId = TableHandler.convertFromClientTableId(conn, source, clientTableId);
+                  requestTableId = tableId;
                   if (tableId == null) {
                     throw new IOException("Client table not supported: #" + clientTableId);
                   }
@@ -10142,6 +10160,7 @@ public abstract class AoservMaster {
                 {
                   int clientTableId = in.readCompressedInt();
                   Table.TableId tableId = TableHandler.convertFromClientTableId(conn, source, clientTableId);
+                  requestTableId = tableId;
                   if (tableId == null) {
                     throw new IOException("Client table not supported: #" + clientTableId);
                   }
@@ -10534,6 +10553,18 @@ public abstract class AoservMaster {
       if (addTime) {
         concurrency.decrementAndGet();
         totalTime.addAndGet(System.currentTimeMillis() - requestStartTime);
+        if (requestCommand != null) {
+          long endNanos = System.nanoTime();
+          long respondStartNanos = responseTimer.getStartNanos();
+          RequestStatistics.recordRequest(
+              source.getConnectorId(),
+              source.getCurrentAdministrator(),
+              requestCommand,
+              requestTableId,
+              endNanos - requestStartNanos,
+              respondStartNanos == -1 ? 0 : endNanos - respondStartNanos
+          );
+        }
       }
     }
     return keepOpen;
@@ -10756,17 +10787,21 @@ public abstract class AoservMaster {
         System.setProperty("javax.net.ssl.keyStorePassword", keyStorePassword);
       }
 
+      long startupNanos = System.nanoTime();
+
       // TODO: Convert these to MasterService
       AccountCleaner.start();
       ClusterHandler.start();
       PaymentHandler.start();
+      PkiCertificateHandler.start();
       FailoverHandler.start();
       SignupHandler.start();
+      HealthReportCollector.start();
       TableHandler.start();
       TicketHandler.start();
+      VirtualDiskVerifier.start();
 
       // TODO: A way to get the instance of a esrvice given its class
-      // TODO: A way to start services in dependency order
 
       // Instantiate all services
       System.out.print("Loading services: ");
@@ -10782,6 +10817,11 @@ public abstract class AoservMaster {
       System.out.println(servicesToStart.size() + " " + (servicesToStart.size() == 1 ? "service" : "services") + " loaded");
 
       List<Tuple2<MasterService, MasterServiceState>> failedServices = startServices(servicesToStart, true, System.out);
+      List<MasterService> startedServices = filterStarted(servicesToStart);
+      boolean deferWarmUp = MasterConfiguration.isServiceWarmUpDeferred();
+      if (!deferWarmUp) {
+        warmUpServices(startedServices, System.out);
+      }
 
       // Start listening after initialization to allow all modules to be loaded
       // TODO: Should the network protocol be a service, too?
@@ -10815,6 +10855,10 @@ public abstract class AoservMaster {
           }
         }
       }
+      System.out.println("Listening for connections " + (System.nanoTime() - startupNanos) / 1000000 + " ms after start-up");
+      if (deferWarmUp) {
+        executorService.submit(() -> warmUpServices(startedServices, System.out));
+      }
 
       while (!failedServices.isEmpty() && !Thread.currentThread().isInterrupted()) {
         try {
@@ -10824,28 +10868,106 @@ public abstract class AoservMaster {
           // Restore the interrupted status
           Thread.currentThread().interrupt();
         }
-        failedServices = startServices(failedServices, false, System.out);
+        List<Tuple2<MasterService, MasterServiceState>> retriedServices = failedServices;
+        failedServices = startServices(retriedServices, false, System.out);
+        // Already listening, so warm-up in the background
+        List<MasterService> retriedStartedServices = filterStarted(retriedServices);
+        if (!retriedStartedServices.isEmpty()) {
+          executorService.submit(() -> warmUpServices(retriedStartedServices, System.out));
+        }
       }
     } catch (IOException | IllegalArgumentException err) {
       logger.log(Level.SEVERE, null, err);
     }
   }
 
+  /**
+   * Checks if all the dependencies of the given service have been started.
+   */
+  private static boolean isDependenciesStarted(MasterService service) {
+    for (Class<?> dependency : service.getDependencies()) {
+      for (Map.Entry<?, MasterServiceState> entry : serviceRegistry.getEntries(dependency)) {
+        if (entry.getKey() != service && !entry.getValue().started) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the services that are started, in the given order.
+   */
+  private static List<MasterService> filterStarted(List<Tuple2<MasterService, MasterServiceState>> services) {
+    List<MasterService> started = new ArrayList<>(services.size());
+    for (Tuple2<MasterService, MasterServiceState> serviceAndState : services) {
+      if (serviceAndState.getElement2().started) {
+        started.add(serviceAndState.getElement1());
+      }
+    }
+    return started;
+  }
+
   /**
    * Starts the given services, returning a list of those that failed to start.
+   *
+   * <p>Services are started in rounds.  Each round concurrently starts all
+   * remaining services whose dependencies have been started, then registers
+   * their handlers in the given order.  Services whose dependencies are never
+   * started, including dependency cycles, are returned as failed and will be
+   * retried along with their dependencies.</p>
    */
   private static List<Tuple2<MasterService, MasterServiceState>> startServices(List<Tuple2<MasterService, MasterServiceState>> servicesToStart, boolean isFirstStart, PrintStream out) {
-    // TODO: Support starting in dependency order
     out.println(isFirstStart ? "Starting services:" : "Starting failed services:");
+    long startNanos = System.nanoTime();
+    List<Tuple2<MasterService, MasterServiceState>> remaining = new ArrayList<>(servicesToStart);
     List<Tuple2<MasterService, MasterServiceState>> failedServices = new ArrayList<>();
-    for (Tuple2<MasterService, MasterServiceState> serviceAndState : servicesToStart) {
-      MasterService service = serviceAndState.getElement1();
-      out.print("    " + service.getClass().getName());
-      boolean started = false;
-      try {
-        service.start();
-        serviceAndState.getElement2().started = true;
-        started = true;
+    while (!remaining.isEmpty()) {
+      List<Tuple2<MasterService, MasterServiceState>> ready = new ArrayList<>();
+      Iterator<Tuple2<MasterService, MasterServiceState>> remainingIter = remaining.iterator();
+      while (remainingIter.hasNext()) {
+        Tuple2<MasterService, MasterServiceState> serviceAndState = remainingIter.next();
+        if (isDependenciesStarted(serviceAndState.getElement1())) {
+          ready.add(serviceAndState);
+          remainingIter.remove();
+        }
+      }
+      if (ready.isEmpty() || Thread.currentThread().isInterrupted()) {
+        for (Tuple2<MasterService, MasterServiceState> serviceAndState : remaining) {
+          out.println("    " + serviceAndState.getElement1().getClass().getName() + ": Dependencies not started");
+          failedServices.add(serviceAndState);
+        }
+        break;
+      }
+      // Start concurrently
+      List<Future<Long>> futures = new ArrayList<>(ready.size());
+      for (Tuple2<MasterService, MasterServiceState> serviceAndState : ready) {
+        MasterService service = serviceAndState.getElement1();
+        futures.add(executorService.submit(() -> {
+          long serviceStartNanos = System.nanoTime();
+          service.start();
+          return System.nanoTime() - serviceStartNanos;
+        }));
+      }
+      // Register handlers in order
+      for (int i = 0, size = ready.size(); i < size; i++) {
+        Tuple2<MasterService, MasterServiceState> serviceAndState = ready.get(i);
+        MasterService service = serviceAndState.getElement1();
+        out.print("    " + service.getClass().getName());
+        boolean started = false;
+        try {
+          long serviceNanos;
+          try {
+            serviceNanos = futures.get(i).get();
+          } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception) {
+              throw (Exception) cause;
+            }
+            throw e;
+          }
+          serviceAndState.getElement2().started = true;
+          started = true;
           // Fatal, will no retry adding handlers when exception happens on first attempt
           {
             Iterable<TableHandler.GetObjectHandler> handlers = service.startGetObjectHandlers();
@@ -10875,15 +10997,27 @@ public abstract class AoservMaster {
             }
             TableHandler.initGetTableHandlers(handlers.iterator(), out, true);
           }
-        out.println(": Success");
-      } catch (Exception e) {
-        if (!started) {
+          out.println(": Success in " + serviceNanos / 1000000 + " ms");
+        } catch (InterruptedException e) {
           failedServices.add(serviceAndState);
+          out.println(": " + e.toString());
+          logger.log(Level.WARNING, null, e);
+          // Restore the interrupted status
+          Thread.currentThread().interrupt();
+        } catch (Exception e) {
+          if (!started) {
+            failedServices.add(serviceAndState);
+          }
+          out.println(": " + e.toString());
+          logger.log(Level.SEVERE, null, e);
         }
-        out.println(": " + e.toString());
-        logger.log(Level.SEVERE, null, e);
       }
     }
+    out.println(
+        (servicesToStart.size() - failedServices.size()) + " of " + servicesToStart.size()
+            + " " + (servicesToStart.size() == 1 ? "service" : "services")
+            + " started in " + (System.nanoTime() - startNanos) / 1000000 + " ms"
+    );
     if (!failedServices.isEmpty()) {
       if (isFirstStart) {
         out.println(failedServices.size() + " failed " + (failedServices.size() == 1 ? "service" : "services") + " will be retried");
@@ -10894,6 +11028,45 @@ public abstract class AoservMaster {
     return failedServices;
   }
 
+  /**
+   * Warms-up the given services concurrently, waiting for all to complete.
+   * Failures are logged and not retried.
+   */
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+  private static void warmUpServices(List<MasterService> services, PrintStream out) {
+    if (services.isEmpty()) {
+      return;
+    }
+    out.println("Warming-up " + services.size() + " " + (services.size() == 1 ? "service" : "services"));
+    long startNanos = System.nanoTime();
+    List<Future<?>> futures = new ArrayList<>(services.size());
+    for (MasterService service : services) {
+      futures.add(executorService.submit(() -> {
+        long serviceStartNanos = System.nanoTime();
+        try {
+          service.warmUp();
+          out.println("    " + service.getClass().getName() + ": Warmed-up in " + (System.nanoTime() - serviceStartNanos) / 1000000 + " ms");
+        } catch (Throwable t) {
+          out.println("    " + service.getClass().getName() + ": " + t.toString());
+          logger.log(Level.SEVERE, null, t);
+        }
+      }));
+    }
+    for (Future<?> future : futures) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        logger.log(Level.WARNING, null, e);
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        return;
+      } catch (ExecutionException e) {
+        logger.log(Level.SEVERE, null, e);
+      }
+    }
+    out.println("Warmed-up " + services.size() + " " + (services.size() == 1 ? "service" : "services") + " in " + (System.nanoTime() - startNanos) / 1000000 + " ms");
+  }
+
   private static void removeCacheListener(RequestSource source) {
     Identifier connectorId = source.getConnectorId();
     if (connectorId == null) {
@@ -11378,21 +11551,30 @@ public abstract class AoservMaster {
       try {
         final String fetchSql = "FETCH " + DatabaseConnection.FETCH_SIZE + " FROM fetch_objects";
 
-        // Make one pass counting the rows if providing progress information
+        // Count the rows if providing progress information
         if (provideProgress) {
-          progressCount = 0;
-          while (true) {
-            final int batchSize;
-            try (ResultSet results = stmt.executeQuery(currentSql = fetchSql)) {
-              if (results.last()) {
-                batchSize = results.getRow();
-              } else {
-                batchSize = 0;
+          // MOVE counts the rows on the server without sending them, which avoids
+          // transferring and decoding every row twice
+          int moved = stmt.executeUpdate(currentSql = "MOVE FORWARD ALL IN fetch_objects");
+          if (moved >= 0) {
+            progressCount = moved;
+          } else {
+            // Count not reported, make one pass counting the rows
+            stmt.executeQuery(currentSql = "FETCH ABSOLUTE 0 FROM fetch_objects");
+            progressCount = 0;
+            while (true) {
+              final int batchSize;
+              try (ResultSet results = stmt.executeQuery(currentSql = fetchSql)) {
+                if (results.last()) {
+                  batchSize = results.getRow();
+                } else {
+                  batchSize = 0;
+                }
+              }
+              progressCount += batchSize;
+              if (batchSize < DatabaseConnection.FETCH_SIZE) {
+                break;
               }
-            }
-            progressCount += batchSize;
-            if (batchSize < DatabaseConnection.FETCH_SIZE) {
-              break;
             }
           }
           out.writeByte(AoservProtocol.NEXT);
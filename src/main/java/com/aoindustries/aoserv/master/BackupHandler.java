@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2002-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2002-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -26,7 +26,6 @@ package com.aoindustries.aoserv.master;
 import com.aoapps.dbc.DatabaseConnection;
 import com.aoindustries.aoserv.client.linux.PosixPath;
 import com.aoindustries.aoserv.client.schema.Table;
-import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.logging.Level;
@@ -197,18 +196,11 @@ public final class BackupHandler {
   ) throws IOException, SQLException {
     int linuxServer = getLinuxServerForBackupPartition(conn, backupPartition);
     NetHostHandler.checkAccessHost(conn, source, "getBackupPartitionTotalSize", linuxServer);
-    if (DaemonHandler.isDaemonAvailable(linuxServer)) {
-      PosixPath path = getPathForBackupPartition(conn, backupPartition);
-      try {
-        AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-        conn.close(); // Don't hold database connection while connecting to the daemon
-        return daemonConnector.getDiskDeviceTotalSize(path);
-      } catch (IOException | SQLException err) {
-        DaemonHandler.flagDaemonAsDown(linuxServer);
-        logger.log(Level.SEVERE, "id=" + backupPartition + ", path=" + path + ", linuxServer=" + linuxServer, err);
-        return -1;
-      }
-    } else {
+    PosixPath path = getPathForBackupPartition(conn, backupPartition);
+    try {
+      return DaemonHandler.callDaemon(conn, linuxServer, -1L, daemonConnector -> daemonConnector.getDiskDeviceTotalSize(path));
+    } catch (IOException | SQLException err) {
+      logger.log(Level.SEVERE, "id=" + backupPartition + ", path=" + path + ", linuxServer=" + linuxServer, err);
       return -1;
     }
   }
@@ -220,18 +212,11 @@ public final class BackupHandler {
   ) throws IOException, SQLException {
     int linuxServer = getLinuxServerForBackupPartition(conn, backupPartition);
     NetHostHandler.checkAccessHost(conn, source, "getBackupPartitionUsedSize", linuxServer);
-    if (DaemonHandler.isDaemonAvailable(linuxServer)) {
-      PosixPath path = getPathForBackupPartition(conn, backupPartition);
-      try {
-        AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-        conn.close(); // Don't hold database connection while connecting to the daemon
-        return daemonConnector.getDiskDeviceUsedSize(path);
-      } catch (IOException | SQLException err) {
-        DaemonHandler.flagDaemonAsDown(linuxServer);
-        logger.log(Level.SEVERE, "id=" + backupPartition + ", path=" + path + ", linuxServer=" + linuxServer, err);
-        return -1;
-      }
-    } else {
+    PosixPath path = getPathForBackupPartition(conn, backupPartition);
+    try {
+      return DaemonHandler.callDaemon(conn, linuxServer, -1L, daemonConnector -> daemonConnector.getDiskDeviceUsedSize(path));
+    } catch (IOException | SQLException err) {
+      logger.log(Level.SEVERE, "id=" + backupPartition + ", path=" + path + ", linuxServer=" + linuxServer, err);
       return -1;
     }
   }
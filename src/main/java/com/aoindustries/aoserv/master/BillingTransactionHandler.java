@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -388,20 +388,12 @@ public final class BillingTransactionHandler {
             "SELECT\n"
                 + "  tr.*\n"
                 + "FROM\n"
-                + "  account.\"User\" un1,\n"
-                + "  billing.\"Package\" pk1,\n"
-                + TableHandler.BU1_PARENTS_JOIN
                 + "  billing.\"Transaction\" tr\n"
                 + "WHERE\n"
-                + "  un1.username=?\n"
-                + "  AND un1.package=pk1.name\n"
-                + "  AND (\n"
-                + TableHandler.PK1_BU1_PARENTS_WHERE
-                + "  )\n"
-                + "  AND bu1.accounting=tr.accounting\n"
+                + "  tr.accounting = ANY(?::text[])\n"
                 + "  AND tr.accounting=?\n"
                 + "  AND tr.\"rate.currency\"=?",
-            currentAdministrator,
+            AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source)),
             account,
             Currency.USD.getCurrencyCode()
         );
@@ -477,20 +469,12 @@ public final class BillingTransactionHandler {
             "SELECT\n"
                 + "  tr.*\n"
                 + "FROM\n"
-                + "  account.\"User\" un1,\n"
-                + "  billing.\"Package\" pk1,\n"
-                + TableHandler.BU1_PARENTS_JOIN
                 + "  billing.\"Transaction\" tr\n"
                 + "WHERE\n"
-                + "  un1.username=?\n"
-                + "  AND un1.package=pk1.name\n"
-                + "  AND (\n"
-                + TableHandler.PK1_BU1_PARENTS_WHERE
-                + "  )\n"
-                + "  AND bu1.accounting=tr.accounting\n"
+                + "  tr.accounting = ANY(?::text[])\n"
                 + "  AND tr.\"rate.currency\"=?"
         );
-        params.add(source.getCurrentAdministrator());
+        params.add(AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source)));
         params.add(Currency.USD.getCurrencyCode());
       }
 
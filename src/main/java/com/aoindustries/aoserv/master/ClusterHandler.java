@@ -37,7 +37,9 @@ import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
@@ -282,8 +284,162 @@ public final class ClusterHandler implements CronJob {
 
   private static final Object updateMappingsLock = new Object();
 
-  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch", "SleepWhileHoldingLock", "SleepWhileInLoop"})
+  /**
+   * The minimum time between refreshes of a physical server.
+   */
+  private static final long MIN_REFRESH_INTERVAL = 60L * 1000L;
+
+  /**
+   * The maximum time between refreshes of a physical server whose mappings have not changed.
+   * Changes made through the master are refreshed immediately by {@link #refreshVirtualServer(int)},
+   * so this only bounds how long a change made directly on the servers goes unnoticed.
+   */
+  private static final long MAX_REFRESH_INTERVAL = 4L * 60L * 1000L;
+
+  /**
+   * The most recent mappings of one physical server, along with when it is next refreshed.
+   * Each unchanged refresh doubles the interval, up to {@link #MAX_REFRESH_INTERVAL}.
+   */
+  private static final class HostMappings {
+
+    private final Tuple3<Set<Integer>, Set<Integer>, Set<Integer>> mappings;
+    private final long refreshInterval;
+    private final long nextRefresh;
+
+    private HostMappings(Tuple3<Set<Integer>, Set<Integer>, Set<Integer>> mappings, long refreshInterval, long refreshTime) {
+      this.mappings = mappings;
+      this.refreshInterval = refreshInterval;
+      this.nextRefresh = refreshTime + refreshInterval;
+    }
+  }
+
+  /**
+   * The mappings of each physical server, guarded by {@link #updateMappingsLock}.
+   */
+  private static final Map<Integer, HostMappings> hostMappings = new HashMap<>();
+
+  /**
+   * Refreshes the mappings of every physical server the virtual server is currently
+   * mapped to, both the primary and the secondary of its pair, as soon as possible,
+   * such as after a command that may have changed its DRBD roles.  The refreshed
+   * servers are then polled at the minimum interval again, in case of further changes.
+   */
+  public static void refreshVirtualServer(int virtualServer) {
+    Integer virtualServerInt = virtualServer;
+    Set<Integer> physicalServers = new HashSet<>();
+    synchronized (mappingsLock) {
+      for (Map<Integer, Set<Integer>> mappings : Arrays.asList(primaryMappings, secondaryMappings, autoMappings)) {
+        for (Map.Entry<Integer, Set<Integer>> entry : mappings.entrySet()) {
+          if (entry.getValue().contains(virtualServerInt)) {
+            physicalServers.add(entry.getKey());
+          }
+        }
+      }
+    }
+    if (!physicalServers.isEmpty()) {
+      AoservMaster.executorService.submit(() -> updateMappings(physicalServers));
+    }
+  }
+
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch", "SleepWhileInLoop"})
+  private static Tuple3<Set<Integer>, Set<Integer>, Set<Integer>> getHostMappings(MasterDatabase database, int xenPhysicalServer) throws Exception {
+    // Try up to ten times
+    final int attempts = 10;
+    for (int c = 0; c < attempts; c++) {
+      try {
+        final int rootPackagePkey = PackageHandler.getIdForPackage(database, AccountHandler.getRootAccount());
+        AoservDaemonConnector daemonConnnector = DaemonHandler.getDaemonConnector(database, xenPhysicalServer);
+        // Get the DRBD states
+        List<Server.DrbdReport> drbdReports = Server.parseDrbdReport(
+            DaemonHandler.callDaemon(daemonConnnector, xenPhysicalServer, AoservDaemonConnector::getDrbdReport)
+        );
+        Set<Integer> primaryMapping = AoCollections.newHashSet(drbdReports.size());
+        Set<Integer> secondaryMapping = AoCollections.newHashSet(drbdReports.size());
+        for (Server.DrbdReport drbdReport : drbdReports) {
+          // Look for primary mappings
+          if (
+              drbdReport.getLocalRole() == Server.DrbdReport.Role.Primary
+                  && (
+                  drbdReport.getRemoteRole() == Server.DrbdReport.Role.Unconfigured
+                      || drbdReport.getRemoteRole() == Server.DrbdReport.Role.Secondary
+                      || drbdReport.getRemoteRole() == Server.DrbdReport.Role.Unknown
+                )
+          ) {
+            primaryMapping.add(
+                NetHostHandler.getHostForPackageAndName(
+                    database,
+                    rootPackagePkey,
+                    drbdReport.getResourceHostname()
+                )
+            );
+          }
+          // Look for secondary mappings
+          if (
+              drbdReport.getLocalRole() == Server.DrbdReport.Role.Secondary
+                  && (
+                  drbdReport.getRemoteRole() == Server.DrbdReport.Role.Unconfigured
+                      || drbdReport.getRemoteRole() == Server.DrbdReport.Role.Primary
+                      || drbdReport.getRemoteRole() == Server.DrbdReport.Role.Unknown
+                )
+          ) {
+            secondaryMapping.add(
+                NetHostHandler.getHostForPackageAndName(
+                    database,
+                    rootPackagePkey,
+                    drbdReport.getResourceHostname()
+                )
+            );
+          }
+        }
+        // Get the auto-start list
+        Set<String> autoStartList = DaemonHandler.callDaemon(daemonConnnector, xenPhysicalServer, AoservDaemonConnector::getXenAutoStartLinks);
+        Set<Integer> autoMapping = AoCollections.newHashSet(autoStartList.size());
+        for (String serverName : autoStartList) {
+          autoMapping.add(
+              NetHostHandler.getHostForPackageAndName(
+                  database,
+                  rootPackagePkey,
+                  serverName
+              )
+          );
+        }
+        return new Tuple3<>(
+            primaryMapping,
+            secondaryMapping,
+            autoMapping
+        );
+      } catch (DaemonHandler.DaemonUnavailableException e) {
+        // Retrying is pointless while failing fast
+        throw e;
+      } catch (Throwable t) {
+        if (c == (attempts - 1) && Thread.currentThread().isInterrupted()) {
+          throw t;
+        }
+        logger.log(Level.SEVERE, null, t);
+        try {
+          Thread.sleep(2000);
+        } catch (InterruptedException err) {
+          logger.log(Level.WARNING, null, err);
+          // Restore the interrupted status
+          Thread.currentThread().interrupt();
+        }
+      }
+    }
+    throw new AssertionError("Exception should have been thrown when c == " + (attempts - 1) + " or thread interrupted");
+  }
+
   private static void updateMappings() {
+    updateMappings(null);
+  }
+
+  /**
+   * Updates the mappings of the physical servers that are due for refresh,
+   * rebuilding the shared mappings only when something changed.
+   *
+   * @param onlyPhysicalServers  when not {@code null}, refreshes only these physical servers, whether due or not
+   */
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch", "SleepWhileHoldingLock"})
+  private static void updateMappings(Set<Integer> onlyPhysicalServers) {
     synchronized (updateMappingsLock) {
       try {
         try (
@@ -299,118 +455,79 @@ public final class ClusterHandler implements CronJob {
             ) {
           AoservMaster.executorService.submit(timer);
 
-          // Query the servers in parallel
+          // Forget physical servers no longer enabled
           final MasterDatabase database = MasterDatabase.getDatabase();
           IntList xenPhysicalServers = NetHostHandler.getEnabledXenPhysicalServers(database);
+          boolean modified = hostMappings.keySet().retainAll(xenPhysicalServers);
+
+          // Query the servers that are due in parallel
+          long currentTime = System.currentTimeMillis();
           Map<Integer, Future<Tuple3<Set<Integer>, Set<Integer>, Set<Integer>>>> futures = AoCollections.newHashMap(xenPhysicalServers.size());
           for (final Integer xenPhysicalServer : xenPhysicalServers) {
-            futures.put(
-                xenPhysicalServer,
-                AoservMaster.executorService.submit(() -> {
-                  // Try up to ten times
-                  final int attempts = 10;
-                  for (int c = 0; c < attempts; c++) {
-                    try {
-                      final int rootPackagePkey = PackageHandler.getIdForPackage(database, AccountHandler.getRootAccount());
-                      AoservDaemonConnector daemonConnnector = DaemonHandler.getDaemonConnector(database, xenPhysicalServer);
-                      // Get the DRBD states
-                      List<Server.DrbdReport> drbdReports = Server.parseDrbdReport(daemonConnnector.getDrbdReport());
-                      Set<Integer> primaryMapping = AoCollections.newHashSet(drbdReports.size());
-                      Set<Integer> secondaryMapping = AoCollections.newHashSet(drbdReports.size());
-                      for (Server.DrbdReport drbdReport : drbdReports) {
-                        // Look for primary mappings
-                        if (
-                            drbdReport.getLocalRole() == Server.DrbdReport.Role.Primary
-                                && (
-                                drbdReport.getRemoteRole() == Server.DrbdReport.Role.Unconfigured
-                                    || drbdReport.getRemoteRole() == Server.DrbdReport.Role.Secondary
-                                    || drbdReport.getRemoteRole() == Server.DrbdReport.Role.Unknown
-                              )
-                        ) {
-                          primaryMapping.add(
-                              NetHostHandler.getHostForPackageAndName(
-                                  database,
-                                  rootPackagePkey,
-                                  drbdReport.getResourceHostname()
-                              )
-                          );
-                        }
-                        // Look for secondary mappings
-                        if (
-                            drbdReport.getLocalRole() == Server.DrbdReport.Role.Secondary
-                                && (
-                                drbdReport.getRemoteRole() == Server.DrbdReport.Role.Unconfigured
-                                    || drbdReport.getRemoteRole() == Server.DrbdReport.Role.Primary
-                                    || drbdReport.getRemoteRole() == Server.DrbdReport.Role.Unknown
-                              )
-                        ) {
-                          secondaryMapping.add(
-                              NetHostHandler.getHostForPackageAndName(
-                                  database,
-                                  rootPackagePkey,
-                                  drbdReport.getResourceHostname()
-                              )
-                          );
-                        }
-                      }
-                      // Get the auto-start list
-                      Set<String> autoStartList = daemonConnnector.getXenAutoStartLinks();
-                      Set<Integer> autoMapping = AoCollections.newHashSet(autoStartList.size());
-                      for (String serverName : autoStartList) {
-                        autoMapping.add(
-                            NetHostHandler.getHostForPackageAndName(
-                                database,
-                                rootPackagePkey,
-                                serverName
-                            )
-                        );
-                      }
-                      return new Tuple3<>(
-                          primaryMapping,
-                          secondaryMapping,
-                          autoMapping
-                      );
-                    } catch (Throwable t) {
-                      if (c == (attempts - 1) && Thread.currentThread().isInterrupted()) {
-                        throw t;
-                      }
-                      logger.log(Level.SEVERE, null, t);
-                      try {
-                        Thread.sleep(2000);
-                      } catch (InterruptedException err) {
-                        logger.log(Level.WARNING, null, err);
-                        // Restore the interrupted status
-                        Thread.currentThread().interrupt();
-                      }
-                    }
-                  }
-                  throw new AssertionError("Exception should have been thrown when c == " + (attempts - 1) + " or thread interrupted");
-                })
-            );
+            boolean due;
+            if (onlyPhysicalServers != null) {
+              due = onlyPhysicalServers.contains(xenPhysicalServer);
+            } else {
+              HostMappings previous = hostMappings.get(xenPhysicalServer);
+              due = previous == null || currentTime >= previous.nextRefresh || currentTime < (previous.nextRefresh - previous.refreshInterval);
+            }
+            if (due) {
+              futures.put(
+                  xenPhysicalServer,
+                  AoservMaster.executorService.submit(() -> getHostMappings(database, xenPhysicalServer))
+              );
+            }
           }
-          Map<Integer, Set<Integer>> newPrimaryMappings = AoCollections.newHashMap(futures.size());
-          Map<Integer, Set<Integer>> newSecondaryMappings = AoCollections.newHashMap(futures.size());
-          Map<Integer, Set<Integer>> newAutoMappings = AoCollections.newHashMap(futures.size());
           for (Map.Entry<Integer, Future<Tuple3<Set<Integer>, Set<Integer>, Set<Integer>>>> future : futures.entrySet()) {
             Integer xenPhysicalServer = future.getKey();
+            HostMappings previous = hostMappings.get(xenPhysicalServer);
             try {
               Tuple3<Set<Integer>, Set<Integer>, Set<Integer>> retVal = future.getValue().get(30, TimeUnit.SECONDS);
-              newPrimaryMappings.put(xenPhysicalServer, retVal.getElement1());
-              newSecondaryMappings.put(xenPhysicalServer, retVal.getElement2());
-              newAutoMappings.put(xenPhysicalServer, retVal.getElement3());
+              boolean changed = previous == null
+                  || !previous.mappings.getElement1().equals(retVal.getElement1())
+                  || !previous.mappings.getElement2().equals(retVal.getElement2())
+                  || !previous.mappings.getElement3().equals(retVal.getElement3());
+              long refreshInterval;
+              if (changed) {
+                refreshInterval = MIN_REFRESH_INTERVAL;
+                modified = true;
+              } else if (onlyPhysicalServers != null) {
+                // Changes may follow shortly after a requested refresh
+                refreshInterval = MIN_REFRESH_INTERVAL;
+              } else {
+                // Unchanged, back off
+                refreshInterval = Math.min(previous.refreshInterval * 2, MAX_REFRESH_INTERVAL);
+              }
+              hostMappings.put(xenPhysicalServer, new HostMappings(retVal, refreshInterval, currentTime));
             } catch (InterruptedException e) {
               logger.log(Level.SEVERE, "xenPhysicalServer=" + xenPhysicalServer, e);
               // Restore the interrupted status
               Thread.currentThread().interrupt();
             } catch (Throwable t) {
               logger.log(Level.SEVERE, "xenPhysicalServer=" + xenPhysicalServer, t);
+              // Mapping is unknown, retry on the next pass
+              if (hostMappings.remove(xenPhysicalServer) != null) {
+                modified = true;
+              }
             }
           }
-          setMappings(
-              newPrimaryMappings,
-              newSecondaryMappings,
-              newAutoMappings
-          );
+          if (modified) {
+            Map<Integer, Set<Integer>> newPrimaryMappings = AoCollections.newHashMap(hostMappings.size());
+            Map<Integer, Set<Integer>> newSecondaryMappings = AoCollections.newHashMap(hostMappings.size());
+            Map<Integer, Set<Integer>> newAutoMappings = AoCollections.newHashMap(hostMappings.size());
+            for (Map.Entry<Integer, HostMappings> entry : hostMappings.entrySet()) {
+              Integer xenPhysicalServer = entry.getKey();
+              Tuple3<Set<Integer>, Set<Integer>, Set<Integer>> mappings = entry.getValue().mappings;
+              newPrimaryMappings.put(xenPhysicalServer, mappings.getElement1());
+              newSecondaryMappings.put(xenPhysicalServer, mappings.getElement2());
+              newAutoMappings.put(xenPhysicalServer, mappings.getElement3());
+            }
+            setMappings(
+                newPrimaryMappings,
+                newSecondaryMappings,
+                newAutoMappings
+            );
+          }
         }
       } catch (Throwable t) {
         logger.log(Level.SEVERE, null, t);
@@ -0,0 +1,381 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import com.aoapps.hodgepodge.io.stream.StreamableOutput;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, in-memory cache of files relayed from the daemons.  The exact bytes
+ * written by the daemon are read into memory, then written to each client until
+ * the entry expires.
+ *
+ * <p>Concurrent requests for the same key share a single in-flight fetch.  The
+ * fetch completes before any client is written to, so no request waits on
+ * another's client, and only failures from the daemon side are shared.  When
+ * the daemon fails, every request sharing the fetch fails with it, instead of
+ * all retrying against the same daemon at once.  A file too large to cache is
+ * relayed directly to the client of the request that fetched it, while the
+ * other requests fetch it independently.  Files with identical content, such
+ * as the icons shared by every site, are stored only once, identified by their
+ * SHA-256 hash.</p>
+ *
+ * <p>The daemon protocol does not provide modification times, so entries are
+ * validated by age only.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class DaemonFileCache<K> {
+
+  /**
+   * Fetches a file from the daemon, writing it to the given output.
+   */
+  @FunctionalInterface
+  public interface Fetcher {
+    void fetch(StreamableOutput out) throws IOException, SQLException;
+  }
+
+  private static final class Content {
+
+    private final ByteBuffer hash;
+    private final byte[] data;
+    private int references;
+
+    private Content(ByteBuffer hash, byte[] data) {
+      this.hash = hash;
+      this.data = data;
+    }
+  }
+
+  private static final class Entry {
+
+    private final Content content;
+    private final long fetchedNanos;
+
+    private Entry(Content content, long fetchedNanos) {
+      this.content = content;
+      this.fetchedNanos = fetchedNanos;
+    }
+  }
+
+  /**
+   * Buffers all bytes up to a maximum number of bytes.  When the maximum is
+   * exceeded, the overflow action is called, then the buffered and all later
+   * bytes are relayed to the client.
+   */
+  private static final class BufferOutputStream extends OutputStream {
+
+    private final OutputStream out;
+    private final int maxBytes;
+    private final Runnable overflow;
+    private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+    private BufferOutputStream(OutputStream out, int maxBytes, Runnable overflow) {
+      this.out = out;
+      this.maxBytes = maxBytes;
+      this.overflow = overflow;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (buffer != null) {
+        if (buffer.size() + len <= maxBytes) {
+          buffer.write(b, off, len);
+          return;
+        }
+        overflow.run();
+        byte[] buffered = buffer.toByteArray();
+        buffer = null;
+        out.write(buffered);
+      }
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (buffer == null) {
+        out.flush();
+      }
+    }
+
+    /**
+     * Does not close the client output.
+     */
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+
+    /**
+     * Gets the buffered bytes or {@code null} when the maximum was exceeded.
+     */
+    private byte[] toByteArray() {
+      return buffer == null ? null : buffer.toByteArray();
+    }
+  }
+
+  private final int maxEntryBytes;
+  private final long maxBytes;
+  private final long ttlNanos;
+
+  /**
+   * The cached entries in access order, least recently used first.
+   */
+  private final LinkedHashMap<K, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<ByteBuffer, Content> contents = new HashMap<>();
+  private final Map<K, CompletableFuture<Content>> inFlight = new HashMap<>();
+
+  /**
+   * The total size of all distinct content.
+   */
+  private long bytes;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder shared = new LongAdder();
+  private final LongAdder bytesSaved = new LongAdder();
+
+  /**
+   * @param maxEntryBytes  files larger than this are relayed without being cached
+   * @param maxBytes       the maximum total size of cached content
+   * @param ttl            the number of milliseconds an entry remains valid
+   */
+  public DaemonFileCache(int maxEntryBytes, long maxBytes, long ttl) {
+    this.maxEntryBytes = maxEntryBytes;
+    this.maxBytes = maxBytes;
+    this.ttlNanos = ttl * 1000000L;
+  }
+
+  /**
+   * Writes the file for the given key, either from the cache or by calling the fetcher.
+   * Access checks must be performed by the caller before each call.
+   */
+  public void get(K key, Fetcher fetcher, StreamableOutput out) throws IOException, SQLException {
+    Content content = null;
+    CompletableFuture<Content> future;
+    boolean leader;
+    synchronized (this) {
+      Entry entry = entries.get(key);
+      if (entry != null) {
+        if ((System.nanoTime() - entry.fetchedNanos) < ttlNanos) {
+          content = entry.content;
+        } else {
+          entries.remove(key);
+          release(entry.content);
+        }
+      }
+      if (content == null) {
+        future = inFlight.get(key);
+        leader = future == null;
+        if (leader) {
+          future = new CompletableFuture<>();
+          inFlight.put(key, future);
+        }
+      } else {
+        future = null;
+        leader = false;
+      }
+    }
+    if (content != null) {
+      hits.increment();
+      bytesSaved.add(content.data.length);
+      out.write(content.data);
+      return;
+    }
+    if (!leader) {
+      try {
+        content = future.get();
+      } catch (InterruptedException err) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        InterruptedIOException ioErr = new InterruptedIOException();
+        ioErr.initCause(err);
+        throw ioErr;
+      } catch (ExecutionException err) {
+        // The shared fetch failed: fail the same way
+        Throwable cause = err.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        if (cause instanceof SQLException) {
+          throw new SQLException(cause.getMessage(), cause);
+        }
+        throw new IOException(cause == null ? null : cause.getMessage(), cause);
+      }
+      if (content != null) {
+        shared.increment();
+        bytesSaved.add(content.data.length);
+        out.write(content.data);
+        return;
+      }
+      // The shared fetch was too large to cache, fetch independently
+      misses.increment();
+      fetcher.fetch(new StreamableOutput(DaemonHandler.getClientOutput(out)));
+      return;
+    }
+    misses.increment();
+    CompletableFuture<Content> fetch = future;
+    // Too large to cache: the other requests fetch independently
+    BufferOutputStream buffer = new BufferOutputStream(DaemonHandler.getClientOutput(out), maxEntryBytes, () -> complete(key, fetch, null, null));
+    byte[] data;
+    try {
+      StreamableOutput bufferOut = new StreamableOutput(buffer);
+      fetcher.fetch(bufferOut);
+      bufferOut.flush();
+      data = buffer.toByteArray();
+    } catch (Throwable t) {
+      // Shared only when nothing has been relayed to the client, so the failure is from the daemon side
+      complete(key, fetch, null, t);
+      throw t;
+    }
+    if (data != null) {
+      content = put(key, data);
+      complete(key, fetch, content, null);
+      out.write(data);
+    }
+  }
+
+  /**
+   * Completes an in-flight fetch, unless already completed.
+   */
+  private void complete(K key, CompletableFuture<Content> fetch, Content content, Throwable failure) {
+    synchronized (this) {
+      inFlight.remove(key, fetch);
+    }
+    if (failure != null) {
+      fetch.completeExceptionally(failure);
+    } else {
+      fetch.complete(content);
+    }
+  }
+
+  private static ByteBuffer hash(byte[] data) {
+    try {
+      return ByteBuffer.wrap(MessageDigest.getInstance("SHA-256").digest(data));
+    } catch (NoSuchAlgorithmException e) {
+      throw new AssertionError("SHA-256 is required by the Java specification", e);
+    }
+  }
+
+  private Content put(K key, byte[] data) {
+    ByteBuffer hash = hash(data);
+    synchronized (this) {
+      Content content = contents.get(hash);
+      if (content == null || !Arrays.equals(content.data, data)) {
+        content = new Content(hash, data);
+        if (contents.putIfAbsent(hash, content) == null) {
+          bytes += data.length;
+        }
+      }
+      content.references++;
+      Entry old = entries.put(key, new Entry(content, System.nanoTime()));
+      if (old != null) {
+        release(old.content);
+      }
+      Iterator<Entry> iter = entries.values().iterator();
+      while (bytes > maxBytes && iter.hasNext()) {
+        Entry eldest = iter.next();
+        iter.remove();
+        release(eldest.content);
+      }
+      return content;
+    }
+  }
+
+  /**
+   * Releases a reference to content, removing it when no longer used.
+   */
+  private void release(Content content) {
+    assert Thread.holdsLock(this);
+    if (--content.references == 0 && contents.get(content.hash) == content) {
+      contents.remove(content.hash);
+      bytes -= content.data.length;
+    }
+  }
+
+  /**
+   * Gets the number of requests served from the cache.
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of requests fetched from a daemon.
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the number of requests that waited on another request's fetch.
+   */
+  public long getShared() {
+    return shared.sum();
+  }
+
+  /**
+   * Gets the number of bytes served without a daemon round trip.
+   */
+  public long getBytesSaved() {
+    return bytesSaved.sum();
+  }
+
+  /**
+   * Gets the total size of the cached content.
+   */
+  public synchronized long getBytes() {
+    return bytes;
+  }
+
+  /**
+   * Gets the number of cached entries.
+   */
+  public synchronized int getSize() {
+    return entries.size();
+  }
+}
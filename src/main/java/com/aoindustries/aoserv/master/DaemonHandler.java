@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2023  AO Industries, Inc.
+ * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2023, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -32,12 +32,19 @@ import com.aoapps.net.Port;
 import com.aoindustries.aoserv.client.linux.Server;
 import com.aoindustries.aoserv.client.schema.Table;
 import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
 import java.security.SecureRandom;
 import java.sql.SQLException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
+import javax.net.ssl.SSLException;
 
 /**
  * The <code>AOServDaemonHandler</code> handles all the accesses to the daemons.
@@ -52,8 +59,8 @@ public final class DaemonHandler {
   }
 
   /**
-   * The amount of time before a daemon will be accessed again once
-   * flagged as unavailable.
+   * The initial amount of time before a daemon will be accessed again once
+   * flagged as unavailable.  See {@link DaemonHealth} for the backoff.
    */
   public static final int DAEMON_RETRY_DELAY = 5 * 1000; // Used to be 60 * 1000
 
@@ -247,8 +254,6 @@ public final class DaemonHandler {
     return total;
   }
 
-  private static final Map<Integer, Long> downDaemons = new HashMap<>();
-
   public static void invalidateTable(Table.TableId tableId) {
     if (
         tableId == Table.TableId.AO_SERVERS
@@ -262,39 +267,240 @@ public final class DaemonHandler {
   }
 
   /**
-   * The availability of daemons is maintained to avoid repeatedly trying to access
-   * a daemon that is not responding while other daemons could be used.
+   * Thrown instead of calling a daemon while its {@link DaemonHealth} is failing fast.
    */
-  public static boolean isDaemonAvailable(int linuxServer) {
-    Integer i = linuxServer;
-    synchronized (downDaemons) {
-      Long o = downDaemons.get(i);
-      if (o != null) {
-        long downTime = System.currentTimeMillis() - o;
-        if (downTime < 0) {
-          downDaemons.remove(i);
-          return true;
-        }
-        if (downTime < DAEMON_RETRY_DELAY) {
-          return false;
-        }
-        downDaemons.remove(i);
+  public static final class DaemonUnavailableException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int linuxServer;
+
+    DaemonUnavailableException(int linuxServer) {
+      super("Host Unavailable: daemon on server #" + linuxServer + " is failing fast after repeated connection failures");
+      this.linuxServer = linuxServer;
+    }
+
+    public int getLinuxServer() {
+      return linuxServer;
+    }
+  }
+
+  /**
+   * Thrown when writing to the client fails while relaying a daemon response,
+   * so the failure is not mistaken for a daemon failure.
+   */
+  static final class ClientOutputException extends IOException {
+
+    private static final long serialVersionUID = 1L;
+
+    private ClientOutputException(IOException cause) {
+      super("Unable to write to client", cause);
+    }
+  }
+
+  /**
+   * See {@link #getClientOutput(java.io.OutputStream)}.
+   */
+  private static final class ClientOutputStream extends FilterOutputStream {
+
+    private ClientOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      try {
+        out.write(b);
+      } catch (IOException e) {
+        throw new ClientOutputException(e);
+      }
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      try {
+        out.write(b, off, len);
+      } catch (IOException e) {
+        throw new ClientOutputException(e);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      try {
+        out.flush();
+      } catch (IOException e) {
+        throw new ClientOutputException(e);
       }
     }
-    return true;
   }
 
-  public static void flagDaemonAsDown(int linuxServer) throws IOException {
-    Integer i = linuxServer;
-    synchronized (downDaemons) {
-      downDaemons.put(i, System.currentTimeMillis());
+  /**
+   * Wraps the output to the client that a daemon response is relayed to from
+   * within a daemon call, so failures writing to the client are not recorded as
+   * failures of the daemon.
+   */
+  public static OutputStream getClientOutput(OutputStream out) {
+    return new ClientOutputStream(out);
+  }
+
+  /**
+   * A call to a daemon made through {@link #callDaemon(com.aoapps.dbc.DatabaseConnection, int, com.aoindustries.aoserv.master.DaemonHandler.DaemonCall)}.
+   */
+  @FunctionalInterface
+  public static interface DaemonCall<V> {
+
+    V call(AoservDaemonConnector daemonConnector) throws IOException, SQLException;
+  }
+
+  /**
+   * A call to a daemon, without a result, made through {@link #runDaemon(com.aoapps.dbc.DatabaseConnection, int, com.aoindustries.aoserv.master.DaemonHandler.DaemonRun)}.
+   */
+  @FunctionalInterface
+  public static interface DaemonRun {
+
+    void run(AoservDaemonConnector daemonConnector) throws IOException, SQLException;
+  }
+
+  /**
+   * Checks if a failed daemon call indicates the daemon could not be reached or
+   * stopped responding, as opposed to an error the daemon itself reported back,
+   * such as a missing file, which the daemon client throws as a plain
+   * {@link IOException} or {@link SQLException} carrying the daemon's message.
+   * The exception and all its causes are checked, since the connection pool may
+   * wrap the underlying failure.  Failures writing to the client, wrapped by
+   * {@link #getClientOutput(java.io.OutputStream)}, are not transport failures.
+   */
+  static boolean isTransportFailure(Throwable t) {
+    while (t != null) {
+      if (t instanceof ClientOutputException) {
+        return false;
+      }
+      if (
+          t instanceof SocketException // Includes ConnectException and NoRouteToHostException
+              || t instanceof SocketTimeoutException
+              || t instanceof EOFException
+              || t instanceof UnknownHostException
+              || t instanceof SSLException
+      ) {
+        return true;
+      }
+      t = t.getCause();
+    }
+    return false;
+  }
+
+  /**
+   * Calls a daemon, subject to its {@link DaemonHealth}.  Only transport failures,
+   * as determined by {@link #isTransportFailure(java.lang.Throwable)}, are
+   * recorded as failures.  Any other outcome means the daemon responded and is
+   * recorded as a success, so a half-open probe is always resolved.
+   *
+   * @throws DaemonUnavailableException when the daemon is failing fast
+   */
+  static <V> V callDaemon(DaemonHealth health, AoservDaemonConnector daemonConnector, DaemonCall<V> call) throws IOException, SQLException {
+    if (!health.allowRequest()) {
+      throw new DaemonUnavailableException(health.getLinuxServer());
+    }
+    long startNanos = System.nanoTime();
+    V result;
+    try {
+      result = call.call(daemonConnector);
+    } catch (Throwable t) {
+      if (isTransportFailure(t)) {
+        health.recordFailure();
+      } else {
+        health.recordSuccess(System.nanoTime() - startNanos);
+      }
+      throw t;
+    }
+    health.recordSuccess(System.nanoTime() - startNanos);
+    return result;
+  }
+
+  /**
+   * Calls a daemon through an already obtained connector, subject to its
+   * {@link DaemonHealth}.  Used where the database connection must remain open,
+   * such as within a transaction.
+   *
+   * @throws DaemonUnavailableException when the daemon is failing fast
+   */
+  public static <V> V callDaemon(AoservDaemonConnector daemonConnector, int linuxServer, DaemonCall<V> call) throws IOException, SQLException {
+    return callDaemon(DaemonHealth.getDaemonHealth(linuxServer), daemonConnector, call);
+  }
+
+  /**
+   * Calls a daemon, subject to its {@link DaemonHealth}.  The database connection
+   * is closed before the daemon is called.
+   *
+   * @throws DaemonUnavailableException when the daemon is failing fast
+   */
+  public static <V> V callDaemon(DatabaseConnection conn, int linuxServer, DaemonCall<V> call) throws IOException, SQLException {
+    AoservDaemonConnector daemonConnector = getDaemonConnector(conn, linuxServer);
+    conn.close(); // Don't hold database connection while connecting to the daemon
+    return callDaemon(daemonConnector, linuxServer, call);
+  }
+
+  /**
+   * Calls a daemon through an already obtained connector, subject to its
+   * {@link DaemonHealth}.
+   *
+   * @return  the result of the call, or {@code unavailable} when the daemon is failing fast
+   */
+  public static <V> V callDaemon(AoservDaemonConnector daemonConnector, int linuxServer, V unavailable, DaemonCall<V> call) throws IOException, SQLException {
+    try {
+      return callDaemon(daemonConnector, linuxServer, call);
+    } catch (DaemonUnavailableException e) {
+      return unavailable;
     }
   }
 
+  /**
+   * Calls a daemon, subject to its {@link DaemonHealth}.  The database connection
+   * is closed before the daemon is called.
+   *
+   * @return  the result of the call, or {@code unavailable} when the daemon is failing fast
+   */
+  public static <V> V callDaemon(DatabaseConnection conn, int linuxServer, V unavailable, DaemonCall<V> call) throws IOException, SQLException {
+    AoservDaemonConnector daemonConnector = getDaemonConnector(conn, linuxServer);
+    conn.close(); // Don't hold database connection while connecting to the daemon
+    return callDaemon(daemonConnector, linuxServer, unavailable, call);
+  }
+
+  /**
+   * Calls a daemon through an already obtained connector, subject to its
+   * {@link DaemonHealth}.  Used where the database connection must remain open,
+   * such as within a transaction.
+   *
+   * @throws DaemonUnavailableException when the daemon is failing fast
+   */
+  public static void runDaemon(AoservDaemonConnector daemonConnector, int linuxServer, DaemonRun run) throws IOException, SQLException {
+    callDaemon(daemonConnector, linuxServer, connector -> {
+      run.run(connector);
+      return null;
+    });
+  }
+
+  /**
+   * Calls a daemon, subject to its {@link DaemonHealth}.  The database connection
+   * is closed before the daemon is called.
+   *
+   * @throws DaemonUnavailableException when the daemon is failing fast
+   */
+  public static void runDaemon(DatabaseConnection conn, int linuxServer, DaemonRun run) throws IOException, SQLException {
+    AoservDaemonConnector daemonConnector = getDaemonConnector(conn, linuxServer);
+    conn.close(); // Don't hold database connection while connecting to the daemon
+    runDaemon(daemonConnector, linuxServer, run);
+  }
+
   public static int getDownDaemonCount() {
-    synchronized (downDaemons) {
-      return downDaemons.size();
+    int count = 0;
+    for (DaemonHealth health : DaemonHealth.getDaemonHealths()) {
+      if (health.isFailingFast()) {
+        count++;
+      }
     }
+    return count;
   }
 
   private static final Map<Long, Long> recentKeys = new HashMap<>();
@@ -348,9 +554,8 @@ public final class DaemonHandler {
     }
 
     // Send the key to the daemon
-    AoservDaemonConnector daemonConnector = getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.grantDaemonAccess(key, daemonCommandCode, param1, param2, param3, param4);
+    long daemonKey = key;
+    runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.grantDaemonAccess(daemonKey, daemonCommandCode, param1, param2, param3, param4));
 
     return new Server.DaemonAccess(
         getDaemonConnectorProtocol(conn, linuxServer),
@@ -0,0 +1,235 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Tracks the health of each daemon as a circuit breaker.  After
+ * {@link #FAILURE_THRESHOLD} consecutive failures, requests to the daemon fail
+ * fast for a backoff period.  Once the backoff expires, a single probe request is
+ * allowed through; its success closes the circuit and its failure reopens it
+ * with the backoff doubled, up to {@link #MAX_BACKOFF}.
+ *
+ * <p>Requests are made through {@link DaemonHandler#callDaemon(com.aoapps.dbc.DatabaseConnection, int, DaemonHandler.DaemonCall)}
+ * and its variants, which report the outcome of every allowed request.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class DaemonHealth {
+
+  /**
+   * The number of consecutive failures before requests fail fast.
+   */
+  static final int FAILURE_THRESHOLD = 3;
+
+  /**
+   * The initial time, in milliseconds, requests fail fast.
+   */
+  static final long MIN_BACKOFF = DaemonHandler.DAEMON_RETRY_DELAY;
+
+  /**
+   * The maximum time, in milliseconds, requests fail fast.
+   */
+  static final long MAX_BACKOFF = 5L * 60 * 1000;
+
+  /**
+   * The state of the circuit.
+   */
+  public enum State {
+    /**
+     * Requests are allowed.
+     */
+    CLOSED,
+    /**
+     * Requests fail fast.
+     */
+    OPEN,
+    /**
+     * The backoff has expired and a single probe request is allowed.
+     */
+    HALF_OPEN
+  }
+
+  private static final Map<Integer, DaemonHealth> healths = new ConcurrentHashMap<>();
+
+  /**
+   * Gets the health of the given daemon, creating it when first used.
+   */
+  public static DaemonHealth getDaemonHealth(int linuxServer) {
+    return healths.computeIfAbsent(linuxServer, DaemonHealth::new);
+  }
+
+  /**
+   * Gets a snapshot of the health of all daemons used since startup.
+   */
+  public static List<DaemonHealth> getDaemonHealths() {
+    return new ArrayList<>(healths.values());
+  }
+
+  private final int linuxServer;
+  private final RequestStatistics.Histogram latency = new RequestStatistics.Histogram();
+
+  private int consecutiveFailures;
+  private long openedTime;
+  private long backoff;
+  private boolean probing;
+  private long totalFailures;
+  private long rejected;
+
+  DaemonHealth(int linuxServer) {
+    this.linuxServer = linuxServer;
+  }
+
+  public int getLinuxServer() {
+    return linuxServer;
+  }
+
+  private State getState(long currentTime) {
+    assert Thread.holdsLock(this);
+    if (consecutiveFailures < FAILURE_THRESHOLD) {
+      return State.CLOSED;
+    }
+    long openTime = currentTime - openedTime;
+    if (openTime >= 0 && openTime < backoff) {
+      return State.OPEN;
+    }
+    return State.HALF_OPEN;
+  }
+
+  public synchronized State getState() {
+    return getState(System.currentTimeMillis());
+  }
+
+  /**
+   * Checks if a request may be sent to the daemon.  When half-open, only one
+   * probe request is allowed until its outcome is reported.  The caller must
+   * report the outcome of every allowed request with {@link #recordSuccess(long)}
+   * or {@link #recordFailure()}.
+   */
+  public boolean allowRequest() {
+    return allowRequest(System.currentTimeMillis());
+  }
+
+  synchronized boolean allowRequest(long currentTime) {
+    switch (getState(currentTime)) {
+      case CLOSED:
+        return true;
+      case HALF_OPEN:
+        if (!probing) {
+          probing = true;
+          return true;
+        }
+        rejected++;
+        return false;
+      case OPEN:
+        rejected++;
+        return false;
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  /**
+   * Checks if requests are currently failing fast: the circuit is open, or
+   * half-open with its probe still running.  A half-open circuit not yet probed
+   * is not counted, since the next request will be allowed.
+   */
+  public boolean isFailingFast() {
+    return isFailingFast(System.currentTimeMillis());
+  }
+
+  synchronized boolean isFailingFast(long currentTime) {
+    switch (getState(currentTime)) {
+      case CLOSED:
+        return false;
+      case HALF_OPEN:
+        return probing;
+      case OPEN:
+        return true;
+      default:
+        throw new AssertionError();
+    }
+  }
+
+  /**
+   * Records a successful request, closing the circuit.
+   *
+   * @param nanos  the time taken by the request
+   */
+  public void recordSuccess(long nanos) {
+    latency.record(nanos / 1000);
+    synchronized (this) {
+      consecutiveFailures = 0;
+      backoff = 0;
+      probing = false;
+    }
+  }
+
+  /**
+   * Records a failed request.  The backoff is only changed when the circuit
+   * opens: set to {@link #MIN_BACKOFF} when the threshold is reached, or doubled
+   * when the half-open probe fails.  Failures of requests allowed before the
+   * circuit opened leave an open circuit unchanged.
+   */
+  public void recordFailure() {
+    recordFailure(System.currentTimeMillis());
+  }
+
+  synchronized void recordFailure(long currentTime) {
+    State state = getState(currentTime);
+    totalFailures++;
+    consecutiveFailures++;
+    probing = false;
+    if (state == State.CLOSED) {
+      if (consecutiveFailures >= FAILURE_THRESHOLD) {
+        openedTime = currentTime;
+        backoff = MIN_BACKOFF;
+      }
+    } else if (state == State.HALF_OPEN) {
+      openedTime = currentTime;
+      backoff = Math.min(backoff * 2, MAX_BACKOFF);
+    }
+  }
+
+  @Override
+  public synchronized String toString() {
+    long currentTime = System.currentTimeMillis();
+    State state = getState(currentTime);
+    StringBuilder sb = new StringBuilder();
+    sb.append(state);
+    if (state == State.OPEN) {
+      sb.append(" for ").append(openedTime + backoff - currentTime).append(" ms");
+    }
+    sb
+        .append(", consecutiveFailures=").append(consecutiveFailures)
+        .append(", totalFailures=").append(totalFailures)
+        .append(", rejected=").append(rejected)
+        .append(", latency: ").append(latency);
+    return sb.toString();
+  }
+}
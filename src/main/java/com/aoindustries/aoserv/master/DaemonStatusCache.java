@@ -0,0 +1,198 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A short-lived cache of status values polled from the daemons.  Concurrent
+ * requests for the same key share a single daemon call, and the result is reused
+ * until it is older than the time-to-live.  Failures are shared with the
+ * requests already waiting, but are not cached.
+ *
+ * <p>Access checks must be performed by the caller before each call.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class DaemonStatusCache<K, V> {
+
+  /**
+   * The default number of milliseconds a status is reused.
+   */
+  static final long DEFAULT_TTL = 2000;
+
+  private static final Logger logger = Logger.getLogger(DaemonStatusCache.class.getName());
+
+  private static final long configuredTtl;
+
+  static {
+    long ttl;
+    try {
+      ttl = MasterConfiguration.getDaemonStatusCacheTtl();
+    } catch (IOException | NumberFormatException e) {
+      logger.log(Level.WARNING, "Using default daemon status cache time-to-live", e);
+      ttl = DEFAULT_TTL;
+    }
+    configuredTtl = ttl;
+  }
+
+  /**
+   * Loads a status value from the daemon.
+   */
+  @FunctionalInterface
+  public interface Loader<V> {
+    V load() throws IOException, SQLException;
+  }
+
+  private static final class Entry<V> {
+
+    private final CompletableFuture<V> future = new CompletableFuture<>();
+    private volatile long loadedNanos;
+  }
+
+  private final long ttlNanos;
+  private final Map<K, Entry<V>> entries = new HashMap<>();
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder coalesced = new LongAdder();
+  private final LongAdder loads = new LongAdder();
+
+  /**
+   * Creates a cache using the time-to-live from {@link MasterConfiguration#getDaemonStatusCacheTtl()}.
+   */
+  public DaemonStatusCache() {
+    this(configuredTtl);
+  }
+
+  /**
+   * @param ttl  the number of milliseconds a status is reused
+   */
+  public DaemonStatusCache(long ttl) {
+    this.ttlNanos = ttl * 1000000L;
+  }
+
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+  public V get(K key, Loader<V> loader) throws IOException, SQLException {
+    Entry<V> entry;
+    boolean leader = false;
+    synchronized (this) {
+      entry = entries.get(key);
+      if (
+          entry != null
+              && entry.future.isDone()
+              && (
+                entry.future.isCompletedExceptionally()
+                    || (System.nanoTime() - entry.loadedNanos) >= ttlNanos
+              )
+      ) {
+        entries.remove(key);
+        entry = null;
+      }
+      if (entry == null) {
+        entry = new Entry<>();
+        entries.put(key, entry);
+        leader = true;
+      }
+    }
+    if (leader) {
+      loads.increment();
+      try {
+        V value = loader.load();
+        entry.loadedNanos = System.nanoTime();
+        entry.future.complete(value);
+        return value;
+      } catch (Throwable t) {
+        synchronized (this) {
+          entries.remove(key, entry);
+        }
+        entry.future.completeExceptionally(t);
+        throw t;
+      }
+    }
+    if (entry.future.isDone()) {
+      hits.increment();
+    } else {
+      coalesced.increment();
+    }
+    try {
+      return entry.future.get();
+    } catch (InterruptedException err) {
+      // Restore the interrupted status
+      Thread.currentThread().interrupt();
+      InterruptedIOException ioErr = new InterruptedIOException();
+      ioErr.initCause(err);
+      throw ioErr;
+    } catch (ExecutionException err) {
+      Throwable cause = err.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      if (cause instanceof SQLException) {
+        throw new SQLException(cause.getMessage(), cause);
+      }
+      throw new IOException(cause == null ? null : cause.getMessage(), cause);
+    }
+  }
+
+  /**
+   * Discards the value for the given key, such as after a command that changes
+   * it.  A call already in progress is not shared with later requests.
+   */
+  public synchronized void remove(K key) {
+    entries.remove(key);
+  }
+
+  /**
+   * Gets the number of requests answered from a previous daemon call.
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of requests that waited on another request's daemon call.
+   */
+  public long getCoalesced() {
+    return coalesced.sum();
+  }
+
+  /**
+   * Gets the number of daemon calls made.
+   */
+  public long getLoads() {
+    return loads.sum();
+  }
+}
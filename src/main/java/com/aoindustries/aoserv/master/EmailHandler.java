@@ -357,7 +357,7 @@ public final class EmailHandler {
     final AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, userServer_linuxServer);
     conn.commit();
     conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.setEmailListFile(path, "", uid, gid, mode);
+    DaemonHandler.runDaemon(daemonConnector, userServer_linuxServer, connector -> connector.setEmailListFile(path, "", uid, gid, mode));
 
     // Notify all clients of the update
     invalidateList.addTable(conn,
@@ -765,8 +765,10 @@ public final class EmailHandler {
     AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
     conn.commit();
     conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.setEmailListFile(infoPath, file, uid, gid, 0664);
-    daemonConnector.setEmailListFile(introPath, introFile, uid, gid, 0664);
+    DaemonHandler.runDaemon(daemonConnector, linuxServer, connector -> {
+      connector.setEmailListFile(infoPath, file, uid, gid, 0664);
+      connector.setEmailListFile(introPath, introFile, uid, gid, 0664);
+    });
 
     return list;
   }
@@ -1084,12 +1086,7 @@ public final class EmailHandler {
     checkAccessList(conn, source, "getListFile", list);
 
     PosixPath path = getPathForList(conn, list);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(
-        conn,
-        getLinuxServerForList(conn, list)
-    );
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getEmailListFile(path);
+    return DaemonHandler.callDaemon(conn, getLinuxServerForList(conn, list), daemonConnector -> daemonConnector.getEmailListFile(path));
   }
 
   public static IntList getListsForLinuxUserServer(
@@ -1133,16 +1130,14 @@ public final class EmailHandler {
   ) throws IOException, SQLException {
     LinuxAccountHandler.checkAccessUserServer(conn, source, "getImapFolderSizes", userServer);
     int linuxServer = LinuxAccountHandler.getServerForUserServer(conn, userServer);
-    if (DaemonHandler.isDaemonAvailable(linuxServer)) {
-      com.aoindustries.aoserv.client.linux.User.Name user = LinuxAccountHandler.getUserForUserServer(conn, userServer);
-      try {
-        AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-        conn.close(); // Don't hold database connection while connecting to the daemon
-        return daemonConnector.getImapFolderSizes(user, folderNames);
-      } catch (IOException err) {
-        logger.log(Level.SEVERE, "userServer=" + userServer + ", linuxServer=" + linuxServer + ", username=" + user + ", folderNames=" + Arrays.asList(folderNames), err);
-        DaemonHandler.flagDaemonAsDown(linuxServer);
+    com.aoindustries.aoserv.client.linux.User.Name user = LinuxAccountHandler.getUserForUserServer(conn, userServer);
+    try {
+      long[] sizes = DaemonHandler.callDaemon(conn, linuxServer, null, daemonConnector -> daemonConnector.getImapFolderSizes(user, folderNames));
+      if (sizes != null) {
+        return sizes;
       }
+    } catch (IOException err) {
+      logger.log(Level.SEVERE, "userServer=" + userServer + ", linuxServer=" + linuxServer + ", username=" + user + ", folderNames=" + Arrays.asList(folderNames), err);
     }
     long[] sizes = new long[folderNames.length];
     Arrays.fill(sizes, -1);
@@ -1156,18 +1151,13 @@ public final class EmailHandler {
   ) throws IOException, SQLException {
     LinuxAccountHandler.checkAccessUserServer(conn, source, "getInboxAttributes", userServer);
     int linuxServer = LinuxAccountHandler.getServerForUserServer(conn, userServer);
-    if (DaemonHandler.isDaemonAvailable(linuxServer)) {
-      com.aoindustries.aoserv.client.linux.User.Name user = LinuxAccountHandler.getUserForUserServer(conn, userServer);
-      try {
-        AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-        conn.close(); // Don't hold database connection while connecting to the daemon
-        return daemonConnector.getInboxAttributes(user);
-      } catch (IOException err) {
-        logger.log(Level.SEVERE, "linux_server_account=" + userServer + ", linuxServer=" + linuxServer + ", username=" + user, err);
-        DaemonHandler.flagDaemonAsDown(linuxServer);
-      }
+    com.aoindustries.aoserv.client.linux.User.Name user = LinuxAccountHandler.getUserForUserServer(conn, userServer);
+    try {
+      return DaemonHandler.callDaemon(conn, linuxServer, null, daemonConnector -> daemonConnector.getInboxAttributes(user));
+    } catch (IOException err) {
+      logger.log(Level.SEVERE, "linux_server_account=" + userServer + ", linuxServer=" + linuxServer + ", username=" + user, err);
+      return null;
     }
-    return null;
   }
 
   public static IntList getSmtpRelaysForPackage(
@@ -1216,12 +1206,7 @@ public final class EmailHandler {
     } catch (ValidationException e) {
       throw new SQLException(e);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(
-        conn,
-        getLinuxServerForList(conn, majordomoList)
-    );
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getEmailListFile(infoPath);
+    return DaemonHandler.callDaemon(conn, getLinuxServerForList(conn, majordomoList), daemonConnector -> daemonConnector.getEmailListFile(infoPath));
   }
 
   public static String getMajordomoIntroFile(
@@ -1236,12 +1221,7 @@ public final class EmailHandler {
     } catch (ValidationException e) {
       throw new SQLException(e);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(
-        conn,
-        getLinuxServerForList(conn, majordomoList)
-    );
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getEmailListFile(introPath);
+    return DaemonHandler.callDaemon(conn, getLinuxServerForList(conn, majordomoList), daemonConnector -> daemonConnector.getEmailListFile(introPath));
   }
 
   public static int getMajordomoServer(
@@ -1619,7 +1599,7 @@ public final class EmailHandler {
     AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
     conn.commit();
     conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.removeEmailList(path);
+    DaemonHandler.runDaemon(daemonConnector, linuxServer, connector -> connector.removeEmailList(path));
   }
 
   public static void removeInboxAddress(
@@ -1947,12 +1927,7 @@ public final class EmailHandler {
     int uid = LinuxAccountHandler.getUidForUserServer(conn, getLinuxUserServerForList(conn, list));
     int gid = LinuxAccountHandler.getGidForGroupServer(conn, getLinuxGroupServerForList(conn, list));
     int mode = isMajordomoList(conn, list) ? 0644 : 0640;
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(
-        conn,
-        getLinuxServerForList(conn, list)
-    );
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.setEmailListFile(path, addresses, uid, gid, mode);
+    DaemonHandler.runDaemon(conn, getLinuxServerForList(conn, list), daemonConnector -> daemonConnector.setEmailListFile(path, addresses, uid, gid, mode));
   }
 
   public static Account.Name getAccountForAddress(DatabaseConnection conn, int address) throws IOException, SQLException {
@@ -2204,11 +2179,7 @@ public final class EmailHandler {
     }
     int uid = LinuxAccountHandler.getUidForUserServer(conn, getLinuxUserServerForList(conn, majordomoList));
     int gid = LinuxAccountHandler.getGidForGroupServer(conn, getLinuxGroupServerForList(conn, majordomoList));
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn,
-        getLinuxServerForList(conn, majordomoList)
-    );
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.setEmailListFile(infoPath, file, uid, gid, 0664);
+    DaemonHandler.runDaemon(conn, getLinuxServerForList(conn, majordomoList), daemonConnector -> daemonConnector.setEmailListFile(infoPath, file, uid, gid, 0664));
   }
 
   public static void setMajordomoIntroFile(
@@ -2226,10 +2197,6 @@ public final class EmailHandler {
     }
     int uid = LinuxAccountHandler.getUidForUserServer(conn, getLinuxUserServerForList(conn, majordomoList));
     int gid = LinuxAccountHandler.getGidForGroupServer(conn, getLinuxGroupServerForList(conn, majordomoList));
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn,
-        getLinuxServerForList(conn, majordomoList)
-    );
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.setEmailListFile(introPath, file, uid, gid, 0664);
+    DaemonHandler.runDaemon(conn, getLinuxServerForList(conn, majordomoList), daemonConnector -> daemonConnector.setEmailListFile(introPath, file, uid, gid, 0664));
   }
 }
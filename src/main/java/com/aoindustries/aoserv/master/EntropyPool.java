@@ -0,0 +1,527 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import com.aoapps.hodgepodge.io.FifoFile;
+import com.aoapps.hodgepodge.io.FifoFileInputStream;
+import com.aoapps.hodgepodge.io.FifoFileOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An in-memory front-end to the disk-backed master entropy pool.
+ *
+ * <p>Entropy is held in a set of off-heap ring buffers, each with its own lock, so
+ * concurrent producers and consumers rarely contend.  Bytes are zeroed in the
+ * ring as soon as they are read.  The ring is kept about half full by a
+ * background task that spills to, or refills from, the {@link FifoFile} in large
+ * chunks, flushing once per chunk instead of once per request.</p>
+ *
+ * <p>Only when the ring is completely full or empty does a request go directly
+ * to the {@link FifoFile}, so no entropy is dropped while the pool has space.
+ * Entropy in the ring counts against the size of the pool, so once the ring
+ * and file together are full, no more is accepted.</p>
+ *
+ * <p>The ring is kept small, and is spilled to the file on shutdown, so little
+ * entropy is lost when the master stops.  Only the entropy held in the ring
+ * during a crash is lost.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class EntropyPool {
+
+  private static final Logger logger = Logger.getLogger(EntropyPool.class.getName());
+
+  /**
+   * The number of independently locked ring buffers.
+   */
+  private static final int STRIPES = 8;
+
+  /**
+   * The capacity of each ring buffer, in bytes.
+   */
+  private static final int STRIPE_CAPACITY = 8 * 1024;
+
+  /**
+   * The number of bytes moved between the ring and the file at a time.
+   */
+  private static final int CHUNK_SIZE = 16 * 1024;
+
+  /**
+   * The ring is spilled to the file above this level.
+   */
+  private static final long HIGH_WATER = (long) STRIPES * STRIPE_CAPACITY * 3 / 4;
+
+  /**
+   * The ring is refilled from the file below this level.
+   */
+  private static final long LOW_WATER = (long) STRIPES * STRIPE_CAPACITY / 4;
+
+  private static final byte[] zeros = new byte[CHUNK_SIZE];
+
+  /**
+   * One off-heap ring buffer.
+   */
+  private static final class Stripe {
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(STRIPE_CAPACITY);
+    private int head;
+    private int size;
+
+    /**
+     * Adds up to <code>len</code> bytes.  Must hold the lock.
+     *
+     * @return  the number of bytes added
+     */
+    private int write(byte[] src, int off, int len) {
+      int count = Math.min(len, STRIPE_CAPACITY - size);
+      int tail = (head + size) % STRIPE_CAPACITY;
+      int remaining = count;
+      while (remaining > 0) {
+        int blockLen = Math.min(remaining, STRIPE_CAPACITY - tail);
+        buffer.position(tail);
+        buffer.put(src, off, blockLen);
+        off += blockLen;
+        remaining -= blockLen;
+        tail = (tail + blockLen) % STRIPE_CAPACITY;
+      }
+      size += count;
+      return count;
+    }
+
+    /**
+     * Removes up to <code>len</code> bytes, zeroing them in the ring.  Must hold the lock.
+     *
+     * @return  the number of bytes removed
+     */
+    private int read(byte[] dst, int off, int len) {
+      int count = Math.min(len, size);
+      int remaining = count;
+      while (remaining > 0) {
+        int blockLen = Math.min(Math.min(remaining, STRIPE_CAPACITY - head), zeros.length);
+        buffer.position(head);
+        buffer.get(dst, off, blockLen);
+        buffer.position(head);
+        buffer.put(zeros, 0, blockLen);
+        off += blockLen;
+        remaining -= blockLen;
+        head = (head + blockLen) % STRIPE_CAPACITY;
+      }
+      size -= count;
+      if (size == 0) {
+        head = 0;
+      }
+      return count;
+    }
+  }
+
+  private final FifoFile fifo;
+  private final Stripe[] stripes;
+
+  /**
+   * The number of bytes currently in the ring buffers.
+   */
+  private final AtomicLong bufferAvailable = new AtomicLong();
+
+  /**
+   * The number of bytes currently in the file, updated while holding the lock on the {@link FifoFile}.
+   */
+  private volatile long fileAvailable;
+
+  private final AtomicBoolean balanceScheduled = new AtomicBoolean();
+
+  /**
+   * Serializes adds, so the ring buffers and file together never exceed {@link #getPoolSize()}.
+   */
+  private final Object addLock = new Object();
+
+  private final LongAdder readBytes = new LongAdder();
+  private final LongAdder readCount = new LongAdder();
+  private final LongAdder writeBytes = new LongAdder();
+  private final LongAdder writeCount = new LongAdder();
+  private final LongAdder spillBytes = new LongAdder();
+  private final LongAdder refillBytes = new LongAdder();
+  private final LongAdder directCount = new LongAdder();
+
+  EntropyPool(FifoFile fifo) {
+    this.fifo = fifo;
+    Stripe[] newStripes = new Stripe[STRIPES];
+    for (int i = 0; i < STRIPES; i++) {
+      newStripes[i] = new Stripe();
+    }
+    this.stripes = newStripes;
+    synchronized (fifo) {
+      this.fileAvailable = fifo.getLength();
+    }
+    Runtime.getRuntime().addShutdownHook(new Thread(this::spillAll, "Spill " + EntropyPool.class.getSimpleName()));
+    scheduleBalance();
+  }
+
+  /**
+   * Gets the capacity of the ring buffers.
+   */
+  public static long getBufferSize() {
+    return (long) STRIPES * STRIPE_CAPACITY;
+  }
+
+  /**
+   * Gets the maximum number of bytes held by the file.  Entropy in the ring
+   * buffers is counted against this, since it is eventually spilled to the file.
+   */
+  public long getPoolSize() {
+    return fifo.getMaximumFifoLength();
+  }
+
+  /**
+   * Gets the number of bytes currently in the ring buffers.
+   */
+  public long getBufferAvailable() {
+    return bufferAvailable.get();
+  }
+
+  /**
+   * Gets the number of bytes currently available in the pool, including the ring buffers.
+   */
+  public long getAvailable() {
+    return bufferAvailable.get() + fileAvailable;
+  }
+
+  /**
+   * Gets the number of bytes that may be added to the file, after spilling the ring buffers.
+   */
+  public long getNeeded() {
+    long needed = getPoolSize() - getAvailable();
+    return needed < 0 ? 0 : needed;
+  }
+
+  public long getReadBytes() {
+    return readBytes.sum();
+  }
+
+  public long getReadCount() {
+    return readCount.sum();
+  }
+
+  public long getWriteBytes() {
+    return writeBytes.sum();
+  }
+
+  public long getWriteCount() {
+    return writeCount.sum();
+  }
+
+  /**
+   * Gets the number of bytes moved from the ring buffers to the file.
+   */
+  public long getSpillBytes() {
+    return spillBytes.sum();
+  }
+
+  /**
+   * Gets the number of bytes moved from the file to the ring buffers.
+   */
+  public long getRefillBytes() {
+    return refillBytes.sum();
+  }
+
+  /**
+   * Gets the number of requests that had to access the file directly.
+   */
+  public long getDirectCount() {
+    return directCount.sum();
+  }
+
+  /**
+   * Adds entropy to the ring buffers, trying the stripes without blocking first.
+   *
+   * @return  the number of bytes added
+   */
+  private int writeBuffer(byte[] src, int off, int len) {
+    int start = ThreadLocalRandom.current().nextInt(STRIPES);
+    int total = 0;
+    for (int pass = 0; pass < 2 && total < len; pass++) {
+      for (int i = 0; i < STRIPES && total < len; i++) {
+        Stripe stripe = stripes[(start + i) % STRIPES];
+        if (pass == 0) {
+          if (!stripe.lock.tryLock()) {
+            continue;
+          }
+        } else {
+          stripe.lock.lock();
+        }
+        try {
+          int count = stripe.write(src, off + total, len - total);
+          if (count > 0) {
+            bufferAvailable.addAndGet(count);
+            total += count;
+          }
+        } finally {
+          stripe.lock.unlock();
+        }
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Removes entropy from the ring buffers, trying the stripes without blocking first.
+   *
+   * @return  the number of bytes removed
+   */
+  private int readBuffer(byte[] dst, int off, int len) {
+    int start = ThreadLocalRandom.current().nextInt(STRIPES);
+    int total = 0;
+    for (int pass = 0; pass < 2 && total < len; pass++) {
+      for (int i = 0; i < STRIPES && total < len; i++) {
+        Stripe stripe = stripes[(start + i) % STRIPES];
+        if (pass == 0) {
+          if (!stripe.lock.tryLock()) {
+            continue;
+          }
+        } else {
+          stripe.lock.lock();
+        }
+        try {
+          int count = stripe.read(dst, off + total, len - total);
+          if (count > 0) {
+            bufferAvailable.addAndGet(-count);
+            total += count;
+          }
+        } finally {
+          stripe.lock.unlock();
+        }
+      }
+    }
+    return total;
+  }
+
+  /**
+   * Writes directly to the file.  Must hold the lock on the {@link FifoFile}.
+   *
+   * @return  the number of bytes written
+   */
+  private int writeFile(byte[] src, int off, int len) throws IOException {
+    FifoFileOutputStream fifoOut = fifo.getOutputStream();
+    long available = fifoOut.available();
+    int count = len;
+    if (available < count) {
+      count = (int) available;
+    }
+    if (count > 0) {
+      fifoOut.write(src, off, count);
+      fifo.flush();
+      fileAvailable = fifo.getLength();
+    }
+    return count;
+  }
+
+  /**
+   * Reads directly from the file.  Must hold the lock on the {@link FifoFile}.
+   *
+   * @return  the number of bytes read
+   */
+  private int readFile(byte[] dst, int off, int len) throws IOException {
+    FifoFileInputStream fifoIn = fifo.getInputStream();
+    long available = fifoIn.available();
+    int count = len;
+    if (available < count) {
+      count = (int) available;
+    }
+    if (count > 0) {
+      int pos = 0;
+      while (pos < count) {
+        int ret = fifoIn.read(dst, off + pos, count - pos);
+        if (ret == -1) {
+          throw new EOFException("Unexpected EOF");
+        }
+        pos += ret;
+      }
+      fifo.flush();
+      fileAvailable = fifo.getLength();
+    }
+    return count;
+  }
+
+  /**
+   * Adds entropy to the pool, up to the space remaining in the pool.
+   *
+   * @return  the number of bytes added
+   */
+  public int add(byte[] entropy, int numBytes) throws IOException {
+    int added;
+    synchronized (addLock) {
+      long space = getPoolSize() - getAvailable();
+      int accept = space < numBytes ? (int) Math.max(space, 0) : numBytes;
+      added = writeBuffer(entropy, 0, accept);
+      if (added < accept) {
+        // Ring full: fall-back to the file
+        directCount.increment();
+        synchronized (fifo) {
+          added += writeFile(entropy, added, accept - added);
+        }
+      }
+    }
+    if (added > 0) {
+      writeBytes.add(added);
+      writeCount.increment();
+    }
+    if (bufferAvailable.get() > HIGH_WATER) {
+      scheduleBalance();
+    }
+    return added;
+  }
+
+  /**
+   * Removes entropy from the pool.
+   *
+   * @return  the number of bytes obtained
+   */
+  public int get(byte[] entropy, int numBytes) throws IOException {
+    int obtained = readBuffer(entropy, 0, numBytes);
+    if (obtained < numBytes && fileAvailable > 0) {
+      // Ring empty: fall-back to the file
+      directCount.increment();
+      synchronized (fifo) {
+        obtained += readFile(entropy, obtained, numBytes - obtained);
+      }
+    }
+    if (obtained > 0) {
+      readBytes.add(obtained);
+      readCount.increment();
+    }
+    if (bufferAvailable.get() < LOW_WATER && fileAvailable > 0) {
+      scheduleBalance();
+    }
+    return obtained;
+  }
+
+  /**
+   * Moves all entropy from the ring buffers to the file, as space allows.
+   * Any entropy that does not fit is discarded.
+   */
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+  private void spillAll() {
+    byte[] chunk = new byte[CHUNK_SIZE];
+    try {
+      int count;
+      while ((count = readBuffer(chunk, 0, CHUNK_SIZE)) > 0) {
+        int written;
+        synchronized (fifo) {
+          written = writeFile(chunk, 0, count);
+        }
+        spillBytes.add(written);
+        Arrays.fill(chunk, 0, count, (byte) 0);
+      }
+    } catch (Throwable t) {
+      logger.log(Level.SEVERE, null, t);
+    } finally {
+      Arrays.fill(chunk, (byte) 0);
+    }
+  }
+
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+  private void scheduleBalance() {
+    if (balanceScheduled.compareAndSet(false, true)) {
+      AoservMaster.executorService.submit(() -> {
+        try {
+          balance();
+        } catch (Throwable t) {
+          logger.log(Level.SEVERE, null, t);
+        } finally {
+          balanceScheduled.set(false);
+        }
+      });
+    }
+  }
+
+  /**
+   * Moves entropy between the ring buffers and the file, one chunk at a time,
+   * until the ring is between its low and high water marks.
+   */
+  private void balance() throws IOException {
+    byte[] chunk = new byte[CHUNK_SIZE];
+    try {
+      // Spill
+      while (bufferAvailable.get() > HIGH_WATER) {
+        long fileSpace = fifo.getMaximumFifoLength() - fileAvailable;
+        int len = (int) Math.min(Math.min(CHUNK_SIZE, bufferAvailable.get() - (HIGH_WATER + LOW_WATER) / 2), fileSpace);
+        if (len <= 0) {
+          break;
+        }
+        int count = readBuffer(chunk, 0, len);
+        if (count == 0) {
+          break;
+        }
+        int written;
+        synchronized (fifo) {
+          written = writeFile(chunk, 0, count);
+        }
+        if (written < count) {
+          // File filled concurrently, return the rest to the ring
+          writeBuffer(chunk, written, count - written);
+        }
+        spillBytes.add(written);
+        Arrays.fill(chunk, 0, count, (byte) 0);
+        if (written == 0) {
+          break;
+        }
+      }
+      // Refill
+      while (bufferAvailable.get() < LOW_WATER && fileAvailable > 0) {
+        int len = (int) Math.min(CHUNK_SIZE, (HIGH_WATER + LOW_WATER) / 2 - bufferAvailable.get());
+        if (len <= 0) {
+          break;
+        }
+        int count;
+        synchronized (fifo) {
+          count = readFile(chunk, 0, len);
+        }
+        if (count == 0) {
+          break;
+        }
+        int buffered = writeBuffer(chunk, 0, count);
+        if (buffered < count) {
+          // Ring filled concurrently, return the rest to the file
+          synchronized (fifo) {
+            writeFile(chunk, buffered, count - buffered);
+          }
+        }
+        refillBytes.add(buffered);
+        Arrays.fill(chunk, 0, count, (byte) 0);
+      }
+    } finally {
+      Arrays.fill(chunk, (byte) 0);
+    }
+  }
+}
@@ -36,12 +36,27 @@ import com.aoindustries.aoserv.client.account.Account;
 import com.aoindustries.aoserv.client.backup.FileReplicationLog;
 import com.aoindustries.aoserv.client.linux.Server;
 import com.aoindustries.aoserv.client.schema.Table;
-import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
 import com.aoindustries.aoserv.daemon.client.AoservDaemonProtocol;
 import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -54,6 +69,83 @@ public final class FailoverHandler implements CronJob {
 
   private static final Logger logger = Logger.getLogger(FailoverHandler.class.getName());
 
+  /**
+   * The number of milliseconds logs are collected before being inserted together.
+   */
+  private static final long LOG_BATCH_WINDOW = 100;
+
+  /**
+   * The maximum number of logs inserted in a single statement.
+   */
+  private static final int LOG_BATCH_MAX_SIZE = 100;
+
+  /**
+   * The number of milliseconds a request waits for its batch before inserting
+   * its log directly.
+   */
+  private static final long LOG_BATCH_MAX_WAIT = 5000;
+
+  /**
+   * Ends each batch window, without holding a pooled thread for its duration.
+   */
+  private static final ScheduledExecutorService logFlushScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "FailoverHandler.logFlushScheduler");
+    thread.setDaemon(true);
+    return thread;
+  });
+
+  /**
+   * A log waiting to be inserted.
+   */
+  private static final class PendingLog {
+
+    private final int fileReplication;
+    private final int host;
+    private final Timestamp startTime;
+    private final Timestamp endTime;
+    private final int scanned;
+    private final int updated;
+    private final long bytes;
+    private final boolean isSuccessful;
+
+    /**
+     * Set by whichever of the batch or the waiting request inserts this log.
+     */
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    private final CompletableFuture<Integer> id = new CompletableFuture<>();
+
+    private PendingLog(
+        int fileReplication,
+        int host,
+        Timestamp startTime,
+        Timestamp endTime,
+        int scanned,
+        int updated,
+        long bytes,
+        boolean isSuccessful
+    ) {
+      this.fileReplication = fileReplication;
+      this.host = host;
+      this.startTime = startTime;
+      this.endTime = endTime;
+      this.scanned = scanned;
+      this.updated = updated;
+      this.bytes = bytes;
+      this.isSuccessful = isSuccessful;
+    }
+  }
+
+  private static final Object pendingLogsLock = new Object();
+  private static List<PendingLog> pendingLogs = new ArrayList<>();
+  private static boolean logFlushScheduled;
+
+  /**
+   * Adds a log entry.  Logs from concurrent requests are inserted together in
+   * their own transaction, with one invalidation per host for each batch.
+   * Blocks until the log has been inserted, returning its id.  When the batch
+   * has not started within {@link #LOG_BATCH_MAX_WAIT}, the log is inserted directly.
+   */
   public static int addFileReplicationLog(
       DatabaseConnection conn,
       RequestSource source,
@@ -73,28 +165,17 @@ public final class FailoverHandler implements CronJob {
     // }
 
     // The server must be an exact package match to allow adding log entries
-    int host = getFromHostForFileReplication(conn, fileReplication);
+    OwnershipIndex.Owner owner = OwnershipIndex.getFileReplication(conn, fileReplication);
     Account.Name userPackage = AccountUserHandler.getPackageForUser(conn, source.getCurrentAdministrator());
-    Account.Name serverPackage = PackageHandler.getNameForPackage(conn, NetHostHandler.getPackageForHost(conn, host));
-    if (!userPackage.equals(serverPackage)) {
+    if (!userPackage.equals(owner.getPackage())) {
       throw new SQLException("userPackage != serverPackage: may only set backup.FileReplicationLog for servers that have the same package as the business_administrator adding the log entry");
     }
     // ServerHandler.checkAccessServer(conn, source, "addFileReplicationLog", server);
+    conn.close(); // Don't hold database connection while waiting for the batch
 
-    int fileReplicationLog = conn.updateInt(
-        "INSERT INTO\n"
-            + "  backup.\"FileReplicationLog\"\n"
-            + "VALUES (\n"
-            + "  default,\n"
-            + "  ?,\n"
-            + "  ?,\n"
-            + "  ?,\n"
-            + "  ?,\n"
-            + "  ?,\n"
-            + "  ?,\n"
-            + "  ?\n"
-            + ") RETURNING id",
+    PendingLog log = new PendingLog(
         fileReplication,
+        owner.getHost(),
         new Timestamp(startTime),
         new Timestamp(endTime),
         scanned,
@@ -102,16 +183,163 @@ public final class FailoverHandler implements CronJob {
         bytes,
         isSuccessful
     );
+    List<PendingLog> fullBatch = null;
+    boolean scheduleFlush = false;
+    synchronized (pendingLogsLock) {
+      pendingLogs.add(log);
+      if (pendingLogs.size() >= LOG_BATCH_MAX_SIZE) {
+        fullBatch = pendingLogs;
+        pendingLogs = new ArrayList<>();
+      } else if (!logFlushScheduled) {
+        logFlushScheduled = true;
+        scheduleFlush = true;
+      }
+    }
+    if (fullBatch != null) {
+      List<PendingLog> batch = fullBatch;
+      AoservMaster.executorService.submit(() -> insertLogs(batch));
+    }
+    if (scheduleFlush) {
+      logFlushScheduler.schedule(
+          () -> {
+            List<PendingLog> batch;
+            synchronized (pendingLogsLock) {
+              batch = pendingLogs;
+              pendingLogs = new ArrayList<>();
+              logFlushScheduled = false;
+            }
+            if (!batch.isEmpty()) {
+              AoservMaster.executorService.submit(() -> insertLogs(batch));
+            }
+          },
+          LOG_BATCH_WINDOW,
+          TimeUnit.MILLISECONDS
+      );
+    }
 
-    // Notify all clients of the update
-    invalidateList.addTable(
-        conn,
-        Table.TableId.FAILOVER_FILE_LOG,
-        NetHostHandler.getAccountsForHost(conn, host),
-        host,
-        false
-    );
-    return fileReplicationLog;
+    try {
+      try {
+        return log.id.get(LOG_BATCH_MAX_WAIT, TimeUnit.MILLISECONDS);
+      } catch (TimeoutException err) {
+        if (log.claimed.compareAndSet(false, true)) {
+          // The batch has not started: insert directly
+          logger.log(Level.WARNING, "Batch not started within " + LOG_BATCH_MAX_WAIT + " ms, inserting log directly");
+          writeLogs(Collections.singletonList(log));
+        }
+        // Otherwise the batch is already inserting this log
+        return log.id.get();
+      }
+    } catch (InterruptedException err) {
+      // Restore the interrupted status
+      Thread.currentThread().interrupt();
+      InterruptedIOException ioErr = new InterruptedIOException();
+      ioErr.initCause(err);
+      throw ioErr;
+    } catch (ExecutionException err) {
+      Throwable cause = err.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      if (cause instanceof SQLException) {
+        throw new SQLException(cause.getMessage(), cause);
+      }
+      throw new IOException(cause.getMessage(), cause);
+    }
+  }
+
+  /**
+   * Inserts the logs of a batch not already inserted directly by their requests.
+   */
+  private static void insertLogs(List<PendingLog> batch) {
+    List<PendingLog> claimed = new ArrayList<>(batch.size());
+    for (PendingLog log : batch) {
+      if (log.claimed.compareAndSet(false, true)) {
+        claimed.add(log);
+      }
+    }
+    if (!claimed.isEmpty()) {
+      writeLogs(claimed);
+    }
+  }
+
+  /**
+   * Inserts logs in a single statement, then notifies clients once per host.
+   */
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+  private static void writeLogs(List<PendingLog> batch) {
+    try {
+      IntList ids;
+      try (DatabaseConnection conn = MasterDatabase.getDatabase().connect()) {
+        int size = batch.size();
+        ids = conn.updateIntList(
+            "select nextval(pg_get_serial_sequence('backup.\"FileReplicationLog\"', 'id')) from generate_series(1, ?)",
+            size
+        );
+        StringBuilder sql = new StringBuilder(
+            "INSERT INTO\n"
+                + "  backup.\"FileReplicationLog\"\n"
+                + "VALUES\n"
+        );
+        Object[] params = new Object[size * 8];
+        Set<Integer> hosts = new LinkedHashSet<>();
+        int pos = 0;
+        for (int i = 0; i < size; i++) {
+          PendingLog log = batch.get(i);
+          if (i > 0) {
+            sql.append(",\n");
+          }
+          sql.append("  (?, ?, ?, ?, ?, ?, ?, ?)");
+          params[pos++] = ids.getInt(i);
+          params[pos++] = log.fileReplication;
+          params[pos++] = log.startTime;
+          params[pos++] = log.endTime;
+          params[pos++] = log.scanned;
+          params[pos++] = log.updated;
+          params[pos++] = log.bytes;
+          params[pos++] = log.isSuccessful;
+          hosts.add(log.host);
+        }
+        // The inserted rows are returned with the insert, for the logs kept in memory
+        sql.append("\nRETURNING *");
+        List<Integer> replications = new ArrayList<>(size);
+        List<LatestLog> added = conn.updateList(
+            results -> {
+              replications.add(results.getInt("replication"));
+              return readLatestLog(results);
+            },
+            sql.toString(),
+            params
+        );
+        conn.commit();
+
+        // Notify all clients of the update
+        InvalidateList invalidateList = new InvalidateList();
+        for (int host : hosts) {
+          invalidateList.addTable(
+              conn,
+              Table.TableId.FAILOVER_FILE_LOG,
+              NetHostHandler.getAccountsForHost(conn, host),
+              host,
+              false
+          );
+        }
+        AoservMaster.invalidateTables(conn, invalidateList, null);
+
+        // Maintain the most recent logs in memory
+        addLatestLogs(added, replications);
+      }
+      for (int i = 0, size = batch.size(); i < size; i++) {
+        batch.get(i).id.complete(ids.getInt(i));
+      }
+    } catch (Throwable t) {
+      for (PendingLog log : batch) {
+        log.id.completeExceptionally(t);
+      }
+      logger.log(Level.SEVERE, null, t);
+    }
   }
 
   public static void setFileReplicationBitRate(
@@ -308,6 +536,140 @@ public final class FailoverHandler implements CronJob {
     return conn.queryInt("select backup_partition from backup.\"FileReplication\" where id=?", fileReplication);
   }
 
+  /**
+   * The number of most recent logs kept in memory per file replication.
+   */
+  private static final int LATEST_LOGS_SIZE = 50;
+
+  /**
+   * A log along with its start time, used for ordering.
+   */
+  private static final class LatestLog {
+
+    private final long startTime;
+    private final FileReplicationLog log;
+
+    private LatestLog(long startTime, FileReplicationLog log) {
+      this.startTime = startTime;
+      this.log = log;
+    }
+  }
+
+  /**
+   * The most recent logs for one file replication, newest first.
+   */
+  private static final class LatestLogs {
+
+    private final List<LatestLog> logs;
+
+    /**
+     * When {@code true}, these are all the logs for the replication, not only the most recent.
+     */
+    private boolean complete;
+
+    private LatestLogs(List<LatestLog> logs, boolean complete) {
+      this.logs = logs;
+      this.complete = complete;
+    }
+
+    private void add(LatestLog latest) {
+      int index = 0;
+      while (index < logs.size() && logs.get(index).startTime >= latest.startTime) {
+        index++;
+      }
+      logs.add(index, latest);
+      if (logs.size() > LATEST_LOGS_SIZE) {
+        logs.remove(logs.size() - 1);
+        complete = false;
+      }
+    }
+  }
+
+  /**
+   * The most recent logs per file replication, loaded on first request and
+   * maintained as new logs are added.
+   */
+  private static final Map<Integer, LatestLogs> latestLogs = new HashMap<>();
+
+  /**
+   * Incremented on each change to {@link #latestLogs}, so a load that overlaps
+   * a change is not retained.
+   */
+  private static long latestLogsVersion;
+
+  @SuppressWarnings("deprecation")
+  private static LatestLog readLatestLog(ResultSet results) throws SQLException {
+    FileReplicationLog log = new FileReplicationLog();
+    log.init(results);
+    return new LatestLog(results.getTimestamp("start_time").getTime(), log);
+  }
+
+  /**
+   * Adds new logs to the replications already in memory.
+   */
+  private static void addLatestLogs(List<LatestLog> added, List<Integer> replications) {
+    synchronized (latestLogs) {
+      latestLogsVersion++;
+      for (int i = 0, size = added.size(); i < size; i++) {
+        LatestLogs existing = latestLogs.get(replications.get(i));
+        if (existing != null) {
+          existing.add(added.get(i));
+        }
+      }
+    }
+  }
+
+  private static void clearLatestLogs() {
+    synchronized (latestLogs) {
+      latestLogsVersion++;
+      latestLogs.clear();
+    }
+  }
+
+  /**
+   * Gets the most recent logs for a replication, or {@code null} when more
+   * rows are requested than are kept in memory.
+   */
+  private static List<FileReplicationLog> getLatestLogs(DatabaseConnection conn, int fileReplication, int maxRows) throws IOException, SQLException {
+    LatestLogs latest;
+    long loadVersion;
+    synchronized (latestLogs) {
+      latest = latestLogs.get(fileReplication);
+      loadVersion = latestLogsVersion;
+    }
+    if (latest == null) {
+      List<LatestLog> logs = conn.queryCall(
+          results -> {
+            List<LatestLog> list = new ArrayList<>();
+            while (results.next()) {
+              list.add(readLatestLog(results));
+            }
+            return list;
+          },
+          "select * from backup.\"FileReplicationLog\" where replication=? order by start_time desc limit ?",
+          fileReplication,
+          LATEST_LOGS_SIZE
+      );
+      latest = new LatestLogs(logs, logs.size() < LATEST_LOGS_SIZE);
+      synchronized (latestLogs) {
+        if (latestLogsVersion == loadVersion) {
+          latestLogs.putIfAbsent(fileReplication, latest);
+        }
+      }
+    }
+    synchronized (latestLogs) {
+      if (maxRows > latest.logs.size() && !latest.complete) {
+        return null;
+      }
+      int size = Math.min(maxRows, latest.logs.size());
+      List<FileReplicationLog> logs = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        logs.add(latest.logs.get(i).log);
+      }
+      return logs;
+    }
+  }
+
   @SuppressWarnings("deprecation")
   public static void getFileReplicationLogs(
       DatabaseConnection conn,
@@ -320,6 +682,14 @@ public final class FailoverHandler implements CronJob {
     int fromHost = getFromHostForFileReplication(conn, fileReplication);
     NetHostHandler.checkAccessHost(conn, source, "getFileReplicationLogs", fromHost);
 
+    // Recent history is answered from memory
+    List<FileReplicationLog> logs = getLatestLogs(conn, fileReplication, maxRows);
+    if (logs != null) {
+      conn.close(); // Don't hold database connection while writing response
+      AoservMaster.writeObjects(source, out, false, logs);
+      return;
+    }
+
     // TODO: release conn before writing to out
     AoservMaster.writeObjects(
         conn,
@@ -348,15 +718,38 @@ public final class FailoverHandler implements CronJob {
     int toLinuxServer = BackupHandler.getLinuxServerForBackupPartition(conn, backupPartition);
 
     // Contact the server
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, toLinuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getFailoverFileReplicationActivity(fileReplication);
+    return DaemonHandler.callDaemon(conn, toLinuxServer, daemonConnector -> daemonConnector.getFailoverFileReplicationActivity(fileReplication));
   }
 
   /**
-   * Runs at 1:20 am daily.
+   * Runs hourly at 45 minutes past the hour.  Each run removes expired logs
+   * until done or its time budget is exhausted, resuming on the next run.
+   */
+  private static final Schedule schedule = (minute, hour, dayOfMonth, month, dayOfWeek, year) -> minute == 45;
+
+  /**
+   * The number of logs removed per transaction.
    */
-  private static final Schedule schedule = (minute, hour, dayOfMonth, month, dayOfWeek, year) -> minute == 45 && hour == 1;
+  private static final int RETENTION_CHUNK_SIZE = 1000;
+
+  /**
+   * The maximum number of milliseconds spent removing logs per run.
+   */
+  private static final long RETENTION_TIME_BUDGET = 15L * 60 * 1000;
+
+  /**
+   * The number of milliseconds to pause between chunks, spreading the I/O.
+   */
+  private static final long RETENTION_CHUNK_PAUSE = 100;
+
+  private static final LongAdder retentionRemoved = new LongAdder();
+
+  /**
+   * Gets the total number of expired logs removed since startup.
+   */
+  public static long getFileReplicationLogsRemoved() {
+    return retentionRemoved.sum();
+  }
 
   @Override
   public Schedule getSchedule() {
@@ -389,10 +782,78 @@ public final class FailoverHandler implements CronJob {
   @Override
   @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
   public void run(int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
+    long startTime = System.currentTimeMillis();
+    int removed = 0;
+    boolean done = false;
+    boolean failed = false;
     try {
-      MasterDatabase.getDatabase().update("delete from backup.\"FileReplicationLog\" where end_time <= (now()-'1 year'::interval)");
+      try (DatabaseConnection conn = MasterDatabase.getDatabase().connect()) {
+        int lastId = -1;
+        while (true) {
+          // Find the end of the next chunk in primary key order
+          int chunkEnd = conn.queryInt(
+              "select\n"
+                  + "  coalesce(max(id), -1)\n"
+                  + "from (\n"
+                  + "  select\n"
+                  + "    id\n"
+                  + "  from\n"
+                  + "    backup.\"FileReplicationLog\"\n"
+                  + "  where\n"
+                  + "    id > ?\n"
+                  + "    and end_time <= (now()-'1 year'::interval)\n"
+                  + "  order by\n"
+                  + "    id\n"
+                  + "  limit ?\n"
+                  + ") chunk",
+              lastId,
+              RETENTION_CHUNK_SIZE
+          );
+          if (chunkEnd == -1) {
+            done = true;
+            break;
+          }
+          int count = conn.update(
+              "delete from backup.\"FileReplicationLog\" where id > ? and id <= ? and end_time <= (now()-'1 year'::interval)",
+              lastId,
+              chunkEnd
+          );
+          conn.commit();
+          removed += count;
+          retentionRemoved.add(count);
+          if (count > 0) {
+            clearLatestLogs();
+          }
+          lastId = chunkEnd;
+          if ((System.currentTimeMillis() - startTime) >= RETENTION_TIME_BUDGET) {
+            break;
+          }
+          try {
+            Thread.sleep(RETENTION_CHUNK_PAUSE);
+          } catch (InterruptedException e) {
+            // Restore the interrupted status
+            Thread.currentThread().interrupt();
+            break;
+          }
+        }
+      }
     } catch (Throwable t) {
-      logger.log(Level.SEVERE, null, t);
+      failed = true;
+      logger.log(
+          Level.SEVERE,
+          "Failed removing expired " + FileReplicationLog.class.getSimpleName() + " rows after removing " + removed + " in "
+              + (System.currentTimeMillis() - startTime) + " ms",
+          t
+      );
+    }
+    if (!failed && (removed > 0 || !done)) {
+      if (logger.isLoggable(Level.INFO)) {
+        logger.info(
+            "Removed " + removed + " expired " + FileReplicationLog.class.getSimpleName() + " rows in "
+                + (System.currentTimeMillis() - startTime) + " ms"
+                + (done ? "" : ", more remain")
+        );
+      }
     }
   }
 
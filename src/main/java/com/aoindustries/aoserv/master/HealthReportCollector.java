@@ -0,0 +1,347 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import com.aoapps.dbc.DatabaseConnection;
+import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Collects the server health reports in the background, so the report
+ * requests of monitoring are answered from the latest snapshot instead of each
+ * making its own daemon request.
+ *
+ * <p>Only reports requested within the last {@link #REQUEST_RETENTION}
+ * milliseconds are collected, every {@link #COLLECTION_INTERVAL} milliseconds, with at most
+ * {@link #PARALLELISM} servers contacted at a time.  A request for a report
+ * without a fresh snapshot is sent to the daemon directly, with concurrent
+ * requests sharing one daemon call.  Reports that monitoring raises alerts
+ * from are fresh for only {@link #ALERT_FRESHNESS} milliseconds, so an alert
+ * is delayed by at most that long; other reports are fresh for
+ * {@link #FRESHNESS} milliseconds.  Collection runs more often than either, so
+ * a snapshot is normally replaced before it expires.</p>
+ *
+ * <p>Access checks must be performed by the caller before each call.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class HealthReportCollector {
+
+  private static final Logger logger = Logger.getLogger(HealthReportCollector.class.getName());
+
+  /**
+   * Snapshots of informational reports older than this number of milliseconds are not returned.
+   */
+  private static final long FRESHNESS = 2L * 60 * 1000;
+
+  /**
+   * Snapshots of reports that monitoring raises alerts from older than this
+   * number of milliseconds are not returned.
+   */
+  private static final long ALERT_FRESHNESS = 30L * 1000;
+
+  /**
+   * The number of milliseconds between the end of one collection and the start
+   * of the next, less than {@link #ALERT_FRESHNESS}.
+   */
+  private static final long COLLECTION_INTERVAL = 15L * 1000;
+
+  /**
+   * Reports not requested within this number of milliseconds are no longer collected.
+   */
+  private static final long REQUEST_RETENTION = 10L * 60 * 1000;
+
+  /**
+   * The maximum number of servers contacted concurrently by the collector.
+   */
+  private static final int PARALLELISM = 8;
+
+  /**
+   * Gets a report from a daemon.
+   */
+  @FunctionalInterface
+  private interface Fetcher {
+    Object fetch(AoservDaemonConnector daemonConnector) throws IOException, SQLException;
+  }
+
+  /**
+   * The reports that are collected.
+   */
+  public enum Report {
+    RAID_3WARE(AoservDaemonConnector::get3wareRaidReport, ALERT_FRESHNESS),
+    UPS_STATUS(AoservDaemonConnector::getUpsStatus, ALERT_FRESHNESS),
+    MD_STAT(AoservDaemonConnector::getMdStatReport, ALERT_FRESHNESS),
+    MD_MISMATCH(AoservDaemonConnector::getMdMismatchReport, ALERT_FRESHNESS),
+    DRBD(AoservDaemonConnector::getDrbdReport, ALERT_FRESHNESS),
+    LVM(AoservDaemonConnector::getLvmReport, ALERT_FRESHNESS),
+    HDD_TEMP(AoservDaemonConnector::getHddTempReport, ALERT_FRESHNESS),
+    HDD_MODEL(AoservDaemonConnector::getHddModelReport, FRESHNESS),
+    FILESYSTEMS_CSV(AoservDaemonConnector::getFilesystemsCsvReport, ALERT_FRESHNESS),
+    LOAD_AVG(AoservDaemonConnector::getLoadAvgReport, ALERT_FRESHNESS),
+    MEM_INFO(AoservDaemonConnector::getMemInfoReport, ALERT_FRESHNESS);
+
+    private final Fetcher fetcher;
+    private final long freshness;
+
+    Report(Fetcher fetcher, long freshness) {
+      this.fetcher = fetcher;
+      this.freshness = freshness;
+    }
+  }
+
+  private static final class Snapshot {
+
+    private final Object value;
+    private final long collectedNanos;
+
+    private Snapshot(Object value, long collectedNanos) {
+      this.value = value;
+      this.collectedNanos = collectedNanos;
+    }
+  }
+
+  /**
+   * The state of a single report on a single server.
+   */
+  private static final class Entry {
+
+    private Snapshot snapshot;
+    private long requestedNanos;
+  }
+
+  private static final Map<Integer, Map<Report, Entry>> entries = new HashMap<>();
+
+  /**
+   * Shares direct daemon calls between concurrent requests.
+   */
+  private static final DaemonStatusCache<List<?>, Object> directCache = new DaemonStatusCache<>();
+
+  private static final LongAdder hits = new LongAdder();
+  private static final LongAdder misses = new LongAdder();
+  private static final LongAdder collected = new LongAdder();
+
+  /**
+   * Gets the number of report requests answered from a snapshot.
+   */
+  public static long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of report requests without a fresh snapshot.
+   */
+  public static long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the number of reports collected in the background.
+   */
+  public static long getCollected() {
+    return collected.sum();
+  }
+
+  private static void putSnapshot(int linuxServer, Report report, Object value, long collectedNanos) {
+    synchronized (entries) {
+      Entry entry = entries.computeIfAbsent(linuxServer, s -> new EnumMap<>(Report.class)).computeIfAbsent(report, r -> new Entry());
+      if (entry.snapshot == null || (collectedNanos - entry.snapshot.collectedNanos) > 0) {
+        entry.snapshot = new Snapshot(value, collectedNanos);
+      }
+    }
+  }
+
+  /**
+   * Gets a report from the latest snapshot when fresh, otherwise from the daemon.
+   * Closes the database connection before contacting the daemon.
+   */
+  public static Object get(DatabaseConnection conn, int linuxServer, Report report) throws IOException, SQLException {
+    long now = System.nanoTime();
+    synchronized (entries) {
+      Entry entry = entries.computeIfAbsent(linuxServer, s -> new EnumMap<>(Report.class)).computeIfAbsent(report, r -> new Entry());
+      entry.requestedNanos = now;
+      Snapshot snapshot = entry.snapshot;
+      if (snapshot != null && (now - snapshot.collectedNanos) < report.freshness * 1000000L) {
+        hits.increment();
+        return snapshot.value;
+      }
+    }
+    misses.increment();
+    conn.close(); // Don't hold database connection while waiting for the daemon
+    return directCache.get(
+        Arrays.asList(linuxServer, report),
+        () -> {
+          AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(MasterDatabase.getDatabase(), linuxServer);
+          long startNanos = System.nanoTime();
+          Object value = DaemonHandler.callDaemon(daemonConnector, linuxServer, report.fetcher::fetch);
+          putSnapshot(linuxServer, report, value, startNanos);
+          return value;
+        }
+    );
+  }
+
+  /**
+   * Collects all recently requested reports of one server.
+   */
+  private static void collect(int linuxServer, List<Report> reports) throws IOException, SQLException {
+    AoservDaemonConnector daemonConnector;
+    try (DatabaseConnection conn = MasterDatabase.getDatabase().connect()) {
+      daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
+    }
+    for (Report report : reports) {
+      long startNanos = System.nanoTime();
+      try {
+        putSnapshot(linuxServer, report, DaemonHandler.callDaemon(daemonConnector, linuxServer, report.fetcher::fetch), startNanos);
+        collected.increment();
+      } catch (DaemonHandler.DaemonUnavailableException e) {
+        // Skip the remaining reports while failing fast
+        return;
+      } catch (IOException | SQLException e) {
+        // Not every server supports every report, left for direct requests to report the error
+        logger.log(Level.FINE, "linuxServer=" + linuxServer + ", report=" + report, e);
+      }
+    }
+  }
+
+  private static final AtomicBoolean running = new AtomicBoolean();
+
+  private static void collectAll() throws InterruptedException {
+    if (!running.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      Map<Integer, List<Report>> toCollect = new HashMap<>();
+      long now = System.nanoTime();
+      synchronized (entries) {
+        Iterator<Map.Entry<Integer, Map<Report, Entry>>> serverIter = entries.entrySet().iterator();
+        while (serverIter.hasNext()) {
+          Map.Entry<Integer, Map<Report, Entry>> serverEntries = serverIter.next();
+          Iterator<Map.Entry<Report, Entry>> reportIter = serverEntries.getValue().entrySet().iterator();
+          while (reportIter.hasNext()) {
+            Map.Entry<Report, Entry> reportEntry = reportIter.next();
+            if ((now - reportEntry.getValue().requestedNanos) >= REQUEST_RETENTION * 1000000L) {
+              reportIter.remove();
+            } else {
+              toCollect.computeIfAbsent(serverEntries.getKey(), s -> new ArrayList<>()).add(reportEntry.getKey());
+            }
+          }
+          if (serverEntries.getValue().isEmpty()) {
+            serverIter.remove();
+          }
+        }
+      }
+      Queue<Map.Entry<Integer, List<Report>>> queue = new ConcurrentLinkedQueue<>();
+      for (Map.Entry<Integer, List<Report>> entry : toCollect.entrySet()) {
+        if (!DaemonHealth.getDaemonHealth(entry.getKey()).isFailingFast()) {
+          queue.add(entry);
+        }
+      }
+      int workers = Math.min(PARALLELISM, queue.size());
+      CountDownLatch done = new CountDownLatch(workers);
+      for (int i = 0; i < workers; i++) {
+        AoservMaster.executorService.submit(() -> {
+          try {
+            Map.Entry<Integer, List<Report>> entry;
+            while ((entry = queue.poll()) != null) {
+              try {
+                collect(entry.getKey(), entry.getValue());
+              } catch (IOException | SQLException e) {
+                logger.log(Level.WARNING, "linuxServer=" + entry.getKey(), e);
+              }
+            }
+          } finally {
+            done.countDown();
+          }
+        });
+      }
+      done.await();
+    } finally {
+      running.set(false);
+    }
+  }
+
+  /**
+   * Runs each collection, more often than the one-minute resolution of cron jobs.
+   */
+  private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+    Thread thread = new Thread(r, "HealthReportCollector.scheduler");
+    thread.setDaemon(true);
+    thread.setPriority(Thread.NORM_PRIORITY - 1);
+    return thread;
+  });
+
+  private static boolean started;
+
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
+  public static void start() {
+    synchronized (System.out) {
+      if (!started) {
+        System.out.print("Starting " + HealthReportCollector.class.getSimpleName() + ": ");
+        scheduler.scheduleWithFixedDelay(
+            HealthReportCollector::run,
+            COLLECTION_INTERVAL,
+            COLLECTION_INTERVAL,
+            TimeUnit.MILLISECONDS
+        );
+        started = true;
+        System.out.println("Done");
+      }
+    }
+  }
+
+  /** Make no instances. */
+  private HealthReportCollector() {
+    throw new AssertionError();
+  }
+
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+  private static void run() {
+    try {
+      collectAll();
+    } catch (InterruptedException e) {
+      logger.log(Level.WARNING, null, e);
+      // Restore the interrupted status
+      Thread.currentThread().interrupt();
+    } catch (Throwable t) {
+      logger.log(Level.SEVERE, null, t);
+    }
+  }
+}
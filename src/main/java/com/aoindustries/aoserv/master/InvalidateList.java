@@ -344,6 +344,7 @@ public final class InvalidateList {
     for (Table.TableId tableId : tableIds) {
       if (hostLists.containsKey(tableId) || accountLists.containsKey(tableId)) {
         AccountHandler.invalidateTable(tableId);
+        AccountTree.invalidateTable(tableId);
         CvsHandler.invalidateTable(tableId);
         DaemonHandler.invalidateTable(tableId);
         // TODO: Have each service register to receive invalidation signals
@@ -355,13 +356,17 @@ public final class InvalidateList {
         EmailHandler.invalidateTable(tableId);
         WebHandler.invalidateTable(tableId);
         LinuxAccountHandler.invalidateTable(tableId);
+        LinuxIdAllocator.invalidateTable(tableId);
         AoservMaster.invalidateTable(tableId);
         MysqlHandler.invalidateTable(tableId);
         PackageHandler.invalidateTable(tableId);
+        PkiCertificateHandler.invalidateTable(tableId);
         PostgresqlHandler.invalidateTable(tableId);
         NetHostHandler.invalidateTable(tableId);
         TableHandler.invalidateTable(tableId);
+        TicketLoggingHandler.invalidateTable(tableId);
         AccountUserHandler.invalidateTable(tableId);
+        OwnershipIndex.invalidateTable(tableId);
       }
     }
   }
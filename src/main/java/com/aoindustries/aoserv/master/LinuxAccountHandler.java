@@ -673,7 +673,7 @@ public final class LinuxAccountHandler {
             + "  default,\n"
             + "  ?,\n"
             + "  ?,\n"
-            + "  linux.get_next_uid(?),\n"
+            + "  ?,\n"
             + "  ?,\n"
             + "  null,\n"
             + "  null,\n"
@@ -692,7 +692,10 @@ public final class LinuxAccountHandler {
             + ") RETURNING id",
         user,
         linuxServer,
-        linuxServer,
+        LinuxIdAllocator.uids.allocate(
+            LinuxServerHandler.getUidMin(conn, linuxServer),
+            LinuxServerHandler.getUidMax(conn, linuxServer)
+        ),
         home,
         SpamAssassinMode.DEFAULT_SPAMASSASSIN_INTEGRATION_MODE
     );
@@ -763,12 +766,15 @@ public final class LinuxAccountHandler {
             + "  default,\n"
             + "  ?,\n"
             + "  ?,\n"
-            + "  linux.get_next_gid(?),\n"
+            + "  ?,\n"
             + "  now()\n"
             + ") RETURNING id",
         group,
         linuxServer,
-        linuxServer
+        LinuxIdAllocator.gids.allocate(
+            LinuxServerHandler.getGidMin(conn, linuxServer),
+            LinuxServerHandler.getGidMax(conn, linuxServer)
+        )
     );
 
     // Notify all clients of the update
@@ -786,7 +792,10 @@ public final class LinuxAccountHandler {
    * Gets the group name that exists on a server for the given gid
    * or {@code null} if the gid is not allocated to the server.
    */
-  public static Group.Name getGroupByGid(DatabaseConnection conn, int linuxServer, int gid) throws SQLException {
+  public static Group.Name getGroupByGid(DatabaseConnection conn, int linuxServer, int gid) throws IOException, SQLException {
+    if (!LinuxIdAllocator.gids.isUsed(gid)) {
+      return null;
+    }
     return conn.queryObjectOptional(
         ObjectFactories.groupNameFactory,
         "select name from linux.\"GroupServer\" where ao_server=? and gid=?",
@@ -799,7 +808,10 @@ public final class LinuxAccountHandler {
    * Gets the username that exists on a server for the given uid
    * or {@code null} if the uid is not allocated to the server.
    */
-  public static com.aoindustries.aoserv.client.linux.User.Name getUserByUid(DatabaseConnection conn, int linuxServer, int uid) throws SQLException {
+  public static com.aoindustries.aoserv.client.linux.User.Name getUserByUid(DatabaseConnection conn, int linuxServer, int uid) throws IOException, SQLException {
+    if (!LinuxIdAllocator.uids.isUsed(uid)) {
+      return null;
+    }
     return conn.queryObjectOptional(
         ObjectFactories.linuxUserNameFactory,
         "select username from linux.\"UserServer\" where ao_server=? and uid=?",
@@ -906,6 +918,7 @@ public final class LinuxAccountHandler {
           linuxServer,
           gid
       );
+      LinuxIdAllocator.gids.markUsed(gid);
       // Notify all clients of the update
       invalidateList.addTable(
           conn,
@@ -1277,6 +1290,7 @@ public final class LinuxAccountHandler {
           SpamAssassinMode.NONE,
           systemUser.sudo
       );
+      LinuxIdAllocator.uids.markUsed(uid);
       // Notify all clients of the update
       invalidateList.addTable(
           conn,
@@ -1324,7 +1338,7 @@ public final class LinuxAccountHandler {
     AoservDaemonConnector fromDaemonConnector = DaemonHandler.getDaemonConnector(conn, from_server);
     AoservDaemonConnector toDaemonConnector = DaemonHandler.getDaemonConnector(conn, to_server);
     conn.close(); // Don't hold database connection while connecting to the daemon
-    long byteCount = fromDaemonConnector.copyHomeDirectory(user, toDaemonConnector);
+    long byteCount = DaemonHandler.callDaemon(fromDaemonConnector, from_server, connector -> connector.copyHomeDirectory(user, toDaemonConnector));
     return byteCount;
   }
 
@@ -1381,8 +1395,8 @@ public final class LinuxAccountHandler {
     AoservDaemonConnector fromDemonConnector = DaemonHandler.getDaemonConnector(conn, from_server);
     AoservDaemonConnector toDaemonConnector = DaemonHandler.getDaemonConnector(conn, to_server);
     conn.close(); // Don't hold database connection while connecting to the daemon
-    Tuple2<String, Integer> encPassword = fromDemonConnector.getEncryptedLinuxAccountPassword(from_user);
-    toDaemonConnector.setEncryptedLinuxAccountPassword(to_user, encPassword.getElement1(), encPassword.getElement2());
+    Tuple2<String, Integer> encPassword = DaemonHandler.callDaemon(fromDemonConnector, from_server, connector -> connector.getEncryptedLinuxAccountPassword(from_user));
+    DaemonHandler.runDaemon(toDaemonConnector, to_server, connector -> connector.setEncryptedLinuxAccountPassword(to_user, encPassword.getElement1(), encPassword.getElement2()));
 
     // Account.Name from_account=UsernameHandler.getAccountForUsername(conn, from_username);
     // Account.Name to_account=UsernameHandler.getAccountForUsername(conn, to_username);
@@ -1577,7 +1591,7 @@ public final class LinuxAccountHandler {
       // TODO: Add a listener to daemonConnector, which would ensure (and maybe close?) no active database connection
       //       while performing I/O with a daemon.
       conn.close(); // Don't hold database connection while connecting to the daemon
-      content = daemonConnector.getAutoresponderContent(path);
+      content = DaemonHandler.callDaemon(daemonConnector, linuxServer, connector -> connector.getAutoresponderContent(path));
     }
     return content;
   }
@@ -1597,9 +1611,7 @@ public final class LinuxAccountHandler {
     }
     int linuxServer = getServerForUserServer(conn, userServer);
 
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getCronTable(user);
+    return DaemonHandler.callDaemon(conn, linuxServer, daemonConnector -> daemonConnector.getCronTable(user));
   }
 
   public static int getDisableLogForUser(DatabaseConnection conn, com.aoindustries.aoserv.client.linux.User.Name user) throws IOException, SQLException {
@@ -1720,9 +1732,7 @@ public final class LinuxAccountHandler {
     }
 
     int linuxServer = getServerForUserServer(conn, userServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    String crypted = daemonConnector.getEncryptedLinuxAccountPassword(user).getElement1();
+    String crypted = DaemonHandler.callDaemon(conn, linuxServer, daemonConnector -> daemonConnector.getEncryptedLinuxAccountPassword(user)).getElement1();
     return crypted.length() >= 2 && !User.NO_PASSWORD_CONFIG_VALUE.equals(crypted);
   }
 
@@ -1734,16 +1744,14 @@ public final class LinuxAccountHandler {
     checkAccessUserServer(conn, source, "isUserServerProcmailManual", userServer);
 
     int linuxServer = getServerForUserServer(conn, userServer);
-    if (DaemonHandler.isDaemonAvailable(linuxServer)) {
-      try {
-        AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-        conn.close(); // Don't hold database connection while connecting to the daemon
-        return daemonConnector.isProcmailManual(userServer) ? AoservProtocol.TRUE : AoservProtocol.FALSE;
-      } catch (IOException err) {
-        DaemonHandler.flagDaemonAsDown(linuxServer);
-        return AoservProtocol.SERVER_DOWN;
-      }
-    } else {
+    try {
+      return DaemonHandler.callDaemon(
+          conn,
+          linuxServer,
+          AoservProtocol.SERVER_DOWN,
+          daemonConnector -> daemonConnector.isProcmailManual(userServer) ? AoservProtocol.TRUE : AoservProtocol.FALSE
+      );
+    } catch (IOException err) {
       return AoservProtocol.SERVER_DOWN;
     }
   }
@@ -2228,7 +2236,7 @@ public final class LinuxAccountHandler {
       AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
       conn.commit();
       conn.close(); // Don't hold database connection while connecting to the daemon
-      daemonConnector.setAutoresponderContent(path, content == null ? "" : content, uid, gid);
+      DaemonHandler.runDaemon(daemonConnector, linuxServer, connector -> connector.setAutoresponderContent(path, content == null ? "" : content, uid, gid));
     }
 
     // Notify all clients of the update
@@ -2260,9 +2268,7 @@ public final class LinuxAccountHandler {
     }
     int linuxServer = getServerForUserServer(conn, userServer);
 
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.setCronTable(user, cronTable);
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.setCronTable(user, cronTable));
   }
 
   public static void setUserHomePhone(
@@ -2424,9 +2430,7 @@ public final class LinuxAccountHandler {
     Account.Name account = AccountUserHandler.getAccountForUser(conn, user);
     int linuxServer = getServerForUserServer(conn, userServer);
     try {
-      AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-      conn.close(); // Don't hold database connection while connecting to the daemon
-      daemonConnector.setLinuxServerAccountPassword(user, password);
+      DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.setLinuxServerAccountPassword(user, password));
     } catch (IOException | SQLException err) {
       System.err.println("Unable to set linux account password for " + user + " on " + linuxServer);
       throw err;
@@ -2685,9 +2689,7 @@ public final class LinuxAccountHandler {
   ) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "waitForLinuxAccountRebuild", linuxServer);
     NetHostHandler.waitForInvalidates(linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.waitForLinuxAccountRebuild();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.waitForLinuxAccountRebuild());
   }
 
   static boolean canGroupAccessServer(DatabaseConnection conn, RequestSource source, Group.Name group, int linuxServer) throws IOException, SQLException {
@@ -2803,11 +2805,11 @@ public final class LinuxAccountHandler {
   }
 
   public static int getServerForUserServer(DatabaseConnection conn, int userServer) throws IOException, SQLException {
-    return conn.queryInt("select ao_server from linux.\"UserServer\" where id=?", userServer);
+    return OwnershipIndex.getLinuxUserServer(conn, userServer).getHost();
   }
 
   public static int getServerForGroupServer(DatabaseConnection conn, int groupServer) throws IOException, SQLException {
-    return conn.queryInt("select ao_server from linux.\"GroupServer\" where id=?", groupServer);
+    return OwnershipIndex.getLinuxGroupServer(conn, groupServer).getHost();
   }
 
   public static IntList getServersForUser(DatabaseConnection conn, com.aoindustries.aoserv.client.linux.User.Name user) throws IOException, SQLException {
@@ -2914,18 +2916,7 @@ public final class LinuxAccountHandler {
   }
 
   public static Account.Name getPackageForGroupServer(DatabaseConnection conn, int groupServer) throws IOException, SQLException {
-    return conn.queryObject(
-        ObjectFactories.accountNameFactory,
-        "select\n"
-            + "  lg.package\n"
-            + "from\n"
-            + "  linux.\"GroupServer\" lsg,\n"
-            + "  linux.\"Group\" lg\n"
-            + "where\n"
-            + "  lsg.id=?\n"
-            + "  and lsg.name=lg.name",
-        groupServer
-    );
+    return OwnershipIndex.getLinuxGroupServer(conn, groupServer).getPackage();
   }
 
   public static int getGidForGroupServer(DatabaseConnection conn, int groupServer) throws IOException, SQLException {
@@ -2953,11 +2944,7 @@ public final class LinuxAccountHandler {
   }
 
   public static com.aoindustries.aoserv.client.linux.User.Name getUserForUserServer(DatabaseConnection conn, int userServer) throws IOException, SQLException {
-    return conn.queryObject(
-        ObjectFactories.linuxUserNameFactory,
-        "select username from linux.\"UserServer\" where id=?",
-        userServer
-    );
+    return OwnershipIndex.getLinuxUserServer(conn, userServer).getLinuxUser();
   }
 
   public static boolean comparePassword(
@@ -2983,11 +2970,7 @@ public final class LinuxAccountHandler {
     }
 
     // Perform the password comparison
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn,
-        getServerForUserServer(conn, userServer)
-    );
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.compareLinuxAccountPassword(user, password);
+    return DaemonHandler.callDaemon(conn, getServerForUserServer(conn, userServer), daemonConnector -> daemonConnector.compareLinuxAccountPassword(user, password));
   }
 
   public static void setPrimaryGroupUser(
@@ -0,0 +1,210 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import com.aoapps.collections.IntList;
+import com.aoindustries.aoserv.client.schema.Table;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Allocates Linux user and group IDs from an in-memory index of the IDs in use,
+ * handing out the lowest free ID within a server's range without scanning the
+ * database.
+ *
+ * <p>IDs are allocated unique to the entire system, for server portability
+ * between farms.  The IDs in use are kept as merged ranges, so finding the
+ * lowest free ID is a single ordered lookup.  The same index answers whether
+ * an ID is used anywhere, so most existence checks avoid the database.</p>
+ *
+ * <p>The index is loaded from the database on first use and reloaded after its
+ * table is invalidated, which picks up removed IDs and IDs assigned directly.
+ * It is loaded through a connection of its own, so nothing uncommitted in the
+ * requesting transaction is ever indexed.  IDs allocated or
+ * {@linkplain #markUsed(int) assigned} recently are retained across reloads,
+ * so an ID used by a transaction that has not yet committed is never
+ * allocated twice and is seen as used.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class LinuxIdAllocator {
+
+  /**
+   * The number of milliseconds an allocated ID is retained across reloads.
+   */
+  private static final long RECENT_RETENTION = 10L * 60 * 1000;
+
+  /**
+   * Allocates the UIDs of <code>linux."UserServer"</code>.
+   */
+  public static final LinuxIdAllocator uids = new LinuxIdAllocator(
+      "uid",
+      () -> MasterDatabase.getDatabase().queryIntList("select distinct uid from linux.\"UserServer\" order by uid"),
+      Table.TableId.LINUX_SERVER_ACCOUNTS
+  );
+
+  /**
+   * Allocates the GIDs of <code>linux."GroupServer"</code>.
+   */
+  public static final LinuxIdAllocator gids = new LinuxIdAllocator(
+      "gid",
+      () -> MasterDatabase.getDatabase().queryIntList("select distinct gid from linux.\"GroupServer\" order by gid"),
+      Table.TableId.LINUX_SERVER_GROUPS
+  );
+
+  /**
+   * Loads all IDs in use, through a connection other than any request's.
+   */
+  @FunctionalInterface
+  static interface Loader {
+    IntList load() throws IOException, SQLException;
+  }
+
+  private final String name;
+  private final Loader loader;
+  private final Table.TableId tableId;
+
+  /**
+   * The IDs in use, as a map from the first to the last ID of each range.
+   * Adjacent ranges are always merged.
+   */
+  private TreeMap<Integer, Integer> used;
+
+  /**
+   * The IDs allocated recently and the time, in nanoseconds, of their allocation.
+   */
+  private final Map<Integer, Long> recent = new LinkedHashMap<>();
+
+  LinuxIdAllocator(String name, Loader loader, Table.TableId tableId) {
+    this.name = name;
+    this.loader = loader;
+    this.tableId = tableId;
+  }
+
+  private void addUsed(int id) {
+    assert Thread.holdsLock(this);
+    Map.Entry<Integer, Integer> before = used.floorEntry(id);
+    if (before != null && before.getValue() >= id) {
+      // Already used
+      return;
+    }
+    int first = id;
+    int last = id;
+    if (before != null && before.getValue() == id - 1) {
+      first = before.getKey();
+    }
+    Integer afterLast = used.remove(id + 1);
+    if (afterLast != null) {
+      last = afterLast;
+    }
+    used.put(first, last);
+  }
+
+  private void load() throws IOException, SQLException {
+    assert Thread.holdsLock(this);
+    IntList ids = loader.load();
+    used = new TreeMap<>();
+    int size = ids.size();
+    for (int c = 0; c < size; c++) {
+      addUsed(ids.getInt(c));
+    }
+    long now = System.nanoTime();
+    Iterator<Map.Entry<Integer, Long>> iter = recent.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<Integer, Long> entry = iter.next();
+      if ((now - entry.getValue()) >= RECENT_RETENTION * 1000000L) {
+        iter.remove();
+      } else {
+        addUsed(entry.getKey());
+      }
+    }
+  }
+
+  /**
+   * Allocates the lowest ID in the given range that is not used anywhere in the system.
+   *
+   * @param  min  the lowest ID allowed, inclusive
+   * @param  max  the highest ID allowed, inclusive
+   */
+  public synchronized int allocate(int min, int max) throws IOException, SQLException {
+    if (used == null) {
+      load();
+    }
+    int id = min;
+    Map.Entry<Integer, Integer> range = used.floorEntry(id);
+    if (range != null && range.getValue() >= id) {
+      if (range.getValue() == Integer.MAX_VALUE) {
+        throw new SQLException("No free " + name + " in range " + min + " through " + max);
+      }
+      id = range.getValue() + 1;
+    }
+    if (id > max) {
+      throw new SQLException("No free " + name + " in range " + min + " through " + max);
+    }
+    addUsed(id);
+    recent.put(id, System.nanoTime());
+    return id;
+  }
+
+  /**
+   * Marks an ID assigned explicitly instead of by {@link #allocate(int, int)}
+   * as used, so it is seen as used by the rest of its transaction and is not
+   * allocated before its table is reloaded.
+   */
+  public synchronized void markUsed(int id) {
+    if (used != null) {
+      addUsed(id);
+    }
+    recent.put(id, System.nanoTime());
+  }
+
+  /**
+   * Determines if the given ID is used anywhere in the system, including IDs
+   * allocated recently.  When {@code false}, the ID is not used on any server.
+   */
+  public synchronized boolean isUsed(int id) throws IOException, SQLException {
+    if (used == null) {
+      load();
+    }
+    Map.Entry<Integer, Integer> range = used.floorEntry(id);
+    return range != null && range.getValue() >= id;
+  }
+
+  synchronized void invalidate() {
+    used = null;
+  }
+
+  public static void invalidateTable(Table.TableId tableId) {
+    if (tableId == uids.tableId) {
+      uids.invalidate();
+    }
+    if (tableId == gids.tableId) {
+      gids.invalidate();
+    }
+  }
+}
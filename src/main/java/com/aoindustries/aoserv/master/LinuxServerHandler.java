@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2003-2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2003-2013, 2014, 2015, 2016, 2017, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -35,8 +35,12 @@ import java.io.IOException;
 import java.io.InterruptedIOException;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 
 /**
  * The <code>LinuxServerHandler</code> handles all the accesses to the linux.Server table.
@@ -70,8 +74,55 @@ public final class LinuxServerHandler {
     return conn.queryInt("select \"gidMax\" from linux.\"Server\" where server=?", linuxServer);
   }
 
-  private static final Map<Integer, Object> mrtgLocks = new HashMap<>();
+  /**
+   * MRTG pages and graphs larger than this are not cached.
+   */
+  private static final int MRTG_CACHE_MAX_ENTRY_BYTES = 1024 * 1024;
 
+  /**
+   * The maximum total size of cached MRTG files.
+   */
+  private static final long MRTG_CACHE_MAX_BYTES = 16L * 1024 * 1024;
+
+  /**
+   * MRTG regenerates its graphs every five minutes.
+   */
+  private static final long MRTG_CACHE_TTL = 5L * 60 * 1000;
+
+  private static final DaemonFileCache<List<?>> mrtgCache = new DaemonFileCache<>(
+      MRTG_CACHE_MAX_ENTRY_BYTES,
+      MRTG_CACHE_MAX_BYTES,
+      MRTG_CACHE_TTL
+  );
+
+  /**
+   * Gets the cache of MRTG files.
+   */
+  public static DaemonFileCache<List<?>> getMrtgCache() {
+    return mrtgCache;
+  }
+
+  /**
+   * The number of seconds to wait for another MRTG transfer from the same server.
+   */
+  private static final int MRTG_TRANSFER_TIMEOUT = 15;
+
+  /**
+   * Only one MRTG transfer per server at a time.
+   */
+  private static final Map<Integer, Semaphore> mrtgTransferLocks = new HashMap<>();
+
+  private static Semaphore getMrtgTransferLock(int linuxServer) {
+    synchronized (mrtgTransferLocks) {
+      return mrtgTransferLocks.computeIfAbsent(linuxServer, s -> new Semaphore(1, true));
+    }
+  }
+
+  /**
+   * Concurrent requests for the same file share a single transfer from the daemon,
+   * and files are cached for the MRTG regeneration interval.  Transfers of
+   * different files from the same server are still performed one at a time.
+   */
   public static void getMrtgFile(
       DatabaseConnection conn,
       RequestSource source,
@@ -83,52 +134,45 @@ public final class LinuxServerHandler {
     if (filename.indexOf('/') != -1 || filename.contains("..")) {
       throw new SQLException("Invalidate filename: " + filename);
     }
-
-    // Only one MRTG graph per server at a time, if don't get the lock in 15 seconds, return an error
-    synchronized (mrtgLocks) {
-      long startTime = System.currentTimeMillis();
-      do {
-        if (mrtgLocks.containsKey(linuxServer)) {
-          long currentTime = System.currentTimeMillis();
-          if (startTime > currentTime) {
-            startTime = currentTime;
-          } else if ((currentTime - startTime) >= 15000) {
-            throw new IOException("15 second timeout reached while trying to get lock to access server #" + linuxServer);
-          } else {
-            try {
-              mrtgLocks.wait(startTime + 15000 - currentTime);
-            } catch (InterruptedException err) {
-              // Restore the interrupted status
-              Thread.currentThread().interrupt();
-              InterruptedIOException ioErr = new InterruptedIOException();
-              ioErr.initCause(err);
-              throw ioErr;
+    conn.close(); // Don't hold database connection while waiting for the cache
+    mrtgCache.get(
+        Arrays.asList(linuxServer, filename),
+        captureOut -> {
+          AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(MasterDatabase.getDatabase(), linuxServer);
+          Semaphore transferLock = getMrtgTransferLock(linuxServer);
+          try {
+            if (!transferLock.tryAcquire(MRTG_TRANSFER_TIMEOUT, TimeUnit.SECONDS)) {
+              throw new IOException(MRTG_TRANSFER_TIMEOUT + " second timeout reached while trying to get lock to access server #" + linuxServer);
             }
+          } catch (InterruptedException err) {
+            // Restore the interrupted status
+            Thread.currentThread().interrupt();
+            InterruptedIOException ioErr = new InterruptedIOException();
+            ioErr.initCause(err);
+            throw ioErr;
           }
-        }
-      } while (mrtgLocks.containsKey(linuxServer));
-      mrtgLocks.put(linuxServer, Boolean.TRUE);
-      mrtgLocks.notifyAll();
-    }
-    try {
-      if (DaemonHandler.isDaemonAvailable(linuxServer)) {
-        try {
-          AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-          conn.close(); // Don't hold database connection while connecting to the daemon
-          daemonConnector.getMrtgFile(filename, out);
-        } catch (IOException err) {
-          DaemonHandler.flagDaemonAsDown(linuxServer);
-          throw new IOException("Host Unavailable", err);
-        }
-      } else {
-        throw new IOException("Host Unavailable");
-      }
-    } finally {
-      synchronized (mrtgLocks) {
-        mrtgLocks.remove(linuxServer);
-        mrtgLocks.notifyAll();
-      }
-    }
+          boolean transferred;
+          try {
+            transferred = DaemonHandler.callDaemon(
+                daemonConnector,
+                linuxServer,
+                false,
+                connector -> {
+                  connector.getMrtgFile(filename, captureOut);
+                  return true;
+                }
+            );
+          } catch (IOException err) {
+            throw new IOException("Host Unavailable", err);
+          } finally {
+            transferLock.release();
+          }
+          if (!transferred) {
+            throw new IOException("Host Unavailable");
+          }
+        },
+        out
+    );
   }
 
   public static void setLastDistroTime(
@@ -170,9 +214,7 @@ public final class LinuxServerHandler {
       throw new SQLException("Only master users may start distribution verifications: " + source.getCurrentAdministrator());
     }
     NetHostHandler.checkAccessHost(conn, source, "startDistro", linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.startDistro(includeUser);
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.startDistro(includeUser));
   }
 
   public static void restartCron(
@@ -184,9 +226,7 @@ public final class LinuxServerHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to restart Cron on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.restartCron();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.restartCron());
   }
 
   public static void startCron(
@@ -198,9 +238,7 @@ public final class LinuxServerHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to start Cron on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.startCron();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.startCron());
   }
 
   public static void stopCron(
@@ -212,9 +250,7 @@ public final class LinuxServerHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to stop Cron on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.stopCron();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.stopCron());
   }
 
   public static void restartXfs(
@@ -226,9 +262,7 @@ public final class LinuxServerHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to restart XFS on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.restartXfs();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.restartXfs());
   }
 
   public static void startXfs(
@@ -240,9 +274,7 @@ public final class LinuxServerHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to start XFS on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.startXfs();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.startXfs());
   }
 
   public static void stopXfs(
@@ -254,9 +286,7 @@ public final class LinuxServerHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to stop XFS on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.stopXfs();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.stopXfs());
   }
 
   public static void restartXvfb(
@@ -268,9 +298,7 @@ public final class LinuxServerHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to restart Xvfb on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.restartXvfb();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.restartXvfb());
   }
 
   public static void startXvfb(
@@ -282,9 +310,7 @@ public final class LinuxServerHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to start Xvfb on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.startXvfb();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.startXvfb());
   }
 
   public static void stopXvfb(
@@ -296,95 +322,62 @@ public final class LinuxServerHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to stop Xvfb on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.stopXvfb();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.stopXvfb());
   }
 
   public static String get3wareRaidReport(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "get3wareRaidReport", linuxServer);
-
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.get3wareRaidReport();
+    return (String) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.RAID_3WARE);
   }
 
   public static String getUpsStatus(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getUpsStatus", linuxServer);
-
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getUpsStatus();
+    return (String) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.UPS_STATUS);
   }
 
   public static String getMdStatReport(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getMdStatReport", linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getMdStatReport();
+    return (String) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.MD_STAT);
   }
 
   public static String getMdMismatchReport(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getMdMismatchReport", linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getMdMismatchReport();
+    return (String) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.MD_MISMATCH);
   }
 
   public static String getDrbdReport(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getDrbdReport", linuxServer);
-
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getDrbdReport();
+    return (String) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.DRBD);
   }
 
   public static String[] getLvmReport(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getLvmReport", linuxServer);
-
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getLvmReport();
+    return ((String[]) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.LVM)).clone();
   }
 
   public static String getHddTempReport(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getHddTempReport", linuxServer);
-
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getHddTempReport();
+    return (String) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.HDD_TEMP);
   }
 
   public static String getHddModelReport(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getHddModelReport", linuxServer);
-
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getHddModelReport();
+    return (String) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.HDD_MODEL);
   }
 
   public static String getFilesystemsCsvReport(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getFilesystemsCsvReport", linuxServer);
-
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getFilesystemsCsvReport();
+    return (String) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.FILESYSTEMS_CSV);
   }
 
   public static String getLoadAvgReport(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getLoadAvgReport", linuxServer);
-
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getLoadAvgReport();
+    return (String) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.LOAD_AVG);
   }
 
   public static String getMemInfoReport(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getMemInfoReport", linuxServer);
-
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getMemInfoReport();
+    return (String) HealthReportCollector.get(conn, linuxServer, HealthReportCollector.Report.MEM_INFO);
   }
 
   public static String checkPort(
@@ -398,24 +391,18 @@ public final class LinuxServerHandler {
   ) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "checkPort", linuxServer);
 
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.checkPort(ipAddress, port, appProtocol, monitoringParameters);
+    return DaemonHandler.callDaemon(conn, linuxServer, daemonConnector -> daemonConnector.checkPort(ipAddress, port, appProtocol, monitoringParameters));
   }
 
   public static String checkSmtpBlacklist(DatabaseConnection conn, RequestSource source, int linuxServer, InetAddress sourceIp, InetAddress connectIp) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "checkSmtpBlacklist", linuxServer);
 
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.checkSmtpBlacklist(sourceIp, connectIp);
+    return DaemonHandler.callDaemon(conn, linuxServer, daemonConnector -> daemonConnector.checkSmtpBlacklist(sourceIp, connectIp));
   }
 
   public static long getSystemTimeMillis(DatabaseConnection conn, RequestSource source, int linuxServer) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "getSystemTimeMillis", linuxServer);
 
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getSystemTimeMillis();
+    return DaemonHandler.callDaemon(conn, linuxServer, daemonConnector -> daemonConnector.getSystemTimeMillis());
   }
 }
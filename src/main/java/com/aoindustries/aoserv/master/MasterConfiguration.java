@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -111,6 +111,11 @@ public final class MasterConfiguration {
     return ints;
   }
 
+  public static boolean isServiceWarmUpDeferred() throws IOException {
+    String s = getProperty("aoserv.master.services.defer_warm_up");
+    return s != null && s.length() > 0 && Boolean.parseBoolean(s);
+  }
+
   public static Account.Name getRootAccount() throws IOException {
     try {
       // TODO: Rename this property
@@ -217,4 +222,37 @@ public final class MasterConfiguration {
   public static String getEntropyPoolFilePath() throws IOException {
     return getProperty("aoserv.master.entropy.file.path");
   }
+
+  /**
+   * Gets the time, in milliseconds, a request may take before being logged as slow.
+   */
+  public static long getRequestSlowThreshold() throws IOException {
+    String s = getProperty("aoserv.master.request.slow_threshold");
+    return s == null || s.length() == 0 ? RequestStatistics.DEFAULT_SLOW_THRESHOLD : Long.parseLong(s);
+  }
+
+  /**
+   * Gets the time, in milliseconds, a status polled from a daemon is reused.
+   */
+  public static long getDaemonStatusCacheTtl() throws IOException {
+    String s = getProperty("aoserv.master.daemon.status_cache_ttl");
+    return s == null || s.length() == 0 ? DaemonStatusCache.DEFAULT_TTL : Long.parseLong(s);
+  }
+
+  /**
+   * Gets the number of concurrent virtual disk verifications allowed per physical server.
+   */
+  public static int getVirtualDiskVerifyConcurrency() throws IOException {
+    String s = getProperty("aoserv.master.virtual_disk.verify_concurrency");
+    return s == null || s.length() == 0 ? VirtualDiskVerifier.DEFAULT_CONCURRENCY : Integer.parseInt(s);
+  }
+
+  /**
+   * Gets the day of the week, as {@link java.util.Calendar#DAY_OF_WEEK}, all virtual
+   * disks are verified or {@code -1} when scheduled verification is disabled.
+   */
+  public static int getVirtualDiskVerifyDayOfWeek() throws IOException {
+    String s = getProperty("aoserv.master.virtual_disk.verify_day_of_week");
+    return s == null || s.length() == 0 ? -1 : Integer.parseInt(s);
+  }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2018, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -35,9 +35,22 @@ import java.util.Collections;
 // TODO: Finally, use the service manager for AoservDaemon, and monitor, too
 public interface MasterService {
 
+  /**
+   * The classes or interfaces of the services that must be started before
+   * this service is started.  A dependency with no matching services is
+   * considered satisfied.
+   *
+   * <p>Services with no unstarted dependencies are started concurrently.
+   * When a dependency fails to start, this service is not started until the
+   * dependency is successfully retried.</p>
+   */
+  default Iterable<Class<?>> getDependencies() {
+    return Collections.emptyList();
+  }
+
   /**
    * Once all the services have been loaded and instantiated, they are all
-   * started in dependency (TODO: in dependency order?).
+   * started in dependency order, as declared by {@link #getDependencies()}.
    *
    * <p>Once the master server has attempted to start each service at least once,
    * it will then proceed to accept incoming connections.</p>
@@ -54,6 +67,21 @@ public interface MasterService {
     // Do nothing
   }
 
+  /**
+   * Performs any work that is not required for the service to be considered
+   * started, such as an initial synchronization or loading of caches.  This is
+   * called once after a successful {@link #start()}.
+   *
+   * <p>By default, warm-up completes before the master server accepts incoming
+   * connections.  It may instead be deferred until after the master server is
+   * accepting connections.  Failures are logged and not retried.</p>
+   *
+   * @see  MasterConfiguration#isServiceWarmUpDeferred()
+   */
+  default void warmUp() throws Exception {
+    // Do nothing
+  }
+
   /**
    * In order the reduce the number of services listed in /META-INF/services,
    * a handler may provide a set of {@link TableHandler.GetObjectHandler}.
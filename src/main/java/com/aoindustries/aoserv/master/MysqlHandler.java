@@ -42,7 +42,6 @@ import com.aoindustries.aoserv.client.mysql.UserServer;
 import com.aoindustries.aoserv.client.password.PasswordChecker;
 import com.aoindustries.aoserv.client.schema.AoservProtocol;
 import com.aoindustries.aoserv.client.schema.Table;
-import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -462,18 +461,17 @@ public final class MysqlHandler {
 
     int mysqlServer = getServerForDatabase(conn, database);
     int linuxServer = getLinuxServerForServer(conn, mysqlServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.dumpMysqlDatabase(
+    StreamableOutput clientOut = new StreamableOutput(DaemonHandler.getClientOutput(out));
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.dumpMysqlDatabase(
         database,
         gzip,
         dumpSize -> {
           if (source.getProtocolVersion().compareTo(AoservProtocol.Version.VERSION_1_80_0) >= 0) {
-            out.writeLong(dumpSize);
+            clientOut.writeLong(dumpSize);
           }
         },
-        out
-    );
+        clientOut
+    ));
   }
 
   public static void enableUserServer(
@@ -690,9 +688,7 @@ public final class MysqlHandler {
 
     int mysqlServer = getServerForUserServer(conn, userServer);
     int linuxServer = getLinuxServerForServer(conn, mysqlServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    String password = daemonConnector.getEncryptedMysqlUserPassword(mysqlServer, user);
+    String password = DaemonHandler.callDaemon(conn, linuxServer, daemonConnector -> daemonConnector.getEncryptedMysqlUserPassword(mysqlServer, user));
     return !com.aoindustries.aoserv.client.mysql.User.NO_PASSWORD_DB_VALUE.equals(password);
   }
 
@@ -990,9 +986,7 @@ public final class MysqlHandler {
     // Contact the daemon for the update
     int mysqlServer = getServerForUserServer(conn, userServer);
     int linuxServer = getLinuxServerForServer(conn, mysqlServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.setMysqlUserPassword(mysqlServer, mu, password);
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.setMysqlUserPassword(mysqlServer, mu, password));
   }
 
   public static void setUserServerPredisablePassword(
@@ -1045,9 +1039,7 @@ public final class MysqlHandler {
   ) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "waitForDatabaseRebuild", linuxServer);
     NetHostHandler.waitForInvalidates(linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.waitForMysqlDatabaseRebuild();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.waitForMysqlDatabaseRebuild());
   }
 
   /**
@@ -1060,9 +1052,7 @@ public final class MysqlHandler {
   ) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "waitForDatabaseUserRebuild", linuxServer);
     NetHostHandler.waitForInvalidates(linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.waitForMysqlDbUserRebuild();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.waitForMysqlDbUserRebuild());
   }
 
   public static void waitForServerRebuild(
@@ -1072,9 +1062,7 @@ public final class MysqlHandler {
   ) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "waitForServerRebuild", linuxServer);
     NetHostHandler.waitForInvalidates(linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.waitForMysqlServerRebuild();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.waitForMysqlServerRebuild());
   }
 
   /**
@@ -1087,9 +1075,7 @@ public final class MysqlHandler {
   ) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "waitForUserRebuild", linuxServer);
     NetHostHandler.waitForInvalidates(linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.waitForMysqlUserRebuild();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.waitForMysqlUserRebuild());
   }
 
   public static Account.Name getAccountForDatabase(DatabaseConnection conn, int database) throws IOException, SQLException {
@@ -1215,9 +1201,7 @@ public final class MysqlHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to restart MySQL on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.restartMysql(mysqlServer);
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.restartMysql(mysqlServer));
   }
 
   public static void startServer(
@@ -1230,9 +1214,7 @@ public final class MysqlHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to start MySQL on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.startMysql(mysqlServer);
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.startMysql(mysqlServer));
   }
 
   public static void stopServer(
@@ -1245,9 +1227,7 @@ public final class MysqlHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to stop MySQL on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.stopMysql(mysqlServer);
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.stopMysql(mysqlServer));
   }
 
   public static void getMasterStatus(
@@ -1260,9 +1240,7 @@ public final class MysqlHandler {
     // Check access
     checkAccessServer(conn, source, "getMasterStatus", mysqlServer);
     int linuxServer = getLinuxServerForServer(conn, mysqlServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    Server.MasterStatus masterStatus = daemonConnector.getMysqlMasterStatus(mysqlServer);
+    Server.MasterStatus masterStatus = DaemonHandler.callDaemon(conn, linuxServer, daemonConnector -> daemonConnector.getMysqlMasterStatus(mysqlServer));
     if (masterStatus == null) {
       out.writeByte(AoservProtocol.DONE);
     } else {
@@ -1319,9 +1297,7 @@ public final class MysqlHandler {
       }
     }
     Tuple2<Server.Name, Port> serverNameAndPort = getNameAndPortForServer(conn, mysqlServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, daemonServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    MysqlReplication.SlaveStatus slaveStatus = daemonConnector.getMysqlSlaveStatus(chrootPath, osv, serverNameAndPort.getElement1(), serverNameAndPort.getElement2());
+    MysqlReplication.SlaveStatus slaveStatus = DaemonHandler.callDaemon(conn, daemonServer, daemonConnector -> daemonConnector.getMysqlSlaveStatus(chrootPath, osv, serverNameAndPort.getElement1(), serverNameAndPort.getElement2()));
     if (slaveStatus == null) {
       out.writeByte(AoservProtocol.DONE);
     } else {
@@ -1407,9 +1383,7 @@ public final class MysqlHandler {
     }
     Tuple2<Server.Name, Port> serverNameAndPort = getNameAndPortForServer(conn, mysqlServer);
     Database.Name databaseName = getNameForDatabase(conn, database);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, daemonServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    List<Database.TableStatus> tableStatuses = daemonConnector.getMysqlTableStatus(chrootPath, osv, serverNameAndPort.getElement1(), serverNameAndPort.getElement2(), databaseName);
+    List<Database.TableStatus> tableStatuses = DaemonHandler.callDaemon(conn, daemonServer, daemonConnector -> daemonConnector.getMysqlTableStatus(chrootPath, osv, serverNameAndPort.getElement1(), serverNameAndPort.getElement2(), databaseName));
     out.writeByte(AoservProtocol.NEXT);
     int size = tableStatuses.size();
     out.writeCompressedInt(size);
@@ -1501,9 +1475,7 @@ public final class MysqlHandler {
     }
     Tuple2<Server.Name, Port> serverNameAndPort = getNameAndPortForServer(conn, mysqlServer);
     Database.Name databaseName = getNameForDatabase(conn, database);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, daemonServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    List<Database.CheckTableResult> checkTableResults = daemonConnector.checkMysqlTables(chrootPath, osv, serverNameAndPort.getElement1(), serverNameAndPort.getElement2(), databaseName, tableNames);
+    List<Database.CheckTableResult> checkTableResults = DaemonHandler.callDaemon(conn, daemonServer, daemonConnector -> daemonConnector.checkMysqlTables(chrootPath, osv, serverNameAndPort.getElement1(), serverNameAndPort.getElement2(), databaseName, tableNames));
     out.writeByte(AoservProtocol.NEXT);
     int size = checkTableResults.size();
     out.writeCompressedInt(size);
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2008-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2008-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -24,7 +24,6 @@
 package com.aoindustries.aoserv.master;
 
 import com.aoapps.dbc.DatabaseConnection;
-import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
 import java.io.IOException;
 import java.sql.SQLException;
 
@@ -47,9 +46,7 @@ public final class NetDeviceHandler {
     }
     NetHostHandler.checkAccessHost(conn, source, "getDeviceBondingReport", host);
 
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, host);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getNetDeviceBondingReport(device);
+    return DaemonHandler.callDaemon(conn, host, daemonConnector -> daemonConnector.getNetDeviceBondingReport(device));
   }
 
   public static String getDeviceStatisticsReport(DatabaseConnection conn, RequestSource source, int device) throws IOException, SQLException {
@@ -59,9 +56,7 @@ public final class NetDeviceHandler {
     }
     NetHostHandler.checkAccessHost(conn, source, "getDeviceStatisticsReport", host);
 
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, host);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getNetDeviceStatisticsReport(device);
+    return DaemonHandler.callDaemon(conn, host, daemonConnector -> daemonConnector.getNetDeviceStatisticsReport(device));
   }
 
   public static int getHostForDevice(DatabaseConnection conn, int device) throws IOException, SQLException {
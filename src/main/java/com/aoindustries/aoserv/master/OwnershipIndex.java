@@ -0,0 +1,453 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import com.aoapps.dbc.DatabaseAccess;
+import com.aoapps.dbc.DatabaseConnection;
+import com.aoapps.lang.validation.ValidationException;
+import com.aoindustries.aoserv.client.account.Account;
+import com.aoindustries.aoserv.client.linux.User;
+import com.aoindustries.aoserv.client.schema.Table;
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An in-memory index of the ownership of rows that are frequently access checked:
+ * the host and package of sites, httpd servers, shared Tomcats, Linux
+ * group and user servers, and file replications.
+ *
+ * <p>Each table is loaded in bulk by a background task on first use, and
+ * discarded when any table it depends on is invalidated.  Bulk loads use their
+ * own connection, so rows written by a transaction that has not committed, and
+ * may yet roll back, are never cached.  Request threads never acquire a second
+ * connection: until the load completes, and for any row missing from the index
+ * (such as one inserted earlier in the current transaction), the row is
+ * looked-up through the caller's connection and not cached.  The host and
+ * package of these rows are never updated, only inserted or deleted.  The
+ * account of each package is already cached by {@link PackageHandler}.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class OwnershipIndex {
+
+  private static final Logger logger = Logger.getLogger(OwnershipIndex.class.getName());
+
+  /** Make no instances. */
+  private OwnershipIndex() {
+    throw new AssertionError();
+  }
+
+  /**
+   * The ownership of a single row.
+   */
+  public static final class Owner {
+
+    private final int host;
+    private final Account.Name packageName;
+    private final int linuxGroupServer;
+    private final User.Name linuxUser;
+
+    Owner(int host, Account.Name packageName, int linuxGroupServer, User.Name linuxUser) {
+      this.host = host;
+      this.packageName = packageName;
+      this.linuxGroupServer = linuxGroupServer;
+      this.linuxUser = linuxUser;
+    }
+
+    /**
+     * Gets the host the row resides on.
+     */
+    public int getHost() {
+      return host;
+    }
+
+    /**
+     * Gets the package that owns the row or {@code null} when ownership is not by package.
+     */
+    public Account.Name getPackage() {
+      return packageName;
+    }
+
+    /**
+     * Gets the Linux group server of a shared Tomcat or {@code -1} for all other rows.
+     */
+    public int getLinuxGroupServer() {
+      return linuxGroupServer;
+    }
+
+    /**
+     * Gets the Linux user of a Linux user server or {@code null} for all other rows.
+     */
+    public User.Name getLinuxUser() {
+      return linuxUser;
+    }
+  }
+
+  private static final LongAdder hits = new LongAdder();
+  private static final LongAdder misses = new LongAdder();
+  private static final LongAdder loads = new LongAdder();
+
+  /**
+   * The index of a single table.
+   */
+  static final class Index {
+
+    /**
+     * Loads all rows of the table, through a connection other than any request's.
+     */
+    @FunctionalInterface
+    static interface Loader {
+      Map<Integer, Owner> load() throws IOException, SQLException;
+    }
+
+    /**
+     * Looks-up a single row through the caller's connection, {@code null} when not found.
+     */
+    @FunctionalInterface
+    static interface Lookup {
+      Owner lookup(DatabaseAccess db, int id) throws IOException, SQLException;
+    }
+
+    private final String name;
+    private final Loader loader;
+    private final Lookup lookup;
+    private final Executor executor;
+    private final Table.TableId[] dependencies;
+
+    /**
+     * Incremented on each invalidation, so a load that was running during an
+     * invalidation is not retained.
+     */
+    private int generation;
+    private Map<Integer, Owner> owners;
+
+    /**
+     * Set while a load is scheduled or running, so concurrent misses schedule only one load.
+     */
+    private boolean loading;
+
+    Index(String name, Loader loader, Lookup lookup, Executor executor, Table.TableId ... dependencies) {
+      this.name = name;
+      this.loader = loader;
+      this.lookup = lookup;
+      this.executor = executor;
+      this.dependencies = dependencies;
+    }
+
+    void invalidateTable(Table.TableId tableId) {
+      for (Table.TableId dependency : dependencies) {
+        if (dependency == tableId) {
+          synchronized (this) {
+            generation++;
+            owners = null;
+          }
+          return;
+        }
+      }
+    }
+
+    private void scheduleLoad() {
+      int loadGeneration;
+      synchronized (this) {
+        if (owners != null || loading) {
+          return;
+        }
+        loading = true;
+        loadGeneration = generation;
+      }
+      boolean submitted = false;
+      try {
+        executor.execute(() -> load(loadGeneration));
+        submitted = true;
+      } finally {
+        if (!submitted) {
+          synchronized (this) {
+            loading = false;
+          }
+        }
+      }
+    }
+
+    @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+    private void load(int loadGeneration) {
+      try {
+        Map<Integer, Owner> loaded = Collections.unmodifiableMap(loader.load());
+        loads.increment();
+        synchronized (this) {
+          if (generation == loadGeneration) {
+            owners = loaded;
+          }
+        }
+      } catch (Throwable t) {
+        logger.log(Level.SEVERE, null, t);
+      } finally {
+        synchronized (this) {
+          loading = false;
+        }
+      }
+    }
+
+    Owner get(DatabaseAccess db, int id) throws IOException, SQLException {
+      Map<Integer, Owner> map;
+      synchronized (this) {
+        map = owners;
+      }
+      if (map == null) {
+        scheduleLoad();
+      } else {
+        Owner owner = map.get(id);
+        if (owner != null) {
+          hits.increment();
+          return owner;
+        }
+      }
+      // Not loaded or not yet in the index, likely inserted in this transaction, so query through the caller's transaction
+      misses.increment();
+      Owner found = lookup.lookup(db, id);
+      if (found == null) {
+        throw new SQLException("Unable to find " + name + ": " + id);
+      }
+      return found;
+    }
+  }
+
+  /**
+   * Creates the index of a table.  Every query selects the columns
+   * {@code id, ao_server, package, linux_server_group, username},
+   * with {@code null} for those that do not apply.
+   */
+  private static Index newIndex(String name, String sql, Table.TableId ... dependencies) {
+    return new Index(
+        name,
+        () -> {
+          try (DatabaseConnection loadConn = MasterDatabase.getDatabase().connect()) {
+            return loadConn.queryCall(
+                results -> {
+                  try {
+                    Map<Integer, Owner> map = new HashMap<>();
+                    while (results.next()) {
+                      map.put(results.getInt(1), readOwner(results));
+                    }
+                    return map;
+                  } catch (ValidationException e) {
+                    throw new SQLException(e);
+                  }
+                },
+                sql
+            );
+          }
+        },
+        (db, id) -> db.queryCall(
+            results -> {
+              try {
+                return results.next() ? readOwner(results) : null;
+              } catch (ValidationException e) {
+                throw new SQLException(e);
+              }
+            },
+            "select * from (" + sql + ") o where o.id=?",
+            id
+        ),
+        task -> AoservMaster.executorService.submit(task),
+        dependencies
+    );
+  }
+
+  private static Owner readOwner(ResultSet results) throws SQLException, ValidationException {
+    int host = results.getInt(2);
+    String packageName = results.getString(3);
+    int linuxGroupServer = results.getInt(4);
+    if (results.wasNull()) {
+      linuxGroupServer = -1;
+    }
+    String linuxUser = results.getString(5);
+    return new Owner(
+        host,
+        packageName == null ? null : Account.Name.valueOf(packageName),
+        linuxGroupServer,
+        linuxUser == null ? null : User.Name.valueOf(linuxUser)
+    );
+  }
+
+  private static final Index sites = newIndex(
+      "web.Site",
+      "select\n"
+          + "  id,\n"
+          + "  ao_server,\n"
+          + "  package,\n"
+          + "  null::integer as linux_server_group,\n"
+          + "  null::text as username\n"
+          + "from\n"
+          + "  web.\"Site\"",
+      Table.TableId.HTTPD_SITES
+  );
+
+  private static final Index httpdServers = newIndex(
+      "web.HttpdServer",
+      "select\n"
+          + "  hs.id,\n"
+          + "  hs.ao_server,\n"
+          + "  pk.name as package,\n"
+          + "  null::integer as linux_server_group,\n"
+          + "  null::text as username\n"
+          + "from\n"
+          + "  web.\"HttpdServer\" hs\n"
+          + "  inner join billing.\"Package\" pk on hs.package=pk.id",
+      Table.TableId.HTTPD_SERVERS,
+      Table.TableId.PACKAGES
+  );
+
+  private static final Index sharedTomcats = newIndex(
+      "web.tomcat.SharedTomcat",
+      "select\n"
+          + "  hst.id,\n"
+          + "  hst.ao_server,\n"
+          + "  lg.package,\n"
+          + "  hst.linux_server_group,\n"
+          + "  null::text as username\n"
+          + "from\n"
+          + "  \"web.tomcat\".\"SharedTomcat\" hst\n"
+          + "  inner join linux.\"GroupServer\" lsg on hst.linux_server_group=lsg.id\n"
+          + "  inner join linux.\"Group\" lg on lsg.name=lg.name",
+      Table.TableId.HTTPD_SHARED_TOMCATS,
+      Table.TableId.LINUX_SERVER_GROUPS,
+      Table.TableId.LINUX_GROUPS
+  );
+
+  private static final Index linuxGroupServers = newIndex(
+      "linux.GroupServer",
+      "select\n"
+          + "  lsg.id,\n"
+          + "  lsg.ao_server,\n"
+          + "  lg.package,\n"
+          + "  null::integer as linux_server_group,\n"
+          + "  null::text as username\n"
+          + "from\n"
+          + "  linux.\"GroupServer\" lsg\n"
+          + "  inner join linux.\"Group\" lg on lsg.name=lg.name",
+      Table.TableId.LINUX_SERVER_GROUPS,
+      Table.TableId.LINUX_GROUPS
+  );
+
+  private static final Index linuxUserServers = newIndex(
+      "linux.UserServer",
+      "select\n"
+          + "  id,\n"
+          + "  ao_server,\n"
+          + "  null::text as package,\n"
+          + "  null::integer as linux_server_group,\n"
+          + "  username\n"
+          + "from\n"
+          + "  linux.\"UserServer\"",
+      Table.TableId.LINUX_SERVER_ACCOUNTS
+  );
+
+  /**
+   * The package of a file replication is the package of the host being replicated.
+   */
+  private static final Index fileReplications = newIndex(
+      "backup.FileReplication",
+      "select\n"
+          + "  ffr.id,\n"
+          + "  ffr.server as ao_server,\n"
+          + "  pk.name as package,\n"
+          + "  null::integer as linux_server_group,\n"
+          + "  null::text as username\n"
+          + "from\n"
+          + "  backup.\"FileReplication\" ffr\n"
+          + "  inner join net.\"Host\" se on ffr.server=se.id\n"
+          + "  inner join billing.\"Package\" pk on se.package=pk.id",
+      Table.TableId.FAILOVER_FILE_REPLICATIONS,
+      Table.TableId.SERVERS,
+      Table.TableId.PACKAGES
+  );
+
+  private static final Index[] indexes = {
+      sites,
+      httpdServers,
+      sharedTomcats,
+      linuxGroupServers,
+      linuxUserServers,
+      fileReplications
+  };
+
+  public static Owner getSite(DatabaseAccess db, int site) throws IOException, SQLException {
+    return sites.get(db, site);
+  }
+
+  public static Owner getHttpdServer(DatabaseAccess db, int httpdServer) throws IOException, SQLException {
+    return httpdServers.get(db, httpdServer);
+  }
+
+  public static Owner getSharedTomcat(DatabaseAccess db, int sharedTomcat) throws IOException, SQLException {
+    return sharedTomcats.get(db, sharedTomcat);
+  }
+
+  public static Owner getLinuxGroupServer(DatabaseAccess db, int groupServer) throws IOException, SQLException {
+    return linuxGroupServers.get(db, groupServer);
+  }
+
+  public static Owner getLinuxUserServer(DatabaseAccess db, int userServer) throws IOException, SQLException {
+    return linuxUserServers.get(db, userServer);
+  }
+
+  public static Owner getFileReplication(DatabaseAccess db, int fileReplication) throws IOException, SQLException {
+    return fileReplications.get(db, fileReplication);
+  }
+
+  /**
+   * Gets the number of lookups answered from the index.
+   */
+  public static long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of lookups not found in the index and queried directly.
+   */
+  public static long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the number of bulk loads performed.
+   */
+  public static long getLoads() {
+    return loads.sum();
+  }
+
+  public static void invalidateTable(Table.TableId tableId) {
+    for (Index index : indexes) {
+      index.invalidateTable(tableId);
+    }
+  }
+}
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,20 +23,41 @@
 
 package com.aoindustries.aoserv.master;
 
+import com.aoapps.cron.CronDaemon;
+import com.aoapps.cron.CronJob;
+import com.aoapps.cron.Schedule;
 import com.aoapps.dbc.DatabaseConnection;
 import com.aoindustries.aoserv.client.account.Account;
 import com.aoindustries.aoserv.client.master.User;
+import com.aoindustries.aoserv.client.monitoring.AlertLevel;
 import com.aoindustries.aoserv.client.pki.Certificate;
+import com.aoindustries.aoserv.client.schema.Table;
 import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 /**
  * @author  AO Industries, Inc.
  */
 public final class PkiCertificateHandler {
 
+  private static final Logger logger = Logger.getLogger(PkiCertificateHandler.class.getName());
+
   /** Make no instances. */
   private PkiCertificateHandler() {
     throw new AssertionError();
@@ -69,6 +90,97 @@ public final class PkiCertificateHandler {
     );
   }
 
+  /**
+   * The number of milliseconds results are cached when no check reported an alert.
+   */
+  private static final long CHECK_CACHE_TTL = 15L * 60 * 1000;
+
+  /**
+   * The number of milliseconds results are cached when any check reported an
+   * alert, such as a certificate nearing the end of its validity window, so
+   * renewals are noticed promptly.
+   */
+  private static final long CHECK_CACHE_ALERT_TTL = 60L * 1000;
+
+  /**
+   * The maximum number of concurrent certificate checks per server during a bulk check.
+   */
+  private static final int BULK_CHECK_CONCURRENCY = 4;
+
+  private static final class CachedCheck {
+
+    private final List<Certificate.Check> results;
+    private final long expiresNanos;
+
+    private CachedCheck(List<Certificate.Check> results, long expiresNanos) {
+      this.results = results;
+      this.expiresNanos = expiresNanos;
+    }
+  }
+
+  private static final Map<Integer, CachedCheck> checkCache = new HashMap<>();
+
+  private static final LongAdder checkCacheHits = new LongAdder();
+  private static final LongAdder checkCacheMisses = new LongAdder();
+
+  /**
+   * Gets the number of certificate checks answered from the master cache.
+   */
+  public static long getCheckCacheHits() {
+    return checkCacheHits.sum();
+  }
+
+  /**
+   * Gets the number of certificate checks sent to the daemons.
+   */
+  public static long getCheckCacheMisses() {
+    return checkCacheMisses.sum();
+  }
+
+  private static List<Certificate.Check> getCachedCheck(int certificate) {
+    synchronized (checkCache) {
+      CachedCheck cached = checkCache.get(certificate);
+      if (cached != null) {
+        if ((System.nanoTime() - cached.expiresNanos) < 0) {
+          checkCacheHits.increment();
+          return cached.results;
+        }
+        checkCache.remove(certificate);
+      }
+      return null;
+    }
+  }
+
+  /**
+   * Checks a certificate on its daemon, caching the results.
+   */
+  private static List<Certificate.Check> checkDaemon(
+      AoservDaemonConnector daemonConnector,
+      int linuxServer,
+      int certificate,
+      boolean allowCached
+  ) throws IOException, SQLException {
+    checkCacheMisses.increment();
+    List<Certificate.Check> results = Collections.unmodifiableList(
+        new ArrayList<>(DaemonHandler.callDaemon(daemonConnector, linuxServer, connector -> connector.checkSslCertificate(certificate, allowCached)))
+    );
+    long ttl = CHECK_CACHE_TTL;
+    for (Certificate.Check check : results) {
+      if (check.getAlertLevel() != AlertLevel.NONE) {
+        ttl = CHECK_CACHE_ALERT_TTL;
+        break;
+      }
+    }
+    synchronized (checkCache) {
+      checkCache.put(certificate, new CachedCheck(results, System.nanoTime() + ttl * 1000000L));
+    }
+    return results;
+  }
+
+  /**
+   * Checks a certificate.  When {@code allowCached}, recent results are
+   * answered from the master without contacting the daemon.
+   */
   public static List<Certificate.Check> check(
       DatabaseConnection conn,
       RequestSource source,
@@ -77,11 +189,253 @@ public final class PkiCertificateHandler {
   ) throws IOException, SQLException {
     // Check access
     checkAccessCertificate(conn, source, "check", certificate);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(
-        conn,
-        getLinuxServerForCertificate(conn, certificate)
-    );
+    if (allowCached) {
+      List<Certificate.Check> cached = getCachedCheck(certificate);
+      if (cached != null) {
+        return cached;
+      }
+    }
+    int linuxServer = getLinuxServerForCertificate(conn, certificate);
+    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
     conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.checkSslCertificate(certificate, allowCached);
+    return checkDaemon(daemonConnector, linuxServer, certificate, allowCached);
+  }
+
+  /**
+   * The checks waiting for, and the number of checks running on, one server.
+   */
+  private static final class BulkCheckQueue {
+
+    private final Deque<Runnable> queued = new ArrayDeque<>();
+    private int running;
+  }
+
+  /**
+   * The bulk check queues by server, shared by all bulk checks so that together
+   * they run at most {@link #BULK_CHECK_CONCURRENCY} concurrent checks per server.
+   * Only running checks occupy executor threads.
+   */
+  private static final Map<Integer, BulkCheckQueue> bulkCheckQueues = new HashMap<>();
+
+  private static void dispatchBulkChecks(int linuxServer, BulkCheckQueue queue) {
+    assert Thread.holdsLock(bulkCheckQueues);
+    while (queue.running < BULK_CHECK_CONCURRENCY && !queue.queued.isEmpty()) {
+      Runnable check = queue.queued.removeFirst();
+      queue.running++;
+      AoservMaster.executorService.submit(() -> {
+        try {
+          check.run();
+        } finally {
+          synchronized (bulkCheckQueues) {
+            queue.running--;
+            dispatchBulkChecks(linuxServer, queue);
+          }
+        }
+      });
+    }
+    if (queue.running == 0) {
+      bulkCheckQueues.remove(linuxServer, queue);
+    }
+  }
+
+  /**
+   * Queues checks on the daemons, grouped by server.
+   *
+   * @return  the future result of each certificate
+   */
+  private static Map<Integer, CompletableFuture<List<Certificate.Check>>> submitBulkChecks(
+      DatabaseConnection conn,
+      Map<Integer, List<Integer>> toCheck,
+      boolean allowCached
+  ) throws IOException, SQLException {
+    Map<Integer, AoservDaemonConnector> daemonConnectors = new HashMap<>();
+    for (int linuxServer : toCheck.keySet()) {
+      daemonConnectors.put(linuxServer, DaemonHandler.getDaemonConnector(conn, linuxServer));
+    }
+    conn.close(); // Don't hold database connection while connecting to the daemons
+
+    Map<Integer, CompletableFuture<List<Certificate.Check>>> futures = new HashMap<>();
+    synchronized (bulkCheckQueues) {
+      for (Map.Entry<Integer, List<Integer>> entry : toCheck.entrySet()) {
+        int linuxServer = entry.getKey();
+        AoservDaemonConnector daemonConnector = daemonConnectors.get(linuxServer);
+        BulkCheckQueue queue = bulkCheckQueues.computeIfAbsent(linuxServer, s -> new BulkCheckQueue());
+        for (int certificate : entry.getValue()) {
+          CompletableFuture<List<Certificate.Check>> future = new CompletableFuture<>();
+          futures.put(certificate, future);
+          queue.queued.addLast(() -> {
+            try {
+              future.complete(checkDaemon(daemonConnector, linuxServer, certificate, allowCached));
+            } catch (Throwable t) {
+              future.completeExceptionally(t);
+            }
+          });
+        }
+        dispatchBulkChecks(linuxServer, queue);
+      }
+    }
+    return futures;
+  }
+
+  private static List<Certificate.Check> getBulkCheck(CompletableFuture<List<Certificate.Check>> future) throws IOException, SQLException {
+    try {
+      return future.get();
+    } catch (InterruptedException err) {
+      // Restore the interrupted status
+      Thread.currentThread().interrupt();
+      InterruptedIOException ioErr = new InterruptedIOException();
+      ioErr.initCause(err);
+      throw ioErr;
+    } catch (ExecutionException err) {
+      Throwable cause = err.getCause();
+      if (cause instanceof RuntimeException) {
+        throw (RuntimeException) cause;
+      }
+      if (cause instanceof Error) {
+        throw (Error) cause;
+      }
+      if (cause instanceof SQLException) {
+        throw new SQLException(cause.getMessage(), cause);
+      }
+      throw new IOException(cause.getMessage(), cause);
+    }
+  }
+
+  /**
+   * Checks many certificates at once.  Certificates not answered from the
+   * cache are checked in parallel across servers, with at most
+   * {@link #BULK_CHECK_CONCURRENCY} concurrent checks per server.
+   *
+   * @return  the results of each certificate, in the iteration order of {@code certificates}
+   */
+  public static Map<Integer, List<Certificate.Check>> check(
+      DatabaseConnection conn,
+      RequestSource source,
+      Collection<Integer> certificates,
+      boolean allowCached
+  ) throws IOException, SQLException {
+    Map<Integer, List<Certificate.Check>> cachedResults = new HashMap<>();
+    // Grouped by server
+    Map<Integer, List<Integer>> toCheck = new HashMap<>();
+    for (int certificate : certificates) {
+      // Check access
+      checkAccessCertificate(conn, source, "check", certificate);
+      List<Certificate.Check> cached = allowCached ? getCachedCheck(certificate) : null;
+      if (cached != null) {
+        cachedResults.put(certificate, cached);
+      } else {
+        toCheck.computeIfAbsent(
+            getLinuxServerForCertificate(conn, certificate),
+            linuxServer -> new ArrayList<>()
+        ).add(certificate);
+      }
+    }
+    Map<Integer, CompletableFuture<List<Certificate.Check>>> futures = submitBulkChecks(conn, toCheck, allowCached);
+    Map<Integer, List<Certificate.Check>> results = new LinkedHashMap<>();
+    for (int certificate : certificates) {
+      List<Certificate.Check> result = cachedResults.get(certificate);
+      if (result == null) {
+        result = getBulkCheck(futures.get(certificate));
+      }
+      results.put(certificate, result);
+    }
+    return results;
+  }
+
+  /**
+   * Checks every certificate whose cached results have expired, so that
+   * <code>CHECK_SSL_CERTIFICATE</code> requests that allow
+   * cached results are answered without waiting on the daemons.
+   */
+  private static void refreshCheckCache() throws IOException, SQLException {
+    Map<Integer, CompletableFuture<List<Certificate.Check>>> futures;
+    try (DatabaseConnection conn = MasterDatabase.getDatabase().connect()) {
+      Map<Integer, List<Integer>> toCheck = conn.queryCall(
+          results -> {
+            Map<Integer, List<Integer>> map = new HashMap<>();
+            while (results.next()) {
+              int certificate = results.getInt(2);
+              boolean cached;
+              synchronized (checkCache) {
+                CachedCheck cachedCheck = checkCache.get(certificate);
+                cached = cachedCheck != null && (System.nanoTime() - cachedCheck.expiresNanos) < 0;
+              }
+              if (!cached) {
+                map.computeIfAbsent(results.getInt(1), linuxServer -> new ArrayList<>()).add(certificate);
+              }
+            }
+            return map;
+          },
+          "select ao_server, id from pki.\"Certificate\""
+      );
+      futures = submitBulkChecks(conn, toCheck, true);
+    }
+    int failed = 0;
+    for (Map.Entry<Integer, CompletableFuture<List<Certificate.Check>>> entry : futures.entrySet()) {
+      try {
+        getBulkCheck(entry.getValue());
+      } catch (IOException | SQLException err) {
+        failed++;
+        logger.log(Level.FINE, "certificate=" + entry.getKey(), err);
+      }
+    }
+    if (failed > 0 && logger.isLoggable(Level.WARNING)) {
+      logger.warning("Failed to refresh " + failed + " of " + futures.size() + " certificate checks");
+    }
+  }
+
+  private static boolean cronDaemonAdded;
+
+  /**
+   * Runs every fifteen minutes, matching {@link #CHECK_CACHE_TTL}.
+   */
+  private static final Schedule schedule = (minute, hour, dayOfMonth, month, dayOfWeek, year) -> (minute % 15) == 7;
+
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
+  public static void start() {
+    synchronized (System.out) {
+      if (!cronDaemonAdded) {
+        System.out.print("Starting " + PkiCertificateHandler.class.getSimpleName() + ": ");
+        CronDaemon.addCronJob(
+            new CronJob() {
+              @Override
+              public Schedule getSchedule() {
+                return schedule;
+              }
+
+              @Override
+              public String getName() {
+                return "Refresh pki.Certificate checks";
+              }
+
+              @Override
+              @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+              public void run(int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
+                try {
+                  refreshCheckCache();
+                } catch (Throwable t) {
+                  logger.log(Level.SEVERE, null, t);
+                }
+              }
+
+              @Override
+              public int getThreadPriority() {
+                return Thread.NORM_PRIORITY - 1;
+              }
+            },
+            logger
+        );
+        cronDaemonAdded = true;
+        System.out.println("Done");
+      }
+    }
+  }
+
+  public static void invalidateTable(Table.TableId tableId) {
+    if (tableId == Table.TableId.SSL_CERTIFICATES) {
+      synchronized (checkCache) {
+        checkCache.clear();
+      }
+    }
   }
 }
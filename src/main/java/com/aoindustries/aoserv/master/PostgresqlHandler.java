@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2024  AO Industries, Inc.
+ * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2020, 2021, 2022, 2024, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -35,7 +35,6 @@ import com.aoindustries.aoserv.client.password.PasswordChecker;
 import com.aoindustries.aoserv.client.postgresql.Database;
 import com.aoindustries.aoserv.client.schema.AoservProtocol;
 import com.aoindustries.aoserv.client.schema.Table;
-import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
 import java.io.IOException;
 import java.sql.SQLException;
 import java.util.HashMap;
@@ -378,18 +377,17 @@ public final class PostgresqlHandler {
     checkAccessDatabase(conn, source, "dumpDatabase", database);
 
     int linuxServer = getLinuxServerForDatabase(conn, database);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.dumpPostgresDatabase(
+    StreamableOutput clientOut = new StreamableOutput(DaemonHandler.getClientOutput(out));
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.dumpPostgresDatabase(
         database,
         gzip,
         dumpSize -> {
           if (source.getProtocolVersion().compareTo(AoservProtocol.Version.VERSION_1_80_0) >= 0) {
-            out.writeLong(dumpSize);
+            clientOut.writeLong(dumpSize);
           }
         },
-        out
-    );
+        clientOut
+    ));
   }
 
   public static void enableUserServer(
@@ -641,9 +639,7 @@ public final class PostgresqlHandler {
     }
 
     int linuxServer = getLinuxServerForUserServer(conn, userServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    String password = daemonConnector.getPostgresUserPassword(userServer);
+    String password = DaemonHandler.callDaemon(conn, linuxServer, daemonConnector -> daemonConnector.getPostgresUserPassword(userServer));
     return !com.aoindustries.aoserv.client.postgresql.User.NO_PASSWORD_DB_VALUE.equals(password);
   }
 
@@ -810,9 +806,7 @@ public final class PostgresqlHandler {
     }
 
     // Contact the daemon for the update
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.setPostgresUserPassword(userServer, password);
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.setPostgresUserPassword(userServer, password));
   }
 
   public static void setUserServerPredisablePassword(
@@ -860,9 +854,7 @@ public final class PostgresqlHandler {
   ) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "waitForDatabaseRebuild", linuxServer);
     NetHostHandler.waitForInvalidates(linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.waitForPostgresDatabaseRebuild();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.waitForPostgresDatabaseRebuild());
   }
 
   public static void waitForServerRebuild(
@@ -872,9 +864,7 @@ public final class PostgresqlHandler {
   ) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "waitForServerRebuild", linuxServer);
     NetHostHandler.waitForInvalidates(linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.waitForPostgresServerRebuild();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.waitForPostgresServerRebuild());
   }
 
   public static void waitForUserRebuild(
@@ -884,9 +874,7 @@ public final class PostgresqlHandler {
   ) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "waitForUserRebuild", linuxServer);
     NetHostHandler.waitForInvalidates(linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.waitForPostgresUserRebuild();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.waitForPostgresUserRebuild());
   }
 
   public static Account.Name getAccountForDatabase(DatabaseConnection conn, int database) throws IOException, SQLException {
@@ -1014,9 +1002,7 @@ public final class PostgresqlHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to restart PostgreSQL on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.restartPostgres(postgresqlServer);
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.restartPostgres(postgresqlServer));
   }
 
   public static void startServer(
@@ -1029,9 +1015,7 @@ public final class PostgresqlHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to start PostgreSQL on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.startPostgresql(postgresqlServer);
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.startPostgresql(postgresqlServer));
   }
 
   public static void stopServer(
@@ -1044,8 +1028,6 @@ public final class PostgresqlHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to stop PostgreSQL on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.stopPostgresql(postgresqlServer);
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.stopPostgresql(postgresqlServer));
   }
 }
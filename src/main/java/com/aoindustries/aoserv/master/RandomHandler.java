@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2004-2013, 2015, 2017, 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2004-2013, 2015, 2017, 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -25,12 +25,9 @@ package com.aoindustries.aoserv.master;
 
 import com.aoapps.dbc.DatabaseConnection;
 import com.aoapps.hodgepodge.io.FifoFile;
-import com.aoapps.hodgepodge.io.FifoFileInputStream;
-import com.aoapps.hodgepodge.io.FifoFileOutputStream;
 import com.aoindustries.aoserv.client.AoservConnector;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
-import java.io.EOFException;
 import java.io.IOException;
 import java.sql.SQLException;
 
@@ -49,6 +46,11 @@ public final class RandomHandler {
 
   private static FifoFile fifoFile;
 
+  private static EntropyPool entropyPool;
+
+  /**
+   * Gets the file backing the entropy pool.  All access must be synchronized on the {@link FifoFile}.
+   */
   public static FifoFile getFifoFile() throws IOException {
     synchronized (RandomHandler.class) {
       if (fifoFile == null) {
@@ -58,6 +60,18 @@ public final class RandomHandler {
     }
   }
 
+  /**
+   * Gets the in-memory front-end to the entropy pool.
+   */
+  public static EntropyPool getEntropyPool() throws IOException {
+    synchronized (RandomHandler.class) {
+      if (entropyPool == null) {
+        entropyPool = new EntropyPool(getFifoFile());
+      }
+      return entropyPool;
+    }
+  }
+
   private static void checkAccessEntropy(DatabaseConnection conn, RequestSource source, String action) throws IOException, SQLException {
     boolean isAllowed = false;
 
@@ -95,20 +109,9 @@ public final class RandomHandler {
   ) throws IOException, SQLException {
     checkAccessEntropy(conn, source, "addMasterEntropy");
 
-    FifoFile fifo = getFifoFile();
-    synchronized (fifo) {
-      FifoFileOutputStream fifoOut = fifo.getOutputStream();
-      long available = fifoOut.available();
-      int addCount = numBytes;
-      if (available < addCount) {
-        addCount = (int) available;
-      }
-      if (addCount > 0) {
-        fifoOut.write(entropy, 0, addCount);
-        fifo.flush();
-      }
-      return fifo.getOutputStream().available();
-    }
+    EntropyPool pool = getEntropyPool();
+    pool.add(entropy, numBytes);
+    return pool.getNeeded();
   }
 
   public static int getMasterEntropy(
@@ -119,26 +122,7 @@ public final class RandomHandler {
   ) throws IOException, SQLException {
     checkAccessEntropy(conn, source, "getMasterEntropy");
 
-    FifoFile fifo = getFifoFile();
-    synchronized (fifo) {
-      FifoFileInputStream fifoIn = fifo.getInputStream();
-      long available = fifoIn.available();
-      if (available < numBytes) {
-        numBytes = (int) available;
-      }
-      if (numBytes > 0) {
-        int pos = 0;
-        while (pos < numBytes) {
-          int ret = fifoIn.read(entropy, pos, numBytes - pos);
-          if (ret == -1) {
-            throw new EOFException("Unexpected EOF");
-          }
-          pos += ret;
-        }
-        fifo.flush();
-      }
-      return numBytes;
-    }
+    return getEntropyPool().get(entropy, numBytes);
   }
 
   public static long getMasterEntropyNeeded(
@@ -147,9 +131,6 @@ public final class RandomHandler {
   ) throws IOException, SQLException {
     checkAccessEntropy(conn, source, "getMasterEntropyNeeded");
 
-    FifoFile fifo = getFifoFile();
-    synchronized (fifo) {
-      return fifo.getOutputStream().available();
-    }
+    return getEntropyPool().getNeeded();
   }
 }
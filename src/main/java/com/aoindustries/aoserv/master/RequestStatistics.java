@@ -0,0 +1,403 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import com.aoapps.security.Identifier;
+import com.aoindustries.aoserv.client.account.User;
+import com.aoindustries.aoserv.client.schema.AoservProtocol;
+import com.aoindustries.aoserv.client.schema.Table;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tracks request latency per {@link AoservProtocol.CommandId} and per {@link Table.TableId},
+ * along with a log of the most recent slow requests.
+ *
+ * <p>Latencies are recorded into log-linear histograms of fixed size, similar to
+ * HDR histograms, using only atomic increments.  This is cheap enough to be
+ * always enabled.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class RequestStatistics {
+
+  /** Make no instances. */
+  private RequestStatistics() {
+    throw new AssertionError();
+  }
+
+  private static final Logger logger = Logger.getLogger(RequestStatistics.class.getName());
+
+  /**
+   * The default time a request may take before being logged as slow.
+   */
+  static final long DEFAULT_SLOW_THRESHOLD = 10L * 1000L;
+
+  /**
+   * The number of slow requests retained in memory.
+   */
+  private static final int SLOW_REQUEST_LOG_SIZE = 100;
+
+  private static final long slowThresholdNanos;
+
+  static {
+    long slowThreshold;
+    try {
+      slowThreshold = MasterConfiguration.getRequestSlowThreshold();
+    } catch (IOException | NumberFormatException e) {
+      logger.log(Level.WARNING, "Using default slow request threshold", e);
+      slowThreshold = DEFAULT_SLOW_THRESHOLD;
+    }
+    slowThresholdNanos = slowThreshold * 1000000L;
+  }
+
+  /**
+   * A log-linear histogram of microsecond latencies.  Each power of two is split
+   * into eight sub-buckets, giving a worst-case error of 12.5%.
+   */
+  public static final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    /**
+     * Values up to 2<sup>40</sup> microseconds (about 12 days) are tracked, larger values are clamped.
+     */
+    private static final int MAX_EXPONENT = 40;
+
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder total = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int getBucket(long micros) {
+      if (micros < SUB_BUCKETS) {
+        return (int) micros;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(micros);
+      if (exponent > MAX_EXPONENT) {
+        return BUCKETS - 1;
+      }
+      int subBucket = (int) (micros >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the largest value that falls in the given bucket.
+     */
+    private static long getBucketMax(int bucket) {
+      if (bucket < SUB_BUCKETS) {
+        return bucket;
+      }
+      int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+      int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+      return ((long) (SUB_BUCKETS + subBucket + 1) << (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+
+    void record(long micros) {
+      if (micros < 0) {
+        micros = 0;
+      }
+      buckets.incrementAndGet(getBucket(micros));
+      count.increment();
+      total.add(micros);
+      while (true) {
+        long currentMax = max.get();
+        if (micros <= currentMax || max.compareAndSet(currentMax, micros)) {
+          break;
+        }
+      }
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    /**
+     * Gets the total time in microseconds.
+     */
+    public long getTotal() {
+      return total.sum();
+    }
+
+    /**
+     * Gets the maximum time in microseconds.
+     */
+    public long getMax() {
+      return max.get();
+    }
+
+    /**
+     * Gets the upper bound of the given percentile, in microseconds.
+     */
+    public long getPercentile(double percentile) {
+      long[] snapshot = new long[BUCKETS];
+      long sum = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        sum += snapshot[i] = buckets.get(i);
+      }
+      if (sum == 0) {
+        return 0;
+      }
+      long target = (long) Math.ceil(sum * percentile / 100);
+      if (target < 1) {
+        target = 1;
+      }
+      long seen = 0;
+      for (int i = 0; i < BUCKETS; i++) {
+        seen += snapshot[i];
+        if (seen >= target) {
+          return Math.min(getBucketMax(i), getMax());
+        }
+      }
+      return getMax();
+    }
+
+    @Override
+    public String toString() {
+      long c = getCount();
+      return "count=" + c
+          + ", mean=" + formatMicros(c == 0 ? 0 : getTotal() / c)
+          + ", p50=" + formatMicros(getPercentile(50))
+          + ", p90=" + formatMicros(getPercentile(90))
+          + ", p99=" + formatMicros(getPercentile(99))
+          + ", max=" + formatMicros(getMax());
+    }
+  }
+
+  /**
+   * Formats microseconds as milliseconds with three decimal places.
+   */
+  public static String formatMicros(long micros) {
+    StringBuilder sb = new StringBuilder();
+    sb.append(micros / 1000).append('.');
+    long fraction = micros % 1000;
+    if (fraction < 100) {
+      sb.append('0');
+    }
+    if (fraction < 10) {
+      sb.append('0');
+    }
+    return sb.append(fraction).append(" ms").toString();
+  }
+
+  /**
+   * The histograms for one command or table.  The total time is split into the
+   * time executing the request, which includes database and daemon access, and the
+   * time writing the response after the database connection has been released.
+   */
+  public static final class RequestHistograms {
+
+    private final Histogram total = new Histogram();
+    private final Histogram execute = new Histogram();
+    private final Histogram respond = new Histogram();
+
+    public Histogram getTotal() {
+      return total;
+    }
+
+    public Histogram getExecute() {
+      return execute;
+    }
+
+    public Histogram getRespond() {
+      return respond;
+    }
+
+    private void record(long totalMicros, long respondMicros) {
+      total.record(totalMicros);
+      execute.record(totalMicros - respondMicros);
+      respond.record(respondMicros);
+    }
+  }
+
+  /**
+   * One entry in the slow request log.
+   */
+  public static final class SlowRequest {
+
+    private final long time;
+    private final Identifier connectorId;
+    private final User.Name administrator;
+    private final AoservProtocol.CommandId command;
+    private final Table.TableId tableId;
+    private final long totalMicros;
+    private final long respondMicros;
+
+    private SlowRequest(
+        long time,
+        Identifier connectorId,
+        User.Name administrator,
+        AoservProtocol.CommandId command,
+        Table.TableId tableId,
+        long totalMicros,
+        long respondMicros
+    ) {
+      this.time = time;
+      this.connectorId = connectorId;
+      this.administrator = administrator;
+      this.command = command;
+      this.tableId = tableId;
+      this.totalMicros = totalMicros;
+      this.respondMicros = respondMicros;
+    }
+
+    public long getTime() {
+      return time;
+    }
+
+    public Identifier getConnectorId() {
+      return connectorId;
+    }
+
+    public User.Name getAdministrator() {
+      return administrator;
+    }
+
+    public AoservProtocol.CommandId getCommand() {
+      return command;
+    }
+
+    public Table.TableId getTableId() {
+      return tableId;
+    }
+
+    @Override
+    public String toString() {
+      return "command=" + command
+          + (tableId == null ? "" : ", table=" + tableId)
+          + ", administrator=" + administrator
+          + ", connectorId=" + connectorId
+          + ", total=" + formatMicros(totalMicros)
+          + ", respond=" + formatMicros(respondMicros);
+    }
+  }
+
+  private static final AoservProtocol.CommandId[] commandIds = AoservProtocol.CommandId.values();
+
+  private static final Table.TableId[] tableIds = Table.TableId.values();
+
+  private static final AtomicReferenceArray<RequestHistograms> commandHistograms = new AtomicReferenceArray<>(commandIds.length);
+
+  private static final AtomicReferenceArray<RequestHistograms> tableHistograms = new AtomicReferenceArray<>(tableIds.length);
+
+  private static final Deque<SlowRequest> slowRequests = new ArrayDeque<>(SLOW_REQUEST_LOG_SIZE);
+
+  private static RequestHistograms getOrCreate(AtomicReferenceArray<RequestHistograms> array, int index) {
+    RequestHistograms histograms = array.get(index);
+    if (histograms == null) {
+      RequestHistograms newHistograms = new RequestHistograms();
+      if (array.compareAndSet(index, null, newHistograms)) {
+        histograms = newHistograms;
+      } else {
+        histograms = array.get(index);
+      }
+    }
+    return histograms;
+  }
+
+  /**
+   * Records the completion of one request.
+   *
+   * @param  tableId  the table the request operated on or {@code null} when not table-specific
+   * @param  totalNanos  the total time processing the request
+   * @param  respondNanos  the portion of the total time spent writing the response
+   */
+  static void recordRequest(
+      Identifier connectorId,
+      User.Name administrator,
+      AoservProtocol.CommandId command,
+      Table.TableId tableId,
+      long totalNanos,
+      long respondNanos
+  ) {
+    long totalMicros = totalNanos / 1000;
+    long respondMicros = respondNanos / 1000;
+    getOrCreate(commandHistograms, command.ordinal()).record(totalMicros, respondMicros);
+    if (tableId != null) {
+      getOrCreate(tableHistograms, tableId.ordinal()).record(totalMicros, respondMicros);
+    }
+    if (totalNanos >= slowThresholdNanos) {
+      SlowRequest slowRequest = new SlowRequest(
+          System.currentTimeMillis(),
+          connectorId,
+          administrator,
+          command,
+          tableId,
+          totalMicros,
+          respondMicros
+      );
+      synchronized (slowRequests) {
+        if (slowRequests.size() >= SLOW_REQUEST_LOG_SIZE) {
+          slowRequests.removeFirst();
+        }
+        slowRequests.addLast(slowRequest);
+      }
+      if (logger.isLoggable(Level.INFO)) {
+        logger.info("Slow request: " + slowRequest);
+      }
+    }
+  }
+
+  /**
+   * Gets the histograms for the given command or {@code null} when the command has not been used.
+   */
+  public static RequestHistograms getCommandHistograms(AoservProtocol.CommandId command) {
+    return commandHistograms.get(command.ordinal());
+  }
+
+  /**
+   * Gets the histograms for the given table or {@code null} when the table has not been accessed.
+   */
+  public static RequestHistograms getTableHistograms(Table.TableId tableId) {
+    return tableHistograms.get(tableId.ordinal());
+  }
+
+  /**
+   * Gets the slow request log, oldest first.
+   */
+  public static List<SlowRequest> getSlowRequests() {
+    synchronized (slowRequests) {
+      return new ArrayList<>(slowRequests);
+    }
+  }
+
+  /**
+   * Gets the time a request may take before being logged as slow.
+   */
+  public static long getSlowThreshold() {
+    return slowThresholdNanos / 1000000L;
+  }
+}
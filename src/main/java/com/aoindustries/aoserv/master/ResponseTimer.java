@@ -0,0 +1,77 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Records when the response to a request starts being written.  This separates
+ * the time spent writing from the time spent executing, regardless of whether
+ * a command writes its response directly or through the common response path.
+ *
+ * <p>Only used by the single thread serving a connection.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+final class ResponseTimer extends FilterOutputStream {
+
+  private long startNanos = -1;
+
+  ResponseTimer(OutputStream out) {
+    super(out);
+  }
+
+  /**
+   * Resets the timer at the beginning of a request.
+   */
+  void reset() {
+    startNanos = -1;
+  }
+
+  /**
+   * Gets the {@link System#nanoTime()} when the first byte of the response was
+   * written, or {@code -1} when nothing has been written since {@link #reset()}.
+   */
+  long getStartNanos() {
+    return startNanos;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (startNanos == -1) {
+      startNanos = System.nanoTime();
+    }
+    out.write(b);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (startNanos == -1) {
+      startNanos = System.nanoTime();
+    }
+    out.write(b, off, len);
+  }
+}
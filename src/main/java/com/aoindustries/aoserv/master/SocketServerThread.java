@@ -82,6 +82,11 @@ public final class SocketServerThread extends Thread implements RequestSource {
    */
   private final StreamableOutput out;
 
+  /**
+   * Times the writing of each response to {@link #out}.
+   */
+  private final ResponseTimer responseTimer;
+
   /**
    * The version of the protocol the client is running.
    */
@@ -106,7 +111,8 @@ public final class SocketServerThread extends Thread implements RequestSource {
       this.server = server;
       this.socket = socket;
       this.in = new StreamableInput(new BufferedInputStream(socket.getInputStream()));
-      this.out = new StreamableOutput(new BufferedOutputStream(socket.getOutputStream()));
+      this.responseTimer = new ResponseTimer(new BufferedOutputStream(socket.getOutputStream()));
+      this.out = new StreamableOutput(responseTimer);
       InetAddress host = InetAddress.valueOf(socket.getInetAddress().getHostAddress());
       process = Process_Manager.createProcess(
           host,
@@ -495,7 +501,7 @@ public final class SocketServerThread extends Thread implements RequestSource {
                     AoservMaster.updateAoservProtocolLastUsed(db, protocolVersion);
 
                     long seq = startSeq;
-                    while (server.handleRequest(this, seq++, in, out, process)) {
+                    while (server.handleRequest(this, seq++, in, out, responseTimer, process)) {
                       // Do nothing in loop
                     }
                   }
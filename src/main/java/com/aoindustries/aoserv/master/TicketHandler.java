@@ -29,6 +29,7 @@ import com.aoapps.cron.Schedule;
 import com.aoapps.dbc.DatabaseAccess;
 import com.aoapps.dbc.DatabaseConnection;
 import com.aoapps.lang.Strings;
+import com.aoapps.lang.validation.ValidationException;
 import com.aoapps.net.Email;
 import com.aoindustries.aoserv.client.AoservObject;
 import com.aoindustries.aoserv.client.account.Account;
@@ -37,13 +38,24 @@ import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.schema.Table;
 import com.aoindustries.aoserv.client.ticket.ActionType;
 import com.aoindustries.aoserv.client.ticket.Status;
+import com.aoindustries.aoserv.client.ticket.Ticket;
 import com.aoindustries.aoserv.client.ticket.TicketType;
 import java.io.IOException;
-import java.security.SecureRandom;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
 import java.util.Set;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -155,22 +167,126 @@ public final class TicketHandler /*implements Runnable*/ {
 
   // </editor-fold>
   // <editor-fold desc="Add Ticket">
+  /**
+   * A pool of random ticket IDs, verified unused in bulk.
+   *
+   * <p>When empty, the pool is refilled by checking a batch of random
+   * candidates in a single query, instead of one query per candidate.  Pooled
+   * IDs are discarded once older than the maximum age, so an ID used by other
+   * means since its check is only issued within that window.  The most recently
+   * issued IDs are remembered and never pooled again, so an ID issued to a
+   * transaction that has not yet committed is never issued twice.</p>
+   */
+  static final class TicketIdPool {
+
+    /**
+     * Selects the candidates not yet used by any ticket.
+     */
+    @FunctionalInterface
+    static interface UnusedFilter {
+      List<Integer> filterUnused(Set<Integer> candidates) throws IOException, SQLException;
+    }
+
+    private final Random random;
+    private final int batchSize;
+    private final long maxAgeNanos;
+
+    /**
+     * The current range of random ticket IDs, grown tenfold when a refill finds no unused IDs.
+     */
+    private int range = 1000000;
+
+    /**
+     * Random IDs verified unused, but not yet issued.
+     */
+    private final Deque<Integer> pool = new ArrayDeque<>();
+
+    /**
+     * The {@link System#nanoTime()} of the check of the pooled IDs.
+     */
+    private long checkedNanos;
+
+    private final Set<Integer> recent;
+
+    TicketIdPool(Random random, int batchSize, final int recentSize, long maxAgeNanos) {
+      this.random = random;
+      this.batchSize = batchSize;
+      this.maxAgeNanos = maxAgeNanos;
+      this.recent = Collections.newSetFromMap(
+          new LinkedHashMap<Integer, Boolean>() {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Boolean> eldest) {
+              return size() > recentSize;
+            }
+          }
+      );
+    }
+
+    synchronized int next(UnusedFilter filter) throws IOException, SQLException {
+      if (!pool.isEmpty() && System.nanoTime() - checkedNanos >= maxAgeNanos) {
+        pool.clear();
+      }
+      while (pool.isEmpty()) {
+        if (range >= 1000000000) {
+          throw new SQLException("Failed to generate ticket ID after thousands of attempts");
+        }
+        Set<Integer> candidates = new LinkedHashSet<>(batchSize * 4 / 3 + 1);
+        for (int attempt = 0; attempt < batchSize; attempt++) {
+          Integer candidate = random.nextInt(range);
+          if (!recent.contains(candidate)) {
+            candidates.add(candidate);
+          }
+        }
+        if (candidates.isEmpty()) {
+          continue;
+        }
+        long now = System.nanoTime();
+        List<Integer> unused = filter.filterUnused(candidates);
+        if (unused.isEmpty()) {
+          range *= 10;
+        } else {
+          pool.addAll(unused);
+          checkedNanos = now;
+        }
+      }
+      Integer ticket = pool.remove();
+      recent.add(ticket);
+      return ticket;
+    }
+  }
+
+  /**
+   * Pooled IDs are checked in batches of 1000 and discarded after ten seconds,
+   * remembering the last 10000 issued.
+   */
+  private static final TicketIdPool ticketIdPool = new TicketIdPool(
+      AoservMaster.getSecureRandom(),
+      1000,
+      10000,
+      TimeUnit.SECONDS.toNanos(10)
+  );
+
   /**
    * Generates a random, unused ticket ID.
+   *
+   * @see  TicketIdPool
    */
   public static int generateTicketId(
       DatabaseConnection conn
   ) throws IOException, SQLException {
-    SecureRandom secureRandom = AoservMaster.getSecureRandom();
-    for (int range = 1000000; range < 1000000000; range *= 10) {
-      for (int attempt = 0; attempt < 1000; attempt++) {
-        int ticket = secureRandom.nextInt(range);
-        if (conn.queryBoolean("select (select id from ticket.\"Ticket\" where id=?) is null", ticket)) {
-          return ticket;
-        }
-      }
-    }
-    throw new SQLException("Failed to generate ticket ID after thousands of attempts");
+    return ticketIdPool.next(
+        candidates -> conn.queryIntList(
+            "select\n"
+                + "  c.id\n"
+                + "from\n"
+                + "  unnest(?::integer[]) c(id)\n"
+                + "where\n"
+                + "  not exists (select null from ticket.\"Ticket\" ti where ti.id=c.id)",
+            "{" + Strings.join(candidates, ",") + "}"
+        )
+    );
   }
 
   /**
@@ -381,6 +497,151 @@ public final class TicketHandler /*implements Runnable*/ {
     return conn.queryStringNullable("select raw_email from ticket.\"Action\" where id=?", action);
   }
 
+  // </editor-fold>
+  // <editor-fold desc="Ticket Listing">
+  /**
+   * The maximum number of tickets returned by a single page of {@link #getTickets}.
+   */
+  public static final int MAX_TICKET_PAGE_SIZE = 1000;
+
+  /**
+   * Gets one page of the tickets visible to the current administrator, ordered
+   * by status, open date and ID.  Each page continues after the last ticket of
+   * the previous page (keyset pagination), so the cost of a page does not
+   * depend on how many tickets precede it.
+   *
+   * <p>As with the full ticket table, non-ticket-admins only see tickets of
+   * their accounts that are neither junk nor deleted, and do not see the
+   * reseller or admin priority.</p>
+   *
+   * <p>This listing is not yet reachable by clients: the command IDs are
+   * defined by the client protocol in aoserv-client, which has no paginated
+   * ticket command.  Until it does, the listing is for master-side use only,
+   * and clients continue to load the full ticket table.</p>
+   *
+   * @param  status       only tickets of this status, or {@code null} for all
+   * @param  brand        only tickets of this brand, or {@code null} for all
+   * @param  assignedTo   only tickets assigned to this administrator, or {@code null} for all
+   * @param  account      only tickets of this account, or {@code null} for all
+   * @param  afterStatus  the status of the last ticket of the previous page, or {@code null} for the first page
+   * @param  afterOpenDate  the open date of the last ticket of the previous page, ignored on the first page
+   * @param  afterId      the ID of the last ticket of the previous page, ignored on the first page
+   * @param  limit        the maximum number of tickets, at most {@link #MAX_TICKET_PAGE_SIZE}
+   */
+  public static List<Ticket> getTickets(
+      DatabaseConnection conn,
+      RequestSource source,
+      String status,
+      Account.Name brand,
+      com.aoindustries.aoserv.client.account.User.Name assignedTo,
+      Account.Name account,
+      String afterStatus,
+      Timestamp afterOpenDate,
+      int afterId,
+      int limit
+  ) throws IOException, SQLException {
+    if (limit < 1 || limit > MAX_TICKET_PAGE_SIZE) {
+      throw new SQLException("Invalid limit, must be between 1 and " + MAX_TICKET_PAGE_SIZE + ": " + limit);
+    }
+    com.aoindustries.aoserv.client.account.User.Name currentAdministrator = source.getCurrentAdministrator();
+    boolean isAdmin;
+    User mu = AoservMaster.getUser(conn, currentAdministrator);
+    if (mu != null) {
+      if (AoservMaster.getUserHosts(conn, currentAdministrator).length != 0) {
+        throw new SQLException("Daemons may not list tickets: " + currentAdministrator);
+      }
+      isAdmin = true;
+    } else {
+      isAdmin = isTicketAdmin(conn, source);
+    }
+    List<Object> params = new ArrayList<>();
+    StringBuilder sql = new StringBuilder();
+    sql.append(
+        "select\n"
+            + "  ti.id,\n"
+            + "  ti.brand,\n"
+    ).append(isAdmin ? "  ti.reseller,\n" : "  null::text,\n").append(
+        "  ti.accounting,\n"
+            + "  ti.language,\n"
+            + "  ti.created_by,\n"
+            + "  ti.category,\n"
+            + "  ti.ticket_type,\n"
+            + "  ti.from_address,\n"
+            + "  ti.summary,\n"
+            + "  ti.open_date,\n"
+            + "  ti.client_priority,\n"
+    ).append(isAdmin ? "  ti.admin_priority,\n" : "  null,\n").append(
+        "  ti.status,\n"
+            + "  ti.status_timeout,\n"
+            + "  ti.contact_emails,\n"
+            + "  ti.contact_phone_numbers\n"
+            + "from\n"
+            + "  ticket.\"Ticket\" ti\n"
+            + "where\n"
+            + "  true\n"
+    );
+    if (mu == null) {
+      String accounts = AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source));
+      if (isAdmin) {
+        sql.append("  and (ti.accounting = ANY(?::text[]) or ti.brand = ANY(?::text[]) or ti.reseller = ANY(?::text[]))\n");
+        params.add(accounts);
+        params.add(accounts);
+        params.add(accounts);
+      } else {
+        sql.append("  and ti.accounting = ANY(?::text[])\n"
+            + "  and ti.status not in (?,?)\n");
+        params.add(accounts);
+        params.add(Status.JUNK);
+        params.add(Status.DELETED);
+      }
+    }
+    if (status != null) {
+      sql.append("  and ti.status=?\n");
+      params.add(status);
+    }
+    if (brand != null) {
+      sql.append("  and ti.brand=?\n");
+      params.add(brand);
+    }
+    if (assignedTo != null) {
+      if (!isAdmin) {
+        throw new SQLException("Only ticket admins may filter by assignment: " + currentAdministrator);
+      }
+      sql.append("  and ti.assigned_to=?\n");
+      params.add(assignedTo);
+    }
+    if (account != null) {
+      sql.append("  and ti.accounting=?\n");
+      params.add(account);
+    }
+    if (afterStatus != null) {
+      if (afterOpenDate == null) {
+        throw new SQLException("afterOpenDate required with afterStatus");
+      }
+      sql.append("  and (ti.status, ti.open_date, ti.id) > (?, ?, ?)\n");
+      params.add(afterStatus);
+      params.add(afterOpenDate);
+      params.add(afterId);
+    }
+    sql.append(
+        "order by\n"
+            + "  ti.status,\n"
+            + "  ti.open_date,\n"
+            + "  ti.id\n"
+            + "limit ?"
+    );
+    params.add(limit);
+    return conn.queryList(
+        results -> {
+          Ticket ticket = new Ticket();
+          ticket.init(results);
+          return ticket;
+        },
+        sql.toString(),
+        params.toArray()
+    );
+  }
+
   // </editor-fold>
   // <editor-fold desc="Ticket Actions">
   /*
@@ -682,50 +943,7 @@ public final class TicketHandler /*implements Runnable*/ {
       );
 
       // Notify all clients of the update
-      // By account
-      Account.Name account = getAccountForTicket(conn, ticket);
-      if (account != null) {
-        invalidateList.addTable(conn,
-            Table.TableId.TICKETS,
-            account,
-            InvalidateList.allHosts,
-            false
-        );
-        invalidateList.addTable(conn,
-            Table.TableId.TICKET_ACTIONS,
-            account,
-            InvalidateList.allHosts,
-            false
-        );
-      }
-      // By brand
-      Account.Name brand = getBrandForTicket(conn, ticket);
-      invalidateList.addTable(conn,
-          Table.TableId.TICKETS,
-          brand,
-          InvalidateList.allHosts,
-          false
-      );
-      invalidateList.addTable(conn,
-          Table.TableId.TICKET_ACTIONS,
-          brand,
-          InvalidateList.allHosts,
-          false
-      );
-      // By reseller
-      Account.Name reseller = getResellerForTicket(conn, ticket);
-      invalidateList.addTable(conn,
-          Table.TableId.TICKETS,
-          reseller,
-          InvalidateList.allHosts,
-          false
-      );
-      invalidateList.addTable(conn,
-          Table.TableId.TICKET_ACTIONS,
-          reseller,
-          InvalidateList.allHosts,
-          false
-      );
+      invalidateTicket(conn, invalidateList, ticket);
       return true;
     } else if (updateCount == 0) {
       return false;
@@ -764,50 +982,7 @@ public final class TicketHandler /*implements Runnable*/ {
       );
 
       // Notify all clients of the update
-      // By account
-      Account.Name account = getAccountForTicket(conn, ticket);
-      if (account != null) {
-        invalidateList.addTable(conn,
-            Table.TableId.TICKETS,
-            account,
-            InvalidateList.allHosts,
-            false
-        );
-        invalidateList.addTable(conn,
-            Table.TableId.TICKET_ACTIONS,
-            account,
-            InvalidateList.allHosts,
-            false
-        );
-      }
-      // By brand
-      Account.Name brand = getBrandForTicket(conn, ticket);
-      invalidateList.addTable(conn,
-          Table.TableId.TICKETS,
-          brand,
-          InvalidateList.allHosts,
-          false
-      );
-      invalidateList.addTable(conn,
-          Table.TableId.TICKET_ACTIONS,
-          brand,
-          InvalidateList.allHosts,
-          false
-      );
-      // By reseller
-      Account.Name reseller = getResellerForTicket(conn, ticket);
-      invalidateList.addTable(conn,
-          Table.TableId.TICKETS,
-          reseller,
-          InvalidateList.allHosts,
-          false
-      );
-      invalidateList.addTable(conn,
-          Table.TableId.TICKET_ACTIONS,
-          reseller,
-          InvalidateList.allHosts,
-          false
-      );
+      invalidateTicket(conn, invalidateList, ticket);
       return true;
     } else if (updateCount == 0) {
       return false;
@@ -844,50 +1019,7 @@ public final class TicketHandler /*implements Runnable*/ {
       );
 
       // Notify all clients of the update
-      // By account
-      Account.Name account = getAccountForTicket(conn, ticket);
-      if (account != null) {
-        invalidateList.addTable(conn,
-            Table.TableId.TICKETS,
-            account,
-            InvalidateList.allHosts,
-            false
-        );
-        invalidateList.addTable(conn,
-            Table.TableId.TICKET_ACTIONS,
-            account,
-            InvalidateList.allHosts,
-            false
-        );
-      }
-      // By brand
-      Account.Name brand = getBrandForTicket(conn, ticket);
-      invalidateList.addTable(conn,
-          Table.TableId.TICKETS,
-          brand,
-          InvalidateList.allHosts,
-          false
-      );
-      invalidateList.addTable(conn,
-          Table.TableId.TICKET_ACTIONS,
-          brand,
-          InvalidateList.allHosts,
-          false
-      );
-      // By reseller
-      Account.Name reseller = getResellerForTicket(conn, ticket);
-      invalidateList.addTable(conn,
-          Table.TableId.TICKETS,
-          reseller,
-          InvalidateList.allHosts,
-          false
-      );
-      invalidateList.addTable(conn,
-          Table.TableId.TICKET_ACTIONS,
-          reseller,
-          InvalidateList.allHosts,
-          false
-      );
+      invalidateTicket(conn, invalidateList, ticket);
       return true;
     } else if (updateCount == 0) {
       return false;
@@ -904,68 +1036,7 @@ public final class TicketHandler /*implements Runnable*/ {
       // TODO: oldContactEmails as a concurrent update check
       Set<Email> contactEmails
   ) throws IOException, SQLException {
-    AccountHandler.checkPermission(conn, source, "setTicketContactEmails", Permission.Name.edit_ticket);
-    checkAccessTicket(conn, source, "setTicketContactEmails", ticket);
-
-    String oldValue = conn.queryString("select contact_emails from ticket.\"Ticket\" where id=?", ticket);
-
-    conn.update("update ticket.\"Ticket\" set contact_emails=? where id=?", contactEmails, ticket);
-
-    conn.update(
-        "insert into ticket.\"Action\"(ticket, administrator, action_type, old_value, new_value) values(?,?,?,?,?)",
-        ticket,
-        source.getCurrentAdministrator(),
-        ActionType.SET_CONTACT_EMAILS,
-        oldValue,
-        // TODO: Array
-        Strings.join(contactEmails, ", ")
-    );
-
-    // Notify all clients of the update
-    // By account
-    Account.Name account = getAccountForTicket(conn, ticket);
-    if (account != null) {
-      invalidateList.addTable(conn,
-          Table.TableId.TICKETS,
-          account,
-          InvalidateList.allHosts,
-          false
-      );
-      invalidateList.addTable(conn,
-          Table.TableId.TICKET_ACTIONS,
-          account,
-          InvalidateList.allHosts,
-          false
-      );
-    }
-    // By brand
-    Account.Name brand = getBrandForTicket(conn, ticket);
-    invalidateList.addTable(conn,
-        Table.TableId.TICKETS,
-        brand,
-        InvalidateList.allHosts,
-        false
-    );
-    invalidateList.addTable(conn,
-        Table.TableId.TICKET_ACTIONS,
-        brand,
-        InvalidateList.allHosts,
-        false
-    );
-    // By reseller
-    Account.Name reseller = getResellerForTicket(conn, ticket);
-    invalidateList.addTable(conn,
-        Table.TableId.TICKETS,
-        reseller,
-        InvalidateList.allHosts,
-        false
-    );
-    invalidateList.addTable(conn,
-        Table.TableId.TICKET_ACTIONS,
-        reseller,
-        InvalidateList.allHosts,
-        false
-    );
+    updateTicket("setTicketContactEmails", conn, source, invalidateList, ticket, null, contactEmails, null, null);
   }
 
   public static void setTicketContactPhoneNumbers(
@@ -976,67 +1047,7 @@ public final class TicketHandler /*implements Runnable*/ {
       // TODO: oldContactPhoneNumbers as a concurrent update check
       String contactPhoneNumbers
   ) throws IOException, SQLException {
-    AccountHandler.checkPermission(conn, source, "setTicketContactPhoneNumbers", Permission.Name.edit_ticket);
-    checkAccessTicket(conn, source, "setTicketContactPhoneNumbers", ticket);
-
-    String oldValue = conn.queryString("select contact_phone_numbers from ticket.\"Ticket\" where id=?", ticket);
-
-    conn.update("update ticket.\"Ticket\" set contact_phone_numbers=? where id=?", contactPhoneNumbers, ticket);
-
-    conn.update(
-        "insert into ticket.\"Action\"(ticket, administrator, action_type, old_value, new_value) values(?,?,?,?,?)",
-        ticket,
-        source.getCurrentAdministrator(),
-        ActionType.SET_CONTACT_PHONE_NUMBERS,
-        oldValue,
-        contactPhoneNumbers
-    );
-
-    // Notify all clients of the update
-    // By account
-    Account.Name account = getAccountForTicket(conn, ticket);
-    if (account != null) {
-      invalidateList.addTable(conn,
-          Table.TableId.TICKETS,
-          account,
-          InvalidateList.allHosts,
-          false
-      );
-      invalidateList.addTable(conn,
-          Table.TableId.TICKET_ACTIONS,
-          account,
-          InvalidateList.allHosts,
-          false
-      );
-    }
-    // By brand
-    Account.Name brand = getBrandForTicket(conn, ticket);
-    invalidateList.addTable(conn,
-        Table.TableId.TICKETS,
-        brand,
-        InvalidateList.allHosts,
-        false
-    );
-    invalidateList.addTable(conn,
-        Table.TableId.TICKET_ACTIONS,
-        brand,
-        InvalidateList.allHosts,
-        false
-    );
-    // By reseller
-    Account.Name reseller = getResellerForTicket(conn, ticket);
-    invalidateList.addTable(conn,
-        Table.TableId.TICKETS,
-        reseller,
-        InvalidateList.allHosts,
-        false
-    );
-    invalidateList.addTable(conn,
-        Table.TableId.TICKET_ACTIONS,
-        reseller,
-        InvalidateList.allHosts,
-        false
-    );
+    updateTicket("setTicketContactPhoneNumbers", conn, source, invalidateList, ticket, null, null, contactPhoneNumbers, null);
   }
 
   public static void changeTicketClientPriority(
@@ -1047,96 +1058,246 @@ public final class TicketHandler /*implements Runnable*/ {
       // TODO: oldClientPriority as a concurrent update check
       String newClientPriority
   ) throws IOException, SQLException {
-    AccountHandler.checkPermission(conn, source, "changeTicketClientPriority", Permission.Name.edit_ticket);
-    checkAccessTicket(conn, source, "changeTicketClientPriority", ticket);
+    updateTicket("changeTicketClientPriority", conn, source, invalidateList, ticket, null, null, null, newClientPriority);
+  }
 
-    String oldClientPriority = conn.queryString("select client_priority from ticket.\"Ticket\" where id=?", ticket);
+  public static void setTicketSummary(
+      DatabaseConnection conn,
+      RequestSource source,
+      InvalidateList invalidateList,
+      int ticket,
+      // TODO: oldSummary as a concurrent update check
+      String summary
+  ) throws IOException, SQLException {
+    updateTicket("setTicketSummary", conn, source, invalidateList, ticket, summary, null, null, null);
+  }
 
-    conn.update("update ticket.\"Ticket\" set client_priority=? where id=?", newClientPriority, ticket);
+  /**
+   * The statements of one multi-field ticket update: a single <code>UPDATE … RETURNING</code> of the owners and
+   * previous values, followed by a single multi-row insert of the actions logging each change.
+   */
+  static final class TicketEdit {
+
+    // Parallel lists of changed columns, their new values, the action types, and the new values as logged
+    private final List<String> columns = new ArrayList<>();
+    private final List<Object> newValues = new ArrayList<>();
+    private final List<String> actionTypes = new ArrayList<>();
+    private final List<String> loggedValues = new ArrayList<>();
+
+    /**
+     * A {@code null} value leaves that field unchanged.
+     */
+    TicketEdit(String summary, Set<Email> contactEmails, String contactPhoneNumbers, String clientPriority) {
+      if (summary != null) {
+        columns.add("summary");
+        newValues.add(summary);
+        actionTypes.add(ActionType.SET_SUMMARY);
+        loggedValues.add(summary);
+      }
+      if (contactEmails != null) {
+        columns.add("contact_emails");
+        newValues.add(contactEmails);
+        actionTypes.add(ActionType.SET_CONTACT_EMAILS);
+        // TODO: Array
+        loggedValues.add(Strings.join(contactEmails, ", "));
+      }
+      if (contactPhoneNumbers != null) {
+        columns.add("contact_phone_numbers");
+        newValues.add(contactPhoneNumbers);
+        actionTypes.add(ActionType.SET_CONTACT_PHONE_NUMBERS);
+        loggedValues.add(contactPhoneNumbers);
+      }
+      if (clientPriority != null) {
+        columns.add("client_priority");
+        newValues.add(clientPriority);
+        actionTypes.add(ActionType.SET_CLIENT_PRIORITY);
+        loggedValues.add(clientPriority);
+      }
+    }
 
-    conn.update(
-        "insert into ticket.\"Action\"(ticket, administrator, action_type, old_priority, new_priority) values(?,?,?,?,?)",
-        ticket,
-        source.getCurrentAdministrator(),
-        ActionType.SET_CLIENT_PRIORITY,
-        oldClientPriority,
-        newClientPriority
-    );
+    /**
+     * Gets the number of fields changed.
+     */
+    int size() {
+      return columns.size();
+    }
 
-    // Notify all clients of the update
-    // By account
-    Account.Name account = getAccountForTicket(conn, ticket);
-    if (account != null) {
-      invalidateList.addTable(conn,
-          Table.TableId.TICKETS,
-          account,
-          InvalidateList.allHosts,
-          false
-      );
-      invalidateList.addTable(conn,
-          Table.TableId.TICKET_ACTIONS,
-          account,
-          InvalidateList.allHosts,
-          false
+    /**
+     * Gets the update, returning the account, brand, and reseller followed by the previous value of each field
+     * changed, with the row locked between the read and the write.
+     */
+    String getUpdateSql() {
+      StringBuilder sql = new StringBuilder("update ticket.\"Ticket\" ti set ");
+      for (int i = 0; i < columns.size(); i++) {
+        if (i > 0) {
+          sql.append(", ");
+        }
+        sql.append(columns.get(i)).append("=?");
+      }
+      sql.append(" from (select id");
+      for (String column : columns) {
+        sql.append(", ").append(column);
+      }
+      sql.append(" from ticket.\"Ticket\" where id=? for update) old where ti.id=old.id returning ti.accounting, ti.brand, ti.reseller");
+      for (String column : columns) {
+        sql.append(", old.").append(column);
+      }
+      return sql.toString();
+    }
+
+    Object[] getUpdateParams(int ticket) {
+      List<Object> params = new ArrayList<>(newValues);
+      params.add(ticket);
+      return params.toArray();
+    }
+
+    /**
+     * Gets the insert of one action per field changed.
+     */
+    String getInsertSql() {
+      StringBuilder insert = new StringBuilder(
+          "insert into ticket.\"Action\"(ticket, administrator, action_type, old_value, new_value, old_priority, new_priority) values "
       );
+      for (int i = 0; i < actionTypes.size(); i++) {
+        if (i > 0) {
+          insert.append(", ");
+        }
+        if (actionTypes.get(i).equals(ActionType.SET_CLIENT_PRIORITY)) {
+          insert.append("(?,?,?,null,null,?,?)");
+        } else {
+          insert.append("(?,?,?,?,?,null,null)");
+        }
+      }
+      return insert.toString();
+    }
+
+    /**
+     * @param  oldValues  the previous value of each field changed, as returned by the update
+     */
+    Object[] getInsertParams(int ticket, com.aoindustries.aoserv.client.account.User.Name administrator, String[] oldValues) {
+      List<Object> params = new ArrayList<>(actionTypes.size() * 5);
+      for (int i = 0; i < actionTypes.size(); i++) {
+        params.add(ticket);
+        params.add(administrator);
+        params.add(actionTypes.get(i));
+        params.add(oldValues[i]);
+        params.add(loggedValues.get(i));
+      }
+      return params.toArray();
     }
-    // By brand
-    Account.Name brand = getBrandForTicket(conn, ticket);
-    invalidateList.addTable(conn,
-        Table.TableId.TICKETS,
-        brand,
-        InvalidateList.allHosts,
-        false
-    );
-    invalidateList.addTable(conn,
-        Table.TableId.TICKET_ACTIONS,
-        brand,
-        InvalidateList.allHosts,
-        false
-    );
-    // By reseller
-    Account.Name reseller = getResellerForTicket(conn, ticket);
-    invalidateList.addTable(conn,
-        Table.TableId.TICKETS,
-        reseller,
-        InvalidateList.allHosts,
-        false
-    );
-    invalidateList.addTable(conn,
-        Table.TableId.TICKET_ACTIONS,
-        reseller,
-        InvalidateList.allHosts,
-        false
-    );
   }
 
-  public static void setTicketSummary(
+  /**
+   * Updates any combination of the summary, contact emails, contact phone numbers, and client priority of a ticket.
+   * A {@code null} value leaves that field unchanged.
+   * <p>
+   * The previous values are read and replaced by a single <code>UPDATE … RETURNING</code>, every change is logged
+   * by a single multi-row action insert, and clients are notified once.  This is intended for bulk edits, such as
+   * from helpdesk integrations, where the per-field setters would cost several round trips per field.
+   * </p>
+   */
+  public static void updateTicket(
       DatabaseConnection conn,
       RequestSource source,
       InvalidateList invalidateList,
       int ticket,
-      // TODO: oldSummary as a concurrent update check
-      String summary
+      String summary,
+      Set<Email> contactEmails,
+      String contactPhoneNumbers,
+      String clientPriority
   ) throws IOException, SQLException {
-    AccountHandler.checkPermission(conn, source, "setTicketSummary", Permission.Name.edit_ticket);
-    checkAccessTicket(conn, source, "setTicketSummary", ticket);
+    updateTicket("updateTicket", conn, source, invalidateList, ticket, summary, contactEmails, contactPhoneNumbers, clientPriority);
+  }
 
-    String oldValue = conn.queryString("select summary from ticket.\"Ticket\" where id=?", ticket);
+  private static void updateTicket(
+      String action,
+      DatabaseConnection conn,
+      RequestSource source,
+      InvalidateList invalidateList,
+      int ticket,
+      String summary,
+      Set<Email> contactEmails,
+      String contactPhoneNumbers,
+      String clientPriority
+  ) throws IOException, SQLException {
+    AccountHandler.checkPermission(conn, source, action, Permission.Name.edit_ticket);
+    checkAccessTicket(conn, source, action, ticket);
+
+    TicketEdit edit = new TicketEdit(summary, contactEmails, contactPhoneNumbers, clientPriority);
+    int numColumns = edit.size();
+    if (numColumns == 0) {
+      return;
+    }
 
-    conn.update("update ticket.\"Ticket\" set summary=? where id=?", summary, ticket);
+    // Update, returning the owners and the previous values, with the row locked between the read and the write
+    String[] returned = conn.updateObject(
+        results -> {
+          String[] row = new String[3 + numColumns];
+          for (int i = 0; i < row.length; i++) {
+            row[i] = results.getString(i + 1);
+          }
+          return row;
+        },
+        edit.getUpdateSql(),
+        edit.getUpdateParams(ticket)
+    );
+    Account.Name account;
+    Account.Name brand;
+    Account.Name reseller;
+    try {
+      account = returned[0] == null ? null : Account.Name.valueOf(returned[0]);
+      brand = Account.Name.valueOf(returned[1]);
+      reseller = Account.Name.valueOf(returned[2]);
+    } catch (ValidationException e) {
+      throw new SQLException(e);
+    }
 
+    // Log all changes in one insert
     conn.update(
-        "insert into ticket.\"Action\"(ticket, administrator, action_type, old_value, new_value) values(?,?,?,?,?)",
-        ticket,
-        source.getCurrentAdministrator(),
-        ActionType.SET_SUMMARY,
-        oldValue,
-        summary
+        edit.getInsertSql(),
+        edit.getInsertParams(ticket, source.getCurrentAdministrator(), Arrays.copyOfRange(returned, 3, returned.length))
     );
 
     // Notify all clients of the update
+    invalidateTicket(conn, invalidateList, account, brand, reseller);
+  }
+
+  /**
+   * Invalidates the tickets and ticket actions for the account, brand, and reseller of the given ticket,
+   * looking-up all three in a single query.
+   */
+  private static void invalidateTicket(
+      DatabaseConnection conn,
+      InvalidateList invalidateList,
+      int ticket
+  ) throws IOException, SQLException {
+    Account.Name[] owners = conn.queryObject(
+        results -> {
+          try {
+            String account = results.getString(1);
+            return new Account.Name[]{
+                account == null ? null : Account.Name.valueOf(account),
+                Account.Name.valueOf(results.getString(2)),
+                Account.Name.valueOf(results.getString(3))
+            };
+          } catch (ValidationException e) {
+            throw new SQLException(e);
+          }
+        },
+        "select accounting, brand, reseller from ticket.\"Ticket\" where id=?",
+        ticket
+    );
+    invalidateTicket(conn, invalidateList, owners[0], owners[1], owners[2]);
+  }
+
+  private static void invalidateTicket(
+      DatabaseConnection conn,
+      InvalidateList invalidateList,
+      Account.Name account,
+      Account.Name brand,
+      Account.Name reseller
+  ) throws IOException, SQLException {
     // By account
-    Account.Name account = getAccountForTicket(conn, ticket);
     if (account != null) {
       invalidateList.addTable(conn,
           Table.TableId.TICKETS,
@@ -1152,7 +1313,6 @@ public final class TicketHandler /*implements Runnable*/ {
       );
     }
     // By brand
-    Account.Name brand = getBrandForTicket(conn, ticket);
     invalidateList.addTable(conn,
         Table.TableId.TICKETS,
         brand,
@@ -1166,7 +1326,6 @@ public final class TicketHandler /*implements Runnable*/ {
         false
     );
     // By reseller
-    Account.Name reseller = getResellerForTicket(conn, ticket);
     invalidateList.addTable(conn,
         Table.TableId.TICKETS,
         reseller,
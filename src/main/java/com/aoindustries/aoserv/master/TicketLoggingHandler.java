@@ -23,31 +23,135 @@
 
 package com.aoindustries.aoserv.master;
 
+import com.aoapps.cron.CronDaemon;
+import com.aoapps.cron.CronJob;
+import com.aoapps.cron.Schedule;
 import com.aoapps.dbc.DatabaseConnection;
 import com.aoapps.hodgepodge.logging.QueuedHandler;
 import com.aoindustries.aoserv.client.account.Account;
 import com.aoindustries.aoserv.client.reseller.Category;
+import com.aoindustries.aoserv.client.schema.Table;
 import com.aoindustries.aoserv.client.ticket.Language;
 import com.aoindustries.aoserv.client.ticket.Status;
 import com.aoindustries.aoserv.client.ticket.TicketType;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Formatter;
 import java.util.logging.Level;
 import java.util.logging.LogRecord;
+import java.util.logging.Logger;
 
 /**
  * The same as <code>com.aoindustries.aoserv.client.TicketLoggingHandler</code>
  * except with direct database access.
  *
+ * <p>Log records with identical summaries are aggregated in memory and written
+ * at most once per {@link #AGGREGATION_WINDOW}, with a single annotation per
+ * summary carrying the number of repeats.  The open log tickets are indexed
+ * in memory, reloaded only after the tickets table is invalidated, and cache
+ * invalidations are sent once per flush instead of once per record.  This
+ * keeps a storm of identical errors from turning the logging path into a
+ * database hotspot.</p>
+ *
  * @author  AO Industries, Inc.
  */
 public class TicketLoggingHandler extends QueuedHandler {
 
+  private static final Logger logger = Logger.getLogger(TicketLoggingHandler.class.getName());
+
+  /**
+   * The minimum time between writes to the ticket system.  Records received
+   * while a window is open are aggregated by summary.
+   */
+  private static final long AGGREGATION_WINDOW = 10L * 1000L;
+
+  /**
+   * The maximum number of distinct summaries held in memory before an early flush.
+   */
+  private static final int MAX_PENDING_SUMMARIES = 1000;
+
+  /**
+   * Flushes any remaining aggregated records every minute.
+   */
+  private static final Schedule flushSchedule = (minute, hour, dayOfMonth, month, dayOfWeek, year) -> true;
+
+  /**
+   * Incremented whenever the tickets table is invalidated, so each handler
+   * knows to reload its index of open log tickets.
+   */
+  private static final AtomicLong ticketsGeneration = new AtomicLong();
+
+  public static void invalidateTable(Table.TableId tableId) {
+    if (tableId == Table.TableId.TICKETS) {
+      ticketsGeneration.incrementAndGet();
+    }
+  }
+
+  /**
+   * The records aggregated for one summary.
+   */
+  private static final class Pending {
+
+    private final Level level;
+    private final String actionSummary;
+    private final String fullReport;
+    private final long firstTime;
+    private long lastTime;
+    private int count;
+
+    private Pending(Level level, String actionSummary, String fullReport, long time) {
+      this.level = level;
+      this.actionSummary = actionSummary;
+      this.fullReport = fullReport;
+      this.firstTime = time;
+      this.lastTime = time;
+      this.count = 1;
+    }
+
+    /**
+     * Gets the details, noting any repeats that were aggregated into this entry.
+     */
+    private String getDetails() {
+      if (count == 1) {
+        return fullReport;
+      }
+      return fullReport
+          + "\n\nRepeated " + count + " times between "
+          + new Timestamp(firstTime) + " and " + new Timestamp(lastTime);
+    }
+  }
+
   private final String summaryPrefix;
   private final int category;
 
+  private final Object pendingLock = new Object();
+  private Map<String, Pending> pending = new LinkedHashMap<>();
+  private long lastFlush = Long.MIN_VALUE;
+  private boolean cronJobAdded;
+
+  /**
+   * Held while writing to the database, so the background and cron threads
+   * never create duplicate tickets for the same summary.
+   */
+  private final Object flushLock = new Object();
+
+  /**
+   * The most recent open log ticket per summary, or {@code null} when not yet loaded.
+   * Only accessed while holding {@link #flushLock}.
+   */
+  private Map<String, Integer> openTickets;
+
+  /**
+   * The value of {@link #ticketsGeneration} when {@link #openTickets} was loaded.
+   */
+  private long openTicketsGeneration;
+
   /**
    * Public constructor required so can be specified in <code>logging.properties</code>.
    */
@@ -63,7 +167,6 @@ public class TicketLoggingHandler extends QueuedHandler {
 
   @Override
   protected void backgroundPublish(Formatter formatter, LogRecord rec, String fullReport) throws IOException, SQLException {
-    final Account.Name rootAccounting = AccountHandler.getRootAccount();
     final Level level = rec.getLevel();
     // Generate the summary from level, prefix classname, method
     StringBuilder tempSb = new StringBuilder();
@@ -74,79 +177,196 @@ public class TicketLoggingHandler extends QueuedHandler {
     tempSb.append(" - ").append(rec.getSourceClassName()).append(" - ").append(rec.getSourceMethodName());
     String summary = tempSb.toString();
 
-    // Start the transaction
-    try (DatabaseConnection conn = MasterDatabase.getDatabase().connect()) {
-      InvalidateList invalidateList = new InvalidateList();
-      // Look for an existing ticket to append
-      int existingTicket = conn.queryInt(
-          "select\n"
-              + "  coalesce(\n"
-              + "    (\n"
-              + "      select\n"
-              + "        id\n"
-              + "      from\n"
-              + "        ticket.\"Ticket\"\n"
-              + "      where\n"
-              + "        status in (?,?,?)\n"
-              + "        and brand=?\n"
-              + "        and accounting=?\n"
-              + "        and language=?\n"
-              + "        and ticket_type=?\n"
-              + "        and summary=?\n"
-              + "        and category=?\n"
-              + "      order by\n"
-              + "        open_date desc,\n"
-              + "        id desc\n"
-              + "      limit 1\n"
-              + "    ), -1\n"
-              + "  )",
-          Status.OPEN,
-          Status.HOLD,
-          Status.BOUNCED,
-          rootAccounting,
-          rootAccounting,
-          Language.EN,
-          TicketType.LOGS,
-          summary,
-          category
-      );
-      if (existingTicket != -1) {
-        TicketHandler.addTicketAnnotation(
-            conn,
-            invalidateList,
-            existingTicket,
-            null,
-            com.aoindustries.aoserv.client.ticket.TicketLoggingHandler.generateActionSummary(formatter, rec),
-            fullReport
+    long currentTime = System.currentTimeMillis();
+    boolean flushNow;
+    synchronized (pendingLock) {
+      if (!cronJobAdded) {
+        CronDaemon.addCronJob(
+            new CronJob() {
+              @Override
+              public Schedule getSchedule() {
+                return flushSchedule;
+              }
+
+              @Override
+              public String getName() {
+                return "Flush " + TicketLoggingHandler.this.summaryPrefix + " log tickets";
+              }
+
+              @Override
+              @SuppressWarnings({"UseSpecificCatch", "BroadCatchBlock", "TooBroadCatch"})
+              public void run(int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
+                try {
+                  flush();
+                } catch (Throwable t) {
+                  logger.log(Level.SEVERE, null, t);
+                }
+              }
+
+              @Override
+              public int getThreadPriority() {
+                return Thread.NORM_PRIORITY - 1;
+              }
+            },
+            logger
         );
-      } else {
-        // The priority depends on the log level
-        String priorityName = com.aoindustries.aoserv.client.ticket.TicketLoggingHandler.getPriorityName(level);
-        TicketHandler.addTicket(
-            conn,
-            invalidateList,
-            rootAccounting,
-            rootAccounting,
-            rootAccounting,
-            Language.EN,
-            null,
-            category,
-            TicketType.LOGS,
-            null,
+        cronJobAdded = true;
+      }
+      Pending p = pending.get(summary);
+      if (p == null) {
+        pending.put(
             summary,
-            fullReport,
-            null,
-            priorityName,
-            null,
-            Status.OPEN,
-            -1,
-            Collections.emptySet(),
-            "",
-            ""
+            new Pending(
+                level,
+                com.aoindustries.aoserv.client.ticket.TicketLoggingHandler.generateActionSummary(formatter, rec),
+                fullReport,
+                currentTime
+            )
         );
-        conn.commit();
+      } else {
+        p.count++;
+        p.lastTime = currentTime;
+      }
+      flushNow =
+          pending.size() >= MAX_PENDING_SUMMARIES
+              || lastFlush == Long.MIN_VALUE
+              || Math.abs(currentTime - lastFlush) >= AGGREGATION_WINDOW;
+    }
+    if (flushNow) {
+      flush();
+    }
+  }
+
+  /**
+   * Writes all aggregated records to the ticket system in a single transaction.
+   */
+  private void flush() throws IOException, SQLException {
+    synchronized (flushLock) {
+      Map<String, Pending> toWrite;
+      synchronized (pendingLock) {
+        lastFlush = System.currentTimeMillis();
+        if (pending.isEmpty()) {
+          return;
+        }
+        toWrite = pending;
+        pending = new LinkedHashMap<>();
+      }
+      boolean committed = false;
+      try {
+        final Account.Name rootAccounting = AccountHandler.getRootAccount();
+        try (DatabaseConnection conn = MasterDatabase.getDatabase().connect()) {
+          InvalidateList invalidateList = new InvalidateList();
+          // Reload the open log tickets, keeping the most recent ticket per summary, once tickets have changed
+          long generation = ticketsGeneration.get();
+          if (openTickets == null || openTicketsGeneration != generation) {
+            openTickets = conn.queryCall(
+                results -> {
+                  Map<String, Integer> map = new HashMap<>();
+                  while (results.next()) {
+                    map.putIfAbsent(results.getString(2), results.getInt(1));
+                  }
+                  return map;
+                },
+                "select\n"
+                    + "  id,\n"
+                    + "  summary\n"
+                    + "from\n"
+                    + "  ticket.\"Ticket\"\n"
+                    + "where\n"
+                    + "  status in (?,?,?)\n"
+                    + "  and brand=?\n"
+                    + "  and accounting=?\n"
+                    + "  and language=?\n"
+                    + "  and ticket_type=?\n"
+                    + "  and category=?\n"
+                    + "order by\n"
+                    + "  open_date desc,\n"
+                    + "  id desc",
+                Status.OPEN,
+                Status.HOLD,
+                Status.BOUNCED,
+                rootAccounting,
+                rootAccounting,
+                Language.EN,
+                TicketType.LOGS,
+                category
+            );
+            openTicketsGeneration = generation;
+          }
+          for (Map.Entry<String, Pending> entry : toWrite.entrySet()) {
+            String summary = entry.getKey();
+            Pending p = entry.getValue();
+            Integer existingTicket = openTickets.get(summary);
+            if (existingTicket != null) {
+              TicketHandler.addTicketAnnotation(
+                  conn,
+                  invalidateList,
+                  existingTicket,
+                  null,
+                  p.count == 1 ? p.actionSummary : (p.actionSummary + " (x" + p.count + ")"),
+                  p.getDetails()
+              );
+            } else {
+              // The priority depends on the log level
+              String priorityName = com.aoindustries.aoserv.client.ticket.TicketLoggingHandler.getPriorityName(p.level);
+              int ticket = TicketHandler.addTicket(
+                  conn,
+                  invalidateList,
+                  rootAccounting,
+                  rootAccounting,
+                  rootAccounting,
+                  Language.EN,
+                  null,
+                  category,
+                  TicketType.LOGS,
+                  null,
+                  summary,
+                  p.getDetails(),
+                  null,
+                  priorityName,
+                  null,
+                  Status.OPEN,
+                  -1,
+                  Collections.emptySet(),
+                  "",
+                  ""
+              );
+              openTickets.put(summary, ticket);
+            }
+          }
+          conn.commit();
+          committed = true;
+          AoservMaster.invalidateTables(conn, invalidateList, null);
+        }
+      } catch (Throwable t) {
+        if (!committed) {
+          // Tickets added to the index by the failed transaction do not exist
+          openTickets = null;
+          requeue(toWrite);
+        }
+        throw t;
+      }
+    }
+  }
+
+  /**
+   * Merges records that could not be written back into the pending records,
+   * ahead of any records received since, so they are retried on the next flush.
+   */
+  private void requeue(Map<String, Pending> unsent) {
+    synchronized (pendingLock) {
+      Map<String, Pending> merged = new LinkedHashMap<>(unsent);
+      for (Map.Entry<String, Pending> entry : pending.entrySet()) {
+        Pending newer = entry.getValue();
+        Pending older = merged.get(entry.getKey());
+        if (older == null) {
+          merged.put(entry.getKey(), newer);
+        } else {
+          older.count += newer.count;
+          older.lastTime = newer.lastTime;
+        }
       }
-      AoservMaster.invalidateTables(conn, invalidateList, null);
+      pending = merged;
     }
   }
 }
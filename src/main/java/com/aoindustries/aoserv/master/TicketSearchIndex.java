@@ -0,0 +1,639 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import com.aoapps.collections.IntList;
+import com.aoapps.cron.CronDaemon;
+import com.aoapps.cron.CronJob;
+import com.aoapps.cron.Schedule;
+import com.aoapps.dbc.DatabaseConnection;
+import com.aoindustries.aoserv.client.master.User;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * An in-memory trigram index over the text of tickets: the summary and details
+ * of each ticket, and the summary, details and new value of each action.
+ *
+ * <p>The index is not started with the master, since no client command
+ * searches it yet.  It is started by the first call to {@link #search}, which
+ * fails until the index has been built in the background.  Once started, it is
+ * kept current each minute by re-indexing new tickets and every ticket with
+ * new actions.  All edits to a ticket's text are logged as actions, so an edit
+ * is found no matter how old the ticket is.  A ticket is re-indexed from all
+ * of its text, replacing its previous postings.  The index is rebuilt each
+ * night, which drops deleted tickets and picks up any change made directly in
+ * the database.</p>
+ *
+ * <p>Text from actions only visible to ticket admins is indexed separately, so
+ * it never matches for other administrators.</p>
+ *
+ * <p>Words are split into trigrams the same as PostgreSQL's
+ * <code>pg_trgm</code>: lower-cased, padded by two spaces before and one
+ * after.  A ticket matches a word when it contains all of the word's
+ * trigrams.  Results are ranked by the number of query words matched, then
+ * by the most recently indexed.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class TicketSearchIndex implements CronJob {
+
+  private static final Logger logger = Logger.getLogger(TicketSearchIndex.class.getName());
+
+  /**
+   * The number of tickets read per query.
+   */
+  private static final int BATCH_SIZE = 1000;
+
+  /**
+   * The number of action IDs re-read before the last action indexed, so an
+   * action committed out of order is not missed.  Re-indexing is idempotent.
+   */
+  private static final int ACTION_OVERLAP = 1000;
+
+  /**
+   * The number of ticket IDs re-read before the last ticket indexed, so a
+   * ticket committed out of order is not missed.
+   */
+  private static final int TICKET_OVERLAP = 100;
+
+  /**
+   * The index is rebuilt daily at this hour and minute.
+   */
+  private static final int REBUILD_HOUR = 3;
+  private static final int REBUILD_MINUTE = 17;
+
+  /**
+   * The maximum number of ranked candidates checked for access.
+   */
+  private static final int MAX_CANDIDATES = 10000;
+
+  /**
+   * The maximum number of ticket IDs returned by a search.
+   */
+  public static final int MAX_RESULTS = 1000;
+
+  /**
+   * The sorted document numbers containing a trigram.
+   */
+  private static final class Postings {
+
+    private int[] docs = new int[2];
+    private int size;
+
+    private void add(int doc) {
+      // Documents are usually added in increasing order
+      if (size == 0 || docs[size - 1] < doc) {
+        if (size == docs.length) {
+          docs = Arrays.copyOf(docs, size * 2);
+        }
+        docs[size++] = doc;
+      } else {
+        int pos = Arrays.binarySearch(docs, 0, size, doc);
+        if (pos < 0) {
+          pos = -(pos + 1);
+          if (size == docs.length) {
+            docs = Arrays.copyOf(docs, size * 2);
+          }
+          System.arraycopy(docs, pos, docs, pos + 1, size - pos);
+          docs[pos] = doc;
+          size++;
+        }
+      }
+    }
+
+    private void remove(int doc) {
+      int pos = Arrays.binarySearch(docs, 0, size, doc);
+      if (pos >= 0) {
+        System.arraycopy(docs, pos + 1, docs, pos, size - pos - 1);
+        size--;
+      }
+    }
+
+    private boolean contains(int doc) {
+      return Arrays.binarySearch(docs, 0, size, doc) >= 0;
+    }
+  }
+
+  /**
+   * One generation of the index, replaced whole when rebuilt.
+   */
+  private static final class Index {
+
+    private final Map<Long, Postings> trigrams = new HashMap<>();
+
+    /**
+     * Document numbers by ticket ID, with admin-only text in a separate document.
+     */
+    private final Map<Integer, Integer> publicDocs = new HashMap<>();
+    private final Map<Integer, Integer> adminDocs = new HashMap<>();
+
+    /**
+     * The ticket ID and trigrams of each document number.  Document numbers
+     * are not reused, so a re-indexed ticket ranks as most recently indexed.
+     */
+    private int[] docTickets = new int[1024];
+    private long[][] docTrigrams = new long[1024][];
+    private int docCount;
+
+    private void remove(Map<Integer, Integer> docs, int ticket) {
+      Integer doc = docs.remove(ticket);
+      if (doc != null) {
+        for (long trigram : docTrigrams[doc]) {
+          Postings postings = trigrams.get(trigram);
+          postings.remove(doc);
+          if (postings.size == 0) {
+            trigrams.remove(trigram);
+          }
+        }
+        docTrigrams[doc] = null;
+      }
+    }
+
+    private void add(Map<Integer, Integer> docs, int ticket, Set<Long> ticketTrigrams) {
+      if (!ticketTrigrams.isEmpty()) {
+        if (docCount == docTickets.length) {
+          docTickets = Arrays.copyOf(docTickets, docCount * 2);
+          docTrigrams = Arrays.copyOf(docTrigrams, docCount * 2);
+        }
+        int doc = docCount++;
+        long[] array = new long[ticketTrigrams.size()];
+        int i = 0;
+        for (Long trigram : ticketTrigrams) {
+          array[i++] = trigram;
+          trigrams.computeIfAbsent(trigram, t -> new Postings()).add(doc);
+        }
+        docTickets[doc] = ticket;
+        docTrigrams[doc] = array;
+        docs.put(ticket, doc);
+      }
+    }
+
+    /**
+     * Replaces all postings of a ticket.  A ticket without any text is removed.
+     */
+    private void replace(int ticket, Set<Long> publicTrigrams, Set<Long> adminTrigrams) {
+      remove(publicDocs, ticket);
+      remove(adminDocs, ticket);
+      add(publicDocs, ticket, publicTrigrams);
+      add(adminDocs, ticket, adminTrigrams);
+    }
+  }
+
+  private static final Object lock = new Object();
+
+  /**
+   * The current index or {@code null} until first built.
+   */
+  private static Index index;
+  private static int lastTicket;
+  private static int lastAction;
+
+  private static final LongAdder searches = new LongAdder();
+
+  /**
+   * Gets the number of documents indexed.
+   */
+  public static int getDocuments() {
+    synchronized (lock) {
+      return index == null ? 0 : index.publicDocs.size() + index.adminDocs.size();
+    }
+  }
+
+  /**
+   * Gets the number of distinct trigrams indexed.
+   */
+  public static int getTrigrams() {
+    synchronized (lock) {
+      return index == null ? 0 : index.trigrams.size();
+    }
+  }
+
+  /**
+   * Gets the number of searches performed.
+   */
+  public static long getSearches() {
+    return searches.sum();
+  }
+
+  /**
+   * Splits text into words.
+   */
+  private static List<String> getWords(String text) {
+    List<String> words = new ArrayList<>();
+    int len = text.length();
+    int start = -1;
+    for (int i = 0; i <= len; i++) {
+      boolean wordChar = i < len && Character.isLetterOrDigit(text.charAt(i));
+      if (wordChar) {
+        if (start == -1) {
+          start = i;
+        }
+      } else if (start != -1) {
+        words.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+        start = -1;
+      }
+    }
+    return words;
+  }
+
+  /**
+   * Adds the trigrams of a single, lower-case word.
+   */
+  private static void addTrigrams(String word, Set<Long> out) {
+    String padded = "  " + word + ' ';
+    for (int i = 0, end = padded.length() - 2; i < end; i++) {
+      out.add(
+          ((long) padded.charAt(i) << 32)
+              | ((long) padded.charAt(i + 1) << 16)
+              | padded.charAt(i + 2)
+      );
+    }
+  }
+
+  private static void addText(Set<Long> out, String ... texts) {
+    for (String text : texts) {
+      if (text != null) {
+        for (String word : getWords(text)) {
+          addTrigrams(word, out);
+        }
+      }
+    }
+  }
+
+  private static String toArrayLiteral(IntList tickets, int from, int to) {
+    StringBuilder sb = new StringBuilder();
+    sb.append('{');
+    for (int i = from; i < to; i++) {
+      if (i > from) {
+        sb.append(',');
+      }
+      sb.append(tickets.getInt(i));
+    }
+    return sb.append('}').toString();
+  }
+
+  /**
+   * Re-indexes the given tickets from all of their text, in batches.
+   */
+  private static void reindex(DatabaseConnection conn, Index target, IntList tickets) throws IOException, SQLException {
+    for (int from = 0, size = tickets.size(); from < size; from += BATCH_SIZE) {
+      int to = Math.min(from + BATCH_SIZE, size);
+      String ids = toArrayLiteral(tickets, from, to);
+      Map<Integer, Set<Long>> publicTrigrams = new HashMap<>();
+      Map<Integer, Set<Long>> adminTrigrams = new HashMap<>();
+      conn.queryCall(
+          results -> {
+            while (results.next()) {
+              addText(
+                  publicTrigrams.computeIfAbsent(results.getInt(1), t -> new HashSet<>()),
+                  results.getString(2),
+                  results.getString(3)
+              );
+            }
+            return null;
+          },
+          "select id, summary, details from ticket.\"Ticket\" where id = ANY(?::integer[])",
+          ids
+      );
+      conn.queryCall(
+          results -> {
+            while (results.next()) {
+              addText(
+                  (results.getBoolean(2) ? adminTrigrams : publicTrigrams).computeIfAbsent(results.getInt(1), t -> new HashSet<>()),
+                  results.getString(3),
+                  results.getString(4),
+                  results.getString(5)
+              );
+            }
+            return null;
+          },
+          "select\n"
+              + "  ac.ticket,\n"
+              + "  tat.visible_admin_only,\n"
+              + "  ac.summary,\n"
+              + "  ac.details,\n"
+              + "  ac.new_value\n"
+              + "from\n"
+              + "  ticket.\"Action\" ac\n"
+              + "  inner join ticket.\"ActionType\" tat on ac.action_type=tat.type\n"
+              + "where\n"
+              + "  ac.ticket = ANY(?::integer[])",
+          ids
+      );
+      synchronized (lock) {
+        for (int i = from; i < to; i++) {
+          int ticket = tickets.getInt(i);
+          target.replace(
+              ticket,
+              publicTrigrams.getOrDefault(ticket, Collections.emptySet()),
+              adminTrigrams.getOrDefault(ticket, Collections.emptySet())
+          );
+        }
+      }
+    }
+  }
+
+  /**
+   * Builds a new index from all tickets, replacing the current index when done.
+   */
+  private static void rebuild() throws IOException, SQLException {
+    Index newIndex = new Index();
+    try (DatabaseConnection conn = MasterDatabase.getDatabase().connect()) {
+      long startNanos = System.nanoTime();
+      // Read before the tickets, so later changes are found by the next update
+      int maxTicket = conn.queryInt("select coalesce(max(id), 0) from ticket.\"Ticket\"");
+      int maxAction = conn.queryInt("select coalesce(max(id), 0) from ticket.\"Action\"");
+      int afterId = Integer.MIN_VALUE;
+      IntList tickets;
+      do {
+        tickets = conn.queryIntList(
+            "select id from ticket.\"Ticket\" where id > ? order by id limit " + BATCH_SIZE,
+            afterId
+        );
+        reindex(conn, newIndex, tickets);
+        if (!tickets.isEmpty()) {
+          afterId = tickets.getInt(tickets.size() - 1);
+        }
+      } while (tickets.size() == BATCH_SIZE);
+      synchronized (lock) {
+        index = newIndex;
+        lastTicket = maxTicket;
+        lastAction = maxAction;
+      }
+      if (logger.isLoggable(Level.INFO)) {
+        logger.info("Indexed tickets in " + ((System.nanoTime() - startNanos) / 1000000) + " ms");
+      }
+    }
+  }
+
+  /**
+   * Re-indexes the tickets added and the tickets with actions added since the previous call.
+   */
+  private static void update() throws IOException, SQLException {
+    Index current;
+    int afterTicket;
+    int afterAction;
+    synchronized (lock) {
+      current = index;
+      afterTicket = Math.max(0, lastTicket - TICKET_OVERLAP);
+      afterAction = Math.max(0, lastAction - ACTION_OVERLAP);
+    }
+    try (DatabaseConnection conn = MasterDatabase.getDatabase().connect()) {
+      int maxTicket = conn.queryInt("select coalesce(max(id), 0) from ticket.\"Ticket\"");
+      int maxAction = conn.queryInt("select coalesce(max(id), 0) from ticket.\"Action\"");
+      reindex(
+          conn,
+          current,
+          conn.queryIntList(
+              "select id from ticket.\"Ticket\" where id > ?\n"
+                  + "union\n"
+                  + "select ticket from ticket.\"Action\" where id > ?\n"
+                  + "order by 1",
+              afterTicket,
+              afterAction
+          )
+      );
+      synchronized (lock) {
+        lastTicket = Math.max(lastTicket, maxTicket);
+        lastAction = Math.max(lastAction, maxAction);
+      }
+    }
+  }
+
+  /**
+   * Searches the text of the tickets the current administrator may access.
+   * Starts the index on first call.
+   *
+   * @return  the matching ticket IDs, best first
+   */
+  public static List<Integer> search(DatabaseConnection conn, RequestSource source, String query, int limit) throws IOException, SQLException {
+    if (limit < 1 || limit > MAX_RESULTS) {
+      throw new SQLException("Invalid limit, must be between 1 and " + MAX_RESULTS + ": " + limit);
+    }
+    com.aoindustries.aoserv.client.account.User.Name currentAdministrator = source.getCurrentAdministrator();
+    User mu = AoservMaster.getUser(conn, currentAdministrator);
+    boolean isMaster;
+    boolean isAdmin;
+    if (mu != null) {
+      if (AoservMaster.getUserHosts(conn, currentAdministrator).length != 0) {
+        throw new SQLException("Daemons may not search tickets: " + currentAdministrator);
+      }
+      isMaster = true;
+      isAdmin = true;
+    } else {
+      isMaster = false;
+      isAdmin = TicketHandler.isTicketAdmin(conn, source);
+    }
+    start();
+    searches.increment();
+    List<String> words = new ArrayList<>(new LinkedHashSet<>(getWords(query)));
+    if (words.isEmpty()) {
+      return new ArrayList<>();
+    }
+    // Number of words matched and best document number, by ticket
+    Map<Integer, int[]> scores = new HashMap<>();
+    synchronized (lock) {
+      if (index == null) {
+        throw new SQLException("Ticket search index is still being built");
+      }
+      for (String word : words) {
+        Set<Long> wordTrigrams = new HashSet<>();
+        addTrigrams(word, wordTrigrams);
+        List<Postings> lists = new ArrayList<>(wordTrigrams.size());
+        boolean missing = false;
+        for (Long trigram : wordTrigrams) {
+          Postings postings = index.trigrams.get(trigram);
+          if (postings == null) {
+            missing = true;
+            break;
+          }
+          lists.add(postings);
+        }
+        if (missing) {
+          continue;
+        }
+        // Walk the shortest list, checking the others
+        lists.sort(Comparator.comparingInt(p -> p.size));
+        Postings shortest = lists.get(0);
+        Set<Integer> matchedTickets = new HashSet<>();
+        for (int i = 0; i < shortest.size; i++) {
+          int doc = shortest.docs[i];
+          int ticket = index.docTickets[doc];
+          if (!isAdmin && !Integer.valueOf(doc).equals(index.publicDocs.get(ticket))) {
+            continue;
+          }
+          boolean all = true;
+          for (int j = 1; j < lists.size(); j++) {
+            if (!lists.get(j).contains(doc)) {
+              all = false;
+              break;
+            }
+          }
+          if (all) {
+            int[] score = scores.computeIfAbsent(ticket, t -> new int[] {0, -1});
+            if (matchedTickets.add(ticket)) {
+              score[0]++;
+            }
+            if (doc > score[1]) {
+              score[1] = doc;
+            }
+          }
+        }
+      }
+    }
+    List<Map.Entry<Integer, int[]>> ranked = new ArrayList<>(scores.entrySet());
+    ranked.sort((e1, e2) -> {
+      int diff = Integer.compare(e2.getValue()[0], e1.getValue()[0]);
+      return diff != 0 ? diff : Integer.compare(e2.getValue()[1], e1.getValue()[1]);
+    });
+    if (ranked.size() > MAX_CANDIDATES) {
+      ranked = ranked.subList(0, MAX_CANDIDATES);
+    }
+    if (ranked.isEmpty()) {
+      return new ArrayList<>();
+    }
+    StringBuilder candidates = new StringBuilder();
+    candidates.append('{');
+    for (Map.Entry<Integer, int[]> entry : ranked) {
+      if (candidates.length() > 1) {
+        candidates.append(',');
+      }
+      candidates.append(entry.getKey());
+    }
+    candidates.append('}');
+    // Filter by the same rules as TicketHandler.canAccessTicket, also removing deleted tickets
+    IntList accessible;
+    if (isMaster) {
+      accessible = conn.queryIntList(
+          "select id from ticket.\"Ticket\" where id = ANY(?::integer[])",
+          candidates.toString()
+      );
+    } else {
+      String accounts = AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source));
+      if (isAdmin) {
+        accessible = conn.queryIntList(
+            "select id from ticket.\"Ticket\" where id = ANY(?::integer[]) and (accounting = ANY(?::text[]) or reseller = ANY(?::text[]))",
+            candidates.toString(),
+            accounts,
+            accounts
+        );
+      } else {
+        accessible = conn.queryIntList(
+            "select id from ticket.\"Ticket\" where id = ANY(?::integer[]) and accounting = ANY(?::text[])",
+            candidates.toString(),
+            accounts
+        );
+      }
+    }
+    Set<Integer> allowed = new HashSet<>();
+    for (int i = 0, size = accessible.size(); i < size; i++) {
+      allowed.add(accessible.getInt(i));
+    }
+    List<Integer> results = new ArrayList<>(Math.min(limit, allowed.size()));
+    for (Map.Entry<Integer, int[]> entry : ranked) {
+      if (results.size() >= limit) {
+        break;
+      }
+      if (allowed.contains(entry.getKey())) {
+        results.add(entry.getKey());
+      }
+    }
+    return results;
+  }
+
+  private static boolean started;
+
+  /**
+   * Starts the index on first call, building it in the background.
+   */
+  private static void start() {
+    synchronized (lock) {
+      if (!started) {
+        if (logger.isLoggable(Level.INFO)) {
+          logger.info("Starting " + TicketSearchIndex.class.getSimpleName());
+        }
+        TicketSearchIndex job = new TicketSearchIndex();
+        CronDaemon.addCronJob(job, logger);
+        AoservMaster.executorService.submit(() -> job.run(-1, -1, -1, -1, -1, -1));
+        started = true;
+      }
+    }
+  }
+
+  private TicketSearchIndex() {
+    // Do nothing
+  }
+
+  /**
+   * Runs every minute, rebuilding the index once a day.
+   */
+  private static final Schedule schedule = (minute, hour, dayOfMonth, month, dayOfWeek, year) -> true;
+
+  @Override
+  public Schedule getSchedule() {
+    return schedule;
+  }
+
+  @Override
+  public int getThreadPriority() {
+    return Thread.NORM_PRIORITY - 1;
+  }
+
+  private static final Object updateLock = new Object();
+
+  @Override
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+  public void run(int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
+    try {
+      synchronized (updateLock) {
+        boolean isBuilt;
+        synchronized (lock) {
+          isBuilt = index != null;
+        }
+        if (!isBuilt || (hour == REBUILD_HOUR && minute == REBUILD_MINUTE)) {
+          rebuild();
+        } else {
+          update();
+        }
+      }
+    } catch (Throwable t) {
+      logger.log(Level.SEVERE, null, t);
+    }
+  }
+}
@@ -0,0 +1,490 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import com.aoapps.collections.IntList;
+import com.aoapps.cron.CronDaemon;
+import com.aoapps.cron.CronJob;
+import com.aoapps.cron.Schedule;
+import com.aoapps.dbc.DatabaseConnection;
+import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Runs virtual disk verifications in the background, limiting the number of
+ * concurrent verifications per physical server so disk I/O is not saturated.
+ * A request for a disk already queued or being verified joins the existing job.
+ *
+ * <p>Interactive verifications, requested by a client, are never queued behind
+ * the weekly sweep.  They start immediately, or move a disk already queued to
+ * the front, and count against the limit only to hold back the sweep.</p>
+ *
+ * <p>When {@link MasterConfiguration#getVirtualDiskVerifyDayOfWeek()} is set, every
+ * virtual disk is queued for verification weekly.</p>
+ *
+ * <p>Jobs are kept in memory only.  The last verified time is persisted by the
+ * daemons on both the primary and secondary physical servers.</p>
+ *
+ * @author  AO Industries, Inc.
+ */
+public final class VirtualDiskVerifier implements CronJob {
+
+  private static final Logger logger = Logger.getLogger(VirtualDiskVerifier.class.getName());
+
+  /**
+   * The default number of concurrent verifications per physical server.
+   */
+  static final int DEFAULT_CONCURRENCY = 1;
+
+  /**
+   * The number of finished jobs retained for status.
+   */
+  private static final int FINISHED_JOBS_SIZE = 1000;
+
+  /**
+   * The state of a verification job.
+   */
+  public enum State {
+    QUEUED,
+    RUNNING,
+    COMPLETED,
+    FAILED
+  }
+
+  /**
+   * A single verification of one virtual disk.
+   */
+  public static final class Job {
+
+    private final int virtualDisk;
+    private final int virtualServer;
+    private final String virtualServerName;
+    private final String device;
+    private final long submitted = System.currentTimeMillis();
+    private volatile State state = State.QUEUED;
+    private volatile long started = -1;
+    private volatile long finished = -1;
+    private volatile long lastVerified = -1;
+    private volatile String error;
+    private volatile Throwable failure;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+
+    /**
+     * The physical server the job is queued on, or {@code -1} when not queued.
+     * Guarded by {@link #jobsLock}.
+     */
+    private int queuedOn = -1;
+
+    private Job(int virtualDisk, int virtualServer, String virtualServerName, String device) {
+      this.virtualDisk = virtualDisk;
+      this.virtualServer = virtualServer;
+      this.virtualServerName = virtualServerName;
+      this.device = device;
+    }
+
+    public int getVirtualDisk() {
+      return virtualDisk;
+    }
+
+    public State getState() {
+      return state;
+    }
+
+    /**
+     * Gets the time the job was submitted, in milliseconds.
+     */
+    public long getSubmitted() {
+      return submitted;
+    }
+
+    /**
+     * Gets the time verification started, in milliseconds, or {@code -1} when still queued.
+     */
+    public long getStarted() {
+      return started;
+    }
+
+    /**
+     * Gets the time the job finished, in milliseconds, or {@code -1} when not finished.
+     */
+    public long getFinished() {
+      return finished;
+    }
+
+    /**
+     * Gets the last verified time reported by the daemon, in milliseconds, or {@code -1} when not completed.
+     */
+    public long getLastVerified() {
+      return lastVerified;
+    }
+
+    /**
+     * Gets the error message when failed.
+     */
+    public String getError() {
+      return error;
+    }
+
+    /**
+     * Waits for the job to finish.
+     *
+     * @return  the last verified time, in milliseconds
+     */
+    public long get() throws IOException, SQLException {
+      try {
+        return result.get();
+      } catch (InterruptedException err) {
+        // Restore the interrupted status
+        Thread.currentThread().interrupt();
+        InterruptedIOException ioErr = new InterruptedIOException();
+        ioErr.initCause(err);
+        throw ioErr;
+      } catch (ExecutionException err) {
+        Throwable cause = err.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        if (cause instanceof SQLException) {
+          throw new SQLException(cause.getMessage(), cause);
+        }
+        throw new IOException("Virtual disk verification failed: " + virtualServerName + ":" + device, cause);
+      }
+    }
+
+    @Override
+    public String toString() {
+      StringBuilder sb = new StringBuilder();
+      sb.append(virtualServerName).append(':').append(device).append(' ').append(state);
+      if (lastVerified != -1) {
+        sb.append(" lastVerified=").append(new Timestamp(lastVerified));
+      }
+      if (error != null) {
+        sb.append(" error=").append(error);
+      }
+      return sb.toString();
+    }
+  }
+
+  private static final int concurrency;
+
+  static {
+    int c;
+    try {
+      c = MasterConfiguration.getVirtualDiskVerifyConcurrency();
+    } catch (IOException | NumberFormatException e) {
+      logger.log(Level.WARNING, "Using default virtual disk verification concurrency", e);
+      c = DEFAULT_CONCURRENCY;
+    }
+    concurrency = c;
+  }
+
+  private static final Object jobsLock = new Object();
+
+  /**
+   * The jobs queued or running, by virtual disk.
+   */
+  private static final Map<Integer, Job> activeJobs = new HashMap<>();
+
+  /**
+   * The most recently finished jobs, by virtual disk.
+   */
+  private static final Map<Integer, Job> finishedJobs = new LinkedHashMap<>();
+
+  /**
+   * The jobs waiting for, and the number of jobs running on, one physical server.
+   */
+  private static final class PhysicalServerQueue {
+
+    private final Deque<Job> queued = new ArrayDeque<>();
+    private int running;
+  }
+
+  /**
+   * The queues by the primary physical server found when each job was submitted.
+   */
+  private static final Map<Integer, PhysicalServerQueue> physicalServerQueues = new HashMap<>();
+
+  /**
+   * Starts queued jobs while the physical server is below its concurrency.
+   * Only running jobs occupy executor threads.
+   */
+  private static void dispatch(int physicalServer, PhysicalServerQueue queue) {
+    assert Thread.holdsLock(jobsLock);
+    while (queue.running < concurrency && !queue.queued.isEmpty()) {
+      start(queue.queued.removeFirst(), physicalServer, queue);
+    }
+    if (queue.running == 0) {
+      physicalServerQueues.remove(physicalServer, queue);
+    }
+  }
+
+  /**
+   * Starts a job, regardless of the concurrency of the physical server.
+   */
+  private static void start(Job job, int physicalServer, PhysicalServerQueue queue) {
+    assert Thread.holdsLock(jobsLock);
+    job.queuedOn = -1;
+    queue.running++;
+    AoservMaster.executorService.submit(() -> run(job, physicalServer));
+  }
+
+  /**
+   * Starts a job still waiting in its queue, for an interactive request joining it.
+   */
+  private static void promote(Job job) {
+    assert Thread.holdsLock(jobsLock);
+    int physicalServer = job.queuedOn;
+    if (physicalServer != -1) {
+      PhysicalServerQueue queue = physicalServerQueues.get(physicalServer);
+      if (queue.queued.remove(job)) {
+        start(job, physicalServer, queue);
+      }
+    }
+  }
+
+  /**
+   * Queues a virtual disk for verification, or returns the job already queued
+   * or running for the disk.  Access checks must be performed by the caller.
+   *
+   * @param  interactive  when {@code true}, starts the verification immediately
+   *                      instead of queuing it behind other verifications on
+   *                      the same physical server
+   */
+  public static Job submit(DatabaseConnection conn, int virtualDisk, boolean interactive) throws IOException, SQLException {
+    synchronized (jobsLock) {
+      Job existing = activeJobs.get(virtualDisk);
+      if (existing != null) {
+        if (interactive) {
+          promote(existing);
+        }
+        return existing;
+      }
+    }
+    int virtualServer = VirtualServerHandler.getVirtualServerForVirtualDisk(conn, virtualDisk);
+    Job job = new Job(
+        virtualDisk,
+        virtualServer,
+        NetHostHandler.getNameForHost(conn, virtualServer),
+        VirtualServerHandler.getDeviceForVirtualDisk(conn, virtualDisk)
+    );
+    synchronized (jobsLock) {
+      Job existing = activeJobs.putIfAbsent(virtualDisk, job);
+      if (existing != null) {
+        if (interactive) {
+          promote(existing);
+        }
+        return existing;
+      }
+    }
+    int physicalServer;
+    try {
+      // Find current location of primary server
+      physicalServer = ClusterHandler.getPrimaryPhysicalServer(virtualServer);
+    } catch (ClusterHandler.ClusterException e) {
+      fail(job, e);
+      finish(job, -1);
+      return job;
+    }
+    synchronized (jobsLock) {
+      PhysicalServerQueue queue = physicalServerQueues.computeIfAbsent(physicalServer, s -> new PhysicalServerQueue());
+      if (interactive) {
+        start(job, physicalServer, queue);
+      } else {
+        job.queuedOn = physicalServer;
+        queue.queued.addLast(job);
+        dispatch(physicalServer, queue);
+      }
+    }
+    return job;
+  }
+
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+  private static void run(Job job, int physicalServer) {
+    try {
+      job.started = System.currentTimeMillis();
+      job.state = State.RUNNING;
+      // Mappings may have changed while queued
+      int primaryPhysicalServer = ClusterHandler.getPrimaryPhysicalServer(job.virtualServer);
+      int secondaryPhysicalServer = ClusterHandler.getSecondaryPhysicalServer(job.virtualServer);
+      AoservDaemonConnector primaryDaemonConnector;
+      AoservDaemonConnector secondaryDaemonConnector;
+      try (DatabaseConnection conn = MasterDatabase.getDatabase().connect()) {
+        primaryDaemonConnector = DaemonHandler.getDaemonConnector(conn, primaryPhysicalServer);
+        secondaryDaemonConnector = DaemonHandler.getDaemonConnector(conn, secondaryPhysicalServer);
+      }
+      // Begin verification, getting Unix time in seconds
+      long lastVerified = DaemonHandler.callDaemon(
+          primaryDaemonConnector,
+          primaryPhysicalServer,
+          daemonConnector -> daemonConnector.verifyVirtualDisk(job.virtualServerName, job.device)
+      );
+      // Update the verification time on the secondary
+      DaemonHandler.runDaemon(
+          secondaryDaemonConnector,
+          secondaryPhysicalServer,
+          daemonConnector -> daemonConnector.updateVirtualDiskLastVerified(job.virtualServerName, job.device, lastVerified)
+      );
+      job.lastVerified = lastVerified * 1000;
+      job.state = State.COMPLETED;
+    } catch (Throwable t) {
+      fail(job, t);
+    } finally {
+      finish(job, physicalServer);
+    }
+  }
+
+  private static void fail(Job job, Throwable t) {
+    job.failure = t;
+    job.error = t.toString();
+    job.state = State.FAILED;
+    logger.log(Level.WARNING, "Virtual disk verification failed: " + job.virtualServerName + ":" + job.device, t);
+  }
+
+  /**
+   * Records a finished job, then starts the next queued job for its physical server.
+   *
+   * @param  physicalServer  the physical server the job was queued on, or {@code -1} when never queued
+   */
+  private static void finish(Job job, int physicalServer) {
+    job.finished = System.currentTimeMillis();
+    try {
+      synchronized (jobsLock) {
+        if (physicalServer != -1) {
+          PhysicalServerQueue queue = physicalServerQueues.get(physicalServer);
+          queue.running--;
+          dispatch(physicalServer, queue);
+        }
+        activeJobs.remove(job.virtualDisk, job);
+        finishedJobs.remove(job.virtualDisk);
+        finishedJobs.put(job.virtualDisk, job);
+        Iterator<Job> iter = finishedJobs.values().iterator();
+        while (finishedJobs.size() > FINISHED_JOBS_SIZE && iter.hasNext()) {
+          iter.next();
+          iter.remove();
+        }
+      }
+    } finally {
+      if (job.state == State.COMPLETED) {
+        job.result.complete(job.lastVerified);
+      } else {
+        job.result.completeExceptionally(job.failure);
+      }
+    }
+  }
+
+  /**
+   * Gets a snapshot of all queued, running, and recently finished jobs.
+   */
+  public static List<Job> getJobs() {
+    synchronized (jobsLock) {
+      List<Job> jobs = new ArrayList<>(activeJobs.size() + finishedJobs.size());
+      jobs.addAll(activeJobs.values());
+      jobs.addAll(finishedJobs.values());
+      return jobs;
+    }
+  }
+
+  /**
+   * Queues all virtual disks for verification.
+   */
+  public static void submitAll() throws IOException, SQLException {
+    try (DatabaseConnection conn = MasterDatabase.getDatabase().connect()) {
+      IntList virtualDisks = conn.queryIntList("select id from infrastructure.\"VirtualDisk\" order by id");
+      for (int i = 0, size = virtualDisks.size(); i < size; i++) {
+        submit(conn, virtualDisks.getInt(i), false);
+      }
+    }
+  }
+
+  private static boolean started;
+
+  @SuppressWarnings("UseOfSystemOutOrSystemErr")
+  public static void start() {
+    synchronized (System.out) {
+      if (!started) {
+        System.out.print("Starting " + VirtualDiskVerifier.class.getSimpleName() + ": ");
+        CronDaemon.addCronJob(new VirtualDiskVerifier(), logger);
+        started = true;
+        System.out.println("Done");
+      }
+    }
+  }
+
+  private VirtualDiskVerifier() {
+    // Do nothing
+  }
+
+  /**
+   * Runs weekly at 1:30 am on the configured day of the week.
+   */
+  private static final Schedule schedule = (minute, hour, dayOfMonth, month, dayOfWeek, year) -> {
+    if (minute != 30 || hour != 1) {
+      return false;
+    }
+    try {
+      return dayOfWeek == MasterConfiguration.getVirtualDiskVerifyDayOfWeek();
+    } catch (IOException | NumberFormatException e) {
+      logger.log(Level.WARNING, null, e);
+      return false;
+    }
+  };
+
+  @Override
+  public Schedule getSchedule() {
+    return schedule;
+  }
+
+  @Override
+  public int getThreadPriority() {
+    return Thread.NORM_PRIORITY - 1;
+  }
+
+  @Override
+  @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
+  public void run(int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
+    try {
+      submitAll();
+    } catch (Throwable t) {
+      logger.log(Level.SEVERE, null, t);
+    }
+  }
+}
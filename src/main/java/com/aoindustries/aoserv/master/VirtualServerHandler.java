@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2012, 2013, 2014, 2015, 2018, 2019, 2020, 2021, 2022, 2023  AO Industries, Inc.
+ * Copyright (C) 2012, 2013, 2014, 2015, 2018, 2019, 2020, 2021, 2022, 2023, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -45,6 +45,15 @@ public final class VirtualServerHandler {
 
   // private static final Logger logger = Logger.getLogger(VirtualServerHandler.class.getName());
 
+  private static final DaemonStatusCache<Integer, Integer> virtualServerStatusCache = new DaemonStatusCache<>();
+
+  /**
+   * Gets the cache of virtual server status polled from the daemons.
+   */
+  public static DaemonStatusCache<Integer, Integer> getVirtualServerStatusCache() {
+    return virtualServerStatusCache;
+  }
+
   /*
   public static void checkAccessVirtualServer(DatabaseConnection conn, RequestSource source, String action, int virtualServer) throws IOException, SQLException {
     if (!canAccessVirtualServer(conn, source, virtualServer)) {
@@ -122,9 +131,16 @@ public final class VirtualServerHandler {
     int primaryPhysicalServer = ClusterHandler.getPrimaryPhysicalServer(virtualServer);
     // Grant access to the Xen outer server
     String virtualServerName = NetHostHandler.getNameForHost(conn, virtualServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, primaryPhysicalServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.createVirtualServer(virtualServerName);
+    String output;
+    try {
+      output = DaemonHandler.callDaemon(conn, primaryPhysicalServer, daemonConnector -> daemonConnector.createVirtualServer(virtualServerName));
+    } finally {
+      // The status has changed
+      virtualServerStatusCache.remove(virtualServer);
+    }
+    // DRBD roles may have changed
+    ClusterHandler.refreshVirtualServer(virtualServer);
+    return output;
   }
 
   public static String rebootVirtualServer(
@@ -144,9 +160,12 @@ public final class VirtualServerHandler {
     int primaryPhysicalServer = ClusterHandler.getPrimaryPhysicalServer(virtualServer);
     // Grant access to the Xen outer server
     String virtualServerName = NetHostHandler.getNameForHost(conn, virtualServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, primaryPhysicalServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.rebootVirtualServer(virtualServerName);
+    try {
+      return DaemonHandler.callDaemon(conn, primaryPhysicalServer, daemonConnector -> daemonConnector.rebootVirtualServer(virtualServerName));
+    } finally {
+      // The status has changed
+      virtualServerStatusCache.remove(virtualServer);
+    }
   }
 
   public static String shutdownVirtualServer(
@@ -166,9 +185,16 @@ public final class VirtualServerHandler {
     int primaryPhysicalServer = ClusterHandler.getPrimaryPhysicalServer(virtualServer);
     // Grant access to the Xen outer server
     String virtualServerName = NetHostHandler.getNameForHost(conn, virtualServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, primaryPhysicalServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.shutdownVirtualServer(virtualServerName);
+    String output;
+    try {
+      output = DaemonHandler.callDaemon(conn, primaryPhysicalServer, daemonConnector -> daemonConnector.shutdownVirtualServer(virtualServerName));
+    } finally {
+      // The status has changed
+      virtualServerStatusCache.remove(virtualServer);
+    }
+    // DRBD roles may have changed
+    ClusterHandler.refreshVirtualServer(virtualServer);
+    return output;
   }
 
   public static String destroyVirtualServer(
@@ -188,9 +214,16 @@ public final class VirtualServerHandler {
     int primaryPhysicalServer = ClusterHandler.getPrimaryPhysicalServer(virtualServer);
     // Grant access to the Xen outer server
     String virtualServerName = NetHostHandler.getNameForHost(conn, virtualServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, primaryPhysicalServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.destroyVirtualServer(virtualServerName);
+    String output;
+    try {
+      output = DaemonHandler.callDaemon(conn, primaryPhysicalServer, daemonConnector -> daemonConnector.destroyVirtualServer(virtualServerName));
+    } finally {
+      // The status has changed
+      virtualServerStatusCache.remove(virtualServer);
+    }
+    // DRBD roles may have changed
+    ClusterHandler.refreshVirtualServer(virtualServer);
+    return output;
   }
 
   public static String pauseVirtualServer(
@@ -210,9 +243,12 @@ public final class VirtualServerHandler {
     int primaryPhysicalServer = ClusterHandler.getPrimaryPhysicalServer(virtualServer);
     // Grant access to the Xen outer server
     String virtualServerName = NetHostHandler.getNameForHost(conn, virtualServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, primaryPhysicalServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.pauseVirtualServer(virtualServerName);
+    try {
+      return DaemonHandler.callDaemon(conn, primaryPhysicalServer, daemonConnector -> daemonConnector.pauseVirtualServer(virtualServerName));
+    } finally {
+      // The status has changed
+      virtualServerStatusCache.remove(virtualServer);
+    }
   }
 
   public static String unpauseVirtualServer(
@@ -232,9 +268,12 @@ public final class VirtualServerHandler {
     int primaryPhysicalServer = ClusterHandler.getPrimaryPhysicalServer(virtualServer);
     // Grant access to the Xen outer server
     String virtualServerName = NetHostHandler.getNameForHost(conn, virtualServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, primaryPhysicalServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.unpauseVirtualServer(virtualServerName);
+    try {
+      return DaemonHandler.callDaemon(conn, primaryPhysicalServer, daemonConnector -> daemonConnector.unpauseVirtualServer(virtualServerName));
+    } finally {
+      // The status has changed
+      virtualServerStatusCache.remove(virtualServer);
+    }
   }
 
   public static int getVirtualServerStatus(
@@ -251,7 +290,10 @@ public final class VirtualServerHandler {
     String virtualServerName = NetHostHandler.getNameForHost(conn, virtualServer);
     AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, primaryPhysicalServer);
     conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getVirtualServerStatus(virtualServerName);
+    return virtualServerStatusCache.get(
+        virtualServer,
+        () -> DaemonHandler.callDaemon(daemonConnector, primaryPhysicalServer, connector -> connector.getVirtualServerStatus(virtualServerName))
+    );
   }
 
   public static long verifyVirtualDisk(
@@ -270,20 +312,9 @@ public final class VirtualServerHandler {
     // Must be a cluster admin
     ClusterHandler.checkClusterAdmin(conn, source, "verifyVirtualDisk");
     // TODO: Must not be a disabled server
-    // Lookup values
-    String virtualServerName = NetHostHandler.getNameForHost(conn, virtualServer);
-    String device = getDeviceForVirtualDisk(conn, virtualDisk);
-    // Find current location of primary and secondary servers
-    int primaryPhysicalServer = ClusterHandler.getPrimaryPhysicalServer(virtualServer);
-    int secondaryPhysicalServer = ClusterHandler.getSecondaryPhysicalServer(virtualServer);
-    // Begin verification, getting Unix time in seconds
-    AoservDaemonConnector primaryDaemonConnector = DaemonHandler.getDaemonConnector(conn, primaryPhysicalServer);
-    AoservDaemonConnector secondaryDaemonConnector = DaemonHandler.getDaemonConnector(conn, secondaryPhysicalServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    long lastVerified = primaryDaemonConnector.verifyVirtualDisk(virtualServerName, device);
-    // Update the verification time on the secondary
-    secondaryDaemonConnector.updateVirtualDiskLastVerified(virtualServerName, device, lastVerified);
-    // Return as Java timestamp
-    return lastVerified * 1000;
+    // Start now, ahead of any scheduled verifications, joining any verification already in progress
+    VirtualDiskVerifier.Job job = VirtualDiskVerifier.submit(conn, virtualDisk, true);
+    conn.close(); // Don't hold database connection while waiting for the daemon
+    return job.get();
   }
 }
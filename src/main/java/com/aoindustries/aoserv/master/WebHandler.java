@@ -59,6 +59,7 @@ import java.io.IOException;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -85,6 +86,43 @@ public final class WebHandler {
   private static final Map<Integer, Boolean> disabledVirtualHosts = new HashMap<>();
   private static final Map<Integer, Boolean> disabledSites = new HashMap<>();
 
+  /**
+   * AWStats pages and images larger than this are not cached.
+   */
+  private static final int AWSTATS_CACHE_MAX_ENTRY_BYTES = 1024 * 1024;
+
+  /**
+   * The maximum total size of cached AWStats files.
+   */
+  private static final long AWSTATS_CACHE_MAX_BYTES = 32L * 1024 * 1024;
+
+  /**
+   * AWStats regenerates its reports periodically, so cached files are only kept a short time.
+   */
+  private static final long AWSTATS_CACHE_TTL = 5L * 60 * 1000;
+
+  private static final DaemonFileCache<List<?>> awstatsCache = new DaemonFileCache<>(
+      AWSTATS_CACHE_MAX_ENTRY_BYTES,
+      AWSTATS_CACHE_MAX_BYTES,
+      AWSTATS_CACHE_TTL
+  );
+
+  private static final DaemonStatusCache<Integer, Integer> httpdServerConcurrencyCache = new DaemonStatusCache<>();
+
+  /**
+   * Gets the cache of httpd server concurrency polled from the daemons.
+   */
+  public static DaemonStatusCache<Integer, Integer> getHttpdServerConcurrencyCache() {
+    return httpdServerConcurrencyCache;
+  }
+
+  /**
+   * Gets the cache of AWStats files.
+   */
+  public static DaemonFileCache<List<?>> getAwstatsCache() {
+    return awstatsCache;
+  }
+
   public static void addTomcatWorker(
       DatabaseConnection conn,
       InvalidateList invalidateList,
@@ -217,7 +255,7 @@ public final class WebHandler {
         !LinuxAccountHandler.canAccessGroupServer(
             conn,
             source,
-            conn.queryInt("select linux_server_group from \"web.tomcat\".\"SharedTomcat\" where id=?", sharedTomcat)
+            OwnershipIndex.getSharedTomcat(conn, sharedTomcat).getLinuxGroupServer()
         )
     ) {
       String message =
@@ -273,12 +311,13 @@ public final class WebHandler {
   ) throws IOException, SQLException {
     checkAccessHttpdServer(conn, source, "getHttpdServerConcurrency", httpdServer);
 
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(
-        conn,
-        getLinuxServerForHttpdServer(conn, httpdServer)
-    );
+    int linuxServer = getLinuxServerForHttpdServer(conn, httpdServer);
+    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
     conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.getHttpdServerConcurrency(httpdServer);
+    return httpdServerConcurrencyCache.get(
+        httpdServer,
+        () -> DaemonHandler.callDaemon(daemonConnector, linuxServer, connector -> connector.getHttpdServerConcurrency(httpdServer))
+    );
   }
 
   /**
@@ -2114,54 +2153,27 @@ public final class WebHandler {
       DatabaseConnection conn,
       int httpdServer
   ) throws IOException, SQLException {
-    return conn.queryObject(
-        ObjectFactories.accountNameFactory,
-        "select\n"
-            + "  pk.name\n"
-            + "from\n"
-            + "  web.\"HttpdServer\" hs\n"
-            + "  inner join billing.\"Package\" pk on hs.package=pk.id\n"
-            + "where\n"
-            + "  hs.id=?",
-        httpdServer
-    );
+    return OwnershipIndex.getHttpdServer(conn, httpdServer).getPackage();
   }
 
   public static Account.Name getPackageForSharedTomcat(DatabaseConnection conn, int sharedTomcat) throws IOException, SQLException {
-    return conn.queryObject(
-        ObjectFactories.accountNameFactory,
-        "select\n"
-            + "  lg.package\n"
-            + "from\n"
-            + "  \"web.tomcat\".\"SharedTomcat\" hst,\n"
-            + "  linux.\"GroupServer\" lsg,\n"
-            + "  linux.\"Group\" lg\n"
-            + "where\n"
-            + "  hst.id=?\n"
-            + "  and hst.linux_server_group=lsg.id\n"
-            + "  and lsg.name=lg.name",
-        sharedTomcat
-    );
+    return OwnershipIndex.getSharedTomcat(conn, sharedTomcat).getPackage();
   }
 
   public static Account.Name getPackageForSite(DatabaseConnection conn, int site) throws IOException, SQLException {
-    return conn.queryObject(
-        ObjectFactories.accountNameFactory,
-        "select package from web.\"Site\" where id=?",
-        site
-    );
+    return OwnershipIndex.getSite(conn, site).getPackage();
   }
 
   public static int getLinuxServerForSharedTomcat(DatabaseConnection conn, int sharedTomcat) throws IOException, SQLException {
-    return conn.queryInt("select ao_server from \"web.tomcat\".\"SharedTomcat\" where id=?", sharedTomcat);
+    return OwnershipIndex.getSharedTomcat(conn, sharedTomcat).getHost();
   }
 
   public static int getLinuxServerForSite(DatabaseConnection conn, int site) throws IOException, SQLException {
-    return conn.queryInt("select ao_server from web.\"Site\" where id=?", site);
+    return OwnershipIndex.getSite(conn, site).getHost();
   }
 
   public static int getLinuxServerForHttpdServer(DatabaseConnection conn, int httpdServer) throws IOException, SQLException {
-    return conn.queryInt("select ao_server from web.\"HttpdServer\" where id=?", httpdServer);
+    return OwnershipIndex.getHttpdServer(conn, httpdServer).getHost();
   }
 
   public static String getNameForSite(DatabaseConnection conn, int site) throws IOException, SQLException {
@@ -2270,9 +2282,7 @@ public final class WebHandler {
     int linuxServer = getLinuxServerForSite(conn, tomcatSite);
 
     // Contact the daemon and start the JVM
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.startJvm(tomcatSite);
+    return DaemonHandler.callDaemon(conn, linuxServer, daemonConnector -> daemonConnector.startJvm(tomcatSite));
   }
 
   /**
@@ -2304,9 +2314,7 @@ public final class WebHandler {
     int linuxServer = getLinuxServerForSite(conn, tomcatSite);
 
     // Contact the daemon and start the JVM
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    return daemonConnector.stopJvm(tomcatSite);
+    return DaemonHandler.callDaemon(conn, linuxServer, daemonConnector -> daemonConnector.stopJvm(tomcatSite));
   }
 
   /**
@@ -2319,9 +2327,7 @@ public final class WebHandler {
   ) throws IOException, SQLException {
     NetHostHandler.checkAccessHost(conn, source, "waitForHttpdSiteRebuild", linuxServer);
     NetHostHandler.waitForInvalidates(linuxServer);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.waitForHttpdSiteRebuild();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.waitForHttpdSiteRebuild());
   }
 
   public static int getHttpdBind(
@@ -3079,9 +3085,7 @@ public final class WebHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to restart Apache on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.restartApache();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.restartApache());
   }
 
   public static void setSharedTomcatIsManual(
@@ -4484,9 +4488,7 @@ public final class WebHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to start Apache on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.startApache();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.startApache());
   }
 
   public static void stopApache(
@@ -4498,9 +4500,7 @@ public final class WebHandler {
     if (!canControl) {
       throw new SQLException("Not allowed to stop Apache on " + linuxServer);
     }
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
-    conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.stopApache();
+    DaemonHandler.runDaemon(conn, linuxServer, daemonConnector -> daemonConnector.stopApache());
   }
 
   public static void getAwstatsFile(
@@ -4514,10 +4514,13 @@ public final class WebHandler {
     checkAccessSite(conn, source, "getAwstatsFile", site);
 
     String siteName = getNameForSite(conn, site);
-    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn,
-        getLinuxServerForSite(conn, site)
-    );
+    int linuxServer = getLinuxServerForSite(conn, site);
+    AoservDaemonConnector daemonConnector = DaemonHandler.getDaemonConnector(conn, linuxServer);
     conn.close(); // Don't hold database connection while connecting to the daemon
-    daemonConnector.getAwstatsFile(siteName, path, queryString, out);
+    awstatsCache.get(
+        Arrays.asList(site, path, queryString),
+        captureOut -> DaemonHandler.runDaemon(daemonConnector, linuxServer, connector -> connector.getAwstatsFile(siteName, path, queryString, captureOut)),
+        out
+    );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,6 +29,8 @@ import com.aoindustries.aoserv.client.account.AccountHost;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -118,18 +120,10 @@ public class AccountHost_GetTableHandler extends TableHandler.GetTableHandlerByR
         "select\n"
             + "  bs.*\n"
             + "from\n"
-            + "  account.\"User\" un,\n"
-            + "  billing.\"Package\" pk,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  account.\"AccountHost\" bs\n"
             + "where\n"
-            + "  un.username=?\n"
-            + "  and un.package=pk.name\n"
-            + "  and (\n"
-            + TableHandler.PK_BU1_PARENTS_WHERE
-            + "  )\n"
-            + "  and bu1.accounting=bs.accounting",
-        source.getCurrentAdministrator()
+            + "  bs.accounting = ANY(?::text[])",
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,6 +29,8 @@ import com.aoindustries.aoserv.client.account.Administrator;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -202,23 +204,14 @@ public class Administrator_GetTableHandler extends TableHandler.GetTableHandlerB
             + "  ba.can_switch_users,\n"
             + "  ba.support_code\n"
             + "from\n"
-            + "  account.\"User\" un1,\n"
-            + "  billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  billing.\"Package\" pk2,\n"
             + "  account.\"User\" un2,\n"
             + "  account.\"Administrator\" ba\n"
             + "where\n"
-            + "  un1.username=?\n"
-            + "  and un1.package=pk1.name\n"
-            + "  and (\n"
-            + "    un2.username=un1.username\n"
-            + TableHandler.PK1_BU1_PARENTS_OR_WHERE
-            + "  )\n"
-            + "  and bu1.accounting=pk2.accounting\n"
+            + "  pk2.accounting = ANY(?::text[])\n"
             + "  and pk2.name=un2.package\n"
             + "  and un2.username=ba.username",
-        source.getCurrentAdministrator()
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -30,6 +30,8 @@ import com.aoindustries.aoserv.client.account.Profile;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -133,18 +135,10 @@ public class Profile_GetTableHandler extends TableHandler.GetTableHandlerByRole
         "SELECT\n"
             + COLUMNS + "\n"
             + "FROM\n"
-            + "  account.\"User\" un,\n"
-            + "  billing.\"Package\" pk,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  account.\"Profile\" ap\n"
             + "WHERE\n"
-            + "  un.username = ?\n"
-            + "  AND un.package = pk.\"name\"\n"
-            + "  AND (\n"
-            + TableHandler.PK_BU1_PARENTS_WHERE
-            + "  )\n"
-            + "  AND bu1.accounting = ap.accounting",
-        source.getCurrentAdministrator()
+            + "  ap.accounting = ANY(?::text[])",
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -30,6 +30,8 @@ import com.aoindustries.aoserv.client.backup.BackupReport;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -66,18 +68,10 @@ public final class BackupReportHandler {
       "select\n"
           + "  br.*\n"
           + "from\n"
-          + "  account.\"User\" un,\n"
-          + "  billing.\"Package\" pk1,\n"
-          + TableHandler.BU1_PARENTS_JOIN
           + "  billing.\"Package\" pk2,\n"
           + "  backup.\"BackupReport\" br\n"
           + "where\n"
-          + "  un.username=?\n"
-          + "  and un.package=pk1.name\n"
-          + "  and (\n"
-          + TableHandler.PK1_BU1_PARENTS_WHERE
-          + "  )\n"
-          + "  and bu1.accounting=pk2.accounting\n"
+          + "  pk2.accounting = ANY(?::text[])\n"
           + "  and pk2.id=br.package";
 
   public static class GetObject implements TableHandler.GetObjectHandler {
@@ -130,7 +124,7 @@ public final class BackupReportHandler {
             new BackupReport(),
             QUERY_ADMINISTRATOR + "\n"
                 + "  and br.id=?",
-            source.getCurrentAdministrator(),
+            AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source)),
             backupReport
         );
       }
@@ -205,7 +199,7 @@ public final class BackupReportHandler {
           CursorMode.FETCH,
           new BackupReport(),
           QUERY_ADMINISTRATOR,
-          source.getCurrentAdministrator()
+          AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
       );
     }
   }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,6 +29,8 @@ import com.aoindustries.aoserv.client.backup.FileReplicationSetting;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -120,24 +122,16 @@ public class FileReplicationSetting_GetTableHandler extends TableHandler.GetTabl
         "select\n"
             + "  fbs.*\n"
             + "from\n"
-            + "  account.\"User\" un,\n"
-            + "  billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  billing.\"Package\" pk2,\n"
             + "  net.\"Host\" se,\n"
             + "  backup.\"FileReplication\" ffr,\n"
             + "  backup.\"FileReplicationSetting\" fbs\n"
             + "where\n"
-            + "  un.username=?\n"
-            + "  and un.package=pk1.name\n"
-            + "  and (\n"
-            + TableHandler.PK1_BU1_PARENTS_WHERE
-            + "  )\n"
-            + "  and bu1.accounting=pk2.accounting\n"
+            + "  pk2.accounting = ANY(?::text[])\n"
             + "  and pk2.id=se.package\n"
             + "  and se.id=ffr.server\n"
             + "  and ffr.id=fbs.replication",
-        source.getCurrentAdministrator()
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
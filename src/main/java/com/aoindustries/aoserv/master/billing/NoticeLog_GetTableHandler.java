@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -31,6 +31,8 @@ import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.AoservProtocol;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -152,19 +154,11 @@ public class NoticeLog_GetTableHandler extends TableHandler.GetTableHandlerByRol
               + "    '0.00'::numeric(9,2)\n"
               + "  ) AS balance\n"
               + "FROM\n"
-              + "  account.\"User\" un,\n"
-              + "  billing.\"Package\" pk,\n"
-              + TableHandler.BU1_PARENTS_JOIN
               + "  billing.\"NoticeLog\" nl\n"
               + "WHERE\n"
-              + "  un.username = ?\n"
-              + "  AND un.package = pk.name\n"
-              + "  AND (\n"
-              + TableHandler.PK_BU1_PARENTS_WHERE
-              + "  )\n"
-              + "  AND bu1.accounting = nl.accounting",
+              + "  nl.accounting = ANY(?::text[])",
           Currency.USD.getCurrencyCode(),
-          source.getCurrentAdministrator()
+          AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
       );
     } else {
       AoservMaster.writeObjects(
@@ -179,18 +173,10 @@ public class NoticeLog_GetTableHandler extends TableHandler.GetTableHandlerByRol
               // Protocol compatibility
               + "  '0.00'::numeric(9,2) AS balance\n"
               + "FROM\n"
-              + "  account.\"User\" un,\n"
-              + "  billing.\"Package\" pk,\n"
-              + TableHandler.BU1_PARENTS_JOIN
               + "  billing.\"NoticeLog\" nl\n"
               + "WHERE\n"
-              + "  un.username = ?\n"
-              + "  AND un.package = pk.name\n"
-              + "  AND (\n"
-              + TableHandler.PK_BU1_PARENTS_WHERE
-              + "  )\n"
-              + "  AND bu1.accounting = nl.accounting",
-          source.getCurrentAdministrator()
+              + "  nl.accounting = ANY(?::text[])",
+          AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
       );
     }
   }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -30,6 +30,7 @@ import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
 import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -124,24 +125,16 @@ public class PackageDefinitionLimit_GetTableHandler extends TableHandler.GetTabl
           "select distinct\n"
               + "  pdl.*\n"
               + "from\n"
-              + "  account.\"User\" un,\n"
-              + "  billing.\"Package\" pk1,\n"
-              + TableHandler.BU1_PARENTS_JOIN
               + "  billing.\"Package\" pk2,\n"
               + "  billing.\"PackageDefinition\" pd,\n"
               + "  billing.\"PackageDefinitionLimit\" pdl\n"
               + "where\n"
-              + "  un.username=?\n"
-              + "  and un.package=pk1.name\n"
-              + "  and (\n"
-              + TableHandler.PK1_BU1_PARENTS_WHERE
-              + "  )\n"
-              + "  and bu1.accounting=pk2.accounting\n"
+              + "  pk2.accounting = ANY(?::text[])\n"
               + "  and (\n"
               + "    pk2.package_definition=pd.id\n"
-              + "    or bu1.accounting=pd.accounting\n"
+              + "    or pk2.accounting=pd.accounting\n"
               + "  ) and pd.id=pdl.package_definition",
-          source.getCurrentAdministrator()
+          AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
       );
     } else {
       AoservMaster.writeObjects(
@@ -161,24 +154,16 @@ public class PackageDefinitionLimit_GetTableHandler extends TableHandler.GetTabl
               + "  null as \"additionalRate.value\",\n"
               + "  null as additional_transaction_type\n"
               + "from\n"
-              + "  account.\"User\" un,\n"
-              + "  billing.\"Package\" pk1,\n"
-              + TableHandler.BU1_PARENTS_JOIN
               + "  billing.\"Package\" pk2,\n"
               + "  billing.\"PackageDefinition\" pd,\n"
               + "  billing.\"PackageDefinitionLimit\" pdl\n"
               + "where\n"
-              + "  un.username=?\n"
-              + "  and un.package=pk1.name\n"
-              + "  and (\n"
-              + TableHandler.PK1_BU1_PARENTS_WHERE
-              + "  )\n"
-              + "  and bu1.accounting=pk2.accounting\n"
+              + "  pk2.accounting = ANY(?::text[])\n"
               + "  and (\n"
               + "    pk2.package_definition=pd.id\n"
-              + "    or bu1.accounting=pd.accounting\n"
+              + "    or pk2.accounting=pd.accounting\n"
               + "  ) and pd.id=pdl.package_definition",
-          source.getCurrentAdministrator()
+          AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
       );
     }
   }
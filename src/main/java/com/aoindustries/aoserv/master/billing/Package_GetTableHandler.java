@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,6 +29,8 @@ import com.aoindustries.aoserv.client.billing.Package;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -120,18 +122,10 @@ public class Package_GetTableHandler extends TableHandler.GetTableHandlerByRole
         "select\n"
             + "  pk2.*\n"
             + "from\n"
-            + "  account.\"User\" un,\n"
-            + "  billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  billing.\"Package\" pk2\n"
             + "where\n"
-            + "  un.username=?\n"
-            + "  and un.package=pk1.name\n"
-            + "  and (\n"
-            + TableHandler.PK1_BU1_PARENTS_WHERE
-            + "  )\n"
-            + "  and bu1.accounting=pk2.accounting",
-        source.getCurrentAdministrator()
+            + "  pk2.accounting = ANY(?::text[])",
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
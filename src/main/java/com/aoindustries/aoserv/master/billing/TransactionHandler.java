@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -32,6 +32,8 @@ import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.AoservProtocol;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -60,17 +62,17 @@ public final class TransactionHandler {
       "select\n"
           + "  tr.*\n"
           + "from\n"
-          + "  account.\"User\" un1,\n"
-          + "  billing.\"Package\" pk1,\n"
-          + TableHandler.BU1_PARENTS_JOIN
           + "  billing.\"Transaction\" tr\n"
           + "where\n"
-          + "  un1.username=?\n"
-          + "  and un1.package=pk1.name\n"
-          + "  and (\n"
-          + TableHandler.PK1_BU1_PARENTS_WHERE
-          + "  )\n"
-          + "  and bu1.accounting=tr.accounting";
+          + "  tr.accounting = ANY(?::text[])";
+
+  /**
+   * Gets the parameter for {@link #QUERY_ADMINISTRATOR}: the accounts the
+   * current administrator may access.
+   */
+  private static String getAdministratorAccounts(DatabaseConnection conn, RequestSource source) throws IOException, SQLException {
+    return AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source));
+  }
 
   public static class GetObject implements TableHandler.GetObjectHandler {
 
@@ -116,7 +118,7 @@ public final class TransactionHandler {
               QUERY_ADMINISTRATOR + "\n"
                   + "  AND tr.transid=?\n"
                   + "  AND \"rate.currency\"=?",
-              source.getCurrentAdministrator(),
+              getAdministratorAccounts(conn, source),
               transid,
               Currency.USD.getCurrencyCode()
           );
@@ -200,7 +202,7 @@ public final class TransactionHandler {
             new Transaction(),
             QUERY_ADMINISTRATOR + "\n"
                 + "  AND \"rate.currency\"=?",
-            source.getCurrentAdministrator(),
+            getAdministratorAccounts(conn, source),
             Currency.USD.getCurrencyCode()
         );
       } else {
@@ -212,7 +214,7 @@ public final class TransactionHandler {
             CursorMode.FETCH,
             new Transaction(),
             QUERY_ADMINISTRATOR,
-            source.getCurrentAdministrator()
+            getAdministratorAccounts(conn, source)
         );
       }
     }
@@ -43,6 +43,8 @@ import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.AoservProtocol;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.InvalidateList;
@@ -84,11 +86,26 @@ public final class WhoisHistoryService implements MasterService {
 
   private static final boolean DEBUG = false;
 
+  /**
+   * Depends on all domain locators, since every run requires them all to be started.
+   */
+  @Override
+  public Iterable<Class<?>> getDependencies() {
+    return Collections.singletonList(WhoisHistoryDomainLocator.class);
+  }
+
   @Override
   public void start() {
     CronDaemon.addCronJob(cronJob, logger);
-    // Run at start-up, too
-    CronDaemon.runImmediately(cronJob);
+  }
+
+  /**
+   * Runs the job at start-up, too, waiting for it to complete.  The job is
+   * synchronized, so this never overlaps a scheduled run.
+   */
+  @Override
+  public void warmUp() {
+    cronJob.run(-1, -1, -1, -1, -1, -1);
   }
 
   // <editor-fold desc="Clean-up" defaultstate="collapsed">
@@ -242,7 +259,7 @@ public final class WhoisHistoryService implements MasterService {
     //       records left around for billing purposes like done here.
     @Override
     @SuppressWarnings("try")
-    public void run(int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
+    public synchronized void run(int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
       try {
         try (
             ProcessTimer timer = new ProcessTimer(
@@ -544,21 +561,13 @@ public final class WhoisHistoryService implements MasterService {
                 + "  wh.\"output\",\n"
                 + "  wh.error\n"
                 + "FROM\n"
-                + "  account.\"User\" un,\n"
-                + "  billing.\"Package\" pk,\n"
-                + TableHandler.BU1_PARENTS_JOIN
                 + "  billing.\"WhoisHistoryAccount\" wha,\n"
                 + "  billing.\"WhoisHistory\" wh\n"
                 + "WHERE\n"
-                + "  un.username=?\n"
-                + "  AND un.package=pk.name\n"
-                + "  AND (\n"
-                + TableHandler.PK_BU1_PARENTS_WHERE
-                + "  )\n"
-                + "  AND bu1.accounting = wha.account\n"
+                + "  wha.account = ANY(?::text[])\n"
                 + "  AND wha.\"whoisHistory\" = wh.id\n"
                 + "  AND wha.id=?",
-            currentAdministrator,
+            AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source)),
             whoisHistoryAccount
         );
       } else {
@@ -578,22 +587,14 @@ public final class WhoisHistoryService implements MasterService {
                 + "  wh.\"output\",\n"
                 + "  wh.error\n"
                 + "FROM\n"
-                + "  account.\"User\" un,\n"
-                + "  billing.\"Package\" pk,\n"
-                + TableHandler.BU1_PARENTS_JOIN
                 + "  billing.\"WhoisHistoryAccount\" wha,\n"
                 + "  billing.\"WhoisHistory\" wh\n"
                 + "WHERE\n"
-                + "  un.username=?\n"
-                + "  AND un.package=pk.name\n"
-                + "  AND (\n"
-                + TableHandler.PK_BU1_PARENTS_WHERE
-                + "  )\n"
-                + "  AND bu1.accounting = wha.account\n"
+                + "  wha.account = ANY(?::text[])\n"
                 + "  AND wha.\"whoisHistory\" = wh.id\n"
                 + "  AND wh.id=?\n"
                 + "LIMIT 1", // Might be reached through multiple accounts
-            currentAdministrator,
+            AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source)),
             whoisHistoryAccount
         );
       }
@@ -701,20 +702,12 @@ public final class WhoisHistoryService implements MasterService {
                   // Protocol conversion
                   + "  wha.account as accounting\n"
                   + "from\n"
-                  + "  account.\"User\" un,\n"
-                  + "  billing.\"Package\" pk,\n"
-                  + TableHandler.BU1_PARENTS_JOIN
                   + "  billing.\"WhoisHistoryAccount\" wha,\n"
                   + "  billing.\"WhoisHistory\" wh\n"
                   + "where\n"
-                  + "  un.username=?\n"
-                  + "  and un.package=pk.name\n"
-                  + "  and (\n"
-                  + TableHandler.PK_BU1_PARENTS_WHERE
-                  + "  )\n"
-                  + "  and bu1.accounting = wha.account\n"
+                  + "  wha.account = ANY(?::text[])\n"
                   + "  and wha.\"whoisHistory\" = wh.id",
-              source.getCurrentAdministrator()
+              AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
           );
         } else {
           AoservMaster.writeObjects(
@@ -732,20 +725,12 @@ public final class WhoisHistoryService implements MasterService {
                   // Protocol conversion
                   + "  null as accounting\n"
                   + "from\n"
-                  + "  account.\"User\" un,\n"
-                  + "  billing.\"Package\" pk,\n"
-                  + TableHandler.BU1_PARENTS_JOIN
                   + "  billing.\"WhoisHistoryAccount\" wha,\n"
                   + "  billing.\"WhoisHistory\" wh\n"
                   + "where\n"
-                  + "  un.username=?\n"
-                  + "  and un.package=pk.name\n"
-                  + "  and (\n"
-                  + TableHandler.PK_BU1_PARENTS_WHERE
-                  + "  )\n"
-                  + "  and bu1.accounting = wha.account\n"
+                  + "  wha.account = ANY(?::text[])\n"
                   + "  and wha.\"whoisHistory\" = wh.id",
-              source.getCurrentAdministrator()
+              AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
           );
         }
       }
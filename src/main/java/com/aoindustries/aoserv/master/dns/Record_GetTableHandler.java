@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,6 +29,8 @@ import com.aoindustries.aoserv.client.dns.Record;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -116,22 +118,14 @@ public class Record_GetTableHandler extends TableHandler.GetTableHandlerByRole {
         "select\n"
             + "  dr.*\n"
             + "from\n"
-            + "  account.\"User\" un,\n"
-            + "  billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  billing.\"Package\" pk2,\n"
             + "  dns.\"Zone\" dz,\n"
             + "  dns.\"Record\" dr\n"
             + "where\n"
-            + "  un.username=?\n"
-            + "  and un.package=pk1.name\n"
-            + "  and (\n"
-            + TableHandler.PK1_BU1_PARENTS_WHERE
-            + "  )\n"
-            + "  and bu1.accounting=pk2.accounting\n"
+            + "  pk2.accounting = ANY(?::text[])\n"
             + "  and pk2.name=dz.package\n"
             + "  and dz.\"zone\"=dr.\"zone\"",
-        source.getCurrentAdministrator()
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,6 +29,8 @@ import com.aoindustries.aoserv.client.email.AttachmentBlock;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -120,24 +122,16 @@ public class AttachmentBlock_GetTableHandler extends TableHandler.GetTableHandle
         "select\n"
             + "  eab.*\n"
             + "from\n"
-            + "  account.\"User\" un1,\n"
-            + "  billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  billing.\"Package\" pk2,\n"
             + "  account.\"User\" un2,\n"
             + "  linux.\"UserServer\" lsa,\n"
             + "  email.\"AttachmentBlock\" eab\n"
             + "where\n"
-            + "  un1.username=?\n"
-            + "  and un1.package=pk1.name\n"
-            + "  and (\n"
-            + TableHandler.PK1_BU1_PARENTS_WHERE
-            + "  )\n"
-            + "  and bu1.accounting=pk2.accounting\n"
+            + "  pk2.accounting = ANY(?::text[])\n"
             + "  and pk2.name=un2.package\n"
             + "  and un2.username=lsa.username\n"
             + "  and lsa.id=eab.linux_server_account",
-        source.getCurrentAdministrator()
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
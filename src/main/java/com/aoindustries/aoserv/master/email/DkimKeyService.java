@@ -29,6 +29,8 @@ import com.aoindustries.aoserv.client.email.DkimKey;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.MasterService;
@@ -123,18 +125,12 @@ public class DkimKeyService implements MasterService {
             "SELECT\n"
                 + "  dk.*\n"
                 + "FROM\n"
-                + "             account.\"User\"    un\n"
-                + "  INNER JOIN billing.\"Package\" pk1 ON un.package     = pk1.name,\n"
-                + TableHandler.BU1_PARENTS_JOIN_NO_COMMA
-                + "  INNER JOIN billing.\"Package\" pk2 ON bu1.accounting = pk2.accounting\n"
-                + "  INNER JOIN email.\"Domain\"    ed  ON pk2.name       = ed.package\n"
-                + "  INNER JOIN email.\"DkimKey\"   dk  ON ed.id          = dk.\"domain\"\n"
+                + "             billing.\"Package\" pk2\n"
+                + "  INNER JOIN email.\"Domain\"    ed  ON pk2.name = ed.package\n"
+                + "  INNER JOIN email.\"DkimKey\"   dk  ON ed.id    = dk.\"domain\"\n"
                 + "WHERE\n"
-                + "  un.username = ?\n"
-                + "  AND (\n"
-                + TableHandler.PK1_BU1_PARENTS_WHERE
-                + "  )",
-            source.getCurrentAdministrator()
+                + "  pk2.accounting = ANY(?::text[])",
+            AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
         );
       }
     };
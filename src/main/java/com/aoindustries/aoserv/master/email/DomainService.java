@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -33,6 +33,8 @@ import com.aoindustries.aoserv.client.email.Domain;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.MasterService;
@@ -42,6 +44,7 @@ import com.aoindustries.aoserv.master.billing.WhoisHistoryDomainLocator;
 import com.aoindustries.aoserv.master.dns.DnsService;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
 import java.util.LinkedHashSet;
@@ -58,6 +61,11 @@ public class DomainService implements MasterService, WhoisHistoryDomainLocator {
 
   private static final Logger logger = Logger.getLogger(DomainService.class.getName());
 
+  @Override
+  public Iterable<Class<?>> getDependencies() {
+    return Collections.singletonList(DnsService.class);
+  }
+
   // <editor-fold desc="GetTableHandler" defaultstate="collapsed">
   @Override
   public TableHandler.GetTableHandler startGetTableHandler() {
@@ -137,20 +145,12 @@ public class DomainService implements MasterService, WhoisHistoryDomainLocator {
             "select\n"
                 + "  ed.*\n"
                 + "from\n"
-                + "  account.\"User\" un,\n"
-                + "  billing.\"Package\" pk1,\n"
-                + TableHandler.BU1_PARENTS_JOIN
                 + "  billing.\"Package\" pk2,\n"
                 + "  email.\"Domain\" ed\n"
                 + "where\n"
-                + "  un.username=?\n"
-                + "  and un.package=pk1.name\n"
-                + "  and (\n"
-                + TableHandler.PK1_BU1_PARENTS_WHERE
-                + "  )\n"
-                + "  and bu1.accounting=pk2.accounting\n"
+                + "  pk2.accounting = ANY(?::text[])\n"
                 + "  and pk2.name=ed.package",
-            source.getCurrentAdministrator()
+            AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
         );
       }
     };
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,6 +29,8 @@ import com.aoindustries.aoserv.client.email.InboxAddress;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -134,26 +136,18 @@ public class InboxAddress_GetTableHandler extends TableHandler.GetTableHandlerBy
             // Protocol conversion <= 1.30:
             + "  us.username\n"
             + "FROM\n"
-            + "  account.\"User\"       un,\n"
-            + "  billing.\"Package\"    pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  billing.\"Package\"    pk2,\n"
             + "  email.\"Domain\"       ed,\n"
             + "  email.\"Address\"      ea,\n"
             + "  email.\"InboxAddress\" ia,\n"
             + "  linux.\"UserServer\"   us\n"
             + "WHERE\n"
-            + "      un.username             = ?\n"
-            + "  AND un.package              = pk1.name\n"
-            + "  AND (\n"
-            + TableHandler.PK1_BU1_PARENTS_WHERE
-            + "  )\n"
-            + "  AND bu1.accounting          = pk2.accounting\n"
+            + "      pk2.accounting          = ANY(?::text[])\n"
             + "  AND pk2.name                = ed.package\n"
             + "  AND ed.id                   = ea.domain\n"
             + "  AND ea.id                   = ia.email_address\n"
             + "  AND ia.linux_server_account = us.id",
-        source.getCurrentAdministrator()
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,16 +23,14 @@
 
 package com.aoindustries.aoserv.master.email;
 
-import static com.aoindustries.aoserv.master.TableHandler.BU2_PARENTS_JOIN;
-import static com.aoindustries.aoserv.master.TableHandler.PK3_BU2_PARENTS_WHERE;
-
 import com.aoapps.dbc.DatabaseConnection;
 import com.aoapps.hodgepodge.io.stream.StreamableOutput;
-import com.aoindustries.aoserv.client.account.Account;
 import com.aoindustries.aoserv.client.email.SendmailServer;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -111,7 +109,7 @@ public class SendmailServer_GetTableHandler extends TableHandler.GetTableHandler
       boolean provideProgress,
       Table.TableId tableId
   ) throws IOException, SQLException {
-    com.aoindustries.aoserv.client.account.User.Name currentAdministrator = source.getCurrentAdministrator();
+    String allowedAccounts = AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source));
     AoservMaster.writeObjects(
         conn,
         source,
@@ -129,19 +127,11 @@ public class SendmailServer_GetTableHandler extends TableHandler.GetTableHandler
             + "    select\n"
             + "      sb.sendmail_server\n"
             + "    from\n"
-            + "      account.\"User\" un1,\n"
-            + "      billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "      billing.\"Package\" pk2,\n"
             + "      net.\"Bind\" nb,\n"
             + "      email.\"SendmailBind\" sb\n"
             + "    where\n"
-            + "      un1.username=?\n"
-            + "      and un1.package=pk1.name\n"
-            + "      and (\n"
-            + TableHandler.PK1_BU1_PARENTS_WHERE
-            + "      )\n"
-            + "      and bu1.accounting=pk2.accounting\n"
+            + "      pk2.accounting = ANY(?::text[])\n"
             + "      and pk2.name=nb.package\n"
             + "      and nb.id=sb.net_bind\n"
             + "  )\n"
@@ -150,22 +140,14 @@ public class SendmailServer_GetTableHandler extends TableHandler.GetTableHandler
             + "    select\n"
             + "      ss.id\n"
             + "    from\n"
-            + "      account.\"User\" un2,\n"
-            + "      billing.\"Package\" pk3,\n"
-            + BU2_PARENTS_JOIN
             + "      billing.\"Package\" pk4,\n"
             + "      email.\"SendmailServer\" ss\n"
             + "    where\n"
-            + "      un2.username=?\n"
-            + "      and un2.package=pk3.name\n"
-            + "      and (\n"
-            + PK3_BU2_PARENTS_WHERE
-            + "      )\n"
-            + "      and bu" + Account.MAXIMUM_BUSINESS_TREE_DEPTH + ".accounting=pk4.accounting\n"
+            + "      pk4.accounting = ANY(?::text[])\n"
             + "      and pk4.id=ss.package\n"
             + "  )",
-        currentAdministrator,
-        currentAdministrator
+        allowedAccounts,
+        allowedAccounts
     );
   }
 }
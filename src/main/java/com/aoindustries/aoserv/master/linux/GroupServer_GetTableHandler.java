@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -30,6 +30,8 @@ import com.aoindustries.aoserv.client.linux.GroupServer;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -121,7 +123,6 @@ public class GroupServer_GetTableHandler extends TableHandler.GetTableHandlerByR
             + "from\n"
             + "  account.\"User\" un,\n"
             + "  billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  billing.\"Package\" pk2,\n"
             + "  linux.\"Group\" lg,\n"
             + "  account.\"AccountHost\" bs,\n"
@@ -131,9 +132,8 @@ public class GroupServer_GetTableHandler extends TableHandler.GetTableHandlerByR
             + "  and un.package=pk1.name\n"
             + "  and (\n"
             + "    lg.name in (?,?,?)\n"
-            + TableHandler.PK1_BU1_PARENTS_OR_WHERE
+            + "    or pk2.accounting = ANY(?::text[])\n"
             + "  )\n"
-            + "  and bu1.accounting=pk2.accounting\n"
             + "  and pk2.name=lg.package\n"
             + "  and pk1.accounting=bs.accounting\n"
             + "  and lg.name=lsg.name\n"
@@ -141,7 +141,8 @@ public class GroupServer_GetTableHandler extends TableHandler.GetTableHandlerByR
         source.getCurrentAdministrator(),
         Group.FTPONLY,
         Group.MAIL,
-        Group.MAILONLY
+        Group.MAILONLY,
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -25,12 +25,13 @@ package com.aoindustries.aoserv.master.linux;
 
 import com.aoapps.dbc.DatabaseConnection;
 import com.aoapps.hodgepodge.io.stream.StreamableOutput;
-import com.aoindustries.aoserv.client.account.Account;
 import com.aoindustries.aoserv.client.linux.Group;
 import com.aoindustries.aoserv.client.linux.GroupUser;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -129,7 +130,7 @@ public class GroupUser_GetTableHandler extends TableHandler.GetTableHandlerByRol
       boolean provideProgress,
       Table.TableId tableId
   ) throws IOException, SQLException {
-    com.aoindustries.aoserv.client.account.User.Name currentAdministrator = source.getCurrentAdministrator();
+    String allowedAccounts = AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source));
     AoservMaster.writeObjects(
         conn,
         source,
@@ -146,47 +147,35 @@ public class GroupUser_GetTableHandler extends TableHandler.GetTableHandlerByRol
             + "    select\n"
             + "      lg.name\n"
             + "    from\n"
-            + "      account.\"User\" un1,\n"
-            + "      billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "      billing.\"Package\" pk2,\n"
             + "      linux.\"Group\" lg\n"
             + "    where\n"
-            + "      un1.username=?\n"
-            + "      and un1.package=pk1.name\n"
-            + "      and (\n"
+            + "      (\n"
             + "        lg.name in (?,?,?)\n"
-            + TableHandler.PK1_BU1_PARENTS_OR_WHERE
+            + "        or pk2.accounting = ANY(?::text[])\n"
             + "      )\n"
-            + "      and bu1.accounting=pk2.accounting\n"
             + "      and pk2.name=lg.package\n"
             + "  )\n"
             + "  and \"user\" in (\n"
             + "    select\n"
             + "      la.username\n"
             + "    from\n"
-            + "      account.\"User\" un2,\n"
-            + "      billing.\"Package\" pk3,\n"
-            + TableHandler.BU2_PARENTS_JOIN
             + "      billing.\"Package\" pk4,\n"
             + "      account.\"User\" un3,\n"
             + "      linux.\"User\" la\n"
             + "    where\n"
-            + "      un2.username=?\n"
-            + "      and un2.package=pk3.name\n"
-            + "      and (\n"
+            + "      (\n"
             + "        un3.username='" + com.aoindustries.aoserv.client.linux.User.MAIL + "'\n"
-            + TableHandler.PK3_BU2_PARENTS_OR_WHERE
+            + "        or pk4.accounting = ANY(?::text[])\n"
             + "      )\n"
-            + "      and bu" + Account.MAXIMUM_BUSINESS_TREE_DEPTH + ".accounting=pk4.accounting\n"
             + "      and pk4.name=un3.package\n"
             + "      and un3.username=la.username\n"
             + "  )",
-        currentAdministrator,
         Group.FTPONLY,
         Group.MAIL,
         Group.MAILONLY,
-        currentAdministrator
+        allowedAccounts,
+        allowedAccounts
     );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,6 +29,8 @@ import com.aoindustries.aoserv.client.linux.Group;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -124,24 +126,18 @@ public class Group_GetTableHandler extends TableHandler.GetTableHandlerByRole {
         "select\n"
             + "  lg.*\n"
             + "from\n"
-            + "  account.\"User\" un,\n"
-            + "  billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  billing.\"Package\" pk2,\n"
             + "  linux.\"Group\" lg\n"
             + "where\n"
-            + "  un.username=?\n"
-            + "  and un.package=pk1.name\n"
-            + "  and (\n"
+            + "  (\n"
             + "    lg.name in (?,?,?)\n"
-            + TableHandler.PK1_BU1_PARENTS_OR_WHERE
+            + "    or pk2.accounting = ANY(?::text[])\n"
             + "  )\n"
-            + "  and bu1.accounting=pk2.accounting\n"
             + "  and pk2.name=lg.package",
-        source.getCurrentAdministrator(),
         Group.FTPONLY,
         Group.MAIL,
-        Group.MAILONLY
+        Group.MAILONLY,
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -30,6 +30,8 @@ import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.AoservProtocol;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -143,7 +145,6 @@ public class UserServer_GetTableHandler extends TableHandler.GetTableHandlerByRo
             + "from\n"
             + "  account.\"User\" un1,\n"
             + "  billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  billing.\"Package\" pk2,\n"
             + "  account.\"User\" un2,\n"
             + "  account.\"AccountHost\" bs,\n"
@@ -153,16 +154,16 @@ public class UserServer_GetTableHandler extends TableHandler.GetTableHandlerByRo
             + "  and un1.package=pk1.name\n"
             + "  and (\n"
             + "    un2.username=?\n"
-            + TableHandler.PK1_BU1_PARENTS_OR_WHERE
+            + "    or pk2.accounting = ANY(?::text[])\n"
             + "  )\n"
-            + "  and bu1.accounting=pk2.accounting\n"
             + "  and pk2.name=un2.package\n"
             + "  and pk1.accounting=bs.accounting\n"
             + "  and un2.username=lsa.username\n"
             + "  and bs.server=lsa.ao_server",
         AoservProtocol.FILTERED,
         source.getCurrentAdministrator(),
-        com.aoindustries.aoserv.client.linux.User.MAIL
+        com.aoindustries.aoserv.client.linux.User.MAIL,
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -28,6 +28,8 @@ import com.aoapps.hodgepodge.io.stream.StreamableOutput;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -128,24 +130,18 @@ public class User_GetTableHandler extends TableHandler.GetTableHandlerByRole {
         "select\n"
             + "  la.*\n"
             + "from\n"
-            + "  account.\"User\" un1,\n"
-            + "  billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "  billing.\"Package\" pk2,\n"
             + "  account.\"User\" un2,\n"
             + "  linux.\"User\" la\n"
             + "where\n"
-            + "  un1.username=?\n"
-            + "  and un1.package=pk1.name\n"
-            + "  and (\n"
+            + "  (\n"
             + "    un2.username=?\n"
-            + TableHandler.PK1_BU1_PARENTS_OR_WHERE
+            + "    or pk2.accounting = ANY(?::text[])\n"
             + "  )\n"
-            + "  and bu1.accounting=pk2.accounting\n"
             + "  and pk2.name=un2.package\n"
             + "  and un2.username=la.username",
-        source.getCurrentAdministrator(),
-        com.aoindustries.aoserv.client.linux.User.MAIL
+        com.aoindustries.aoserv.client.linux.User.MAIL,
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source))
     );
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -32,6 +32,7 @@ import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * A mutable version of {@link com.aoindustries.aoserv.client.master.Process}
@@ -54,7 +55,138 @@ public class Process extends com.aoindustries.aoserv.client.master.Process {
     return logCommands;
   }
 
-  private Object[] command;
+  /**
+   * The state of a process at one point in time.  A new instance replaces the
+   * previous on each transition, so the request hot path never blocks.
+   *
+   * <p>The command is held as its first few elements in fields, with an array
+   * only for commands with more parameters, so most requests do not allocate
+   * an array to record their command.</p>
+   */
+  private static final class ProcessState {
+
+    /**
+     * The number of command elements held in fields.
+     */
+    private static final int COMMAND_FIELDS = 4;
+
+    private final String state;
+    private final long startMillis;
+    private final long startNanos;
+    private final long totalTime;
+    private final long useCount;
+
+    /**
+     * The number of elements in the command, {@code 0} for no command.
+     */
+    private final int commandLength;
+    private final Object command0;
+    private final Object command1;
+    private final Object command2;
+    private final Object command3;
+
+    /**
+     * All elements of a command longer than {@link #COMMAND_FIELDS}, otherwise {@code null}.
+     */
+    private final Object[] commandArray;
+
+    private ProcessState(
+        String state,
+        long startMillis,
+        long startNanos,
+        long totalTime,
+        long useCount,
+        int commandLength,
+        Object command0,
+        Object command1,
+        Object command2,
+        Object command3,
+        Object[] commandArray
+    ) {
+      this.state = state;
+      this.startMillis = startMillis;
+      this.startNanos = startNanos;
+      this.totalTime = totalTime;
+      this.useCount = useCount;
+      this.commandLength = commandLength;
+      this.command0 = command0;
+      this.command1 = command1;
+      this.command2 = command2;
+      this.command3 = command3;
+      this.commandArray = commandArray;
+    }
+
+    /**
+     * Creates a new state, keeping the command of another.
+     */
+    private ProcessState(String state, long startMillis, long startNanos, long totalTime, long useCount, ProcessState command) {
+      this(
+          state,
+          startMillis,
+          startNanos,
+          totalTime,
+          useCount,
+          command.commandLength,
+          command.command0,
+          command.command1,
+          command.command2,
+          command.command3,
+          command.commandArray
+      );
+    }
+
+    /**
+     * Creates a new state, replacing the command of another.
+     */
+    private ProcessState(ProcessState current, int commandLength, Object command0, Object command1, Object command2, Object command3, Object[] commandArray) {
+      this(
+          current.state,
+          current.startMillis,
+          current.startNanos,
+          current.totalTime,
+          current.useCount,
+          commandLength,
+          command0,
+          command1,
+          command2,
+          command3,
+          commandArray
+      );
+    }
+
+    private Object getCommandElement(int index) {
+      if (commandArray != null) {
+        return commandArray[index];
+      }
+      switch (index) {
+        case 0:
+          return command0;
+        case 1:
+          return command1;
+        case 2:
+          return command2;
+        case 3:
+          return command3;
+        default:
+          throw new IndexOutOfBoundsException(Integer.toString(index));
+      }
+    }
+
+    /**
+     * Gets the milliseconds elapsed in this state.
+     */
+    private long getElapsed(long nanos) {
+      return (nanos - startNanos) / 1000000;
+    }
+  }
+
+  private final AtomicReference<ProcessState> processState;
+
+  /**
+   * The values last copied into the inherited fields by {@link #updateFields()}.
+   */
+  private long updatedTotalTime;
+  private long updatedUseCount;
 
   @SuppressWarnings("deprecation")
   public Process(
@@ -72,43 +204,128 @@ public class Process extends com.aoindustries.aoserv.client.master.Process {
     this.priority = Thread.NORM_PRIORITY;
     this.state = LOGIN;
     this.stateStartTime = this.connectTime;
+    this.processState = new AtomicReference<>(
+        new ProcessState(LOGIN, this.connectTime.getTime(), System.nanoTime(), 0, 0, 0, null, null, null, null, null)
+    );
   }
 
-  public synchronized void commandCompleted() {
-    long time = System.currentTimeMillis();
-    totalTime += time - stateStartTime.getTime();
-    state = SLEEP;
-    command = null;
-    stateStartTime = new UnmodifiableTimestamp(time);
+  public void commandCompleted() {
+    while (true) {
+      ProcessState current = processState.get();
+      long nanos = System.nanoTime();
+      ProcessState next = new ProcessState(
+          SLEEP,
+          System.currentTimeMillis(),
+          nanos,
+          current.totalTime + current.getElapsed(nanos),
+          current.useCount,
+          0,
+          null,
+          null,
+          null,
+          null,
+          null
+      );
+      if (processState.compareAndSet(current, next)) {
+        return;
+      }
+    }
   }
 
-  public synchronized void commandRunning() {
-    useCount++;
-    state = RUN;
-    stateStartTime = new UnmodifiableTimestamp(System.currentTimeMillis());
+  public void commandRunning() {
+    while (true) {
+      ProcessState current = processState.get();
+      ProcessState next = new ProcessState(
+          RUN,
+          System.currentTimeMillis(),
+          System.nanoTime(),
+          current.totalTime,
+          current.useCount + 1,
+          current
+      );
+      if (processState.compareAndSet(current, next)) {
+        return;
+      }
+    }
   }
 
-  public synchronized void commandSleeping() {
-    if (!state.equals(SLEEP)) {
-      long time = System.currentTimeMillis();
-      state = SLEEP;
-      totalTime += time - stateStartTime.getTime();
-      stateStartTime = new UnmodifiableTimestamp(time);
+  public void commandSleeping() {
+    while (true) {
+      ProcessState current = processState.get();
+      if (current.state.equals(SLEEP)) {
+        return;
+      }
+      long nanos = System.nanoTime();
+      ProcessState next = new ProcessState(
+          SLEEP,
+          System.currentTimeMillis(),
+          nanos,
+          current.totalTime + current.getElapsed(nanos),
+          current.useCount,
+          current
+      );
+      if (processState.compareAndSet(current, next)) {
+        return;
+      }
     }
   }
 
+  /**
+   * Copies the current state into the inherited fields, so they may be written
+   * while synchronized on this process.  This is only called when a snapshot of
+   * the process table is taken.  The getters read the current state directly.
+   */
+  synchronized void updateFields() {
+    ProcessState current = processState.get();
+    state = current.state;
+    stateStartTime = new UnmodifiableTimestamp(current.startMillis);
+    // Apply as differences, which works regardless of the width of the inherited fields
+    totalTime += current.totalTime - updatedTotalTime;
+    updatedTotalTime = current.totalTime;
+    useCount += current.useCount - updatedUseCount;
+    updatedUseCount = current.useCount;
+  }
+
+  @Override
+  public String getState() {
+    return processState.get().state;
+  }
+
+  @Override
+  public UnmodifiableTimestamp getStateStartTime() {
+    return new UnmodifiableTimestamp(processState.get().startMillis);
+  }
+
+  @Override
+  public long getTotalTime() {
+    return processState.get().totalTime;
+  }
+
+  @Override
+  public long getUseCount() {
+    return processState.get().useCount;
+  }
+
   public void setAoservProtocol(String aoservProtocol) {
     this.aoservProtocol = aoservProtocol;
   }
 
+  /**
+   * {@inheritDoc}
+   *
+   * <p>The command parameters are only converted to strings here, when
+   * logging or a snapshot of the process table needs them.</p>
+   */
   @Override
-  public synchronized String[] getCommand() {
-    if (command == null) {
+  public String[] getCommand() {
+    ProcessState current = processState.get();
+    int len = current.commandLength;
+    if (len == 0) {
       return null;
     }
-    int len = command.length;
     List<String> params = new ArrayList<>(len);
-    for (Object com : command) {
+    for (int i = 0; i < len; i++) {
+      Object com = current.getCommandElement(i);
       // Expand any array parameter
       if (com instanceof Object[]) {
         for (Object com2 : (Object[]) com) {
@@ -121,8 +338,49 @@ public class Process extends com.aoindustries.aoserv.client.master.Process {
     return params.toArray(new String[params.size()]);
   }
 
-  public synchronized void setCommand(Object... command) {
-    this.command = command;
+  private void setCommand(int commandLength, Object command0, Object command1, Object command2, Object command3, Object[] commandArray) {
+    while (true) {
+      ProcessState current = processState.get();
+      ProcessState next = new ProcessState(current, commandLength, command0, command1, command2, command3, commandArray);
+      if (processState.compareAndSet(current, next)) {
+        return;
+      }
+    }
+  }
+
+  public void setCommand(Object command) {
+    setCommand(1, command, null, null, null, null);
+  }
+
+  public void setCommand(Object command, Object param1) {
+    setCommand(2, command, param1, null, null, null);
+  }
+
+  public void setCommand(Object command, Object param1, Object param2) {
+    setCommand(3, command, param1, param2, null, null);
+  }
+
+  public void setCommand(Object command, Object param1, Object param2, Object param3) {
+    setCommand(4, command, param1, param2, param3, null);
+  }
+
+  /**
+   * Sets a command with more parameters than the fixed-arity overloads, which
+   * keeps the given array.
+   */
+  public void setCommand(Object... command) {
+    if (command.length <= ProcessState.COMMAND_FIELDS) {
+      setCommand(
+          command.length,
+          command.length > 0 ? command[0] : null,
+          command.length > 1 ? command[1] : null,
+          command.length > 2 ? command[2] : null,
+          command.length > 3 ? command[3] : null,
+          null
+      );
+    } else {
+      setCommand(command.length, null, null, null, null, command);
+    }
   }
 
   public void setAuthenticatedUser(User.Name username) {
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2001-2013, 2015, 2017, 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -30,9 +30,10 @@ import java.sql.SQLException;
 import java.sql.Timestamp;
 import java.time.Instant;
 import java.util.ArrayList;
-import java.util.LinkedHashMap;
+import java.util.Comparator;
 import java.util.List;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * Process manager.
@@ -46,7 +47,7 @@ public final class Process_Manager {
     throw new AssertionError();
   }
 
-  private static final Map<SmallIdentifier, Process> processes = new LinkedHashMap<>();
+  private static final ConcurrentMap<SmallIdentifier, Process> processes = new ConcurrentHashMap<>();
 
   public static Process createProcess(InetAddress host, String protocol, boolean isSecure) {
     Instant now = Instant.now();
@@ -54,36 +55,34 @@ public final class Process_Manager {
     ts.setNanos(now.getNano());
     while (true) {
       SmallIdentifier id = new SmallIdentifier();
-      synchronized (processes) {
-        if (!processes.containsKey(id)) {
-          Process process = new Process(
-              id,
-              host,
-              protocol,
-              isSecure,
-              ts
-          );
-          processes.put(id, process);
-          return process;
-        }
+      Process process = new Process(
+          id,
+          host,
+          protocol,
+          isSecure,
+          ts
+      );
+      if (processes.putIfAbsent(id, process) == null) {
+        return process;
       }
     }
   }
 
   public static void removeProcess(Process process) {
-    synchronized (processes) {
-      Process removed = processes.remove(process.getId());
-      if (removed == null) {
-        throw new IllegalStateException("Unable to find process " + process.getId() + " in the process list");
-      }
+    if (!processes.remove(process.getId(), process)) {
+      throw new IllegalStateException("Unable to find process " + process.getId() + " in the process list");
     }
   }
 
+  /**
+   * Gets a snapshot of all processes, in the order they connected.
+   */
   public static List<Process> getSnapshot() throws IOException, SQLException {
-    synchronized (processes) {
-      List<Process> processesCopy = new ArrayList<>(processes.size());
-      processesCopy.addAll(processes.values());
-      return processesCopy;
+    List<Process> processesCopy = new ArrayList<>(processes.values());
+    for (Process process : processesCopy) {
+      process.updateFields();
     }
+    processesCopy.sort(Comparator.comparing(Process::getConnectTime));
+    return processesCopy;
   }
 }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2020, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2020, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -32,24 +32,38 @@ import static com.aoindustries.aoserv.master.AoservMaster.getStartTime;
 import static com.aoindustries.aoserv.master.AoservMaster.writeObjects;
 
 import com.aoapps.dbc.DatabaseConnection;
-import com.aoapps.hodgepodge.io.FifoFile;
-import com.aoapps.hodgepodge.io.FifoFileInputStream;
-import com.aoapps.hodgepodge.io.FifoFileOutputStream;
 import com.aoapps.hodgepodge.io.stream.StreamableOutput;
 import com.aoapps.hodgepodge.util.ThreadUtility;
 import com.aoapps.lang.Strings;
 import com.aoapps.lang.util.BufferManager;
 import com.aoapps.sql.pool.AOConnectionPool;
 import com.aoindustries.aoserv.client.master.ServerStat;
+import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.schema.AoservProtocol;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AoservMaster;
+import com.aoindustries.aoserv.master.DaemonFileCache;
 import com.aoindustries.aoserv.master.DaemonHandler;
+import com.aoindustries.aoserv.master.DaemonHealth;
+import com.aoindustries.aoserv.master.DaemonStatusCache;
+import com.aoindustries.aoserv.master.EntropyPool;
+import com.aoindustries.aoserv.master.FailoverHandler;
+import com.aoindustries.aoserv.master.HealthReportCollector;
+import com.aoindustries.aoserv.master.LinuxServerHandler;
 import com.aoindustries.aoserv.master.MasterDatabase;
+import com.aoindustries.aoserv.master.OwnershipIndex;
+import com.aoindustries.aoserv.master.PkiCertificateHandler;
 import com.aoindustries.aoserv.master.RandomHandler;
 import com.aoindustries.aoserv.master.RequestSource;
+import com.aoindustries.aoserv.master.RequestStatistics;
 import com.aoindustries.aoserv.master.TableHandler;
+import com.aoindustries.aoserv.master.TicketSearchIndex;
+import com.aoindustries.aoserv.master.VirtualDiskVerifier;
+import com.aoindustries.aoserv.master.VirtualServerHandler;
+import com.aoindustries.aoserv.master.WebHandler;
 import java.io.IOException;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
@@ -134,19 +148,67 @@ public class ServerStat_GetTableHandler extends TableHandler.GetTableHandlerPubl
       addStat(objs, ServerStat.DB_TOTAL_TIME, Strings.getDecimalTimeLengthString(dbPool.getTotalTime()), "Total time spent accessing the database");
       addStat(objs, ServerStat.DB_TRANSACTIONS, Long.toString(dbPool.getTransactionCount()), "Number of transactions committed by the database");
 
-      FifoFile entropyFile = RandomHandler.getFifoFile();
-      addStat(objs, ServerStat.ENTROPY_AVAIL, Long.toString(entropyFile.getLength()), "Number of bytes of entropy currently available");
-      addStat(objs, ServerStat.ENTROPY_POOLSIZE, Long.toString(entropyFile.getMaximumFifoLength()), "Maximum number of bytes of entropy");
-      FifoFileInputStream entropyIn = entropyFile.getInputStream();
-      addStat(objs, ServerStat.ENTROPY_READ_BYTES, Long.toString(entropyIn.getReadBytes()), "Number of bytes read from the entropy pool");
-      addStat(objs, ServerStat.ENTROPY_READ_COUNT, Long.toString(entropyIn.getReadCount()), "Number of reads from the entropy pool");
-      FifoFileOutputStream entropyOut = entropyFile.getOutputStream();
-      addStat(objs, ServerStat.ENTROPY_WRITE_BYTES, Long.toString(entropyOut.getWriteBytes()), "Number of bytes written to the entropy pool");
-      addStat(objs, ServerStat.ENTROPY_WRITE_COUNT, Long.toString(entropyOut.getWriteCount()), "Number of writes to the entropy pool");
+      EntropyPool entropyPool = RandomHandler.getEntropyPool();
+      addStat(objs, ServerStat.ENTROPY_AVAIL, Long.toString(entropyPool.getAvailable()), "Number of bytes of entropy currently available");
+      addStat(objs, ServerStat.ENTROPY_POOLSIZE, Long.toString(entropyPool.getPoolSize()), "Maximum number of bytes of entropy");
+      addStat(objs, ServerStat.ENTROPY_READ_BYTES, Long.toString(entropyPool.getReadBytes()), "Number of bytes read from the entropy pool");
+      addStat(objs, ServerStat.ENTROPY_READ_COUNT, Long.toString(entropyPool.getReadCount()), "Number of reads from the entropy pool");
+      addStat(objs, ServerStat.ENTROPY_WRITE_BYTES, Long.toString(entropyPool.getWriteBytes()), "Number of bytes written to the entropy pool");
+      addStat(objs, ServerStat.ENTROPY_WRITE_COUNT, Long.toString(entropyPool.getWriteCount()), "Number of writes to the entropy pool");
+      addStat(objs, "entropy_buffer_avail", Long.toString(entropyPool.getBufferAvailable()), "Number of bytes of entropy currently in memory");
+      addStat(objs, "entropy_buffer_size", Long.toString(EntropyPool.getBufferSize()), "Maximum number of bytes of entropy in memory");
+      addStat(objs, "entropy_spill_bytes", Long.toString(entropyPool.getSpillBytes()), "Number of bytes of entropy moved from memory to disk");
+      addStat(objs, "entropy_refill_bytes", Long.toString(entropyPool.getRefillBytes()), "Number of bytes of entropy moved from disk to memory");
+      addStat(objs, "entropy_direct_count", Long.toString(entropyPool.getDirectCount()), "Number of entropy requests that accessed the disk directly");
 
       addStat(objs, ServerStat.MEMORY_FREE, Long.toString(Runtime.getRuntime().freeMemory()), "Free virtual machine memory in bytes");
       addStat(objs, ServerStat.MEMORY_TOTAL, Long.toString(Runtime.getRuntime().totalMemory()), "Total virtual machine memory in bytes");
 
+      addStat(objs, "ownership_index_hits", Long.toString(OwnershipIndex.getHits()), "Number of ownership lookups answered from memory");
+      addStat(objs, "ownership_index_misses", Long.toString(OwnershipIndex.getMisses()), "Number of ownership lookups queried from the database");
+      addStat(objs, "ownership_index_loads", Long.toString(OwnershipIndex.getLoads()), "Number of ownership tables loaded in bulk");
+
+      DaemonFileCache<?> awstatsCache = WebHandler.getAwstatsCache();
+      long awstatsHits = awstatsCache.getHits() + awstatsCache.getShared();
+      long awstatsRequests = awstatsHits + awstatsCache.getMisses();
+      addStat(objs, "awstats_cache_hits", Long.toString(awstatsCache.getHits()), "Number of AWStats requests served from the cache");
+      addStat(objs, "awstats_cache_shared", Long.toString(awstatsCache.getShared()), "Number of AWStats requests that shared a concurrent daemon request");
+      addStat(objs, "awstats_cache_misses", Long.toString(awstatsCache.getMisses()), "Number of AWStats requests sent to the daemon");
+      addStat(objs, "awstats_cache_hit_ratio", awstatsRequests == 0 ? "0" : Double.toString((double) awstatsHits / awstatsRequests), "Fraction of AWStats requests served without a daemon request");
+      addStat(objs, "awstats_cache_bytes_saved", Long.toString(awstatsCache.getBytesSaved()), "Number of AWStats bytes served without a daemon request");
+      addStat(objs, "awstats_cache_size", Integer.toString(awstatsCache.getSize()), "Number of cached AWStats files");
+      addStat(objs, "awstats_cache_bytes", Long.toString(awstatsCache.getBytes()), "Number of bytes of distinct cached AWStats content");
+
+      DaemonFileCache<?> mrtgCache = LinuxServerHandler.getMrtgCache();
+      addStat(objs, "mrtg_cache_hits", Long.toString(mrtgCache.getHits()), "Number of MRTG requests served from the cache");
+      addStat(objs, "mrtg_cache_shared", Long.toString(mrtgCache.getShared()), "Number of MRTG requests that shared a concurrent daemon request");
+      addStat(objs, "mrtg_cache_misses", Long.toString(mrtgCache.getMisses()), "Number of MRTG requests sent to the daemon");
+      addStat(objs, "mrtg_cache_bytes_saved", Long.toString(mrtgCache.getBytesSaved()), "Number of MRTG bytes served without a daemon request");
+      addStat(objs, "mrtg_cache_size", Integer.toString(mrtgCache.getSize()), "Number of cached MRTG files");
+      addStat(objs, "mrtg_cache_bytes", Long.toString(mrtgCache.getBytes()), "Number of bytes of distinct cached MRTG content");
+
+      addStat(objs, "ssl_check_cache_hits", Long.toString(PkiCertificateHandler.getCheckCacheHits()), "Number of SSL certificate checks answered from the master cache");
+      addStat(objs, "ssl_check_cache_misses", Long.toString(PkiCertificateHandler.getCheckCacheMisses()), "Number of SSL certificate checks sent to the daemons");
+
+      addStat(objs, "health_report_hits", Long.toString(HealthReportCollector.getHits()), "Number of server health reports answered from a collected snapshot");
+      addStat(objs, "health_report_misses", Long.toString(HealthReportCollector.getMisses()), "Number of server health reports without a fresh snapshot");
+      addStat(objs, "health_report_collected", Long.toString(HealthReportCollector.getCollected()), "Number of server health reports collected in the background");
+
+      addStat(objs, "ticket_search_documents", Integer.toString(TicketSearchIndex.getDocuments()), "Number of ticket documents in the search index");
+      addStat(objs, "ticket_search_trigrams", Integer.toString(TicketSearchIndex.getTrigrams()), "Number of distinct trigrams in the ticket search index");
+      addStat(objs, "ticket_search_searches", Long.toString(TicketSearchIndex.getSearches()), "Number of ticket searches performed");
+
+      DaemonStatusCache<?, ?> concurrencyCache = WebHandler.getHttpdServerConcurrencyCache();
+      addStat(objs, "httpd_concurrency_cache_hits", Long.toString(concurrencyCache.getHits()), "Number of httpd server concurrency requests answered from a recent daemon call");
+      addStat(objs, "httpd_concurrency_cache_coalesced", Long.toString(concurrencyCache.getCoalesced()), "Number of httpd server concurrency requests that shared a concurrent daemon call");
+      addStat(objs, "httpd_concurrency_cache_loads", Long.toString(concurrencyCache.getLoads()), "Number of httpd server concurrency daemon calls");
+      DaemonStatusCache<?, ?> virtualServerCache = VirtualServerHandler.getVirtualServerStatusCache();
+      addStat(objs, "virtual_server_status_cache_hits", Long.toString(virtualServerCache.getHits()), "Number of virtual server status requests answered from a recent daemon call");
+      addStat(objs, "virtual_server_status_cache_coalesced", Long.toString(virtualServerCache.getCoalesced()), "Number of virtual server status requests that shared a concurrent daemon call");
+      addStat(objs, "virtual_server_status_cache_loads", Long.toString(virtualServerCache.getLoads()), "Number of virtual server status daemon calls");
+
+      addStat(objs, "failover_file_log_removed", Long.toString(FailoverHandler.getFileReplicationLogsRemoved()), "Number of expired file replication logs removed since startup");
+
       addStat(objs, ServerStat.PROTOCOL_VERSION, Strings.join(AoservProtocol.Version.values(), "\n"), "Supported AoservProtocol version numbers");
 
       addStat(objs, ServerStat.REQUEST_CONCURRENCY, Integer.toString(getRequestConcurrency()), "Current number of client requests being processed");
@@ -155,6 +217,38 @@ public class ServerStat_GetTableHandler extends TableHandler.GetTableHandlerPubl
       addStat(objs, ServerStat.REQUEST_TOTAL_TIME, Strings.getDecimalTimeLengthString(getRequestTotalTime()), "Total time spent processing client requests");
       addStat(objs, ServerStat.REQUEST_TRANSACTIONS, Long.toString(getRequestTransactions()), "Number of client requests processed");
 
+      for (AoservProtocol.CommandId command : AoservProtocol.CommandId.values()) {
+        RequestStatistics.RequestHistograms histograms = RequestStatistics.getCommandHistograms(command);
+        if (histograms != null) {
+          addStat(objs, "request_time." + command, histograms.getTotal().toString(), "Total time processing " + command + " requests");
+          addStat(objs, "request_execute_time." + command, histograms.getExecute().toString(), "Time executing " + command + " requests, including database and daemon access");
+          addStat(objs, "request_respond_time." + command, histograms.getRespond().toString(), "Time writing " + command + " responses after releasing the database connection");
+        }
+      }
+      for (Table.TableId table : Table.TableId.values()) {
+        RequestStatistics.RequestHistograms histograms = RequestStatistics.getTableHistograms(table);
+        if (histograms != null) {
+          addStat(objs, "table_time." + table, histograms.getTotal().toString(), "Total time processing requests for the " + table + " table");
+          addStat(objs, "table_execute_time." + table, histograms.getExecute().toString(), "Time executing requests for the " + table + " table, including database and daemon access");
+          addStat(objs, "table_respond_time." + table, histograms.getRespond().toString(), "Time writing responses for the " + table + " table after releasing the database connection");
+        }
+      }
+      // The slow request log identifies administrators and the daemon health identifies servers, so are only provided to master users
+      User mu = AoservMaster.getUser(conn, source.getCurrentAdministrator());
+      if (mu != null && AoservMaster.getUserHosts(conn, source.getCurrentAdministrator()).length == 0) {
+        for (DaemonHealth health : DaemonHealth.getDaemonHealths()) {
+          addStat(objs, "daemon_health." + health.getLinuxServer(), health.toString(), "Circuit state, failures, and request latency of the daemon");
+        }
+        addStat(objs, "request_slow_threshold", Strings.getDecimalTimeLengthString(RequestStatistics.getSlowThreshold()), "Time a client request may take before being logged as slow");
+        int index = 0;
+        for (RequestStatistics.SlowRequest slowRequest : RequestStatistics.getSlowRequests()) {
+          addStat(objs, "request_slow." + (index++), new Timestamp(slowRequest.getTime()) + ": " + slowRequest, "Recent slow client request");
+        }
+        for (VirtualDiskVerifier.Job job : VirtualDiskVerifier.getJobs()) {
+          addStat(objs, "virtual_disk_verify." + job.getVirtualDisk(), job.toString(), "Queued, running, or recently finished virtual disk verification");
+        }
+      }
+
       addStat(objs, ServerStat.THREAD_COUNT, Integer.toString(ThreadUtility.getThreadCount()), "Current number of virtual machine threads");
 
       addStat(objs, ServerStat.UPTIME, Strings.getDecimalTimeLengthString(System.currentTimeMillis() - getStartTime()), "Amount of time the master server has been running");
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -25,11 +25,12 @@ package com.aoindustries.aoserv.master.net;
 
 import com.aoapps.dbc.DatabaseConnection;
 import com.aoapps.hodgepodge.io.stream.StreamableOutput;
-import com.aoindustries.aoserv.client.account.Account;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.net.BindFirewallZone;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -112,6 +113,7 @@ public class BindFirewallZone_GetTableHandler extends TableHandler.GetTableHandl
       Table.TableId tableId
   ) throws IOException, SQLException {
     com.aoindustries.aoserv.client.account.User.Name currentAdministrator = source.getCurrentAdministrator();
+    String allowedAccounts = AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source));
     AoservMaster.writeObjects(
         conn,
         source,
@@ -129,38 +131,22 @@ public class BindFirewallZone_GetTableHandler extends TableHandler.GetTableHandl
             + "    select\n"
             + "      nb2.id\n"
             + "    from\n"
-            + "      account.\"User\" un1,\n"
-            + "      billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "      billing.\"Package\" pk2,\n"
             + "      net.\"Bind\" nb2\n"
             + "    where\n"
-            + "      un1.username=?\n"
-            + "      and un1.package=pk1.name\n"
-            + "      and (\n"
-            + TableHandler.PK1_BU1_PARENTS_WHERE
-            + "      )\n"
-            + "      and bu1.accounting=pk2.accounting\n"
+            + "      pk2.accounting = ANY(?::text[])\n"
             + "      and pk2.name=nb2.package\n"
             + "  )\n"
             + "  or nb.id in (\n"
             + "    select\n"
             + "      nb3.id\n"
             + "    from\n"
-            + "      account.\"User\" un3,\n"
-            + "      billing.\"Package\" pk3,\n"
-            + TableHandler.BU2_PARENTS_JOIN
             + "      billing.\"Package\" pk4,\n"
             + "      web.\"Site\" hs,\n"
             + "      web.\"VirtualHost\" hsb,\n"
             + "      net.\"Bind\" nb3\n"
             + "    where\n"
-            + "      un3.username=?\n"
-            + "      and un3.package=pk3.name\n"
-            + "      and (\n"
-            + TableHandler.PK3_BU2_PARENTS_WHERE
-            + "      )\n"
-            + "      and bu" + Account.MAXIMUM_BUSINESS_TREE_DEPTH + ".accounting=pk4.accounting\n"
+            + "      pk4.accounting = ANY(?::text[])\n"
             + "      and pk4.name=hs.package\n"
             + "      and hs.id=hsb.httpd_site\n"
             + "      and hsb.httpd_bind=nb3.id\n"
@@ -191,8 +177,8 @@ public class BindFirewallZone_GetTableHandler extends TableHandler.GetTableHandl
             + "      and pk5.accounting=bs5.accounting\n"
             + "      and bs5.server=ps5.ao_server\n"
             + "  )",
-        currentAdministrator,
-        currentAdministrator,
+        allowedAccounts,
+        allowedAccounts,
         currentAdministrator,
         currentAdministrator
     );
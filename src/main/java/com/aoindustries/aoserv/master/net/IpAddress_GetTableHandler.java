@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -23,16 +23,14 @@
 
 package com.aoindustries.aoserv.master.net;
 
-import static com.aoindustries.aoserv.master.TableHandler.BU2_PARENTS_JOIN;
-import static com.aoindustries.aoserv.master.TableHandler.PK3_BU2_PARENTS_WHERE;
-
 import com.aoapps.dbc.DatabaseConnection;
 import com.aoapps.hodgepodge.io.stream.StreamableOutput;
-import com.aoindustries.aoserv.client.account.Account;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.net.IpAddress;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -178,6 +176,7 @@ public class IpAddress_GetTableHandler extends TableHandler.GetTableHandlerByRol
       Table.TableId tableId
   ) throws IOException, SQLException {
     com.aoindustries.aoserv.client.account.User.Name currentAdministrator = source.getCurrentAdministrator();
+    String accounts = AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source));
     AoservMaster.writeObjects(
         conn,
         source,
@@ -212,38 +211,22 @@ public class IpAddress_GetTableHandler extends TableHandler.GetTableHandlerByRol
             + "    select\n"
             + "      ia2.id\n"
             + "    from\n"
-            + "      account.\"User\" un1,\n"
-            + "      billing.\"Package\" pk1,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "      billing.\"Package\" pk2,\n"
             + "      net.\"IpAddress\" ia2\n"
             + "    where\n"
-            + "      un1.username=?\n"
-            + "      and un1.package=pk1.name\n"
-            + "      and (\n"
-            + TableHandler.PK1_BU1_PARENTS_WHERE
-            + "      )\n"
-            + "      and bu1.accounting=pk2.accounting\n"
+            + "      pk2.accounting = ANY(?::text[])\n"
             + "      and pk2.id=ia2.package\n"
             + "  )\n"
             + "  or ia.id in (\n"
             + "    select\n"
             + "      nb.\"ipAddress\"\n"
             + "    from\n"
-            + "      account.\"User\" un3,\n"
-            + "      billing.\"Package\" pk3,\n"
-            + BU2_PARENTS_JOIN
             + "      billing.\"Package\" pk4,\n"
             + "      web.\"Site\" hs,\n"
             + "      web.\"VirtualHost\" hsb,\n"
             + "      net.\"Bind\" nb\n"
             + "    where\n"
-            + "      un3.username=?\n"
-            + "      and un3.package=pk3.name\n"
-            + "      and (\n"
-            + PK3_BU2_PARENTS_WHERE
-            + "      )\n"
-            + "      and bu" + Account.MAXIMUM_BUSINESS_TREE_DEPTH + ".accounting=pk4.accounting\n"
+            + "      pk4.accounting = ANY(?::text[])\n"
             + "      and pk4.name=hs.package\n"
             + "      and hs.id=hsb.httpd_site\n"
             + "      and hsb.httpd_bind=nb.id\n"
@@ -286,8 +269,8 @@ public class IpAddress_GetTableHandler extends TableHandler.GetTableHandlerByRol
             + "      and nd6.id=ia6.device and not ia6.\"isAlias\"\n"*/
             + "  )",
         IpAddress.WILDCARD_IP,
-        currentAdministrator,
-        currentAdministrator,
+        accounts,
+        accounts,
         currentAdministrator,
         IpAddress.LOOPBACK_IP // ,
     // username
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -28,6 +28,8 @@ import com.aoapps.hodgepodge.io.stream.StreamableOutput;
 import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AccountUserHandler;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
@@ -147,17 +149,9 @@ public class Set_GetTableHandler extends TableHandler.GetTableHandlerByRole {
             + "    select\n"
             + "      irs2.id\n"
             + "    from\n"
-            + "      account.\"User\" un,\n"
-            + "      billing.\"Package\" pk,\n"
-            + TableHandler.BU1_PARENTS_JOIN
             + "      \"net.reputation\".\"Set\" irs2\n"
             + "    where\n"
-            + "      un.username=?\n"
-            + "      and un.package=pk.name\n"
-            + "      and (\n"
-            + TableHandler.PK_BU1_PARENTS_WHERE
-            + "      )\n"
-            + "      and bu1.accounting=irs2.accounting\n"
+            + "      irs2.accounting = ANY(?::text[])\n"
             + "  )\n"
             // Allow any parent business that allow_subaccount_user
             + "  or irs.id in (\n"
@@ -169,7 +163,7 @@ public class Set_GetTableHandler extends TableHandler.GetTableHandlerByRole {
             + "      irs3.allow_subaccount_use\n"
             + "      and account.is_account_or_parent(irs3.accounting, ?)\n"
             + "  )",
-        currentAdministrator,
+        AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source)),
         AccountUserHandler.getAccountForUser(conn, currentAdministrator)
     );
   }
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -30,6 +30,8 @@ import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
 import com.aoindustries.aoserv.client.ticket.Action;
 import com.aoindustries.aoserv.client.ticket.Status;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -117,6 +119,7 @@ public class Action_GetTableHandler extends TableHandler.GetTableHandlerByRole {
   ) throws IOException, SQLException {
     if (TicketHandler.isTicketAdmin(conn, source)) {
       // If a ticket admin, can see all ticket.Action
+      String allowedAccounts = AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source));
       AoservMaster.writeObjects(
           conn,
           source,
@@ -145,24 +148,18 @@ public class Action_GetTableHandler extends TableHandler.GetTableHandlerByRole {
               + "  ta.from_address,\n"
               + "  ta.summary\n"
               + "from\n"
-              + "  account.\"User\" un,\n"
-              + "  billing.\"Package\" pk1,\n"
-              + TableHandler.BU1_PARENTS_JOIN
               + "  ticket.\"Ticket\" ti,\n"
               + "  ticket.\"Action\" ta\n"
               + "where\n"
-              + "  un.username=?\n"
-              + "  and un.package=pk1.name\n"
-              + "  and (\n"
-              + TableHandler.PK1_BU1_PARENTS_WHERE
-              + "  )\n"
-              + "  and (\n"
-              + "    bu1.accounting=ti.accounting\n" // Has access to ticket accounting
-              + "    or bu1.accounting=ti.brand\n" // Has access to brand
-              + "    or bu1.accounting=ti.reseller\n" // Has access to assigned reseller
+              + "  (\n"
+              + "    ti.accounting = ANY(?::text[])\n" // Has access to ticket accounting
+              + "    or ti.brand = ANY(?::text[])\n" // Has access to brand
+              + "    or ti.reseller = ANY(?::text[])\n" // Has access to assigned reseller
               + "  )\n"
               + "  and ti.id=ta.ticket",
-          source.getCurrentAdministrator()
+          allowedAccounts,
+          allowedAccounts,
+          allowedAccounts
       );
     } else {
       // Can only see non-admin types and statuses
@@ -194,24 +191,16 @@ public class Action_GetTableHandler extends TableHandler.GetTableHandlerByRole {
               + "  ta.from_address,\n"
               + "  ta.summary\n"
               + "from\n"
-              + "  account.\"User\" un,\n"
-              + "  billing.\"Package\" pk1,\n"
-              + TableHandler.BU1_PARENTS_JOIN
               + "  ticket.\"Ticket\" ti,\n"
               + "  ticket.\"Action\" ta,\n"
               + "  ticket.\"ActionType\" tat\n"
               + "where\n"
-              + "  un.username=?\n"
-              + "  and un.package=pk1.name\n"
-              + "  and (\n"
-              + TableHandler.PK1_BU1_PARENTS_WHERE
-              + "  )\n"
-              + "  and bu1.accounting=ti.accounting\n"
+              + "  ti.accounting = ANY(?::text[])\n"
               + "  and ti.status not in (?,?)\n"
               + "  and ti.id=ta.ticket\n"
               + "  and ta.action_type=tat.type\n"
               + "  and not tat.visible_admin_only",
-          source.getCurrentAdministrator(),
+          AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source)),
           Status.JUNK,
           Status.DELETED
       );
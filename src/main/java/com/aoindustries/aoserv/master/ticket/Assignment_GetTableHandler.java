@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -29,6 +29,8 @@ import com.aoindustries.aoserv.client.master.User;
 import com.aoindustries.aoserv.client.master.UserHost;
 import com.aoindustries.aoserv.client.schema.Table;
 import com.aoindustries.aoserv.client.ticket.Assignment;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -95,6 +97,7 @@ public class Assignment_GetTableHandler extends TableHandler.GetTableHandlerByRo
   ) throws IOException, SQLException {
     if (TicketHandler.isTicketAdmin(conn, source)) {
       // Only ticket admin can see assignments
+      String allowedAccounts = AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source));
       AoservMaster.writeObjects(
           conn,
           source,
@@ -105,24 +108,18 @@ public class Assignment_GetTableHandler extends TableHandler.GetTableHandlerByRo
           "select distinct\n" // TODO: distinct required?
               + "  ta.*\n"
               + "from\n"
-              + "  account.\"User\" un,\n"
-              + "  billing.\"Package\" pk1,\n"
-              + TableHandler.BU1_PARENTS_JOIN
               + "  ticket.\"Ticket\" ti,\n"
               + "  ticket.\"Assignment\" ta\n"
               + "where\n"
-              + "  un.username=?\n"
-              + "  and un.package=pk1.name\n"
-              + "  and (\n"
-              + TableHandler.PK1_BU1_PARENTS_WHERE
-              + "  )\n"
-              + "  and (\n"
-              + "    bu1.accounting=ti.accounting\n" // Has access to ticket accounting
-              + "    or bu1.accounting=ti.brand\n" // Has access to brand
-              + "    or bu1.accounting=ti.reseller\n" // Has access to assigned reseller
+              + "  (\n"
+              + "    ti.accounting = ANY(?::text[])\n" // Has access to ticket accounting
+              + "    or ti.brand = ANY(?::text[])\n" // Has access to brand
+              + "    or ti.reseller = ANY(?::text[])\n" // Has access to assigned reseller
               + "  )\n"
               + "  and ti.id=ta.ticket",
-          source.getCurrentAdministrator()
+          allowedAccounts,
+          allowedAccounts,
+          allowedAccounts
       );
     } else {
       // Non-admins don't get any assignment details
@@ -1,6 +1,6 @@
 /*
  * aoserv-master - Master server for the AOServ Platform.
- * Copyright (C) 2018, 2019, 2021, 2022  AO Industries, Inc.
+ * Copyright (C) 2018, 2019, 2021, 2022, 2026  AO Industries, Inc.
  *     support@aoindustries.com
  *     7262 Bull Pen Cir
  *     Mobile, AL 36695
@@ -31,6 +31,8 @@ import com.aoindustries.aoserv.client.schema.Table;
 import com.aoindustries.aoserv.client.ticket.Status;
 import com.aoindustries.aoserv.client.ticket.Ticket;
 import com.aoindustries.aoserv.client.ticket.TicketType;
+import com.aoindustries.aoserv.master.AccountHandler;
+import com.aoindustries.aoserv.master.AccountTree;
 import com.aoindustries.aoserv.master.AoservMaster;
 import com.aoindustries.aoserv.master.CursorMode;
 import com.aoindustries.aoserv.master.RequestSource;
@@ -157,6 +159,7 @@ public class Ticket_GetTableHandler extends TableHandler.GetTableHandlerByRole {
       boolean provideProgress,
       Table.TableId tableId
   ) throws IOException, SQLException {
+    String accounts = AccountTree.toArrayLiteral(AccountHandler.getAllowedAccounts(conn, source));
     if (TicketHandler.isTicketAdmin(conn, source)) {
       AoservMaster.writeObjects(
           conn,
@@ -165,7 +168,7 @@ public class Ticket_GetTableHandler extends TableHandler.GetTableHandlerByRole {
           provideProgress,
           CursorMode.FETCH,
           new Ticket(),
-          "select distinct\n" // TODO: distinct required?
+          "select\n"
               + "  ti.id,\n"
               + "  ti.brand,\n"
               + "  ti.reseller,\n"
@@ -184,22 +187,14 @@ public class Ticket_GetTableHandler extends TableHandler.GetTableHandlerByRole {
               + "  ti.contact_emails,\n"
               + "  ti.contact_phone_numbers\n"
               + "from\n"
-              + "  account.\"User\" un,\n"
-              + "  billing.\"Package\" pk1,\n"
-              + TableHandler.BU1_PARENTS_JOIN
               + "  ticket.\"Ticket\" ti\n"
               + "where\n"
-              + "  un.username=?\n"
-              + "  and un.package=pk1.name\n"
-              + "  and (\n"
-              + TableHandler.PK1_BU1_PARENTS_WHERE
-              + "  )\n"
-              + "  and (\n"
-              + "    bu1.accounting=ti.accounting\n" // Has access to ticket accounting
-              + "    or bu1.accounting=ti.brand\n" // Has access to brand
-              + "    or bu1.accounting=ti.reseller\n" // Has access to assigned reseller
-              + "  )",
-          source.getCurrentAdministrator()
+              + "  ti.accounting = ANY(?::text[])\n" // Has access to ticket accounting
+              + "  or ti.brand = ANY(?::text[])\n" // Has access to brand
+              + "  or ti.reseller = ANY(?::text[])", // Has access to assigned reseller
+          accounts,
+          accounts,
+          accounts
       );
     } else {
       AoservMaster.writeObjects(
@@ -228,19 +223,11 @@ public class Ticket_GetTableHandler extends TableHandler.GetTableHandlerByRole {
               + "  ti.contact_emails,\n"
               + "  ti.contact_phone_numbers\n"
               + "from\n"
-              + "  account.\"User\" un,\n"
-              + "  billing.\"Package\" pk1,\n"
-              + TableHandler.BU1_PARENTS_JOIN
               + "  ticket.\"Ticket\" ti\n"
               + "where\n"
-              + "  un.username=?\n"
-              + "  and un.package=pk1.name\n"
-              + "  and (\n"
-              + TableHandler.PK1_BU1_PARENTS_WHERE
-              + "  )\n"
-              + "  and bu1.accounting=ti.accounting\n"
+              + "  ti.accounting = ANY(?::text[])\n"
               + "  and ti.status not in (?,?)",
-          source.getCurrentAdministrator(),
+          accounts,
           Status.JUNK,
           Status.DELETED
       );
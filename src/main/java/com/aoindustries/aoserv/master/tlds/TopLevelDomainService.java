@@ -53,8 +53,15 @@ public class TopLevelDomainService implements MasterService {
   @Override
   public void start() {
     CronDaemon.addCronJob(cronJob, logger);
-    // Run at start-up, too
-    CronDaemon.runImmediately(cronJob);
+  }
+
+  /**
+   * Runs the job at start-up, too, waiting for it to complete.  The job is
+   * synchronized, so this never overlaps a scheduled run.
+   */
+  @Override
+  public void warmUp() {
+    cronJob.run(-1, -1, -1, -1, -1, -1);
   }
 
   // <editor-fold desc="CronJob" defaultstate="collapsed">
@@ -77,7 +84,7 @@ public class TopLevelDomainService implements MasterService {
 
     @Override
     @SuppressWarnings({"UseSpecificCatch", "TooBroadCatch"})
-    public void run(int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
+    public synchronized void run(int minute, int hour, int dayOfMonth, int month, int dayOfWeek, int year) {
       try {
         try (
             ProcessTimer timer = new ProcessTimer(
@@ -0,0 +1,267 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.aoapps.hodgepodge.io.AOPool;
+import com.aoapps.net.HostAddress;
+import com.aoapps.net.Port;
+import com.aoapps.net.Protocol;
+import com.aoapps.security.UnprotectedKey;
+import com.aoindustries.aoserv.client.net.AppProtocol;
+import com.aoindustries.aoserv.daemon.client.AoservDaemonConnector;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests {@link DaemonHealth} and {@link DaemonHandler#callDaemon(DaemonHealth, AoservDaemonConnector, DaemonHandler.DaemonCall)}
+ * against a local fake daemon that accepts and then immediately drops every connection.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class DaemonHealthTest {
+
+  private ServerSocket fakeDaemon;
+  private Thread acceptThread;
+  private final AtomicInteger connections = new AtomicInteger();
+
+  @Before
+  public void startFakeDaemon() throws IOException {
+    fakeDaemon = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+    acceptThread = new Thread(() -> {
+      while (!fakeDaemon.isClosed()) {
+        try (Socket socket = fakeDaemon.accept()) {
+          connections.incrementAndGet();
+          // Drop the connection
+        } catch (IOException e) {
+          // Closed
+        }
+      }
+    }, "DaemonHealthTest.fakeDaemon");
+    acceptThread.setDaemon(true);
+    acceptThread.start();
+  }
+
+  @After
+  public void stopFakeDaemon() throws IOException, InterruptedException {
+    fakeDaemon.close();
+    acceptThread.join(10000);
+  }
+
+  /**
+   * Makes one request to the fake daemon when allowed, recording its outcome.
+   *
+   * @return  {@code true} when the request was allowed
+   */
+  private boolean request(DaemonHealth health, long currentTime) {
+    if (!health.allowRequest(currentTime)) {
+      return false;
+    }
+    try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), fakeDaemon.getLocalPort())) {
+      if (socket.getInputStream().read() == -1) {
+        throw new EOFException("Connection dropped");
+      }
+      health.recordSuccess(0);
+    } catch (IOException e) {
+      health.recordFailure(currentTime);
+    }
+    return true;
+  }
+
+  @Test
+  public void testFailsFastAfterThreshold() {
+    DaemonHealth health = new DaemonHealth(1);
+    long time = 1000000;
+    for (int i = 0; i < DaemonHealth.FAILURE_THRESHOLD; i++) {
+      assertFalse(health.isFailingFast(time));
+      assertTrue(request(health, time));
+    }
+    assertTrue(health.isFailingFast(time));
+    for (int i = 0; i < 10; i++) {
+      assertFalse(request(health, time + 1));
+    }
+    assertEquals(DaemonHealth.FAILURE_THRESHOLD, connections.get());
+  }
+
+  @Test
+  public void testSingleProbeWhenHalfOpen() {
+    DaemonHealth health = new DaemonHealth(2);
+    long time = 1000000;
+    for (int i = 0; i < DaemonHealth.FAILURE_THRESHOLD; i++) {
+      request(health, time);
+    }
+    long halfOpen = time + DaemonHealth.MIN_BACKOFF;
+    // Not failing fast until the probe is taken
+    assertFalse(health.isFailingFast(halfOpen));
+    assertTrue(health.allowRequest(halfOpen));
+    assertTrue(health.isFailingFast(halfOpen));
+    for (int i = 0; i < 10; i++) {
+      assertFalse(health.allowRequest(halfOpen));
+    }
+    // Still only one probe much later, until its outcome is reported
+    assertFalse(health.allowRequest(halfOpen + DaemonHealth.MAX_BACKOFF));
+  }
+
+  @Test
+  public void testFailedProbeDoublesBackoff() {
+    DaemonHealth health = new DaemonHealth(3);
+    long time = 1000000;
+    for (int i = 0; i < DaemonHealth.FAILURE_THRESHOLD; i++) {
+      request(health, time);
+    }
+    long probeTime = time + DaemonHealth.MIN_BACKOFF;
+    assertTrue(request(health, probeTime));
+    assertEquals(DaemonHealth.FAILURE_THRESHOLD + 1, connections.get());
+    assertFalse(request(health, probeTime + DaemonHealth.MIN_BACKOFF));
+    assertTrue(request(health, probeTime + 2 * DaemonHealth.MIN_BACKOFF));
+    assertEquals(DaemonHealth.FAILURE_THRESHOLD + 2, connections.get());
+  }
+
+  @Test
+  public void testFailuresWhileOpenKeepBackoff() {
+    DaemonHealth health = new DaemonHealth(5);
+    long time = 1000000;
+    for (int i = 0; i < DaemonHealth.FAILURE_THRESHOLD; i++) {
+      request(health, time);
+    }
+    // Requests allowed before the circuit opened fail afterwards
+    for (int i = 0; i < 10; i++) {
+      health.recordFailure(time + 1);
+    }
+    assertTrue(request(health, time + DaemonHealth.MIN_BACKOFF));
+  }
+
+  @Test
+  public void testSuccessfulProbeCloses() {
+    DaemonHealth health = new DaemonHealth(4);
+    long time = 1000000;
+    for (int i = 0; i < DaemonHealth.FAILURE_THRESHOLD; i++) {
+      request(health, time);
+    }
+    long probeTime = time + DaemonHealth.MIN_BACKOFF;
+    assertTrue(health.allowRequest(probeTime));
+    health.recordSuccess(0);
+    assertEquals(DaemonHealth.State.CLOSED, health.getState());
+    assertFalse(health.isFailingFast(probeTime));
+    assertTrue(health.allowRequest(probeTime));
+    assertTrue(health.allowRequest(probeTime));
+  }
+
+  private AoservDaemonConnector getFakeDaemonConnector() throws Exception {
+    byte[] key = new byte[32];
+    new SecureRandom().nextBytes(key);
+    return AoservDaemonConnector.getConnector(
+        HostAddress.valueOf(com.aoapps.net.InetAddress.LOOPBACK_IPV4),
+        com.aoapps.net.InetAddress.UNSPECIFIED_IPV4,
+        Port.valueOf(fakeDaemon.getLocalPort(), Protocol.TCP),
+        AppProtocol.AOSERV_DAEMON,
+        new UnprotectedKey(key),
+        1,
+        AOPool.DEFAULT_MAX_CONNECTION_AGE,
+        null,
+        null
+    );
+  }
+
+  @Test
+  public void testCallDaemonFailsFastAfterConnectionFailures() throws Exception {
+    DaemonHealth health = new DaemonHealth(6);
+    AoservDaemonConnector daemonConnector = getFakeDaemonConnector();
+    for (int i = 0; i < DaemonHealth.FAILURE_THRESHOLD; i++) {
+      try {
+        DaemonHandler.callDaemon(health, daemonConnector, AoservDaemonConnector::getSystemTimeMillis);
+        fail("The fake daemon drops every connection");
+      } catch (IOException e) {
+        assertFalse(e instanceof DaemonHandler.DaemonUnavailableException);
+        assertTrue(DaemonHandler.isTransportFailure(e));
+      }
+    }
+    assertTrue(health.isFailingFast());
+    int connectionsBefore = connections.get();
+    for (int i = 0; i < 10; i++) {
+      try {
+        DaemonHandler.callDaemon(health, daemonConnector, AoservDaemonConnector::getSystemTimeMillis);
+        fail("Must fail fast");
+      } catch (DaemonHandler.DaemonUnavailableException e) {
+        // Expected
+      }
+    }
+    assertEquals(connectionsBefore, connections.get());
+  }
+
+  @Test
+  public void testCallDaemonIgnoresApplicationErrors() throws Exception {
+    DaemonHealth health = new DaemonHealth(7);
+    for (int i = 0; i < DaemonHealth.FAILURE_THRESHOLD * 2; i++) {
+      try {
+        DaemonHandler.callDaemon(health, null, daemonConnector -> {
+          // As thrown by the daemon client for an error reported by the daemon
+          throw new IOException("File not found");
+        });
+        fail();
+      } catch (IOException e) {
+        assertFalse(e instanceof DaemonHandler.DaemonUnavailableException);
+      }
+    }
+    assertEquals(DaemonHealth.State.CLOSED, health.getState());
+  }
+
+  @Test
+  public void testCallDaemonIgnoresClientOutputErrors() throws Exception {
+    DaemonHealth health = new DaemonHealth(8);
+    OutputStream clientOut = DaemonHandler.getClientOutput(new OutputStream() {
+      @Override
+      public void write(int b) throws IOException {
+        throw new SocketException("Broken pipe");
+      }
+    });
+    for (int i = 0; i < DaemonHealth.FAILURE_THRESHOLD * 2; i++) {
+      try {
+        DaemonHandler.callDaemon(health, null, daemonConnector -> {
+          clientOut.write(0);
+          return null;
+        });
+        fail();
+      } catch (IOException e) {
+        assertFalse(e instanceof DaemonHandler.DaemonUnavailableException);
+        assertFalse(DaemonHandler.isTransportFailure(e));
+      }
+    }
+    assertEquals(DaemonHealth.State.CLOSED, health.getState());
+  }
+}
@@ -0,0 +1,166 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.aoapps.collections.IntArrayList;
+import com.aoapps.collections.IntList;
+import com.aoindustries.aoserv.client.schema.Table;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests {@link LinuxIdAllocator} with a counting loader in place of the
+ * database, including a microbenchmark of provisioning many accounts with and
+ * without the index.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class LinuxIdAllocatorTest {
+
+  private static final int MIN = 1000;
+
+  private static final int MAX = 60000;
+
+  private static final int EXISTING = 20000;
+
+  private static final int PROVISIONED = 10000;
+
+  private final TreeSet<Integer> table = new TreeSet<>();
+  private int loads;
+
+  private IntList load() {
+    loads++;
+    IntList ids = new IntArrayList(table.size());
+    for (Integer id : table) {
+      ids.add(id);
+    }
+    return ids;
+  }
+
+  private LinuxIdAllocator newAllocator() {
+    return new LinuxIdAllocator("uid", this::load, Table.TableId.LINUX_SERVER_ACCOUNTS);
+  }
+
+  /**
+   * Finds the lowest free ID the way a query per allocation would, by scanning the used IDs.
+   */
+  private int scanLowestFree() throws SQLException {
+    int id = MIN;
+    for (Integer used : table.tailSet(MIN)) {
+      if (used != id) {
+        break;
+      }
+      id++;
+    }
+    if (id > MAX) {
+      throw new SQLException("No free uid");
+    }
+    return id;
+  }
+
+  @Test
+  public void testLowestFree() throws IOException, SQLException {
+    table.add(MIN);
+    table.add(MIN + 1);
+    table.add(MIN + 3);
+    LinuxIdAllocator allocator = newAllocator();
+    assertEquals(MIN + 2, allocator.allocate(MIN, MAX));
+    assertEquals(MIN + 4, allocator.allocate(MIN, MAX));
+    assertEquals(MIN + 5, allocator.allocate(MIN, MAX));
+    assertEquals(1, loads);
+  }
+
+  @Test(expected = SQLException.class)
+  public void testNoneFree() throws IOException, SQLException {
+    for (int id = MIN; id <= MIN + 2; id++) {
+      table.add(id);
+    }
+    newAllocator().allocate(MIN, MIN + 2);
+  }
+
+  @Test
+  public void testAllocatedRetainedAcrossReload() throws IOException, SQLException {
+    LinuxIdAllocator allocator = newAllocator();
+    assertEquals(MIN, allocator.allocate(MIN, MAX));
+    // Not yet committed, so not in the table when reloaded
+    allocator.invalidate();
+    assertEquals(MIN + 1, allocator.allocate(MIN, MAX));
+    assertEquals(2, loads);
+  }
+
+  @Test
+  public void testMarkUsed() throws IOException, SQLException {
+    LinuxIdAllocator allocator = newAllocator();
+    // Before the first load
+    allocator.markUsed(MIN);
+    assertTrue(allocator.isUsed(MIN));
+    // After the load
+    allocator.markUsed(MIN + 1);
+    assertTrue(allocator.isUsed(MIN + 1));
+    assertFalse(allocator.isUsed(MIN + 2));
+    assertEquals(MIN + 2, allocator.allocate(MIN, MAX));
+    // Not yet committed, so not in the table when reloaded
+    allocator.invalidate();
+    assertTrue(allocator.isUsed(MIN));
+    assertTrue(allocator.isUsed(MIN + 1));
+    assertEquals(MIN + 3, allocator.allocate(MIN, MAX));
+  }
+
+  @Test
+  public void testProvisioning() throws IOException, SQLException {
+    for (int id = MIN; id < MIN + EXISTING; id++) {
+      table.add(id);
+    }
+    // Before: every allocation queries for the lowest free ID
+    long start = System.nanoTime();
+    for (int i = 0; i < PROVISIONED; i++) {
+      table.add(scanLowestFree());
+    }
+    long before = System.nanoTime() - start;
+    for (int i = 0; i < PROVISIONED; i++) {
+      table.remove(MIN + EXISTING + i);
+    }
+    // After: one bulk load
+    LinuxIdAllocator allocator = newAllocator();
+    start = System.nanoTime();
+    for (int i = 0; i < PROVISIONED; i++) {
+      assertEquals(MIN + EXISTING + i, allocator.allocate(MIN, MAX));
+    }
+    long after = System.nanoTime() - start;
+    System.out.println(
+        LinuxIdAllocatorTest.class.getSimpleName() + ": " + PROVISIONED + " accounts provisioned over "
+            + EXISTING + " existing: " + PROVISIONED + " queries in "
+            + TimeUnit.NANOSECONDS.toMillis(before) + " ms before, " + loads + " query in "
+            + TimeUnit.NANOSECONDS.toMillis(after) + " ms after"
+    );
+    assertEquals(1, loads);
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import com.aoindustries.aoserv.client.schema.Table;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+
+/**
+ * Tests {@link OwnershipIndex.Index} with counting loaders in place of the
+ * database, including a microbenchmark of the queries performed by repeated
+ * access checks with and without the index.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class OwnershipIndexTest {
+
+  private static final int ROWS = 100;
+
+  private static final int CHECKS = 10000;
+
+  private final Map<Integer, OwnershipIndex.Owner> table = new HashMap<>();
+  private final AtomicInteger bulkQueries = new AtomicInteger();
+  private final AtomicInteger rowQueries = new AtomicInteger();
+
+  public OwnershipIndexTest() {
+    for (int id = 0; id < ROWS; id++) {
+      table.put(id, new OwnershipIndex.Owner(id % 7, null, -1, null));
+    }
+  }
+
+  private Map<Integer, OwnershipIndex.Owner> load() {
+    bulkQueries.incrementAndGet();
+    return new HashMap<>(table);
+  }
+
+  private OwnershipIndex.Owner lookup(int id) {
+    rowQueries.incrementAndGet();
+    return table.get(id);
+  }
+
+  private OwnershipIndex.Index newIndex(Executor executor) {
+    return new OwnershipIndex.Index(
+        "test",
+        this::load,
+        (db, id) -> lookup(id),
+        executor,
+        Table.TableId.HTTPD_SITES
+    );
+  }
+
+  @Test
+  public void testQueryCounts() throws IOException, SQLException {
+    // Before: every access check queries its row
+    for (int i = 0; i < CHECKS; i++) {
+      lookup(i % ROWS);
+    }
+    int before = rowQueries.getAndSet(0);
+    // After: one bulk load, with only the first check queried directly
+    OwnershipIndex.Index index = newIndex(Runnable::run);
+    for (int i = 0; i < CHECKS; i++) {
+      assertSame(table.get(i % ROWS), index.get(null, i % ROWS));
+    }
+    int after = bulkQueries.get() + rowQueries.get();
+    System.out.println(
+        OwnershipIndexTest.class.getSimpleName() + ": " + CHECKS + " access checks: "
+            + before + " queries before, " + after + " queries after"
+    );
+    assertEquals(CHECKS, before);
+    assertEquals(1, bulkQueries.get());
+    assertEquals(1, rowQueries.get());
+  }
+
+  @Test
+  public void testMissNotCached() throws IOException, SQLException {
+    OwnershipIndex.Index index = newIndex(Runnable::run);
+    index.get(null, 0);
+    OwnershipIndex.Owner inserted = new OwnershipIndex.Owner(1, null, -1, null);
+    table.put(ROWS, inserted);
+    assertSame(inserted, index.get(null, ROWS));
+    assertSame(inserted, index.get(null, ROWS));
+    // The initial miss and both lookups of the new row
+    assertEquals(3, rowQueries.get());
+    assertEquals(1, bulkQueries.get());
+  }
+
+  @Test
+  public void testNotFound() throws IOException {
+    OwnershipIndex.Index index = newIndex(Runnable::run);
+    try {
+      index.get(null, -1);
+      fail("SQLException expected");
+    } catch (SQLException e) {
+      // Expected
+    }
+  }
+
+  @Test
+  public void testInvalidateReloads() throws IOException, SQLException {
+    OwnershipIndex.Index index = newIndex(Runnable::run);
+    index.get(null, 0);
+    index.invalidateTable(Table.TableId.HTTPD_SERVERS);
+    index.get(null, 0);
+    assertEquals(1, bulkQueries.get());
+    index.invalidateTable(Table.TableId.HTTPD_SITES);
+    index.get(null, 0);
+    assertEquals(2, bulkQueries.get());
+  }
+
+  @Test
+  public void testLoadDuringInvalidateNotPublished() throws IOException, SQLException {
+    List<Runnable> scheduled = new ArrayList<>();
+    OwnershipIndex.Index index = newIndex(scheduled::add);
+    index.get(null, 0);
+    index.get(null, 1);
+    // Only one load scheduled while loading
+    assertEquals(1, scheduled.size());
+    index.invalidateTable(Table.TableId.HTTPD_SITES);
+    scheduled.remove(0).run();
+    // Loaded before the invalidation, so not published and loaded again
+    index.get(null, 2);
+    assertEquals(1, scheduled.size());
+    scheduled.remove(0).run();
+    index.get(null, 3);
+    assertEquals(0, scheduled.size());
+    assertEquals(2, bulkQueries.get());
+    // Every check before the second load completed was queried directly
+    assertEquals(3, rowQueries.get());
+  }
+}
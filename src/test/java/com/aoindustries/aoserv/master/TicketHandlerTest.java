@@ -0,0 +1,204 @@
+/*
+ * aoserv-master - Master server for the AOServ Platform.
+ * Copyright (C) 2026  AO Industries, Inc.
+ *     support@aoindustries.com
+ *     7262 Bull Pen Cir
+ *     Mobile, AL 36695
+ *
+ * This file is part of aoserv-master.
+ *
+ * aoserv-master is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * aoserv-master is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with aoserv-master.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.aoindustries.aoserv.master;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.aoindustries.aoserv.client.ticket.ActionType;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * Tests {@link TicketHandler.TicketIdPool} with a set of IDs in place of the
+ * <code>ticket."Ticket"</code> table, including a microbenchmark of allocation
+ * throughput and the queries performed, and the statements of
+ * {@link TicketHandler.TicketEdit}, including the statements of a bulk edit.
+ *
+ * @author  AO Industries, Inc.
+ */
+public class TicketHandlerTest {
+
+  private static final int EXISTING = 100000;
+
+  private static final int ALLOCATIONS = 100000;
+
+  private static final int EDITS = 100000;
+
+  /**
+   * The statements per field changed by the previous per-field setters: a select of the old value, the update,
+   * the action insert, and one select each for the account, brand, and reseller to invalidate.
+   */
+  private static final int STATEMENTS_PER_FIELD_BEFORE = 6;
+
+  private final Set<Integer> tickets = new HashSet<>();
+  private int queries;
+
+  public TicketHandlerTest() {
+    Random random = new Random(1);
+    while (tickets.size() < EXISTING) {
+      tickets.add(random.nextInt(1000000));
+    }
+  }
+
+  private List<Integer> filterUnused(Set<Integer> candidates) {
+    queries++;
+    List<Integer> unused = new ArrayList<>();
+    for (Integer candidate : candidates) {
+      if (!tickets.contains(candidate)) {
+        unused.add(candidate);
+      }
+    }
+    return unused;
+  }
+
+  @Test
+  public void testUniqueAndUnused() throws IOException, SQLException {
+    TicketHandler.TicketIdPool pool = new TicketHandler.TicketIdPool(new Random(2), 1000, 10000, TimeUnit.HOURS.toNanos(1));
+    long start = System.nanoTime();
+    for (int i = 0; i < ALLOCATIONS; i++) {
+      int ticket = pool.next(this::filterUnused);
+      // Inserted as the caller would, so a later refill never returns it
+      assertTrue("Duplicate or used ticket ID: " + ticket, tickets.add(ticket));
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.println(
+        TicketHandlerTest.class.getSimpleName() + ": " + ALLOCATIONS + " ticket IDs in "
+            + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms ("
+            + (ALLOCATIONS * 1000000000L / Math.max(nanos, 1)) + " per second), "
+            + queries + " queries"
+    );
+    assertEquals(EXISTING + ALLOCATIONS, tickets.size());
+    // Far fewer than one query per ticket, as when probing each candidate
+    assertTrue("Too many queries: " + queries, queries * 100 < ALLOCATIONS);
+  }
+
+  @Test
+  public void testUncommittedNotReissued() throws IOException, SQLException {
+    TicketHandler.TicketIdPool pool = new TicketHandler.TicketIdPool(new Random(3), 1000, 10000, 0);
+    Set<Integer> issued = new HashSet<>();
+    for (int i = 0; i < 5000; i++) {
+      // Not inserted, as when the issuing transaction has not yet committed
+      assertTrue(issued.add(pool.next(this::filterUnused)));
+    }
+  }
+
+  @Test
+  public void testExpiredPoolRechecked() throws IOException, SQLException {
+    TicketHandler.TicketIdPool pool = new TicketHandler.TicketIdPool(new Random(4), 1000, 10000, 0);
+    for (int i = 0; i < 10; i++) {
+      tickets.add(pool.next(this::filterUnused));
+    }
+    // Every ID is checked no earlier than its own allocation
+    assertEquals(10, queries);
+  }
+
+  @Test
+  public void testRangeGrowsWhenFull() throws IOException, SQLException {
+    TicketHandler.TicketIdPool pool = new TicketHandler.TicketIdPool(new Random(5), 1000, 10000, TimeUnit.HOURS.toNanos(1));
+    // Every ID within the initial range is used
+    int ticket = pool.next(candidates -> {
+      List<Integer> unused = new ArrayList<>();
+      for (Integer candidate : candidates) {
+        if (candidate >= 1000000) {
+          unused.add(candidate);
+        }
+      }
+      return unused;
+    });
+    assertTrue(ticket >= 1000000);
+  }
+
+  @Test(expected = SQLException.class)
+  public void testAllUsed() throws IOException, SQLException {
+    TicketHandler.TicketIdPool pool = new TicketHandler.TicketIdPool(new Random(6), 1000, 10000, TimeUnit.HOURS.toNanos(1));
+    pool.next(candidates -> new ArrayList<>());
+  }
+
+  @Test
+  public void testEditStatements() {
+    TicketHandler.TicketEdit edit = new TicketHandler.TicketEdit("New summary", null, null, "HIGH");
+    assertEquals(2, edit.size());
+    assertEquals(
+        "update ticket.\"Ticket\" ti set summary=?, client_priority=?"
+            + " from (select id, summary, client_priority from ticket.\"Ticket\" where id=? for update) old"
+            + " where ti.id=old.id returning ti.accounting, ti.brand, ti.reseller, old.summary, old.client_priority",
+        edit.getUpdateSql()
+    );
+    assertArrayEquals(new Object[]{"New summary", "HIGH", 42}, edit.getUpdateParams(42));
+    assertEquals(
+        "insert into ticket.\"Action\"(ticket, administrator, action_type, old_value, new_value, old_priority, new_priority)"
+            + " values (?,?,?,?,?,null,null), (?,?,?,null,null,?,?)",
+        edit.getInsertSql()
+    );
+    assertArrayEquals(
+        new Object[]{
+            42, null, ActionType.SET_SUMMARY, "Old summary", "New summary",
+            42, null, ActionType.SET_CLIENT_PRIORITY, "NORMAL", "HIGH"
+        },
+        edit.getInsertParams(42, null, new String[]{"Old summary", "NORMAL"})
+    );
+  }
+
+  @Test
+  public void testNoChanges() {
+    assertEquals(0, new TicketHandler.TicketEdit(null, null, null, null).size());
+  }
+
+  @Test
+  public void testBulkEdit() {
+    int fields = 3;
+    int statements = 0;
+    int actions = 0;
+    long start = System.nanoTime();
+    for (int ticket = 0; ticket < EDITS; ticket++) {
+      TicketHandler.TicketEdit edit = new TicketHandler.TicketEdit("Summary " + ticket, null, "555-0100", "LOW");
+      edit.getUpdateSql();
+      edit.getUpdateParams(ticket);
+      statements++;
+      String insert = edit.getInsertSql();
+      Object[] params = edit.getInsertParams(ticket, null, new String[]{"Old", "555-0199", "NORMAL"});
+      statements++;
+      actions += params.length / 5;
+      assertEquals(fields, insert.split("\\(\\?,\\?,\\?,").length - 1);
+    }
+    long nanos = System.nanoTime() - start;
+    System.out.println(
+        TicketHandlerTest.class.getSimpleName() + ": " + EDITS + " tickets edited, " + fields + " fields each: "
+            + (EDITS * fields * STATEMENTS_PER_FIELD_BEFORE) + " statements before, " + statements + " after, built in "
+            + TimeUnit.NANOSECONDS.toMillis(nanos) + " ms ("
+            + (EDITS * 1000000000L / Math.max(nanos, 1)) + " tickets per second)"
+    );
+    assertEquals(EDITS * 2, statements);
+    assertEquals(EDITS * fields, actions);
+  }
+}